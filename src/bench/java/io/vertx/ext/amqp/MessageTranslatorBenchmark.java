@@ -0,0 +1,105 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.amqp.impl.translators.MessageTranslator;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.proton.message.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the JsonObject to AMQP Message translation and back. Only built
+ * with the benchmarks profile, run it with
+ * <p/>
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *   -Dexec.args="-cp %classpath org.openjdk.jmh.Main MessageTranslatorBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageTranslatorBenchmark
+{
+    @Param({ "flat", "nested" })
+    public String shape;
+
+    private final MessageTranslator _translator = new MessageTranslator();
+
+    private JsonObject _json;
+
+    private Message _message;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        JsonObject body = new JsonObject().put("id", 42).put("name", "widget").put("price", 9.99)
+                .put("active", true);
+        if ("nested".equals(shape))
+        {
+            JsonArray items = new JsonArray();
+            for (int i = 0; i < 10; i++)
+            {
+                items.add(new JsonObject().put("sku", "sku-" + i).put("qty", i).put("tags",
+                        new JsonArray().add("a").add("b")));
+            }
+            body.put("items", items).put("customer", new JsonObject().put("name", "bob").put("address",
+                    new JsonObject().put("city", "nyc").put("zip", "10001")));
+        }
+        _json = new JsonObject().put("body", body).put("properties", new JsonObject()
+                .put("message_id", UUID.randomUUID().toString()).put("message_id_type", "uuid")
+                .put("subject", "orders").put("content_type", "application/json"))
+                .put("application_properties", new JsonObject().put("region", "us-east").put("priority", 4));
+        _message = _translator.convert(_json);
+    }
+
+    @Benchmark
+    public Message jsonToMessage() throws Exception
+    {
+        return _translator.convert(_json);
+    }
+
+    @Benchmark
+    public JsonObject messageToJson() throws Exception
+    {
+        return _translator.convert(_message);
+    }
+
+    @Benchmark
+    public JsonObject roundTrip() throws Exception
+    {
+        return _translator.convert(_translator.convert(_json));
+    }
+}
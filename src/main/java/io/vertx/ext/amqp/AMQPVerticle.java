@@ -16,6 +16,7 @@
 package io.vertx.ext.amqp;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.amqp.impl.AmqpServiceConfig;
@@ -29,8 +30,7 @@ public class AMQPVerticle extends AbstractVerticle {
   private AMQPServiceImpl service;
 
   @Override
-  public void start() throws Exception {
-    super.start();
+  public void start(Future<Void> startFuture) throws Exception {
     AmqpServiceConfig config = new AmqpServiceConfigImpl(config());
     try {
       service = new AMQPServiceImpl(vertx, config, this);
@@ -41,10 +41,19 @@ public class AMQPVerticle extends AbstractVerticle {
 
       ProxyHelper.registerService(AMQPService.class, vertx, service, address);
       service.start();
+      if (config.isWarmUp()) {
+        // the deployment completes once the links are ready
+        service.warmUp(v -> {
+          LOGGER.info(String.format("AmqpService is now available via the address : %s", address));
+          startFuture.complete();
+        });
+        return;
+      }
       LOGGER.info(String.format("AmqpService is now available via the address : %s", address));
     } catch (MessagingException e) {
       LOGGER.fatal("Exception when starting AMQP Service", e);
     }
+    startFuture.complete();
   }
 
   @Override
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Event-bus codec for {@link AmqpMessageView}.
+ * <p/>
+ * Local consumers receive the instance that was sent, nothing is copied
+ * since the view is immutable. For clustered delivery the view is written in
+ * a compact binary form: the msg-ref and link-ref followed by the AMQP
+ * encoded message, which is decoded again only when the consumer reads it.
+ * <p/>
+ * The vertx-amqp-service registers the codec on its Vert.x instance.
+ * Consumers in other cluster nodes should call {@link #register(Vertx)}.
+ */
+public class AmqpMessageCodec implements MessageCodec<AmqpMessageView, AmqpMessageView> {
+  public static final String NAME = "vertx-amqp-message";
+
+  /**
+   * Registers the codec as the default codec for {@link AmqpMessageView}, if
+   * it is not registered already.
+   */
+  public static void register(Vertx vertx) {
+    try {
+      vertx.eventBus().registerDefaultCodec(AmqpMessageView.class, new AmqpMessageCodec());
+    } catch (IllegalStateException e) {
+      // already registered
+    }
+  }
+
+  @Override
+  public void encodeToWire(Buffer buffer, AmqpMessageView view) {
+    writeString(buffer, view.getMsgRef());
+    writeString(buffer, view.getLinkRef());
+    byte[] encoded = view.getEncoded();
+    buffer.appendInt(encoded.length);
+    buffer.appendBytes(encoded);
+  }
+
+  @Override
+  public AmqpMessageView decodeFromWire(int pos, Buffer buffer) {
+    int[] cursor = { pos };
+    String msgRef = readString(buffer, cursor);
+    String linkRef = readString(buffer, cursor);
+    int length = buffer.getInt(cursor[0]);
+    byte[] encoded = buffer.getBytes(cursor[0] + 4, cursor[0] + 4 + length);
+    return new AmqpMessageView(msgRef, linkRef, encoded, null);
+  }
+
+  @Override
+  public AmqpMessageView transform(AmqpMessageView view) {
+    return view;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte systemCodecID() {
+    return -1;
+  }
+
+  private static void writeString(Buffer buffer, String s) {
+    if (s == null) {
+      buffer.appendInt(-1);
+    } else {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      buffer.appendInt(bytes.length);
+      buffer.appendBytes(bytes);
+    }
+  }
+
+  private static String readString(Buffer buffer, int[] cursor) {
+    int length = buffer.getInt(cursor[0]);
+    cursor[0] += 4;
+    if (length < 0) {
+      return null;
+    }
+    String s = new String(buffer.getBytes(cursor[0], cursor[0] + length), StandardCharsets.UTF_8);
+    cursor[0] += length;
+    return s;
+  }
+}
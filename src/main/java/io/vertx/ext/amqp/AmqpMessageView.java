@@ -0,0 +1,234 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.AmqpSequence;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.amqp.messaging.MessageAnnotations;
+import org.apache.qpid.proton.amqp.messaging.Section;
+import org.apache.qpid.proton.message.Message;
+
+import java.nio.BufferOverflowException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read only, typed view of an AMQP message received by the
+ * vertx-amqp-service. It is sent instead of a JsonObject to the consumers of
+ * links and routes using {@link DeliveryFormat#TYPED}.
+ * <p/>
+ * The AMQP sections are decoded at most once, on first access, and local
+ * consumers receive the same instance the service created. The view should
+ * be treated as immutable; the maps it returns can not be modified.
+ * <p/>
+ * AMQP types are kept as they are, e.g. a UUID message-id is returned as a
+ * {@link java.util.UUID} and a binary body as a byte[].
+ */
+public final class AmqpMessageView {
+  private final String _msgRef;
+
+  private final String _linkRef;
+
+  private final byte[] _encoded;
+
+  private volatile Message _msg;
+
+  /**
+   * Creates a view of a received message. Either the encoded form, the
+   * decoded message or both may be given.
+   */
+  public AmqpMessageView(String msgRef, String linkRef, byte[] encoded, Message decoded) {
+    if (encoded == null && decoded == null) {
+      throw new IllegalArgumentException("The encoded or the decoded message is required");
+    }
+    _msgRef = msgRef;
+    _linkRef = linkRef;
+    _encoded = encoded;
+    _msg = decoded;
+  }
+
+  private Message msg() {
+    Message msg = _msg;
+    if (msg == null) {
+      msg = Proton.message();
+      msg.decode(_encoded, 0, _encoded.length);
+      _msg = msg;
+    }
+    return msg;
+  }
+
+  /**
+   * The reference used to accept, reject or release the message, the
+   * equivalent of {@link AMQPService#INCOMING_MSG_REF}.
+   */
+  public String getMsgRef() {
+    return _msgRef;
+  }
+
+  /**
+   * The link the message was received on, the equivalent of
+   * {@link AMQPService#INCOMING_MSG_LINK_REF}.
+   */
+  public String getLinkRef() {
+    return _linkRef;
+  }
+
+  /**
+   * The AMQP encoded message. The returned array must not be modified.
+   */
+  public byte[] getEncoded() {
+    return _encoded != null ? _encoded : encode(_msg);
+  }
+
+  public String getAddress() {
+    return msg().getAddress();
+  }
+
+  public String getSubject() {
+    return msg().getSubject();
+  }
+
+  public String getReplyTo() {
+    return msg().getReplyTo();
+  }
+
+  public Object getMessageId() {
+    return msg().getMessageId();
+  }
+
+  public Object getCorrelationId() {
+    return msg().getCorrelationId();
+  }
+
+  public String getContentType() {
+    return msg().getContentType();
+  }
+
+  public String getContentEncoding() {
+    return msg().getContentEncoding();
+  }
+
+  public String getGroupId() {
+    return msg().getGroupId();
+  }
+
+  public long getGroupSequence() {
+    return msg().getGroupSequence();
+  }
+
+  public String getReplyToGroupId() {
+    return msg().getReplyToGroupId();
+  }
+
+  public long getCreationTime() {
+    return msg().getCreationTime();
+  }
+
+  public long getExpiryTime() {
+    return msg().getExpiryTime();
+  }
+
+  public boolean isDurable() {
+    return msg().isDurable();
+  }
+
+  public short getPriority() {
+    return msg().getPriority();
+  }
+
+  public long getTtl() {
+    return msg().getTtl();
+  }
+
+  public long getDeliveryCount() {
+    return msg().getDeliveryCount();
+  }
+
+  @SuppressWarnings("unchecked")
+  public Map<String, Object> getApplicationProperties() {
+    ApplicationProperties props = msg().getApplicationProperties();
+    return props == null || props.getValue() == null ? Collections.emptyMap() : Collections
+      .unmodifiableMap(props.getValue());
+  }
+
+  /**
+   * Returns an application property, or null if the message has no such
+   * property.
+   */
+  public Object getApplicationProperty(String name) {
+    ApplicationProperties props = msg().getApplicationProperties();
+    return props == null || props.getValue() == null ? null : props.getValue().get(name);
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public Map<Object, Object> getMessageAnnotations() {
+    MessageAnnotations annotations = msg().getMessageAnnotations();
+    return annotations == null || annotations.getValue() == null ? Collections.emptyMap() : Collections
+      .unmodifiableMap((Map) annotations.getValue());
+  }
+
+  /**
+   * Returns the body: the value of an amqp-value section, the bytes of a data
+   * section, the list of an amqp-sequence section, or null.
+   */
+  public Object getBody() {
+    Section body = msg().getBody();
+    if (body instanceof AmqpValue) {
+      Object value = ((AmqpValue) body).getValue();
+      return value instanceof Binary ? toBytes((Binary) value) : value;
+    } else if (body instanceof Data) {
+      return toBytes(((Data) body).getValue());
+    } else if (body instanceof AmqpSequence) {
+      // AmqpSequence returns a raw List, List<?> takes it without an unchecked conversion
+      List<?> values = ((AmqpSequence) body).getValue();
+      return Collections.unmodifiableList(values);
+    }
+    return null;
+  }
+
+  private static byte[] toBytes(Binary binary) {
+    if (binary.getArrayOffset() == 0 && binary.getLength() == binary.getArray().length) {
+      return binary.getArray();
+    }
+    byte[] bytes = new byte[binary.getLength()];
+    System.arraycopy(binary.getArray(), binary.getArrayOffset(), bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private static byte[] encode(Message msg) {
+    byte[] buffer = new byte[1024];
+    while (true) {
+      try {
+        int length = msg.encode(buffer, 0, buffer.length);
+        byte[] out = new byte[length];
+        System.arraycopy(buffer, 0, out, 0, length);
+        return out;
+      } catch (BufferOverflowException e) {
+        buffer = new byte[buffer.length * 2];
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("AmqpMessageView[msg-ref=%s, link-ref=%s]", _msgRef, _linkRef);
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp;
+
+/**
+ * Converts the payload of an AMQP data body to and from the "body" field of
+ * the Json message, for a given content-type.
+ * <p/>
+ * A codec is used for messages with "body_type" : "data" whose AMQP
+ * content-type (or the content-type property header, see
+ * {@link MessageHeaders}) matches {@link #getContentType()}. Codecs for
+ * application/octet-stream, text/plain, application/json and
+ * application/x-vertx-record are built in, others can be added with the
+ * "amqp.body-codecs" config. Custom codecs need a public no-arg constructor.
+ */
+public interface BodyCodec {
+  /**
+   * The content-type handled by this codec, without parameters, e.g.
+   * "application/json".
+   */
+  String getContentType();
+
+  /**
+   * Returns the value put in the "body" field of the Json message. It must be
+   * a valid Json value.
+   */
+  Object decode(byte[] data, int offset, int length) throws MessageFormatException;
+
+  /**
+   * Returns the payload for the "body" field of the Json message.
+   */
+  byte[] encode(Object body) throws MessageFormatException;
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp;
+
+/**
+ * Specifies the form in which messages received from AMQP are sent to the
+ * event-bus.
+ */
+public enum DeliveryFormat {
+  /**
+   * The message is translated to a JsonObject (the default).
+   */
+  JSON,
+
+  /**
+   * The message is not translated. The body is a
+   * {@link io.vertx.core.buffer.Buffer} holding the AMQP encoded message, the
+   * msg-ref and link-ref are sent as headers (see {@link MessageHeaders}).
+   */
+  RAW,
+
+  /**
+   * The message is not translated. The body is an {@link AmqpMessageView}
+   * giving typed access to the message. It is passed by reference to local
+   * consumers, see {@link AmqpMessageCodec}.
+   */
+  TYPED;
+
+  public static DeliveryFormat get(String key) {
+    if (key == null || key.trim().equals("")) {
+      return JSON;
+    }
+    return DeliveryFormat.valueOf(key.trim().toUpperCase());
+  }
+}
@@ -33,12 +33,26 @@ public class IncomingLinkOptions {
 
   public final static String RECOVERY_OPTIONS = "recovery-options";
 
+  public final static String AUTO_SETTLE = "auto-settle";
+
+  public final static String AUTO_SETTLE_TIMEOUT = "auto-settle-timeout";
+
+  public final static String FORMAT = "format";
+
+  private final static long DEFAULT_AUTO_SETTLE_TIMEOUT = 30 * 1000;
+
   private int prefetch = 1;
 
   private ReliabilityMode reliability = ReliabilityMode.UNRELIABLE;
 
   private RetryOptions recoveryOptions = new RetryOptions();
 
+  private boolean autoSettle = false;
+
+  private long autoSettleTimeout = DEFAULT_AUTO_SETTLE_TIMEOUT;
+
+  private DeliveryFormat format = DeliveryFormat.JSON;
+
   public IncomingLinkOptions() {
   }
 
@@ -46,18 +60,27 @@ public class IncomingLinkOptions {
     this.prefetch = options.prefetch;
     this.reliability = options.reliability;
     this.recoveryOptions = options.recoveryOptions;
+    this.autoSettle = options.autoSettle;
+    this.autoSettleTimeout = options.autoSettleTimeout;
+    this.format = options.format;
   }
 
   public IncomingLinkOptions(JsonObject options) {
     this.prefetch = options.getInteger(PREFETCH, 1);
     this.reliability = ReliabilityMode.valueOf(options.getString(RELIABILITY, ReliabilityMode.UNRELIABLE.name()));
     this.recoveryOptions = new RetryOptions(options.getJsonObject(RECOVERY_OPTIONS));
+    this.autoSettle = options.getBoolean(AUTO_SETTLE, false);
+    this.autoSettleTimeout = options.getLong(AUTO_SETTLE_TIMEOUT, DEFAULT_AUTO_SETTLE_TIMEOUT);
+    this.format = DeliveryFormat.get(options.getString(FORMAT));
   }
 
   public JsonObject toJson() {
     JsonObject json = new JsonObject();
     json.put(PREFETCH, prefetch);
     json.put(RELIABILITY, reliability.name());
+    json.put(AUTO_SETTLE, autoSettle);
+    json.put(AUTO_SETTLE_TIMEOUT, autoSettleTimeout);
+    json.put(FORMAT, format.name());
     return json;
   }
 
@@ -100,6 +123,52 @@ public class IncomingLinkOptions {
     this.recoveryOptions = recoveryOptions;
   }
 
+  public boolean isAutoSettle() {
+    return autoSettle;
+  }
+
+  /**
+   * <i>Defaults to "false". </i><br>
+   * Only applies when the reliability is {@link ReliabilityMode#AT_LEAST_ONCE}.
+   * If set to "true", the Vert.x-AMQP-Service sends each message to the
+   * event-bus with a reply handler and settles the AMQP delivery itself, so
+   * the application does not need to call
+   * {@link AMQPService#accept(String, io.vertx.core.Handler)}. <br>
+   * A reply (any content) accepts the message. A failure reply (
+   * {@link io.vertx.core.eventbus.Message#fail(int, String)}) rejects it, while
+   * a timeout or the absence of a handler releases it so it can be redelivered.
+   */
+  public void setAutoSettle(boolean autoSettle) {
+    this.autoSettle = autoSettle;
+  }
+
+  public long getAutoSettleTimeout() {
+    return autoSettleTimeout;
+  }
+
+  /**
+   * <i>Defaults to "30000". </i><br>
+   * The time in milliseconds to wait for the application to reply before the
+   * message is released when auto-settle is enabled.
+   */
+  public void setAutoSettleTimeout(long autoSettleTimeout) {
+    this.autoSettleTimeout = autoSettleTimeout;
+  }
+
+  public DeliveryFormat getFormat() {
+    return format;
+  }
+
+  /**
+   * <i>Defaults to "JSON". </i><br>
+   * Please see {@link DeliveryFormat}. With RAW or TYPED the messages are not
+   * translated to JSON, avoiding the cost of the translation when the
+   * application does not need it.
+   */
+  public void setFormat(DeliveryFormat format) {
+    this.format = format;
+  }
+
   @Override
   public String toString() {
     return toJson().encode();
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp;
+
+import io.vertx.core.eventbus.DeliveryOptions;
+
+/**
+ * Event-bus headers understood by the vertx-amqp-service for outbound
+ * messages. They allow an application to supply routing information and AMQP
+ * properties without putting them into the Json body, e.g.
+ * <p/>
+ * <pre>
+ * DeliveryOptions options = new DeliveryOptions()
+ *   .addHeader(MessageHeaders.ROUTING_KEY, "weather.toronto")
+ *   .addHeader(MessageHeaders.property("subject"), "forecast")
+ *   .addHeader(MessageHeaders.applicationProperty("station-code"), "YYZ");
+ * vertx.eventBus().send("vertx.service-amqp.bridge", msg, options);
+ * </pre>
+ * Headers take precedence over the equivalent fields in the body.
+ * <p/>
+ * A message whose body is a {@link io.vertx.core.buffer.Buffer} is treated
+ * as a raw, already encoded AMQP message and sent as it is. Only the routing
+ * key and {@link #MSG_REF} headers are used for such messages.
+ */
+public class MessageHeaders {
+  /**
+   * The key used by the message based router, instead of extracting one
+   * from the message.
+   */
+  public final static String ROUTING_KEY = "vertx.amqp.routing-key";
+
+  /**
+   * Prefix for headers mapped to fields of the AMQP properties section. The
+   * field names are the same as in the "properties" map of the Json body
+   * (to, subject, reply_to, message_id, correlation_id, content_type,
+   * content_encoding, group_id, reply_to_group_id). The message_id_type and
+   * correlation_id_type headers give the type of the id headers, they are
+   * strings without one.
+   */
+  public final static String PROPERTY_PREFIX = "vertx.amqp.property.";
+
+  /**
+   * Prefix for headers mapped to AMQP application properties.
+   */
+  public final static String APPLICATION_PROPERTY_PREFIX = "vertx.amqp.application-property.";
+
+  /**
+   * Set on raw (pass-through) messages delivered to the event-bus, the
+   * equivalent of {@link AMQPService#INCOMING_MSG_REF}. On raw messages sent
+   * to the service it plays the role of {@link AMQPService#OUTGOING_MSG_REF}.
+   */
+  public final static String MSG_REF = "vertx.amqp.msg-ref";
+
+  /**
+   * Set on raw (pass-through) messages delivered to the event-bus, the
+   * equivalent of {@link AMQPService#INCOMING_MSG_LINK_REF}.
+   */
+  public final static String LINK_REF = "vertx.amqp.link-ref";
+
+  public static String property(String name) {
+    return PROPERTY_PREFIX.concat(name);
+  }
+
+  public static String applicationProperty(String name) {
+    return APPLICATION_PROPERTY_PREFIX.concat(name);
+  }
+
+  /**
+   * Convenience method returning {@link DeliveryOptions} carrying the given
+   * routing key.
+   */
+  public static DeliveryOptions withRoutingKey(String routingKey) {
+    return new DeliveryOptions().addHeader(ROUTING_KEY, routingKey);
+  }
+}
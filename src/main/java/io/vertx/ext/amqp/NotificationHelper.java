@@ -77,6 +77,20 @@ public class NotificationHelper {
     }
   }
 
+  /**
+   * Returns the incoming or outgoing msg-ref of a
+   * {@link NotificationType#MSG_REF_EXPIRED} notification.
+   */
+  public static String getMsgRef(JsonObject json) {
+    if (json != null && json.containsKey(AMQPService.INCOMING_MSG_REF)) {
+      return json.getString(AMQPService.INCOMING_MSG_REF);
+    } else if (json != null && json.containsKey(AMQPService.OUTGOING_MSG_REF)) {
+      return json.getString(AMQPService.OUTGOING_MSG_REF);
+    } else {
+      throw new IllegalArgumentException("Malfored notification message, msg-ref missing, but expected");
+    }
+  }
+
   public static DeliveryTracker getDeliveryTracker(JsonObject json) {
     return DeliveryTrackerImpl.create(json);
   }
@@ -92,5 +92,14 @@ public enum NotificationType {
    * {@link NotificationHelper#getLinkRef(io.vertx.core.json.JsonObject)} to
    * retrieve the link ref.
    */
-  LINK_ERROR;
+  LINK_ERROR,
+
+  /**
+   * Notifies the application that the message with the msg-ref was not
+   * settled, or no delivery update arrived for it, within the configured
+   * 'amqp.msg-ref-timeout'. The service no longer tracks it. Use
+   * {@link NotificationHelper#getMsgRef(io.vertx.core.json.JsonObject)} to
+   * obtain the msg-ref.
+   */
+  MSG_REF_EXPIRED;
 };
@@ -54,6 +54,8 @@ public class RetryOptions {
     this.minRetryInterval = options.minRetryInterval;
     this.maxRetryInterval = options.maxRetryInterval;
     this.maxRetryLimit = options.maxRetryLimit;
+    this.alternativeAddressList = options.alternativeAddressList;
+    this.retryPolicy = options.retryPolicy;
   }
 
   @SuppressWarnings("unchecked")
@@ -62,7 +64,9 @@ public class RetryOptions {
       this.minRetryInterval = options.getLong(MIN_RETRY_INTERVAL, DEFAULT_MIN_RETRY);
       this.maxRetryInterval = options.getLong(MAX_RETRY_INTERVAL, DEFAULT_MAX_RETRY);
       this.maxRetryLimit = options.getInteger(MAX_RETRY_LIMIT, 1);
-      this.alternativeAddressList = options.getJsonArray(ALT_ADDRESS_LIST).getList();
+      if (options.containsKey(ALT_ADDRESS_LIST)) {
+        this.alternativeAddressList = options.getJsonArray(ALT_ADDRESS_LIST).getList();
+      }
       this.retryPolicy = RetryPolicy.valueOf(options.getString(RETRY_POLICY,
         RetryPolicy.RETRY_UNTIL_SUCCESS.name()));
     }
@@ -17,33 +17,53 @@ package io.vertx.ext.amqp.impl;
 
 import io.vertx.codegen.annotations.Fluent;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
 import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
 import io.vertx.core.Verticle;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.amqp.*;
+import io.vertx.ext.amqp.impl.config.ConfigRouteEntry;
+import io.vertx.ext.amqp.impl.protocol.EncodedMessage;
 import io.vertx.ext.amqp.impl.protocol.InboundMessage;
 import io.vertx.ext.amqp.impl.protocol.LinkEventListener;
 import io.vertx.ext.amqp.impl.protocol.LinkManager;
 import io.vertx.ext.amqp.impl.protocol.MessageDisposition;
 import io.vertx.ext.amqp.impl.routing.LinkRouter;
 import io.vertx.ext.amqp.impl.routing.MessageRouter;
+import io.vertx.ext.amqp.impl.routing.RouteRegistry;
+import io.vertx.ext.amqp.impl.translators.BodyCodecs;
+import io.vertx.ext.amqp.impl.translators.Compression;
 import io.vertx.ext.amqp.impl.translators.MessageTranslator;
+import io.vertx.ext.amqp.impl.util.CreditCoalescer;
+import io.vertx.ext.amqp.impl.util.ExpiringMap;
 import io.vertx.ext.amqp.impl.util.Functions;
 import io.vertx.ext.amqp.impl.util.LogManager;
 import io.vertx.ext.amqp.impl.util.LogMsgHelper;
+import io.vertx.ext.amqp.impl.util.Metrics;
+import io.vertx.ext.amqp.impl.util.OrderedExecutor;
+import io.vertx.ext.amqp.impl.util.TimerWheel;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static io.vertx.ext.amqp.impl.util.Functions.format;
-import static io.vertx.ext.amqp.impl.util.Functions.print;
 
 /**
  * The service impl makes use of the LinkManager for AMQP connection/link
@@ -58,7 +78,13 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
 
   private final EventBus _eb;
 
-  private final Map<String, Message<JsonObject>> _vertxReplyTo = new ConcurrentHashMap<String, Message<JsonObject>>();
+  // expires the per message state below
+  private final TimerWheel _timer;
+
+  private final ExpiringMap<String, Message<JsonObject>> _vertxReplyTo;
+
+  // requests awaiting a reply on a reply link, keyed by message-id
+  private final ExpiringMap<Object, Message<JsonObject>> _rpcRequests;
 
   private final AmqpServiceConfig _config;
 
@@ -66,39 +92,105 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
 
   private final List<MessageConsumer<JsonObject>> _consumers = new ArrayList<MessageConsumer<JsonObject>>();
 
-  private Map<String, IncomingLinkRef> _incomingLinkRefs = new HashMap<String, IncomingLinkRef>();
+  private final Map<String, IncomingLinkRef> _incomingLinkRefs = new ConcurrentHashMap<String, IncomingLinkRef>();
+
+  private final Map<String, OutgoingLinkRef> _outgoingLinkRefs = new ConcurrentHashMap<String, OutgoingLinkRef>();
+
+  // the other service instances, and the services shared with them
+  private final InstanceRegistry _instances;
 
-  private Map<String, OutgoingLinkRef> _outgoingLinkRefs = new HashMap<String, OutgoingLinkRef>();
+  private final Map<String, ServiceRef> _serviceRefs;
 
-  private Map<String, ServiceRef> _serviceRefs = new HashMap<String, ServiceRef>();
+  // the nodes of the cluster sharing out the outbound AMQP addresses, or null
+  private final ClusterMembership _cluster;
 
-  private Map<String, String> _replyToNotices = new HashMap<String, String>();
+  private final Runnable _rebalance;
+
+  private long _clusterTimer = -1;
+
+  private final ExpiringMap<String, String> _replyToNotices;
+
+  private final CreditCoalescer _creditNotices;
 
   private final LinkRouter _linkBasedRouter;
 
   private final MessageRouter _msgBasedRouter;
 
+  private final RouteRegistry _routes;
+
   private final LinkManager _linkManager;
 
   private final MessageTranslator _msgTranslator;
 
   private final Verticle _parent;
 
+  private final Context _context;
+
+  private final OrderedExecutor _decodePipeline;
+
+  private final Metrics _metrics = new Metrics();
+
   public AMQPServiceImpl(Vertx vertx, AmqpServiceConfig config, Verticle parent) throws MessagingException {
     _vertx = vertx;
     _parent = parent;
+    _context = vertx.getOrCreateContext();
     _eb = _vertx.eventBus();
     _config = config;
-    _msgTranslator = new MessageTranslator();
-    _msgBasedRouter = new MessageRouter(_config);
+    LogManager.setSampleLimit(_config.getLogSampleLimit());
+    _timer = new TimerWheel(_config.getTimerTick());
+    _vertxReplyTo = new ExpiringMap<String, Message<JsonObject>>(_timer, _config.getReplyTimeout(),
+      (key, request) -> expireRequest(request));
+    _rpcRequests = new ExpiringMap<Object, Message<JsonObject>>(_timer, _config.getReplyTimeout(),
+      (key, request) -> expireRequest(request));
+    _replyToNotices = new ExpiringMap<String, String>(_timer, _config.getMsgRefTimeout(),
+      (msgRef, notificationAddr) -> sendNotificatonMessage(notificationAddr,
+        NotificationMessageFactory.outgoingMsgRefExpired(msgRef)));
+    _creditNotices = new CreditCoalescer(_timer, _config.getCreditNoticeInterval(), _config.getCreditNoticeDelta(),
+      (linkId, credits) -> sendCreditNotice(linkId, credits));
+    BodyCodecs codecs = new BodyCodecs();
+    for (BodyCodec codec : _config.getBodyCodecs()) {
+      codecs.register(codec);
+    }
+    _msgTranslator = new MessageTranslator(codecs, _config.getMaxInflatedSize());
+    _routes = RouteRegistry.acquire(vertx, _config);
+    _instances = InstanceRegistry.acquire(vertx, _config.getDefaultHandlerAddress(), this);
+    _serviceRefs = _instances.getServiceRefs();
+    _cluster = vertx.isClustered() && _config.isClusterOwnership() ? _instances.joinCluster(vertx) : null;
+    _msgBasedRouter = new MessageRouter(_config, _routes, _metrics);
+    for (ConfigRouteEntry entry : _config.getOutboundRoutes().values()) {
+      if (entry.getCompression() != null) {
+        entry.getCompression().registerMetrics(_metrics);
+      }
+    }
     _linkBasedRouter = new LinkRouter();
-    _linkManager = new LinkManager(vertx, _config, this);
+    _linkManager = new LinkManager(vertx, _config, this, _timer);
+    _linkManager.registerMetrics(_metrics);
+    _rebalance = this::rebalance;
+    _metrics.gauge("bridge.reply-to.size", () -> _vertxReplyTo.size());
+    _metrics.gauge("bridge.rpc-requests.size", () -> _rpcRequests.size());
+    _metrics.gauge("bridge.reply-notices.size", () -> _replyToNotices.size());
+    _metrics.gauge("bridge.credit-notices.size", () -> _creditNotices.size());
+    _metrics.gauge("timer.pending", () -> _timer.pending());
+    _timer.start(vertx);
+    AmqpMessageCodec.register(vertx);
+    _msgBasedRouter.setAddressLoad(_linkManager);
     _replyToAddressPrefix = "amqp://" + _config.getInboundHost() + ":" + _config.getInboundPort();
+    _decodePipeline = _config.getInboundDecodeWorkers() > 0 ? _instances.getDecodePipeline(_config
+      .getInboundDecodeWorkers()) : null;
 
     _eb.consumer(config.getDefaultHandlerAddress(), this);
     for (String handlerAddress : config.getHandlerAddressList()) {
       _consumers.add(_eb.consumer(handlerAddress, this));
     }
+    if (config.getMetricsAddress() != null) {
+      _consumers.add(_eb.consumer(config.getMetricsAddress(), msg -> msg.reply(_metrics.snapshot())));
+    }
+    if (_cluster != null) {
+      _consumers.add(_eb.consumer(_cluster.forwardAddress(_cluster.getNodeId()), this::handleForwarded));
+      _consumers.add(_eb.consumer(_cluster.changeAddress(), msg -> _cluster.refresh()));
+      _cluster.addListener(_rebalance);
+      _clusterTimer = vertx.setPeriodic(_config.getClusterRefresh(), id -> _cluster.refresh());
+    }
     // TODO _config.print() // prints the current config at start time.
   }
 
@@ -106,10 +198,55 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
     try {
       _parent.stop(null);
     } catch (Exception e) {
-      e.printStackTrace();
+      LOG.warn(e, "Error stopping the service verticle");
     }
   }
 
+  /**
+   * Opens the links to the default outbound address and the addresses of the
+   * configured outbound routes owned by this instance, so that the first
+   * messages routed to them do not wait for the connection and the attach.
+   * The handler is called once they are all attached or the warm-up timeout
+   * expired. In a cluster this waits until the node has joined, as until then
+   * it is not known which addresses it owns.
+   */
+  public void warmUp(Handler<Void> done) {
+    if (_cluster != null && !_cluster.isJoined()) {
+      _cluster.whenJoined(() -> _context.runOnContext(v -> warmUp(done)));
+      return;
+    }
+    Set<String> addresses = new LinkedHashSet<String>();
+    addresses.add(_config.getDefaultOutboundAddress());
+    for (ConfigRouteEntry entry : _config.getOutboundRoutes().values()) {
+      addresses.addAll(entry.getAddressList());
+    }
+    addresses.removeIf(address -> !isOwner(address));
+    _linkManager.warmUp(addresses, _config.getWarmUpTimeout(), unattached -> {
+      if (!unattached.isEmpty()) {
+        LOG.warn("Links to %s not attached after %s ms, starting anyway", unattached, _config.getWarmUpTimeout());
+      }
+      done.handle(null);
+    });
+  }
+
+  /**
+   * Drops the links to addresses now owned by another node or instance. Called
+   * when the cluster members change and when instances are added or removed,
+   * which may be before this instance finished starting.
+   */
+  void rebalance() {
+    _context.runOnContext(v -> {
+      // nothing to do once this instance was released
+      if (_instances.find(instance -> instance == this) != null) {
+        _linkManager.closeSharedOutgoingLinks(address -> !isOwner(address));
+      }
+    });
+  }
+
+  private boolean isOwner(String amqpAddress) {
+    return (_cluster == null || _cluster.isLocal(amqpAddress)) && _instances.ownerOf(amqpAddress) == this;
+  }
+
   // ------------- AmqpService -----------------
   @Override
   public void start() {
@@ -118,7 +255,14 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
 
   @Override
   public void stop() {
+    _timer.stop(_vertx);
     _linkManager.stop();
+    _routes.release(_vertx);
+    _instances.release(_vertx, this);
+    if (_cluster != null) {
+      _cluster.removeListener(_rebalance);
+      _vertx.cancelTimer(_clusterTimer);
+    }
   }
 
   @Override
@@ -131,7 +275,7 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
       String id = _linkManager.createIncomingLink(amqpAddress, options);
       _linkBasedRouter.addIncomingRoute(id, eventbusAddress);
       _incomingLinkRefs.put(id,
-        new IncomingLinkRef(id, amqpAddress, eventbusAddress, notificationAddress, result));
+        new IncomingLinkRef(id, amqpAddress, eventbusAddress, notificationAddress, options, result));
       LOG.info("Created incoming link from AMQP-message-soure to vertx-amqp-bridge '%s'. The link ref is '%s'",
         amqpAddress, id);
       result.handle(new DefaultAsyncResult<String>(id));
@@ -143,6 +287,11 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
 
   @Override
   public AMQPService fetch(String incomingLinkRef, int messages, Handler<AsyncResult<Void>> result) {
+    AMQPServiceImpl owner = linkOwner(incomingLinkRef);
+    if (owner != this) {
+      owner._context.runOnContext(v -> owner.fetch(incomingLinkRef, messages, result));
+      return this;
+    }
     try {
       LOG.info("Service method fetch called with incomingLinkRef=%s, messages=%s", incomingLinkRef, messages);
       _linkManager.setCredits(incomingLinkRef, messages);
@@ -157,6 +306,11 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
 
   @Override
   public AMQPService cancelIncomingLink(String incomingLinkRef, Handler<AsyncResult<Void>> result) {
+    AMQPServiceImpl owner = linkOwner(incomingLinkRef);
+    if (owner != this) {
+      owner._context.runOnContext(v -> owner.cancelIncomingLink(incomingLinkRef, result));
+      return this;
+    }
     try {
       LOG.info("Service method cancelIncommingLink called with incomingLinkRef=%s", incomingLinkRef);
       _linkManager.closeIncomingLink(incomingLinkRef);
@@ -189,6 +343,11 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
   }
 
   AMQPService updateDelivery(String msgRef, MessageDisposition disposition, Handler<AsyncResult<Void>> result) {
+    AMQPServiceImpl owner = msgRefOwner(msgRef);
+    if (owner != this) {
+      owner._context.runOnContext(v -> owner.updateDelivery(msgRef, disposition, result));
+      return this;
+    }
     try {
       _linkManager.settleDelivery(msgRef, disposition);
       result.handle(DefaultAsyncResult.VOID_SUCCESS);
@@ -225,6 +384,11 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
 
   @Override
   public AMQPService cancelOutgoingLink(String outgoingLinkRef, Handler<AsyncResult<Void>> result) {
+    AMQPServiceImpl owner = linkOwner(outgoingLinkRef);
+    if (owner != this) {
+      owner._context.runOnContext(v -> owner.cancelOutgoingLink(outgoingLinkRef, result));
+      return this;
+    }
     try {
       LOG.info("Service method cancelOutgoingLink called with outgoingLinkRef=%s", outgoingLinkRef);
       _linkManager.closeIncomingLink(outgoingLinkRef);
@@ -241,19 +405,23 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
                                      Handler<AsyncResult<Void>> result) {
     LOG.info("Service method registerService called with eventbusAddress=%s, options=%s", eventbusAddress, options);
 
-    if (_serviceRefs.containsKey(eventbusAddress)) {
+    if (_serviceRefs.putIfAbsent(eventbusAddress, new ServiceRef(eventbusAddress, notificationAddress,
+      options.getInitialCapacity())) != null) {
       result.handle(new DefaultAsyncResult<Void>(new MessagingException(format(
         "Address '%s' is already in use by another service", eventbusAddress), ErrorCode.ALREADY_EXISTS)));
     } else {
-      _serviceRefs.put(eventbusAddress,
-        new ServiceRef(eventbusAddress, notificationAddress, options.getInitialCapacity()));
       result.handle(DefaultAsyncResult.VOID_SUCCESS);
-      LOG.info(format("Registered Service at address=%s with options=%s", eventbusAddress, options));
+      LOG.info("Registered Service at address=%s with options=%s", eventbusAddress, options);
     }
     return this;
   }
 
   public AMQPService issueCredits(String linkId, int credits, Handler<AsyncResult<Void>> result) {
+    AMQPServiceImpl owner = linkOwner(linkId);
+    if (owner != this) {
+      owner._context.runOnContext(v -> owner.issueCredits(linkId, credits, result));
+      return this;
+    }
     LOG.info("Service method issueCredits called with linkId=%s, credits=%s", linkId, credits);
     try {
       _linkManager.setCredits(linkId, credits);
@@ -269,21 +437,28 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
   @Fluent
   public AMQPService unregisterService(String eventbusAddress, Handler<AsyncResult<Void>> result) {
     LOG.info("Service method unregisterService called with eventbusAddress=%s", eventbusAddress);
-    if (_serviceRefs.containsKey(eventbusAddress)) {
-      ServiceRef service = _serviceRefs.remove(eventbusAddress);
+    ServiceRef service = _serviceRefs.remove(eventbusAddress);
+    if (service != null) {
+      // the links of the service may have been opened by peers connected to other instances
       for (String id : service._inLinks) {
-        try {
-          _linkManager.closeIncomingLink(id);
-        } catch (MessagingException e) {
-          LOG.warn(e, "UnregisterService : '%s',  Error closing incoming link %s", eventbusAddress, id);
-        }
+        AMQPServiceImpl owner = linkOwner(id);
+        owner._context.runOnContext(v -> {
+          try {
+            owner._linkManager.closeIncomingLink(id);
+          } catch (MessagingException e) {
+            LOG.warn(e, "UnregisterService : '%s',  Error closing incoming link %s", eventbusAddress, id);
+          }
+        });
       }
       for (String id : service._outLinks) {
-        try {
-          _linkManager.closeOutgoingLink(id);
-        } catch (MessagingException e) {
-          LOG.warn(e, "UnregisterService : '%s', Error closing outgoing link %s", eventbusAddress, id);
-        }
+        AMQPServiceImpl owner = linkOwner(id);
+        owner._context.runOnContext(v -> {
+          try {
+            owner._linkManager.closeOutgoingLink(id);
+          } catch (MessagingException e) {
+            LOG.warn(e, "UnregisterService : '%s', Error closing outgoing link %s", eventbusAddress, id);
+          }
+        });
       }
       result.handle(DefaultAsyncResult.VOID_SUCCESS);
     } else {
@@ -309,27 +484,29 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
   }
 
   public AMQPService removeOutboundRoute(String pattern, String amqpAddress) {
-    _msgBasedRouter.addOutboundRoute(pattern, amqpAddress);
+    _msgBasedRouter.removeOutboundRoute(pattern, amqpAddress);
     return this;
   }// ------------\ AmqpService -----------------
 
   // -- Handler method for receiving messages from the event-bus -----------
   @Override
   public void handle(Message<JsonObject> vertxMsg) {
+    if (((Message<?>) vertxMsg).body() instanceof Buffer) {
+      handleRaw(vertxMsg);
+      return;
+    }
     try {
-      LOG.debug(format("Received msg from Vert.x event bus : {address : %s, reply-to : %s, body : %s} ", vertxMsg.address(),
-        vertxMsg.replyAddress(), vertxMsg.body() == null ? "" : vertxMsg.body().encodePrettily()));
-      org.apache.qpid.proton.message.Message outMsg = _msgTranslator.convert(vertxMsg.body());
-      JsonObject inMsg = vertxMsg.body();
-
-      if (outMsg.getReplyTo() == null && vertxMsg.replyAddress() != null) {
-        outMsg.setReplyTo(_replyToAddressPrefix + "/" + vertxMsg.replyAddress());
-        _vertxReplyTo.put(vertxMsg.replyAddress(), vertxMsg);
+      if (LOG.isDebugEnabled() && LOG.sample("outbound-received")) {
+        LOG.debug("Received msg from Vert.x event bus : {address : %s, reply-to : %s, body : %s} ", vertxMsg.address(),
+          vertxMsg.replyAddress(), vertxMsg.body() == null ? "" : vertxMsg.body().encode());
       }
+      JsonObject inMsg = vertxMsg.body();
 
       // First attempt link routing (covers links created via Service API)
       String linkId = _linkBasedRouter.routeOutgoing(vertxMsg.address());
       if (linkId != null) {
+        org.apache.qpid.proton.message.Message outMsg = translate(vertxMsg, null, null, rpcReplyAddress(vertxMsg,
+          linkId, null));
         try {
           _linkManager.sendViaLink(linkId, outMsg, inMsg);
           LogMsgHelper.logVertxMsgForLinkBasedRouting(LOG, vertxMsg, linkId);
@@ -340,32 +517,264 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
       } else {
         // Message based routing (routes added through static or dynamic
         // config)
+        if (_cluster != null && !_cluster.isJoined()) {
+          // the owners of the addresses are not known yet
+          _cluster.whenJoined(() -> _context.runOnContext(v -> handle(vertxMsg)));
+          return;
+        }
         List<String> amqpAddressList = _msgBasedRouter.routeOutgoing(vertxMsg);
-        for (String amqpAddress : amqpAddressList) {
-          try {
-            _linkManager.sendViaAddress(amqpAddress, outMsg, inMsg);
-          } catch (MessagingException e) {
-            LOG.warn(e, "Error {code=%s, msg='%s'} sending to AMQP address %s", e.getErrorCode(),
-              e.getMessage(), amqpAddress);
+        if (amqpAddressList.isEmpty()) {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Message sent to %s not selected by any route, dropping it", vertxMsg.address());
           }
+          return;
         }
+        dispatchToInstances(vertxMsg, _cluster == null ? amqpAddressList : forwardToOwners(vertxMsg,
+          amqpAddressList));
         LogMsgHelper.logVertxMsgForMsgBasedRouting(LOG, vertxMsg, amqpAddressList);
       }
     } catch (MessagingException e) {
       LOG.warn(e, "Error {code=%s, msg='%s'} routing outbound", e.getErrorCode(), e.getMessage());
     }
+  }
+
+  private void dispatchToInstances(Message<JsonObject> vertxMsg, List<String> amqpAddressList) {
+    if (amqpAddressList.isEmpty()) {
+      return;
+    }
+    if (_instances.size() > 1) {
+      // Each AMQP address is sent to by one instance, over its connections
+      for (Map.Entry<AMQPServiceImpl, List<String>> owned : _instances.partition(amqpAddressList).entrySet()) {
+        AMQPServiceImpl owner = owned.getKey();
+        if (owner == this) {
+          routeToAddresses(vertxMsg, owned.getValue());
+        } else {
+          owner._context.runOnContext(v -> owner.routeToAddresses(vertxMsg, owned.getValue()));
+        }
+      }
+    } else {
+      routeToAddresses(vertxMsg, amqpAddressList);
+    }
+  }
+
+  /*
+   * Forwards the message to the nodes owning some of the AMQP addresses and
+   * returns the addresses owned by this node. Replies to forwarded requests
+   * are passed back to the sender.
+   */
+  private List<String> forwardToOwners(Message<?> vertxMsg, List<String> amqpAddressList) {
+    Map<String, List<String>> owners = _cluster.partition(amqpAddressList);
+    List<String> local = owners.remove(_cluster.getNodeId());
+    for (Map.Entry<String, List<String>> owned : owners.entrySet()) {
+      DeliveryOptions options = new DeliveryOptions().setHeaders(MultiMap.caseInsensitiveMultiMap().addAll(
+        vertxMsg.headers()));
+      for (String amqpAddress : owned.getValue()) {
+        options.addHeader(ClusterMembership.FORWARD_TO, amqpAddress);
+      }
+      String forwardAddress = _cluster.forwardAddress(owned.getKey());
+      if (vertxMsg.replyAddress() == null) {
+        _eb.send(forwardAddress, vertxMsg.body(), options);
+      } else {
+        options.setSendTimeout(_config.getReplyTimeout());
+        _eb.send(forwardAddress, vertxMsg.body(), options, reply -> {
+          if (reply.succeeded()) {
+            vertxMsg.reply(reply.result().body(), new DeliveryOptions().setHeaders(reply.result().headers()));
+          } else if (reply.cause() instanceof ReplyException) {
+            vertxMsg.fail(((ReplyException) reply.cause()).failureCode(), reply.cause().getMessage());
+          } else {
+            vertxMsg.fail(ReplyFailure.RECIPIENT_FAILURE.toInt(), reply.cause().getMessage());
+          }
+        });
+      }
+    }
+    return local == null ? Collections.<String>emptyList() : local;
+  }
+
+  /*
+   * A message routed by another node to AMQP addresses owned by this one, it
+   * is sent as it is without being routed again.
+   */
+  private void handleForwarded(Message<JsonObject> msg) {
+    List<String> amqpAddressList = msg.headers().getAll(ClusterMembership.FORWARD_TO);
+    msg.headers().remove(ClusterMembership.FORWARD_TO);
+    if (((Message<?>) msg).body() instanceof Buffer) {
+      sendRawToAddresses(((Buffer) ((Message<?>) msg).body()).getBytes(), rawInMsg(msg), amqpAddressList);
+    } else {
+      dispatchToInstances(msg, amqpAddressList);
+    }
+  }
+
+  private void routeToAddresses(Message<JsonObject> vertxMsg, List<String> amqpAddressList) {
+    if (!_config.isRpcReplyLink() || vertxMsg.replyAddress() == null) {
+      routeToAddresses(vertxMsg, amqpAddressList, null);
+      return;
+    }
+    // A reply comes back on the reply link of the connection the request went
+    // out on, so the addresses are grouped by the reply address of their
+    // connection and each group is encoded with its own.
+    Map<String, List<String>> byReplyAddress = new LinkedHashMap<String, List<String>>();
+    for (String amqpAddress : amqpAddressList) {
+      byReplyAddress.computeIfAbsent(rpcReplyAddress(vertxMsg, null, amqpAddress), k -> new ArrayList<String>())
+        .add(amqpAddress);
+    }
+    for (Map.Entry<String, List<String>> group : byReplyAddress.entrySet()) {
+      routeToAddresses(vertxMsg, group.getValue(), group.getKey());
+    }
+  }
+
+  private void routeToAddresses(Message<JsonObject> vertxMsg, List<String> amqpAddressList, String rpcReplyAddress) {
+    JsonObject inMsg = vertxMsg.body();
+    try {
+      if (_msgBasedRouter.hasOutboundContentTypes() || _msgBasedRouter.hasOutboundCompression()) {
+        // The body is encoded once per content-type, codec and compression of the routes
+        Map<List<Object>, List<String>> groups = new LinkedHashMap<List<Object>, List<String>>();
+        for (String amqpAddress : amqpAddressList) {
+          groups.computeIfAbsent(Arrays.asList(_msgBasedRouter.getOutboundContentType(amqpAddress),
+            _msgBasedRouter.getOutboundCodec(amqpAddress), _msgBasedRouter.getOutboundCompression(amqpAddress)),
+            k -> new ArrayList<String>()).add(amqpAddress);
+        }
+        for (Map.Entry<List<Object>, List<String>> group : groups.entrySet()) {
+          org.apache.qpid.proton.message.Message outMsg = translate(vertxMsg, (String) group.getKey().get(0),
+            (BodyCodec) group.getKey().get(1), rpcReplyAddress);
+          Compression compression = (Compression) group.getKey().get(2);
+          if (compression != null) {
+            compression.compress(outMsg);
+          }
+          sendViaAddresses(group.getValue(), outMsg, inMsg);
+        }
+      } else {
+        sendViaAddresses(amqpAddressList, translate(vertxMsg, null, null, rpcReplyAddress), inMsg);
+      }
+    } catch (MessagingException e) {
+      LOG.warn(e, "Error {code=%s, msg='%s'} routing outbound", e.getErrorCode(), e.getMessage());
+    }
+  }
+
+  /*
+   * rpcReplyAddress is the address of the reply link to use for a request, or
+   * null to have the reply sent to the inbound host and port.
+   */
+  private org.apache.qpid.proton.message.Message translate(Message<JsonObject> vertxMsg, String contentType,
+                                                           BodyCodec codec, String rpcReplyAddress)
+    throws MessagingException {
+    org.apache.qpid.proton.message.Message outMsg = _msgTranslator.convert(vertxMsg.body(), vertxMsg.headers(),
+      contentType, codec);
+    if (outMsg.getReplyTo() == null && vertxMsg.replyAddress() != null) {
+      if (rpcReplyAddress != null) {
+        // The vert.x reply address is unique per request, so it is a stable
+        // message-id when the message is sent to more than one address.
+        if (outMsg.getMessageId() == null) {
+          outMsg.setMessageId(vertxMsg.replyAddress());
+        }
+        if (outMsg.getCorrelationId() == null) {
+          outMsg.setCorrelationId(outMsg.getMessageId());
+        }
+        outMsg.setReplyTo(rpcReplyAddress);
+        _rpcRequests.put(outMsg.getMessageId(), vertxMsg);
+      } else {
+        outMsg.setReplyTo(_replyToAddressPrefix + "/" + vertxMsg.replyAddress());
+        _vertxReplyTo.put(vertxMsg.replyAddress(), vertxMsg);
+      }
+    }
+    return outMsg;
+  }
+
+  /*
+   * Returns the reply link address for a request sent via the link or the
+   * AMQP address, or null if it isn't a request, reply links are disabled or
+   * the link has not been attached by the peer yet.
+   */
+  private String rpcReplyAddress(Message<JsonObject> vertxMsg, String linkId, String amqpAddress) {
+    if (!_config.isRpcReplyLink() || vertxMsg.replyAddress() == null) {
+      return null;
+    }
+    try {
+      return linkId != null ? _linkManager.getReplyAddressForLink(linkId) : _linkManager
+        .getReplyAddress(amqpAddress);
+    } catch (MessagingException e) {
+      LOG.warn(e, "Error {code=%s, msg='%s'} creating reply link, using inbound host for replies",
+        e.getErrorCode(), e.getMessage());
+      return null;
+    }
+  }
+
+  private void sendViaAddresses(List<String> amqpAddressList, org.apache.qpid.proton.message.Message outMsg,
+                                JsonObject inMsg) {
+    // Encoded once, only the per destination 'to' field is encoded for each address
+    EncodedMessage encodedMsg = new EncodedMessage(outMsg);
+    for (String amqpAddress : amqpAddressList) {
+      try {
+        _linkManager.sendViaAddress(amqpAddress, encodedMsg, inMsg);
+      } catch (MessagingException e) {
+        LOG.warn(e, "Error {code=%s, msg='%s'} sending to AMQP address %s", e.getErrorCode(),
+          e.getMessage(), amqpAddress);
+      }
+    }
   }// ------------- \ Event bus handler -----------
 
+  /*
+   * Raw pass-through: the body is an AMQP encoded message which is sent as it
+   * is, without translation. Reply addresses of such messages are not bridged.
+   */
+  private void handleRaw(Message<?> vertxMsg) {
+    byte[] encoded = ((Buffer) vertxMsg.body()).getBytes();
+    JsonObject inMsg = rawInMsg(vertxMsg);
+    try {
+      String linkId = _linkBasedRouter.routeOutgoing(vertxMsg.address());
+      if (linkId != null) {
+        _linkManager.sendViaLink(linkId, EncodedMessage.wrap(encoded), inMsg);
+      } else if (_cluster != null && !_cluster.isJoined()) {
+        _cluster.whenJoined(() -> _context.runOnContext(v -> handleRaw(vertxMsg)));
+      } else {
+        List<String> amqpAddressList = _msgBasedRouter.routeOutgoing(vertxMsg);
+        sendRawToAddresses(encoded, inMsg, _cluster == null ? amqpAddressList : forwardToOwners(vertxMsg,
+          amqpAddressList));
+      }
+    } catch (MessagingException e) {
+      LOG.warn(e, "Error {code=%s, msg='%s'} routing raw outbound message", e.getErrorCode(), e.getMessage());
+    }
+  }
+
+  private JsonObject rawInMsg(Message<?> vertxMsg) {
+    JsonObject inMsg = new JsonObject();
+    String msgRef = vertxMsg.headers().get(MessageHeaders.MSG_REF);
+    if (msgRef != null) {
+      inMsg.put(OUTGOING_MSG_REF, msgRef);
+    }
+    return inMsg;
+  }
+
+  private void sendRawToAddresses(byte[] encoded, JsonObject inMsg, List<String> amqpAddressList) {
+    EncodedMessage outMsg = EncodedMessage.wrap(encoded);
+    for (String amqpAddress : amqpAddressList) {
+      AMQPServiceImpl owner = _instances.ownerOf(amqpAddress);
+      if (owner == this) {
+        sendRaw(amqpAddress, outMsg, inMsg);
+      } else {
+        owner._context.runOnContext(v -> owner.sendRaw(amqpAddress, EncodedMessage.wrap(encoded), inMsg));
+      }
+    }
+  }
+
+  private void sendRaw(String amqpAddress, EncodedMessage outMsg, JsonObject inMsg) {
+    try {
+      _linkManager.sendViaAddress(amqpAddress, outMsg, inMsg);
+    } catch (MessagingException e) {
+      LOG.warn(e, "Error {code=%s, msg='%s'} sending raw message to AMQP address %s", e.getErrorCode(),
+        e.getMessage(), amqpAddress);
+    }
+  }
+
   // ------------- LinkEventListener -----------
   @Override
   public void incomingLinkReady(String id, String address, boolean isFromInboundConnection) {
-    print("incomingLinkReady inbound=%s, id=%s , address=%s", isFromInboundConnection, id, address);
+    LOG.debug("incomingLinkReady inbound=%s, id=%s , address=%s", isFromInboundConnection, id, address);
     if (isFromInboundConnection) {
       if (_serviceRefs.containsKey(address)) {
         LOG.info("Mapping service address %s to incoming-link %s", address, id);
         ServiceRef service = _serviceRefs.get(address);
         String notificationAddress = service._notificationAddr;
-        _incomingLinkRefs.put(id, new IncomingLinkRef(id, null, null, notificationAddress, null));
+        _incomingLinkRefs.put(id, new IncomingLinkRef(id, null, null, notificationAddress, null, null));
         _linkBasedRouter.addIncomingRoute(id, address);
         sendNotificatonMessage(notificationAddress, NotificationMessageFactory.incomingLinkOpened(id));
       } else {
@@ -385,7 +794,10 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
 
   @Override
   public void incomingLinkFinal(String id, String address, boolean isFromInboundConnection) {
-    print("Incoming Link closed inbound=%s", isFromInboundConnection);
+    LOG.debug("Incoming Link closed inbound=%s", isFromInboundConnection);
+    if (_decodePipeline != null) {
+      _decodePipeline.remove(id);
+    }
     if (isFromInboundConnection) {
       if (_serviceRefs.containsKey(address)) {
         LOG.info("Notifying service %s incoming-link %s is closed", address, id);
@@ -408,7 +820,7 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
 
   @Override
   public void outgoingLinkReady(String id, String address, boolean isFromInboundConnection) {
-    print("outgoingLinkReady inbound=%s, id=%s , address=%s", isFromInboundConnection, id, address);
+    LOG.debug("outgoingLinkReady inbound=%s, id=%s , address=%s", isFromInboundConnection, id, address);
     if (isFromInboundConnection) {
       if (_serviceRefs.containsKey(address)) {
         LOG.info("Mapping service address %s to outgoing-link %s", address, id);
@@ -432,7 +844,8 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
 
   @Override
   public void outgoingLinkFinal(String id, String address, boolean isFromInboundConnection) {
-    print("Outgoing Link closed outbound=%s", isFromInboundConnection);
+    LOG.debug("Outgoing Link closed outbound=%s", isFromInboundConnection);
+    _creditNotices.remove(id);
     if (isFromInboundConnection) {
       if (_serviceRefs.containsKey(address)) {
         LOG.info("Notifying service %s outgoing-link %s closed", address, id);
@@ -457,8 +870,7 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
 
   @Override
   public void deliveryUpdate(String id, String msgRef, DeliveryState state, MessageDisposition disp) {
-    print("Delivery update received for link=%s and msg-ref=%s", id, msgRef);
-    //print("_replyToNotices : %s", _replyToNotices);
+    LOG.debug("Delivery update received for link=%s and msg-ref=%s", id, msgRef);
     if (_replyToNotices.containsKey(msgRef)) {
       sendNotificatonMessage(_replyToNotices.remove(msgRef),
         NotificationMessageFactory.deliveryState(msgRef, state, disp));
@@ -474,54 +886,233 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
 
   @Override
   public void message(String linkId, String linkAddress, ReliabilityMode reliability, InboundMessage inMsg) {
+    if (_decodePipeline == null || linkFormat(linkId) != DeliveryFormat.JSON) {
+      // Raw and typed links never need the JSON translation.
+      route(linkId, linkAddress, reliability, inMsg, null);
+    } else {
+      // Decode and translate on a worker thread. Tasks are serialized per link
+      // and hop back to the event loop in order, so per link ordering is
+      // preserved while different links are processed in parallel.
+      _decodePipeline.execute(linkId, () -> {
+        JsonObject outMsg = translate(linkId, inMsg, null, null);
+        if (outMsg != null) {
+          _context.runOnContext(v -> route(linkId, linkAddress, reliability, inMsg, outMsg));
+        } else {
+          _context.runOnContext(v -> rejectUntranslated(inMsg));
+        }
+      });
+    }
+  }
+
+  private JsonObject translate(String linkId, InboundMessage inMsg, String contentType, BodyCodec codec) {
     JsonObject outMsg;
     try {
-      outMsg = _msgTranslator.convert(inMsg.getProtocolMessage());
-    } catch (MessageFormatException e) {
+      outMsg = _msgTranslator.convert(inMsg.getProtocolMessage(), contentType, codec);
+    } catch (Exception e) {
       LOG.warn(e, "Error translating AMQP message %s ", inMsg);
-      return;
+      return null;
     }
     outMsg.put(INCOMING_MSG_REF, inMsg.getMsgRef());
     outMsg.put(INCOMING_MSG_LINK_REF, linkId);
+    return outMsg;
+  }
+
+  private DeliveryFormat linkFormat(String linkId) {
+    IncomingLinkRef linkRef = _incomingLinkRefs.get(linkId);
+    return linkRef == null ? DeliveryFormat.JSON : linkRef.getFormat();
+  }
 
+  /*
+   * outMsg is null if the message has not been translated yet, it is then
+   * translated when the first JSON destination needs it.
+   */
+  private void route(String linkId, String linkAddress, ReliabilityMode reliability, InboundMessage inMsg,
+                     JsonObject outMsg) {
+    IncomingLinkRef linkRef = _incomingLinkRefs.get(linkId);
+    DeliveryFormat linkFormat = linkRef == null ? DeliveryFormat.JSON : linkRef.getFormat();
     // Handle replyTo
-    if (handleReplyTo(linkAddress, inMsg, outMsg)) {
+    if (linkFormat == DeliveryFormat.JSON && handleReplyTo(linkId, linkAddress, inMsg, outMsg)) {
       // it was a reply-to and has been handled. No further routing
       // required.
       return;
     }
 
-    print("Received AMQP msg with reply-to : %s", inMsg.getReplyTo());
     String vertxAddress = _linkBasedRouter.routeIncoming(linkId);
     if (vertxAddress != null) {
-      print("xxxxxxxxxxx doing link based routing %s", _serviceRefs);
+      if (linkFormat != DeliveryFormat.JSON) {
+        sendUntranslated(linkFormat, vertxAddress, linkId, reliability, inMsg, linkRef);
+        LogMsgHelper.logAmqpMsgForLinkBasedRouting(LOG, inMsg, linkId, vertxAddress);
+        return;
+      }
+      if (outMsg == null && (outMsg = translate(linkId, inMsg, null, null)) == null) {
+        rejectUntranslated(inMsg);
+        return;
+      }
+      ReplyHandler replyHandler = null;
       if (inMsg.getReplyTo() != null) {
         String notificaitonAddress = null;
-        print("zzzzzzzzzzzzzzzzzzzzzzzzz service-refs %s", _serviceRefs);
         if (_serviceRefs.containsKey(vertxAddress)) {
           notificaitonAddress = _serviceRefs.get(vertxAddress)._notificationAddr;
-        } else if (_incomingLinkRefs.containsKey(linkId)) {
-          notificaitonAddress = _incomingLinkRefs.get(linkId)._notificationAddr;
+        } else if (linkRef != null) {
+          notificaitonAddress = linkRef._notificationAddr;
         }
-        _eb.send(vertxAddress, outMsg, new ReplyHandler(inMsg.getReplyTo(), notificaitonAddress));
+        replyHandler = new ReplyHandler(inMsg.getReplyTo(), notificaitonAddress);
+      }
+
+      if (reliability == ReliabilityMode.AT_LEAST_ONCE && linkRef != null && linkRef.isAutoSettle()) {
+        DeliveryOptions deliveryOptions = new DeliveryOptions().setSendTimeout(linkRef._options
+          .getAutoSettleTimeout());
+        _eb.send(vertxAddress, outMsg, deliveryOptions, new AutoSettleHandler(inMsg, replyHandler));
+      } else if (replyHandler != null) {
+        _eb.send(vertxAddress, outMsg, replyHandler);
       } else {
         _eb.send(vertxAddress, outMsg);
       }
       LogMsgHelper.logAmqpMsgForLinkBasedRouting(LOG, inMsg, linkId, vertxAddress);
     } else {
       List<String> addressList = _msgBasedRouter.routeIncoming(inMsg, linkAddress);
+      if (addressList.isEmpty()) {
+        dropFilteredMessage(inMsg);
+        return;
+      }
       for (String address : addressList) {
+        DeliveryFormat format = linkFormat != DeliveryFormat.JSON ? linkFormat : _msgBasedRouter
+          .getInboundFormat(address);
+        if (format != DeliveryFormat.JSON) {
+          sendUntranslated(format, address, linkId, reliability, inMsg, linkRef);
+          continue;
+        }
+        JsonObject json;
+        String contentType = _msgBasedRouter.getInboundContentType(address);
+        BodyCodec codec = _msgBasedRouter.getInboundCodec(address);
+        if (codec == null && (contentType == null || inMsg.getContentType() != null)) {
+          if (outMsg == null && (outMsg = translate(linkId, inMsg, null, null)) == null) {
+            rejectUntranslated(inMsg);
+            return;
+          }
+          json = outMsg;
+        } else if ((json = translate(linkId, inMsg, contentType, codec)) == null) {
+          rejectUntranslated(inMsg);
+          return;
+        }
         if (inMsg.getReplyTo() != null) {
-          _eb.send(address, outMsg, new ReplyHandler(inMsg.getReplyTo(), null));
+          _eb.send(address, json, new ReplyHandler(inMsg.getReplyTo(), null));
         } else {
-          _eb.send(address, outMsg);
+          _eb.send(address, json);
         }
       }
       LogMsgHelper.logAmqpMsgForMsgBasedRouting(LOG, inMsg, linkId, addressList);
     }
   }
 
-  private boolean handleReplyTo(String linkAddress, InboundMessage inMsg, JsonObject outMsg) {
+  /*
+   * RAW sends the AMQP encoded message as a Buffer, carrying only the msg-ref
+   * and link-ref as headers. TYPED sends an AmqpMessageView over the message
+   * as received, local consumers get the same instance.
+   */
+  private void sendUntranslated(DeliveryFormat format, String address, String linkId, ReliabilityMode reliability,
+                                InboundMessage inMsg, IncomingLinkRef linkRef) {
+    DeliveryOptions options = new DeliveryOptions();
+    Object body;
+    if (format == DeliveryFormat.RAW) {
+      options.addHeader(MessageHeaders.MSG_REF, inMsg.getMsgRef()).addHeader(MessageHeaders.LINK_REF, linkId);
+      body = Buffer.buffer(inMsg.getEncoded());
+    } else {
+      body = inMsg.toView(linkId);
+    }
+    if (reliability == ReliabilityMode.AT_LEAST_ONCE && linkRef != null && linkRef.isAutoSettle()) {
+      options.setSendTimeout(linkRef._options.getAutoSettleTimeout());
+      _eb.send(address, body, options, new AutoSettleHandler(inMsg, null));
+    } else {
+      _eb.send(address, body, options);
+    }
+  }
+
+  /*
+   * Every route matching the message rejected it through its selector. The
+   * message was consumed as far as the peer is concerned, so it is accepted
+   * rather than left unsettled.
+   */
+  private void dropFilteredMessage(InboundMessage inMsg) {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Inbound message %s not selected by any route, dropping it", inMsg.getMsgRef());
+    }
+    if (!inMsg.isPreSettled()) {
+      try {
+        _linkManager.settle(inMsg, MessageDisposition.ACCEPTED);
+      } catch (MessagingException e) {
+        LOG.warn(e, "Error {code=%s, msg='%s'} settling filtered message={ref: %s}", e.getErrorCode(),
+          e.getMessage(), inMsg.getMsgRef());
+      }
+    }
+  }
+
+  /*
+   * A message that fails to translate will fail again on redelivery, so it is
+   * rejected rather than left unsettled holding the link's credit.
+   */
+  private void rejectUntranslated(InboundMessage inMsg) {
+    if (!inMsg.isPreSettled()) {
+      try {
+        _linkManager.settle(inMsg, MessageDisposition.REJECTED);
+      } catch (MessagingException e) {
+        LOG.warn(e, "Error {code=%s, msg='%s'} rejecting untranslatable message={ref: %s}", e.getErrorCode(),
+          e.getMessage(), inMsg.getMsgRef());
+      }
+    }
+  }
+
+  /*
+   * Service calls are spread over the instances, so the link or message ref
+   * may belong to another instance. Returns its owner, or this instance if
+   * none owns it.
+   */
+  private AMQPServiceImpl linkOwner(String linkRef) {
+    if (_linkManager.hasLink(linkRef)) {
+      return this;
+    }
+    AMQPServiceImpl owner = _instances.find(i -> i._linkManager.hasLink(linkRef));
+    return owner == null ? this : owner;
+  }
+
+  private AMQPServiceImpl msgRefOwner(String msgRef) {
+    if (_linkManager.hasMsgRef(msgRef)) {
+      return this;
+    }
+    AMQPServiceImpl owner = _instances.find(i -> i._linkManager.hasMsgRef(msgRef));
+    return owner == null ? this : owner;
+  }
+
+  private void expireRequest(Message<JsonObject> request) {
+    LOG.warn("No reply received within %s ms for request sent to %s", _config.getReplyTimeout(), request.address());
+    request.fail(ReplyFailure.TIMEOUT.toInt(), "Timed out waiting for a reply from the AMQP peer");
+  }
+
+  @Override
+  public void msgRefExpired(String linkId, String msgRef) {
+    IncomingLinkRef linkRef = _incomingLinkRefs.get(linkId);
+    if (linkRef != null && linkRef._notificationAddr != null) {
+      sendNotificatonMessage(linkRef._notificationAddr, NotificationMessageFactory.incomingMsgRefExpired(linkId,
+        msgRef));
+    }
+  }
+
+  @Override
+  public void rpcReply(String linkId, InboundMessage inMsg) {
+    Object correlationId = inMsg.getCorrelationId();
+    Message<JsonObject> request = correlationId == null ? null : _rpcRequests.remove(correlationId);
+    if (request == null) {
+      LOG.warn("Dropping message received on reply link %s, no request with correlation-id %s", linkId,
+        correlationId);
+      return;
+    }
+    JsonObject reply = translate(linkId, inMsg, null, null);
+    if (reply != null) {
+      request.reply(reply);
+    }
+  }
+
+  private boolean handleReplyTo(String linkId, String linkAddress, InboundMessage inMsg, JsonObject outMsg) {
     String replyToKey = null;
     if (inMsg.getAddress() == null) {
       replyToKey = linkAddress;
@@ -536,11 +1127,16 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
       }
     }
 
-    if (_vertxReplyTo.containsKey(replyToKey)) {
+    Message<JsonObject> request = replyToKey == null ? null : removeVertxReplyTo(replyToKey);
+    if (request != null) {
       LogMsgHelper.logInboundReplyTo(LOG, inMsg, replyToKey);
       try {
-        Message<JsonObject> request = _vertxReplyTo.remove(replyToKey);
-        request.reply(outMsg);
+        JsonObject reply = outMsg != null ? outMsg : translate(linkId, inMsg, null, null);
+        if (reply != null) {
+          request.reply(reply);
+        } else {
+          rejectUntranslated(inMsg);
+        }
         request = null;
         return true;
       } catch (Exception e) {
@@ -550,16 +1146,36 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
     return false;
   }
 
+  /*
+   * Replies arrive through the shared inbound server, which may hand the
+   * connection to any instance, not the one that sent the request.
+   */
+  private Message<JsonObject> removeVertxReplyTo(String replyToKey) {
+    Message<JsonObject> request = _vertxReplyTo.remove(replyToKey);
+    if (request == null && _instances.size() > 1) {
+      AMQPServiceImpl owner = _instances.find(i -> i._vertxReplyTo.containsKey(replyToKey));
+      request = owner == null ? null : owner._vertxReplyTo.remove(replyToKey);
+    }
+    return request;
+  }
+
   @Override
   public void outgoingLinkCreditGiven(String id, int credits) {
-    if (_outgoingLinkRefs.containsKey(id)) {
-      if (_outgoingLinkRefs.get(id)._notificationAddr != null) {
-        sendNotificatonMessage(_outgoingLinkRefs.get(id)._notificationAddr,
-          NotificationMessageFactory.credit(id, credits));
+    OutgoingLinkRef linkRef = _outgoingLinkRefs.get(id);
+    if (linkRef != null) {
+      if (linkRef._notificationAddr != null) {
+        _creditNotices.update(id, credits);
       }
     } else {
       LOG.warn("Error : Credit received for link not in map. Details [link-ref : '%s']", id);
     }
+  }
+
+  private void sendCreditNotice(String id, int credits) {
+    OutgoingLinkRef linkRef = _outgoingLinkRefs.get(id);
+    if (linkRef != null) {
+      sendNotificatonMessage(linkRef._notificationAddr, NotificationMessageFactory.credit(id, credits));
+    }
   }// ----------- \ LinkEventListener ------------
 
   private void sendNotificatonMessage(String address, JsonObject msg) {
@@ -581,13 +1197,15 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
 
     @Override
     public void handle(AsyncResult<Message<JsonObject>> result) {
+      if (result.failed()) {
+        LOG.warn(result.cause(), "No reply received from Vert.x event-bus for AMQP reply-to '%s'", _replyTo);
+        return;
+      }
       Message<JsonObject> msg = result.result();
       try {
-        print("Reply received from Vert.x event-bus %s ", msg.body() == null ? "" : msg.body().encodePrettily());
         LogMsgHelper.logOutboundReplyTo(LOG, msg, _replyTo);
-        org.apache.qpid.proton.message.Message out = _msgTranslator.convert(msg.body());
+        org.apache.qpid.proton.message.Message out = _msgTranslator.convert(msg.body(), msg.headers(), null);
         String linkId = _linkBasedRouter.routeOutgoing(Functions.extractDestination(_replyTo));
-        print("_replyTo=%s, linkId=%s", _replyTo, linkId);
         if (linkId != null) {
           try {
             _linkManager.sendViaLink(linkId, out, msg.body());
@@ -600,7 +1218,6 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
           _linkManager.sendViaAddress(_replyTo, out, msg.body());
         }
         if (_notificationAddr != null && msg.body().containsKey(AMQPService.OUTGOING_MSG_REF)) {
-          print("Adding the reply-to:notification pair {%s : %s}", msg.body().getString(AMQPService.OUTGOING_MSG_REF), _notificationAddr);
           _replyToNotices.put(msg.body().getString(AMQPService.OUTGOING_MSG_REF), _notificationAddr);
         }
       } catch (MessagingException e) {
@@ -609,6 +1226,47 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
     }
   }
 
+  /**
+   * Settles an AT_LEAST_ONCE delivery based on the outcome of the event-bus
+   * send. A reply accepts the message, an explicit failure rejects it and a
+   * timeout (or no handler) releases it for redelivery. The message is
+   * settled through the link it arrived on, it has no msg-ref.
+   */
+  class AutoSettleHandler implements Handler<AsyncResult<Message<JsonObject>>> {
+    final InboundMessage _inMsg;
+
+    final ReplyHandler _replyHandler;
+
+    AutoSettleHandler(InboundMessage inMsg, ReplyHandler replyHandler) {
+      _inMsg = inMsg;
+      _replyHandler = replyHandler;
+    }
+
+    @Override
+    public void handle(AsyncResult<Message<JsonObject>> result) {
+      MessageDisposition disposition;
+      if (result.succeeded()) {
+        disposition = MessageDisposition.ACCEPTED;
+      } else if (result.cause() instanceof ReplyException
+        && ((ReplyException) result.cause()).failureType() == ReplyFailure.RECIPIENT_FAILURE) {
+        disposition = MessageDisposition.REJECTED;
+      } else {
+        disposition = MessageDisposition.RELEASED;
+      }
+
+      try {
+        _linkManager.settle(_inMsg, disposition);
+      } catch (MessagingException e) {
+        LOG.warn(e, "Error {code=%s, msg='%s'} auto-settling message={ref: %s} as %s", e.getErrorCode(),
+          e.getMessage(), _inMsg.getMsgRef(), disposition);
+      }
+
+      if (_replyHandler != null && result.succeeded()) {
+        _replyHandler.handle(result);
+      }
+    }
+  }
+
   class IncomingLinkRef {
     final String _id;
 
@@ -618,16 +1276,27 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
 
     final String _notificationAddr;
 
+    final IncomingLinkOptions _options;
+
     final Handler<AsyncResult<String>> _resultHandler;
 
-    IncomingLinkRef(String id, String amqpAddr, String ebAddr, String notificationAddr,
+    IncomingLinkRef(String id, String amqpAddr, String ebAddr, String notificationAddr, IncomingLinkOptions options,
                     Handler<AsyncResult<String>> resultHandler) {
       _id = id;
       _amqpAddr = amqpAddr;
       _ebAddr = ebAddr;
       _notificationAddr = notificationAddr;
+      _options = options;
       _resultHandler = resultHandler;
     }
+
+    boolean isAutoSettle() {
+      return _options != null && _options.isAutoSettle();
+    }
+
+    DeliveryFormat getFormat() {
+      return _options == null ? DeliveryFormat.JSON : _options.getFormat();
+    }
   }
 
   class OutgoingLinkRef {
@@ -651,14 +1320,14 @@ public class AMQPServiceImpl implements Handler<Message<JsonObject>>, LinkEventL
     }
   }
 
-  class ServiceRef {
+  static class ServiceRef {
     final String _serviceAddr;
 
     final String _notificationAddr;
 
-    final List<String> _inLinks = new ArrayList<String>();
+    final List<String> _inLinks = new CopyOnWriteArrayList<String>();
 
-    final List<String> _outLinks = new ArrayList<String>();
+    final List<String> _outLinks = new CopyOnWriteArrayList<String>();
 
     ServiceRef(String serviceAddr, String notificationAddress, int initialCapacity) {
       _serviceAddr = serviceAddr;
@@ -15,8 +15,11 @@
  */
 package io.vertx.ext.amqp.impl;
 
+import io.vertx.ext.amqp.BodyCodec;
+import io.vertx.ext.amqp.RetryOptions;
 import io.vertx.ext.amqp.impl.config.ConfigRouteEntry;
 import io.vertx.ext.amqp.impl.routing.InboundRoutingPropertyType;
+import io.vertx.ext.amqp.impl.routing.RoutePatternType;
 
 import java.util.List;
 import java.util.Map;
@@ -38,6 +41,8 @@ public interface AmqpServiceConfig {
 
   public Map<String, ConfigRouteEntry> getOutboundRoutes();
 
+  public RoutePatternType getOutboundPatternType();
+
   public String getInboundRoutingPropertyName();
 
   public String getDefaultInboundAddress();
@@ -46,7 +51,100 @@ public interface AmqpServiceConfig {
 
   public Map<String, ConfigRouteEntry> getInboundRoutes();
 
+  public RoutePatternType getInboundPatternType();
+
   public int getMaxedCachedURLEntries();
 
   public int getDefaultLinkCredit();
+
+  public int getInboundDecodeWorkers();
+
+  public int getRoutingCacheSize();
+
+  public String getMetricsAddress();
+
+  /**
+   * Body codecs added to the built-in ones.
+   */
+  public List<BodyCodec> getBodyCodecs();
+
+  /**
+   * Size in bytes past which a deflate compressed body is rejected.
+   */
+  public int getMaxInflatedSize();
+
+  /**
+   * Whether requests sent to AMQP peers get their replies on a reply link
+   * opened by the bridge rather than through the inbound host and port.
+   */
+  public boolean isRpcReplyLink();
+
+  /**
+   * Granularity of the timer expiring pending replies and message refs.
+   */
+  public long getTimerTick();
+
+  /**
+   * Time after which a request sent to an AMQP peer no longer waits for its
+   * reply.
+   */
+  public long getReplyTimeout();
+
+  /**
+   * Time after which an unsettled message ref, or a delivery notice for one,
+   * is expired.
+   */
+  public long getMsgRefTimeout();
+
+  /**
+   * How the links opened for outbound routes are re-attached when their
+   * connection is lost.
+   */
+  public RetryOptions getRetryOptions();
+
+  /**
+   * Time after which an outbound connection on which nothing was received is
+   * considered dead, 0 if never.
+   */
+  public long getIdleTimeout();
+
+  /**
+   * Whether the links to the static outbound addresses are opened before the
+   * service verticle completes its start.
+   */
+  public boolean isWarmUp();
+
+  /**
+   * Maximum time the start of the service verticle waits for warm-up links
+   * to attach.
+   */
+  public long getWarmUpTimeout();
+
+  /**
+   * Minimum time between two credit notifications for an outgoing link.
+   */
+  public long getCreditNoticeInterval();
+
+  /**
+   * Minimum change in the credit of an outgoing link that is notified.
+   */
+  public int getCreditNoticeDelta();
+
+  /**
+   * Whether the nodes of a clustered Vert.x share out the outbound AMQP
+   * addresses rather than each opening links to all of them.
+   */
+  public boolean isClusterOwnership();
+
+  /**
+   * Interval at which the cluster members are re-read to detect failed
+   * nodes.
+   */
+  public long getClusterRefresh();
+
+  /**
+   * Number of per-message debug lines logged per second for each kind of
+   * line. Zero or less logs them all.
+   */
+  public int getLogSampleLimit();
 }
\ No newline at end of file
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.spi.cluster.ClusterManager;
+import io.vertx.ext.amqp.impl.util.LogManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static io.vertx.ext.amqp.impl.util.Functions.format;
+
+/**
+ * The nodes of a clustered Vert.x running the service with the same default
+ * handler address. Each outbound AMQP address is owned by one of them, picked
+ * by rendezvous hashing, and only the owner opens links to it. Other nodes
+ * forward their messages for the address to the owner over the event bus.
+ * When a node joins or leaves, only the addresses it gains or loses change
+ * owner.
+ * <p/>
+ * The members are kept in a cluster-wide map. A node adds itself when the
+ * first service instance starts and removes itself when the last one stops.
+ * Nodes that left the cluster without doing so are dropped on the next
+ * {@link #refresh()}. The cluster manager calls may block, so they run on a
+ * worker thread and the members are updated when they complete. Until this
+ * node has joined, the owners are not known, so work that depends on them
+ * waits for {@link #whenJoined(Runnable)}.
+ */
+public class ClusterMembership {
+  private static final LogManager LOG = LogManager.get("CLUSTER:", ClusterMembership.class);
+
+  /**
+   * Header listing the AMQP addresses a forwarded message is for.
+   */
+  static final String FORWARD_TO = "vertx.amqp.forward-to";
+
+  private final Vertx _vertx;
+
+  private final ClusterManager _manager;
+
+  private final String _nodeId;
+
+  private final String _handlerAddress;
+
+  // the cluster-wide map of members, only used on worker threads
+  private volatile Map<String, String> _members;
+
+  private final List<Runnable> _listeners = new CopyOnWriteArrayList<Runnable>();
+
+  // sorted, replaced on change
+  private volatile String[] _nodes = new String[0];
+
+  private final AtomicBoolean _refreshing = new AtomicBoolean(false);
+
+  private volatile boolean _refreshAgain;
+
+  private volatile boolean _joined;
+
+  // tasks waiting for join() to complete
+  private final List<Runnable> _joinWaiters = new ArrayList<Runnable>();
+
+  ClusterMembership(Vertx vertx, String handlerAddress) {
+    _vertx = vertx;
+    _manager = ((VertxInternal) vertx).getClusterManager();
+    _nodeId = _manager.getNodeID();
+    _handlerAddress = handlerAddress;
+  }
+
+  /**
+   * Adds this node to the members and tells the other nodes once it is done.
+   * If that fails, this node owns every address.
+   */
+  void join() {
+    _vertx.<String[]>executeBlocking(f -> {
+      members().put(_nodeId, forwardAddress(_nodeId));
+      f.complete(readMembers());
+    }, false, r -> {
+      if (r.failed()) {
+        LOG.warn(r.cause(), "Error adding node %s to the cluster members, it owns every address", _nodeId);
+        joined();
+        return;
+      }
+      update(r.result());
+      LOG.info(() -> format("Node %s joined, members are %s", _nodeId, Arrays.toString(_nodes)));
+      joined();
+      publishChange();
+    });
+  }
+
+  public boolean isJoined() {
+    return _joined;
+  }
+
+  /**
+   * Runs the task once this node has joined, right away if it already has.
+   * The task runs on the thread completing the join, so it should hand off
+   * to its own context.
+   */
+  void whenJoined(Runnable task) {
+    synchronized (_joinWaiters) {
+      if (!_joined) {
+        _joinWaiters.add(task);
+        return;
+      }
+    }
+    task.run();
+  }
+
+  private void joined() {
+    List<Runnable> waiters;
+    synchronized (_joinWaiters) {
+      _joined = true;
+      waiters = new ArrayList<Runnable>(_joinWaiters);
+      _joinWaiters.clear();
+    }
+    for (Runnable waiter : waiters) {
+      waiter.run();
+    }
+  }
+
+  void leave() {
+    _vertx.executeBlocking(f -> {
+      members().remove(_nodeId);
+      f.complete();
+    }, false, r -> {
+      if (r.failed()) {
+        LOG.warn(r.cause(), "Error removing node %s from the cluster members", _nodeId);
+        return;
+      }
+      LOG.info("Node %s left", _nodeId);
+      publishChange();
+    });
+  }
+
+  public String getNodeId() {
+    return _nodeId;
+  }
+
+  /**
+   * The address on which the service instances of the node receive the
+   * messages forwarded to it.
+   */
+  String forwardAddress(String nodeId) {
+    return _handlerAddress + ".node." + nodeId;
+  }
+
+  /**
+   * The address on which membership changes are published.
+   */
+  String changeAddress() {
+    return _handlerAddress + ".members";
+  }
+
+  /**
+   * Registers a task run whenever the members change.
+   */
+  void addListener(Runnable listener) {
+    _listeners.add(listener);
+  }
+
+  void removeListener(Runnable listener) {
+    _listeners.remove(listener);
+  }
+
+  /**
+   * Re-reads the members, dropping nodes no longer in the cluster, and runs
+   * the listeners if they changed. A refresh asked for while one is running
+   * is done once it completes.
+   */
+  public void refresh() {
+    if (!_refreshing.compareAndSet(false, true)) {
+      _refreshAgain = true;
+      return;
+    }
+    _refreshAgain = false;
+    _vertx.<String[]>executeBlocking(f -> f.complete(readMembers()), false, r -> {
+      _refreshing.set(false);
+      if (r.succeeded()) {
+        update(r.result());
+      } else {
+        LOG.warn(r.cause(), "Error reading the cluster members");
+      }
+      if (_refreshAgain) {
+        refresh();
+      }
+    });
+  }
+
+  private Map<String, String> members() {
+    if (_members == null) {
+      _members = _manager.getSyncMap("vertx-amqp-service.members." + _handlerAddress);
+    }
+    return _members;
+  }
+
+  // Blocking, returns the sorted ids of the members still in the cluster.
+  private String[] readMembers() {
+    List<String> clusterNodes = _manager.getNodes();
+    Map<String, String> memberMap = members();
+    List<String> members = new ArrayList<String>();
+    for (String nodeId : memberMap.keySet()) {
+      if (clusterNodes.contains(nodeId)) {
+        members.add(nodeId);
+      } else {
+        // crashed or partitioned away, whoever notices first removes it
+        memberMap.remove(nodeId);
+      }
+    }
+    String[] nodes = members.toArray(new String[members.size()]);
+    Arrays.sort(nodes);
+    return nodes;
+  }
+
+  private void update(String[] nodes) {
+    synchronized (this) {
+      if (Arrays.equals(nodes, _nodes)) {
+        return;
+      }
+      _nodes = nodes;
+    }
+    LOG.info(() -> format("Members changed to %s", Arrays.toString(nodes)));
+    for (Runnable listener : _listeners) {
+      listener.run();
+    }
+  }
+
+  private void publishChange() {
+    _vertx.eventBus().publish(changeAddress(), new JsonObject().put("node", _nodeId));
+  }
+
+  /**
+   * Returns the node owning the AMQP address, this node if there are no
+   * members yet.
+   */
+  public String ownerOf(String amqpAddress) {
+    String[] nodes = _nodes;
+    if (nodes.length <= 1) {
+      return nodes.length == 0 ? _nodeId : nodes[0];
+    }
+    int address = amqpAddress.hashCode();
+    String owner = null;
+    int best = 0;
+    for (String node : nodes) {
+      int weight = weight(node.hashCode(), address);
+      if (owner == null || weight > best) {
+        owner = node;
+        best = weight;
+      }
+    }
+    return owner;
+  }
+
+  public boolean isLocal(String amqpAddress) {
+    return _nodeId.equals(ownerOf(amqpAddress));
+  }
+
+  /**
+   * Groups the AMQP addresses by owning node, preserving their order.
+   */
+  Map<String, List<String>> partition(List<String> amqpAddressList) {
+    Map<String, List<String>> owners = new LinkedHashMap<String, List<String>>();
+    for (String amqpAddress : amqpAddressList) {
+      owners.computeIfAbsent(ownerOf(amqpAddress), k -> new ArrayList<String>()).add(amqpAddress);
+    }
+    return owners;
+  }
+
+  /**
+   * The rendezvous weight of a member for an address, the address goes to
+   * the member with the highest weight. Also used to spread addresses over
+   * the instances of a node, see {@link InstanceRegistry#ownerOf(String)}.
+   */
+  static int weight(int member, int address) {
+    return mix(member * 31 + address);
+  }
+
+  // murmur3 finalizer, spreads similar node and address hashes apart
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.amqp.impl.util.OrderedExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * The service instances (verticle instances) deployed in a Vert.x instance
+ * with the same default handler address. Each instance runs on its own event
+ * loop and owns the AMQP connections and links it created. The registry lets
+ * an instance find the owner of a link or message ref handed to it by a
+ * service call, and spreads the outbound AMQP addresses over the instances so
+ * that each address is sent to by one instance only.
+ * <p/>
+ * Services registered via the service API are shared by all instances, as AMQP
+ * peers may connect to any of them. So is the inbound decode pipeline, whose
+ * threads would otherwise multiply with the instances.
+ */
+public class InstanceRegistry implements Shareable {
+  private static final String SHARED_MAP_NAME = "vertx-amqp-service.instances";
+
+  private final String _key;
+
+  // copied on write, read without locking on every outbound message
+  private volatile AMQPServiceImpl[] _instances = new AMQPServiceImpl[0];
+
+  private final Map<String, AMQPServiceImpl.ServiceRef> _serviceRefs = new ConcurrentHashMap<String, AMQPServiceImpl.ServiceRef>();
+
+  private boolean _closed = false;
+
+  private ClusterMembership _cluster;
+
+  private OrderedExecutor _decodePipeline;
+
+  private InstanceRegistry(String key) {
+    _key = key;
+  }
+
+  /**
+   * Adds the instance to the registry for the handler address, creating the
+   * registry if this is the first instance. Each call must be paired with a
+   * call to {@link #release(Vertx, AMQPServiceImpl)}.
+   */
+  static InstanceRegistry acquire(Vertx vertx, String handlerAddress, AMQPServiceImpl instance) {
+    LocalMap<String, InstanceRegistry> map = vertx.sharedData().getLocalMap(SHARED_MAP_NAME);
+    while (true) {
+      InstanceRegistry registry = new InstanceRegistry(handlerAddress);
+      InstanceRegistry existing = map.putIfAbsent(handlerAddress, registry);
+      if (existing == null) {
+        existing = registry;
+      }
+      if (existing.add(instance)) {
+        return existing;
+      }
+      // lost a race with the last release, the entry is on its way out
+      map.removeIfPresent(handlerAddress, existing);
+    }
+  }
+
+  /**
+   * Returns the registry for the handler address, or null if no instance is
+   * deployed.
+   */
+  public static InstanceRegistry get(Vertx vertx, String handlerAddress) {
+    LocalMap<String, InstanceRegistry> map = vertx.sharedData().getLocalMap(SHARED_MAP_NAME);
+    return map.get(handlerAddress);
+  }
+
+  private synchronized boolean add(AMQPServiceImpl instance) {
+    if (_closed) {
+      return false;
+    }
+    AMQPServiceImpl[] existing = _instances;
+    AMQPServiceImpl[] instances = Arrays.copyOf(existing, existing.length + 1);
+    instances[instances.length - 1] = instance;
+    _instances = instances;
+    for (AMQPServiceImpl other : existing) {
+      other.rebalance();
+    }
+    return true;
+  }
+
+  synchronized void release(Vertx vertx, AMQPServiceImpl instance) {
+    List<AMQPServiceImpl> instances = new ArrayList<AMQPServiceImpl>(Arrays.asList(_instances));
+    instances.remove(instance);
+    _instances = instances.toArray(new AMQPServiceImpl[instances.size()]);
+    for (AMQPServiceImpl other : _instances) {
+      other.rebalance();
+    }
+    if (_instances.length == 0) {
+      _closed = true;
+      if (_cluster != null) {
+        _cluster.leave();
+      }
+      if (_decodePipeline != null) {
+        _decodePipeline.shutdown();
+      }
+      LocalMap<String, InstanceRegistry> map = vertx.sharedData().getLocalMap(SHARED_MAP_NAME);
+      map.removeIfPresent(_key, this);
+    }
+  }
+
+  /**
+   * Adds this node to the cluster members, if not done by another instance
+   * yet, and returns the membership.
+   */
+  synchronized ClusterMembership joinCluster(Vertx vertx) {
+    if (_cluster == null) {
+      _cluster = new ClusterMembership(vertx, _key);
+      _cluster.join();
+    }
+    return _cluster;
+  }
+
+  /**
+   * Returns the pool decoding inbound messages for all instances, created
+   * with the given number of threads by the first instance asking for it.
+   * Its tasks are keyed by link id, which is unique across instances.
+   */
+  synchronized OrderedExecutor getDecodePipeline(int workers) {
+    if (_decodePipeline == null) {
+      _decodePipeline = new OrderedExecutor("vertx-amqp-decoder", workers);
+    }
+    return _decodePipeline;
+  }
+
+  /**
+   * The cluster membership of this node, or null if Vert.x is not clustered
+   * or cluster ownership is disabled.
+   */
+  public synchronized ClusterMembership getCluster() {
+    return _cluster;
+  }
+
+  public int size() {
+    return _instances.length;
+  }
+
+  Map<String, AMQPServiceImpl.ServiceRef> getServiceRefs() {
+    return _serviceRefs;
+  }
+
+  /**
+   * Returns the instance sending to the AMQP address. Addresses are assigned
+   * by rendezvous hashing, as they are to nodes by {@link ClusterMembership},
+   * so adding or removing an instance only moves the addresses it gains or
+   * loses. The other instances are told to rebalance when that happens.
+   */
+  public AMQPServiceImpl ownerOf(String amqpAddress) {
+    AMQPServiceImpl[] instances = _instances;
+    if (instances.length <= 1) {
+      return instances.length == 0 ? null : instances[0];
+    }
+    int address = amqpAddress.hashCode();
+    AMQPServiceImpl owner = null;
+    int best = 0;
+    for (AMQPServiceImpl instance : instances) {
+      int weight = ClusterMembership.weight(System.identityHashCode(instance), address);
+      if (owner == null || weight > best) {
+        owner = instance;
+        best = weight;
+      }
+    }
+    return owner;
+  }
+
+  /**
+   * Groups the AMQP addresses by owning instance, preserving their order.
+   */
+  Map<AMQPServiceImpl, List<String>> partition(List<String> amqpAddressList) {
+    Map<AMQPServiceImpl, List<String>> owners = new LinkedHashMap<AMQPServiceImpl, List<String>>();
+    for (String amqpAddress : amqpAddressList) {
+      owners.computeIfAbsent(ownerOf(amqpAddress), k -> new ArrayList<String>()).add(amqpAddress);
+    }
+    return owners;
+  }
+
+  /**
+   * Returns the first instance matching the predicate, or null.
+   */
+  AMQPServiceImpl find(Predicate<AMQPServiceImpl> predicate) {
+    for (AMQPServiceImpl instance : _instances) {
+      if (predicate.test(instance)) {
+        return instance;
+      }
+    }
+    return null;
+  }
+}
@@ -65,6 +65,21 @@ public class NotificationMessageFactory {
     return json;
   }
 
+  static JsonObject incomingMsgRefExpired(String linkRef, String msgRef) {
+    JsonObject json = new JsonObject();
+    json.put(NotificationHelper.TYPE, NotificationType.MSG_REF_EXPIRED);
+    json.put(NotificationHelper.LINK_REF, linkRef);
+    json.put(AMQPService.INCOMING_MSG_REF, msgRef);
+    return json;
+  }
+
+  static JsonObject outgoingMsgRefExpired(String msgRef) {
+    JsonObject json = new JsonObject();
+    json.put(NotificationHelper.TYPE, NotificationType.MSG_REF_EXPIRED);
+    json.put(AMQPService.OUTGOING_MSG_REF, msgRef);
+    return json;
+  }
+
   static JsonObject error(String linkRef, ErrorCode code, String msg) {
     JsonObject json = new JsonObject();
     json.put(NotificationHelper.TYPE, NotificationType.LINK_ERROR);
@@ -17,15 +17,25 @@ package io.vertx.ext.amqp.impl.config;
 
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.amqp.BodyCodec;
+import io.vertx.ext.amqp.DeliveryFormat;
+import io.vertx.ext.amqp.RetryOptions;
 import io.vertx.ext.amqp.impl.AmqpServiceConfig;
 import io.vertx.ext.amqp.impl.routing.InboundRoutingPropertyType;
+import io.vertx.ext.amqp.impl.routing.RouteMode;
+import io.vertx.ext.amqp.impl.routing.RoutePatternType;
+import io.vertx.ext.amqp.impl.selector.Selector;
+import io.vertx.ext.amqp.impl.translators.Compression;
+import io.vertx.ext.amqp.impl.util.LogSampler;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 
 public class AmqpServiceConfigImpl implements AmqpServiceConfig {
   private String _inboundHost;
@@ -48,12 +58,52 @@ public class AmqpServiceConfigImpl implements AmqpServiceConfig {
 
   int _defaultLinkCredit = 1;
 
+  int _inboundDecodeWorkers = 0;
+
+  int _routingCacheSize = 1000;
+
+  String _metricsAddress = null;
+
+  boolean _rpcReplyLink = false;
+
+  long _timerTick = 100;
+
+  long _replyTimeout = 30000;
+
+  long _msgRefTimeout = 300000;
+
+  RetryOptions _retryOptions;
+
+  long _idleTimeout = 0;
+
+  boolean _warmUp = false;
+
+  long _warmUpTimeout = 5000;
+
+  long _creditNoticeInterval = 100;
+
+  int _creditNoticeDelta = 1;
+
+  boolean _clusterOwnership = true;
+
+  long _clusterRefresh = 2000;
+
+  int _logSampleLimit = LogSampler.DEFAULT_LIMIT;
+
+  List<BodyCodec> _bodyCodecs = new ArrayList<BodyCodec>();
+
+  int _maxInflatedSize = Compression.DEFAULT_MAX_INFLATED_SIZE;
+
+  RoutePatternType _outboundPatternType = RoutePatternType.REGEX;
+
   Map<String, ConfigRouteEntry> _outboundRoutes = new ConcurrentHashMap<String, ConfigRouteEntry>();
 
   String _inboundRoutingPropertyName = null;
 
   InboundRoutingPropertyType _inboundRoutingPropertyType = InboundRoutingPropertyType.ADDRESS;
 
+  RoutePatternType _inboundPatternType = RoutePatternType.REGEX;
+
   Map<String, ConfigRouteEntry> _inboundRoutes = new ConcurrentHashMap<String, ConfigRouteEntry>();
 
   public AmqpServiceConfigImpl(JsonObject config) {
@@ -62,6 +112,27 @@ public class AmqpServiceConfigImpl implements AmqpServiceConfig {
     _defaultOutboundAddress = config.getString("amqp.default-outbound-address", "amqp://localhost:5672/vertx");
     _defaultHandlerAddress = config.getString("vertx.default-handler-address", "vertx.service-amqp.bridge");
     _defaultInboundAddress = config.getString("vertx.default-inbound-address", null);
+    _inboundDecodeWorkers = config.getInteger("amqp.inbound-decode-workers", 0);
+    _routingCacheSize = config.getInteger("vertx.routing-cache-size", 1000);
+    _metricsAddress = config.getString("vertx.metrics-address", null);
+    _rpcReplyLink = config.getBoolean("amqp.rpc-reply-link", false);
+    _timerTick = config.getLong("amqp.timer-tick", 100L);
+    _replyTimeout = config.getLong("vertx.reply-timeout", 30000L);
+    _msgRefTimeout = config.getLong("amqp.msg-ref-timeout", 300000L);
+    _retryOptions = new RetryOptions(config.getJsonObject("amqp.retry-options", new JsonObject().put(
+      RetryOptions.MIN_RETRY_INTERVAL, 100L).put(RetryOptions.MAX_RETRY_INTERVAL, 30000L)));
+    _idleTimeout = config.getLong("amqp.idle-timeout", 0L);
+    _warmUp = config.getBoolean("amqp.warm-up", false);
+    _warmUpTimeout = config.getLong("amqp.warm-up-timeout", 5000L);
+    if (_warmUpTimeout <= 0) {
+      throw new IllegalArgumentException("amqp.warm-up-timeout must be > 0 : " + _warmUpTimeout);
+    }
+    _creditNoticeInterval = config.getLong("amqp.credit-notice-interval", 100L);
+    _creditNoticeDelta = config.getInteger("amqp.credit-notice-delta", 1);
+    _clusterOwnership = config.getBoolean("vertx.cluster-ownership", true);
+    _clusterRefresh = config.getLong("vertx.cluster-refresh", 2000L);
+    _logSampleLimit = config.getInteger("amqp.log-sample-limit", LogSampler.DEFAULT_LIMIT);
+    _maxInflatedSize = config.getInteger("amqp.max-inflated-size", Compression.DEFAULT_MAX_INFLATED_SIZE);
 
     if (config.containsKey("vertx.handlers")) {
       JsonArray handlers = config.getJsonArray("vertx.handlers");
@@ -71,6 +142,12 @@ public class AmqpServiceConfigImpl implements AmqpServiceConfig {
       }
     }
 
+    if (config.containsKey("amqp.body-codecs")) {
+      for (Object className : config.getJsonArray("amqp.body-codecs")) {
+        _bodyCodecs.add(createBodyCodec((String) className));
+      }
+    }
+
     if (config.containsKey("vertx.routing-outbound")) {
       JsonObject _outboundRouting = config.getJsonObject("vertx.routing-outbound");
 
@@ -79,8 +156,10 @@ public class AmqpServiceConfigImpl implements AmqpServiceConfig {
         _outboundRoutingPropertyName = _outboundRouting.getString("routing-property-name");
       }
 
+      _outboundPatternType = RoutePatternType.get(_outboundRouting.getString("pattern-type"));
+
       if (_outboundRouting.containsKey("routes")) {
-        pouplateRouteMap(_outboundRoutes, _outboundRouting.getJsonObject("routes"));
+        pouplateRouteMap(_outboundRoutes, _outboundPatternType, _outboundRouting.getJsonObject("routes"));
       }
     }
 
@@ -95,21 +174,81 @@ public class AmqpServiceConfigImpl implements AmqpServiceConfig {
         }
       }
 
+      _inboundPatternType = RoutePatternType.get(_inboundRouting.getString("pattern-type"));
+
       if (_inboundRouting.containsKey("routes")) {
-        pouplateRouteMap(_inboundRoutes, _inboundRouting.getJsonObject("routes"));
+        pouplateRouteMap(_inboundRoutes, _inboundPatternType, _inboundRouting.getJsonObject("routes"));
       }
     }
 
     // TODO implement other config options
   }
 
-  private void pouplateRouteMap(Map<String, ConfigRouteEntry> map, JsonObject routes) {
+  /*
+   * A route value is either an address, or an object of the form
+   * {"address" : "...", "selector" : "..."} where "addresses" may be used
+   * instead of "address" to list several addresses. The object may also set
+   * "type" : "partitioned" (with "partition-by") or "load-balanced", and
+   * "format" : "raw" | "typed" for inbound routes that skip the JSON
+   * translation. "content-type" selects the body codec for data bodies of
+   * messages without a content-type, and "codec" names a BodyCodec class used
+   * for that content-type on this route only (its own content-type if none
+   * is given). "compression" : true, or an object with
+   * "threshold" and "level", deflates the data bodies of outbound messages.
+   */
+  private void pouplateRouteMap(Map<String, ConfigRouteEntry> map, RoutePatternType type, JsonObject routes) {
     for (String key : routes.fieldNames()) {
-      ConfigRouteEntry entry = new ConfigRouteEntry(Pattern.compile(key), routes.getString(key));
+      Object value = routes.getValue(key);
+      ConfigRouteEntry entry;
+      if (value instanceof JsonObject) {
+        JsonObject route = (JsonObject) value;
+        List<String> addresses = new ArrayList<String>();
+        if (route.containsKey("address")) {
+          addresses.add(route.getString("address"));
+        }
+        if (route.containsKey("addresses")) {
+          for (Object addr : route.getJsonArray("addresses")) {
+            addresses.add((String) addr);
+          }
+        }
+        String selector = route.getString("selector");
+        BodyCodec codec = route.containsKey("codec") ? createBodyCodec(route.getString("codec")) : null;
+        String contentType = route.getString("content-type", codec == null ? null : codec.getContentType());
+        entry = new ConfigRouteEntry(type, key, addresses, selector == null ? null : Selector.parse(selector),
+          RouteMode.get(route.getString("type")), route.getString("partition-by")).withFormat(DeliveryFormat.get(route
+          .getString("format"))).withContentType(contentType).withCodec(codec)
+          .withCompression(createCompression(key, route.getValue("compression")));
+      } else {
+        entry = new ConfigRouteEntry(type, key, (String) value);
+      }
       map.put(key, entry);
     }
   }
 
+  private static Compression createCompression(String routeKey, Object config) {
+    if (config == null || Boolean.FALSE.equals(config)) {
+      return null;
+    } else if (Boolean.TRUE.equals(config)) {
+      return new Compression(routeKey, Compression.DEFAULT_THRESHOLD, Deflater.DEFAULT_COMPRESSION);
+    } else if (config instanceof JsonObject) {
+      JsonObject options = (JsonObject) config;
+      return new Compression(routeKey, options.getInteger("threshold", Compression.DEFAULT_THRESHOLD),
+        options.getInteger("level", Deflater.DEFAULT_COMPRESSION));
+    }
+    throw new IllegalArgumentException("Invalid compression for route " + routeKey + " : " + config);
+  }
+
+  private static BodyCodec createBodyCodec(String className) {
+    try {
+      return Class.forName(className).asSubclass(BodyCodec.class).getDeclaredConstructor().newInstance();
+    } catch (InvocationTargetException e) {
+      throw new IllegalArgumentException("Body codec " + className + " failed to initialise", e.getCause());
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      throw new IllegalArgumentException("Can't create body codec " + className
+        + ", it must implement BodyCodec and have a no-arg constructor", e);
+    }
+  }
+
   @Override
   public String getInboundHost() {
     return _inboundHost;
@@ -174,6 +313,20 @@ public class AmqpServiceConfigImpl implements AmqpServiceConfig {
     return new ConfigRouteEntry(Pattern.compile(pattern), address);
   }
 
+  public static ConfigRouteEntry createRouteEntry(RoutePatternType type, String pattern, String address) {
+    return new ConfigRouteEntry(type, pattern, address);
+  }
+
+  @Override
+  public RoutePatternType getOutboundPatternType() {
+    return _outboundPatternType;
+  }
+
+  @Override
+  public RoutePatternType getInboundPatternType() {
+    return _inboundPatternType;
+  }
+
   @Override
   public int getMaxedCachedURLEntries() {
     return _maxedCachedURLEntries;
@@ -183,4 +336,94 @@ public class AmqpServiceConfigImpl implements AmqpServiceConfig {
   public int getDefaultLinkCredit() {
     return _defaultLinkCredit;
   }
+
+  @Override
+  public int getInboundDecodeWorkers() {
+    return _inboundDecodeWorkers;
+  }
+
+  @Override
+  public int getRoutingCacheSize() {
+    return _routingCacheSize;
+  }
+
+  @Override
+  public String getMetricsAddress() {
+    return _metricsAddress;
+  }
+
+  @Override
+  public List<BodyCodec> getBodyCodecs() {
+    return _bodyCodecs;
+  }
+
+  @Override
+  public int getMaxInflatedSize() {
+    return _maxInflatedSize;
+  }
+
+  @Override
+  public boolean isRpcReplyLink() {
+    return _rpcReplyLink;
+  }
+
+  @Override
+  public long getTimerTick() {
+    return _timerTick;
+  }
+
+  @Override
+  public long getReplyTimeout() {
+    return _replyTimeout;
+  }
+
+  @Override
+  public long getMsgRefTimeout() {
+    return _msgRefTimeout;
+  }
+
+  @Override
+  public RetryOptions getRetryOptions() {
+    return _retryOptions;
+  }
+
+  @Override
+  public long getIdleTimeout() {
+    return _idleTimeout;
+  }
+
+  @Override
+  public boolean isWarmUp() {
+    return _warmUp;
+  }
+
+  @Override
+  public long getWarmUpTimeout() {
+    return _warmUpTimeout;
+  }
+
+  @Override
+  public long getCreditNoticeInterval() {
+    return _creditNoticeInterval;
+  }
+
+  @Override
+  public int getCreditNoticeDelta() {
+    return _creditNoticeDelta;
+  }
+
+  @Override
+  public boolean isClusterOwnership() {
+    return _clusterOwnership;
+  }
+
+  @Override
+  public long getClusterRefresh() {
+    return _clusterRefresh;
+  }
+
+  @Override
+  public int getLogSampleLimit() {
+    return _logSampleLimit;
+  }
 }
\ No newline at end of file
@@ -15,28 +15,157 @@
  */
 package io.vertx.ext.amqp.impl.config;
 
+import io.vertx.ext.amqp.BodyCodec;
+import io.vertx.ext.amqp.DeliveryFormat;
+import io.vertx.ext.amqp.impl.routing.RouteMode;
+import io.vertx.ext.amqp.impl.routing.RoutePatternType;
+import io.vertx.ext.amqp.impl.selector.Selector;
+import io.vertx.ext.amqp.impl.translators.Compression;
+
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Pattern;
 
-public class ConfigRouteEntry {
-  Pattern _pattern;
+/**
+ * A route key and the addresses it maps to, optionally restricted by a
+ * {@link Selector} on the message properties. The {@link RouteMode} decides
+ * whether a message goes to all of the addresses or just one. Entries are
+ * immutable, adding or removing an address creates a new entry.
+ */
+public final class ConfigRouteEntry {
+  private final RoutePatternType _type;
+
+  private final String _key;
+
+  private final Pattern _pattern;
+
+  private final List<String> _addressList;
+
+  private final Selector _selector;
 
-  List<String> _addressList = new ArrayList<String>();
+  private final RouteMode _mode;
+
+  private final String _partitionBy;
+
+  private final DeliveryFormat _format;
+
+  private final String _contentType;
+
+  private final BodyCodec _codec;
+
+  private final Compression _compression;
 
   public ConfigRouteEntry(Pattern p, String addr) {
-    _pattern = p;
-    _addressList.add(addr);
+    this(RoutePatternType.REGEX, p.pattern(), p, Collections.singletonList(addr), null, RouteMode.BROADCAST, null,
+      DeliveryFormat.JSON, null, null, null);
+  }
+
+  public ConfigRouteEntry(RoutePatternType type, String key, String addr) {
+    this(type, key, Collections.singletonList(addr), null);
+  }
+
+  public ConfigRouteEntry(RoutePatternType type, String key, List<String> addressList, Selector selector) {
+    this(type, key, addressList, selector, RouteMode.BROADCAST, null);
+  }
+
+  public ConfigRouteEntry(RoutePatternType type, String key, List<String> addressList, Selector selector,
+                          RouteMode mode, String partitionBy) {
+    this(type, key, type == RoutePatternType.REGEX ? Pattern.compile(key) : null, new ArrayList<String>(
+      addressList), selector, mode, partitionBy, DeliveryFormat.JSON, null, null, null);
+  }
+
+  private ConfigRouteEntry(RoutePatternType type, String key, Pattern pattern, List<String> addressList,
+                           Selector selector, RouteMode mode, String partitionBy, DeliveryFormat format,
+                           String contentType, BodyCodec codec, Compression compression) {
+    _type = type;
+    _key = key;
+    _pattern = pattern;
+    _addressList = Collections.unmodifiableList(addressList);
+    _selector = selector;
+    _mode = mode;
+    _partitionBy = partitionBy;
+    _format = format;
+    _contentType = contentType;
+    _codec = codec;
+    _compression = compression;
+  }
+
+  /**
+   * Returns a copy of this entry with the address appended.
+   */
+  public ConfigRouteEntry withAddress(String addr) {
+    List<String> list = new ArrayList<String>(_addressList.size() + 1);
+    list.addAll(_addressList);
+    list.add(addr);
+    return new ConfigRouteEntry(_type, _key, _pattern, list, _selector, _mode, _partitionBy, _format, _contentType,
+      _codec, _compression);
+  }
+
+  /**
+   * Returns a copy of this entry using the given format for inbound
+   * messages.
+   */
+  public ConfigRouteEntry withFormat(DeliveryFormat format) {
+    return new ConfigRouteEntry(_type, _key, _pattern, _addressList, _selector, _mode, _partitionBy, format,
+      _contentType, _codec, _compression);
   }
 
-  public void add(String addr) {
-    _addressList.add(addr);
+  /**
+   * Returns a copy of this entry using the given default content-type for
+   * data bodies.
+   */
+  public ConfigRouteEntry withContentType(String contentType) {
+    return new ConfigRouteEntry(_type, _key, _pattern, _addressList, _selector, _mode, _partitionBy, _format,
+      contentType, _codec, _compression);
   }
 
-  public void remove(String addr) {
-    _addressList.remove(addr);
+  /**
+   * Returns a copy of this entry translating data bodies of its content-type
+   * with the given codec instead of the one registered for the service.
+   */
+  public ConfigRouteEntry withCodec(BodyCodec codec) {
+    return new ConfigRouteEntry(_type, _key, _pattern, _addressList, _selector, _mode, _partitionBy, _format,
+      _contentType, codec, _compression);
   }
 
+  /**
+   * Returns a copy of this entry compressing the data bodies of outbound
+   * messages, or not if compression is null.
+   */
+  public ConfigRouteEntry withCompression(Compression compression) {
+    return new ConfigRouteEntry(_type, _key, _pattern, _addressList, _selector, _mode, _partitionBy, _format,
+      _contentType, _codec, compression);
+  }
+
+  /**
+   * Returns a copy of this entry without the address, or this entry if the
+   * address is not part of it.
+   */
+  public ConfigRouteEntry withoutAddress(String addr) {
+    if (!_addressList.contains(addr)) {
+      return this;
+    }
+    List<String> list = new ArrayList<String>(_addressList);
+    list.remove(addr);
+    return new ConfigRouteEntry(_type, _key, _pattern, list, _selector, _mode, _partitionBy, _format, _contentType,
+      _codec, _compression);
+  }
+
+  public RoutePatternType getType() {
+    return _type;
+  }
+
+  /**
+   * The route key as written in the config.
+   */
+  public String getKey() {
+    return _key;
+  }
+
+  /**
+   * The compiled regex, or null for TOPIC routes.
+   */
   public Pattern getPattern() {
     return _pattern;
   }
@@ -45,8 +174,60 @@ public class ConfigRouteEntry {
     return _addressList;
   }
 
+  /**
+   * The selector a message must match to be routed by this entry, or null if
+   * the entry applies to every message with a matching key.
+   */
+  public Selector getSelector() {
+    return _selector;
+  }
+
+  public RouteMode getMode() {
+    return _mode;
+  }
+
+  /**
+   * For PARTITIONED routes, the message property hashed to pick the address.
+   * The routing key is used if null or if the message lacks the property.
+   */
+  public String getPartitionBy() {
+    return _partitionBy;
+  }
+
+  /**
+   * The form in which inbound messages are sent to the addresses of this
+   * entry.
+   */
+  public DeliveryFormat getFormat() {
+    return _format;
+  }
+
+  /**
+   * The content-type selecting the body codec for data bodies of messages
+   * that don't carry one, or null.
+   */
+  public String getContentType() {
+    return _contentType;
+  }
+
+  /**
+   * The codec for data bodies of this entry's content-type, or null to use
+   * the codec registered for the service.
+   */
+  public BodyCodec getCodec() {
+    return _codec;
+  }
+
+  /**
+   * The compression applied to data bodies of outbound messages, or null.
+   */
+  public Compression getCompression() {
+    return _compression;
+  }
+
   @Override
   public String toString() {
-    return String.format("[pattern=%s, address-list=%s", _pattern, _addressList);
+    return String.format("[pattern=%s, type=%s, mode=%s, address-list=%s, selector=%s", _key, _type, _mode,
+      _addressList, _selector);
   }
 }
\ No newline at end of file
@@ -25,6 +25,8 @@ import java.util.Map;
 class AmqpMessageImpl implements AmqpMessage {
   private org.apache.qpid.proton.message.Message _msg;
 
+  private byte[] _encoded;
+
   private Object _content;
 
   AmqpMessageImpl() {
@@ -35,8 +37,40 @@ class AmqpMessageImpl implements AmqpMessage {
     _msg = msg;
   }
 
+  /*
+   * The message is decoded on first access, allowing the (potentially
+   * expensive) decoding to happen away from the thread that received it.
+   */
+  AmqpMessageImpl(byte[] encoded) {
+    _encoded = encoded;
+  }
+
   //TODO reduce visibility after refactor
   public org.apache.qpid.proton.message.Message getProtocolMessage() {
+    if (_msg == null) {
+      org.apache.qpid.proton.message.Message msg = Proton.message();
+      msg.decode(_encoded, 0, _encoded.length);
+      _msg = msg;
+    }
+    return _msg;
+  }
+
+  /**
+   * Returns the message in its AMQP encoded form. Received messages keep the
+   * bytes they arrived as, so nothing is encoded in that case.
+   */
+  public byte[] getEncoded() {
+    if (_encoded == null) {
+      _encoded = new EncodedMessage(_msg).toByteArray(null);
+    }
+    return _encoded;
+  }
+
+  byte[] getEncodedIfPresent() {
+    return _encoded;
+  }
+
+  org.apache.qpid.proton.message.Message getDecodedIfPresent() {
     return _msg;
   }
 
@@ -47,117 +81,120 @@ class AmqpMessageImpl implements AmqpMessage {
 
   @Override
   public boolean isDurable() {
-    return _msg.isDurable();
+    return getProtocolMessage().isDurable();
   }
 
   @Override
   public long getDeliveryCount() {
-    return _msg.getDeliveryCount();
+    return getProtocolMessage().getDeliveryCount();
   }
 
   @Override
   public short getPriority() {
-    return _msg.getPriority();
+    return getProtocolMessage().getPriority();
   }
 
   @Override
   public boolean isFirstAcquirer() {
-    return _msg.isFirstAcquirer();
+    return getProtocolMessage().isFirstAcquirer();
   }
 
   @Override
   public long getTtl() {
-    return _msg.getTtl();
+    return getProtocolMessage().getTtl();
   }
 
   @Override
   public Object getMessageId() {
-    return _msg.getMessageId();
+    return getProtocolMessage().getMessageId();
   }
 
   @Override
   public long getGroupSequence() {
-    return _msg.getGroupSequence();
+    return getProtocolMessage().getGroupSequence();
   }
 
   @Override
   public String getReplyToGroupId() {
-    return _msg.getReplyToGroupId();
+    return getProtocolMessage().getReplyToGroupId();
   }
 
   @Override
   public long getCreationTime() {
-    return _msg.getCreationTime();
+    return getProtocolMessage().getCreationTime();
   }
 
   @Override
   public String getAddress() {
-    return _msg.getAddress();
+    return getProtocolMessage().getAddress();
   }
 
   @Override
   public byte[] getUserId() {
-    return _msg.getUserId();
+    return getProtocolMessage().getUserId();
   }
 
   @Override
   public String getReplyTo() {
-    return _msg.getReplyTo();
+    return getProtocolMessage().getReplyTo();
   }
 
   @Override
   public String getGroupId() {
-    return _msg.getGroupId();
+    return getProtocolMessage().getGroupId();
   }
 
   @Override
   public String getContentType() {
-    return _msg.getContentType();
+    return getProtocolMessage().getContentType();
   }
 
   @Override
   public long getExpiryTime() {
-    return _msg.getExpiryTime();
+    return getProtocolMessage().getExpiryTime();
   }
 
   @Override
   public Object getCorrelationId() {
-    return _msg.getCorrelationId();
+    return getProtocolMessage().getCorrelationId();
   }
 
   @Override
   public String getContentEncoding() {
-    return _msg.getContentEncoding();
+    return getProtocolMessage().getContentEncoding();
   }
 
   @Override
   public String getSubject() {
-    return _msg.getSubject();
+    return getProtocolMessage().getSubject();
   }
 
   @Override
   public Map getMessageAnnotations() {
-    return _msg.getMessageAnnotations().getValue();
+    MessageAnnotations section = getProtocolMessage().getMessageAnnotations();
+    return section == null ? null : section.getValue();
   }
 
   @Override
   public Map getDeliveryAnnotations() {
-    return _msg.getDeliveryAnnotations().getValue();
+    DeliveryAnnotations section = getProtocolMessage().getDeliveryAnnotations();
+    return section == null ? null : section.getValue();
   }
 
   @Override
   public Map getApplicationProperties() {
-    return _msg.getApplicationProperties().getValue();
+    ApplicationProperties section = getProtocolMessage().getApplicationProperties();
+    return section == null ? null : section.getValue();
   }
 
   @Override
   public Object getContent() {
     if (_content == null) {
-      if (_msg.getBody() != null) {
-        if (_msg.getBody() instanceof Data) {
-          _content = ((Data) _msg.getBody()).getValue().asByteBuffer();
+      if (getProtocolMessage().getBody() != null) {
+        if (getProtocolMessage().getBody() instanceof Data) {
+          _content = ((Data) getProtocolMessage().getBody()).getValue().asByteBuffer();
         } else {
-          _content = ((AmqpValue) _msg.getBody()).getValue();
+          _content = ((AmqpValue) getProtocolMessage().getBody()).getValue();
         }
       }
     }
@@ -166,117 +203,117 @@ class AmqpMessageImpl implements AmqpMessage {
 
   @Override
   public void setDurable(boolean durable) {
-    _msg.setDurable(durable);
+    getProtocolMessage().setDurable(durable);
   }
 
   @Override
   public void setTtl(long ttl) {
-    _msg.setTtl(ttl);
+    getProtocolMessage().setTtl(ttl);
   }
 
   @Override
   public void setDeliveryCount(long deliveryCount) {
-    _msg.setDeliveryCount(deliveryCount);
+    getProtocolMessage().setDeliveryCount(deliveryCount);
   }
 
   @Override
   public void setFirstAcquirer(boolean firstAcquirer) {
-    _msg.setFirstAcquirer(firstAcquirer);
+    getProtocolMessage().setFirstAcquirer(firstAcquirer);
   }
 
   @Override
   public void setPriority(short priority) {
-    _msg.setPriority(priority);
+    getProtocolMessage().setPriority(priority);
   }
 
   @Override
   public void setGroupSequence(long groupSequence) {
-    _msg.setGroupSequence(groupSequence);
+    getProtocolMessage().setGroupSequence(groupSequence);
   }
 
   @Override
   public void setUserId(byte[] userId) {
-    _msg.setUserId(userId);
+    getProtocolMessage().setUserId(userId);
   }
 
   @Override
   public void setCreationTime(long creationTime) {
-    _msg.setCreationTime(creationTime);
+    getProtocolMessage().setCreationTime(creationTime);
   }
 
   @Override
   public void setSubject(String subject) {
-    _msg.setSubject(subject);
+    getProtocolMessage().setSubject(subject);
   }
 
   @Override
   public void setGroupId(String groupId) {
-    _msg.setGroupId(groupId);
+    getProtocolMessage().setGroupId(groupId);
   }
 
   @Override
   public void setAddress(String to) {
-    _msg.setAddress(to);
+    getProtocolMessage().setAddress(to);
   }
 
   @Override
   public void setExpiryTime(long absoluteExpiryTime) {
-    _msg.setExpiryTime(absoluteExpiryTime);
+    getProtocolMessage().setExpiryTime(absoluteExpiryTime);
   }
 
   @Override
   public void setReplyToGroupId(String replyToGroupId) {
-    _msg.setReplyToGroupId(replyToGroupId);
+    getProtocolMessage().setReplyToGroupId(replyToGroupId);
   }
 
   @Override
   public void setContentEncoding(String contentEncoding) {
-    _msg.setContentEncoding(contentEncoding);
+    getProtocolMessage().setContentEncoding(contentEncoding);
   }
 
   @Override
   public void setContentType(String contentType) {
-    _msg.setContentType(contentType);
+    getProtocolMessage().setContentType(contentType);
   }
 
   @Override
   public void setReplyTo(String replyTo) {
-    _msg.setReplyTo(replyTo);
+    getProtocolMessage().setReplyTo(replyTo);
   }
 
   @Override
   public void setCorrelationId(Object correlationId) {
-    _msg.setCorrelationId(correlationId);
+    getProtocolMessage().setCorrelationId(correlationId);
   }
 
   @Override
   public void setMessageId(Object messageId) {
-    _msg.setMessageId(messageId);
+    getProtocolMessage().setMessageId(messageId);
   }
 
   @Override
   @SuppressWarnings("unchecked")
   public void setMessageAnnotations(Map map) {
-    _msg.setMessageAnnotations(new MessageAnnotations(map));
+    getProtocolMessage().setMessageAnnotations(new MessageAnnotations(map));
   }
 
   @Override
   @SuppressWarnings("unchecked")
   public void setDeliveryAnnotations(Map map) {
-    _msg.setDeliveryAnnotations(new DeliveryAnnotations(map));
+    getProtocolMessage().setDeliveryAnnotations(new DeliveryAnnotations(map));
   }
 
   @Override
   public void setApplicationProperties(Map map) {
-    _msg.setApplicationProperties(new ApplicationProperties(map));
+    getProtocolMessage().setApplicationProperties(new ApplicationProperties(map));
   }
 
   @Override
   public void setContent(Object content) {
     if (content instanceof byte[]) {
-      _msg.setBody(new Data(new Binary((byte[]) content)));
+      getProtocolMessage().setBody(new Data(new Binary((byte[]) content)));
     } else {
-      _msg.setBody(new AmqpValue(content));
+      getProtocolMessage().setBody(new AmqpValue(content));
     }
   }
 }
\ No newline at end of file
@@ -16,6 +16,7 @@
 package io.vertx.ext.amqp.impl.protocol;
 
 import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
@@ -33,6 +34,8 @@ import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 class ConnectionImpl implements Connection {
@@ -66,6 +69,27 @@ class ConnectionImpl implements Connection {
 
   private State _state = State.NEW;
 
+  // an AMQP frame without a body, sent as a heartbeat
+  private static final byte[] EMPTY_FRAME = { 0, 0, 0, 8, 2, 0, 0, 0 };
+
+  private Vertx _vertx;
+
+  private long _idleTimer = -1;
+
+  private volatile long _lastReceived;
+
+  private volatile long _lastWritten;
+
+  // when the connection started waiting on the peer, -1 if it is not
+  private long _waitingSince = -1;
+
+  // time in ms between the last data received and the connection failing
+  private long _detectionTime = -1;
+
+  private boolean _idleExpired = false;
+
+  private boolean _disconnected = false;
+
   private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
 
   private static final AtomicLong CONN_NUMBER_GENERATOR = new AtomicLong();
@@ -105,7 +129,9 @@ class ConnectionImpl implements Connection {
   void setNetSocket(NetSocket s) {
     synchronized (_lock) {
       _socket = s;
+      _lastReceived = now();
       _socket.handler(data -> {
+        _lastReceived = now();
         byte[] bytes = data.getBytes();
         int start = 0;
         while (start < bytes.length) {
@@ -123,22 +149,126 @@ class ConnectionImpl implements Connection {
       });
 
       _socket.endHandler(v -> {
+        if (_disconnected) {
+          // already failed by the idle timeout
+          return;
+        }
         if (getState() != State.CLOSED) {
           _logger.info(String.format(
             "Received EOF for connection {%s:%s}, prev-state = %s. Setting state to FAILED",
             _settings.getHost(), _settings.getPort(), getState()));
           setState(State.FAILED);
         }
-
-        for (Handler<ConnectionImpl> h : disconnectHandlers) {
-          h.handle(this);
-        }
+        disconnected();
       });
       _state = State.CONNECTED;
     }
     write();
   }
 
+  /**
+   * Once the peer has opened the connection, sends an empty frame whenever
+   * nothing was written for half the idle timeout, so that the peer sees the
+   * connection is alive. If detect is set, the connection fails once it has
+   * been waiting on the peer for the idle timeout without receiving
+   * anything, rather than when the socket is closed, which for a half-open
+   * connection may take minutes. proton-j does not advertise the timeout in
+   * the open frame, so a connection with nothing outstanding is never failed:
+   * a peer that does not send heartbeats may stay silent while idle.
+   */
+  void setIdleTimeout(Vertx vertx, long idleTimeout, boolean detect) {
+    _vertx = vertx;
+    _idleTimer = vertx.setPeriodic(Math.max(1, idleTimeout / 4), id -> checkIdle(idleTimeout, detect));
+  }
+
+  private void checkIdle(long idleTimeout, boolean detect) {
+    if (getState() != State.CONNECTED) {
+      cancelIdleTimer();
+      return;
+    }
+    long now = now();
+    if (detect) {
+      if (!isWaitingOnPeer()) {
+        _waitingSince = -1;
+      } else if (_waitingSince == -1) {
+        _waitingSince = now;
+      } else if (now - Math.max(_lastReceived, _waitingSince) >= idleTimeout) {
+        _logger.warn(String.format("Nothing received on connection {%s:%s} for %s ms. Setting state to FAILED",
+          _settings.getHost(), _settings.getPort(), now - _lastReceived));
+        _idleExpired = true;
+        setState(State.FAILED);
+        disconnected();
+        _socket.close();
+        return;
+      }
+    }
+    if (protonConnection.getRemoteState() == EndpointState.ACTIVE && now - _lastWritten >= idleTimeout / 2
+      && !_socket.writeQueueFull()) {
+      // whole frames are written to the socket, so this falls between two
+      _socket.write(Buffer.buffer(EMPTY_FRAME));
+      _lastWritten = now;
+    }
+  }
+
+  /*
+   * Whether something is expected from the peer: the answer to our open
+   * frame, the settlement of a delivery, or room to write.
+   */
+  private boolean isWaitingOnPeer() {
+    if (protonConnection.getRemoteState() != EndpointState.ACTIVE || _socket.writeQueueFull()) {
+      return true;
+    }
+    EnumSet<EndpointState> active = EnumSet.of(EndpointState.ACTIVE);
+    EnumSet<EndpointState> any = EnumSet.allOf(EndpointState.class);
+    for (Link link = protonConnection.linkHead(active, any); link != null; link = link.next(active, any)) {
+      if (link instanceof Sender && link.getUnsettled() > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void cancelIdleTimer() {
+    if (_idleTimer != -1) {
+      _vertx.cancelTimer(_idleTimer);
+      _idleTimer = -1;
+    }
+  }
+
+  private void disconnected() {
+    cancelIdleTimer();
+    if (_disconnected) {
+      return;
+    }
+    _disconnected = true;
+    if (getState() == State.FAILED) {
+      _detectionTime = now() - _lastReceived;
+    }
+    for (Handler<ConnectionImpl> h : disconnectHandlers) {
+      h.handle(this);
+    }
+  }
+
+  /**
+   * Time in ms it took to notice the connection had failed, counted from the
+   * last data received, or -1 if it has not failed.
+   */
+  long getDetectionTime() {
+    return _detectionTime;
+  }
+
+  /**
+   * Whether the connection failed because nothing was received for the idle
+   * timeout.
+   */
+  boolean isIdleExpired() {
+    return _idleExpired;
+  }
+
+  private static long now() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+  }
+
   void setState(State state) {
     synchronized (_lock) {
       _state = state;
@@ -340,7 +470,10 @@ class ConnectionImpl implements Connection {
     }
 
     if (_socket.writeQueueFull()) {
-      System.out.println("Socket buffers are full for " + this);
+      if (_logger.isDebugEnabled()) {
+        _logger.debug(String.format("Connection {%s:%s}, socket buffers are full. Waiting for drain",
+          _settings.getHost(), _settings.getPort()));
+      }
     } else {
       ByteBuffer b = _transport.getOutputBuffer();
       while (b.remaining() > 0) {
@@ -348,6 +481,7 @@ class ConnectionImpl implements Connection {
         byte[] data = new byte[b.remaining()];
         b.get(data);
         _socket.write(Buffer.buffer(data));
+        _lastWritten = now();
         _transport.outputConsumed();
         b = _transport.getOutputBuffer();
       }
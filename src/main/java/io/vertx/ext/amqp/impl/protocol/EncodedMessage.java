@@ -0,0 +1,176 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.protocol;
+
+import org.apache.qpid.proton.amqp.messaging.Properties;
+import org.apache.qpid.proton.amqp.messaging.Section;
+import org.apache.qpid.proton.codec.AMQPDefinedTypes;
+import org.apache.qpid.proton.codec.DecoderImpl;
+import org.apache.qpid.proton.codec.EncoderImpl;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.message.Message;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * An outgoing message encoded once so it can be sent to any number of
+ * destinations.
+ * <p/>
+ * The sections before the properties (header and annotations) and the
+ * sections after it (application properties, body and footer) are encoded up
+ * front. Only the properties section, which carries the 'to' address, is
+ * encoded per destination, and only if the application did not set 'to'
+ * itself. The message passed in is never modified.
+ */
+public class EncodedMessage {
+  private static final byte[] EMPTY = new byte[0];
+
+  private static final ThreadLocal<Codec> CODEC = ThreadLocal.withInitial(Codec::new);
+
+  private final byte[] _head;
+
+  private final byte[] _tail;
+
+  private final Properties _properties;
+
+  // Encoded properties, if they are the same for every destination.
+  private final byte[] _fixedProperties;
+
+  private final String _address;
+
+  public EncodedMessage(Message msg) {
+    Codec codec = CODEC.get();
+    _head = codec.encode(msg.getHeader(), msg.getDeliveryAnnotations(), msg.getMessageAnnotations());
+    _tail = codec.encode(msg.getApplicationProperties(), msg.getBody(), msg.getFooter());
+    _properties = msg.getProperties();
+    _address = msg.getAddress();
+    _fixedProperties = _address != null ? codec.encode(_properties) : null;
+  }
+
+  private EncodedMessage(byte[] encoded) {
+    _head = encoded;
+    _tail = EMPTY;
+    _properties = null;
+    _address = null;
+    _fixedProperties = EMPTY;
+  }
+
+  /**
+   * Wraps a message that is already encoded (e.g. a raw pass-through
+   * message). The bytes are sent as they are, the 'to' address is not
+   * rewritten.
+   */
+  public static EncodedMessage wrap(byte[] encoded) {
+    return new EncodedMessage(encoded);
+  }
+
+  /**
+   * The address set by the application, or null if the address of the
+   * destination link is used.
+   */
+  public String getAddress() {
+    return _address;
+  }
+
+  /**
+   * Writes the message to the current delivery of the sender, using the
+   * given address as 'to' unless the application set one.
+   */
+  public void writeTo(Sender sender, String address) {
+    // a single send, proton-j 0.8 fails to append to a delivery's buffer
+    byte[] encoded = _tail.length == 0 && _properties == null && _fixedProperties != null ? _head
+      : toByteArray(address);
+    sender.send(encoded, 0, encoded.length);
+  }
+
+  /**
+   * Returns the complete encoding of the message as it would be sent to the
+   * given address.
+   */
+  public byte[] toByteArray(String address) {
+    byte[] properties = properties(address);
+    byte[] out = new byte[_head.length + properties.length + _tail.length];
+    System.arraycopy(_head, 0, out, 0, _head.length);
+    System.arraycopy(properties, 0, out, _head.length, properties.length);
+    System.arraycopy(_tail, 0, out, _head.length + properties.length, _tail.length);
+    return out;
+  }
+
+  private byte[] properties(String address) {
+    if (_fixedProperties != null) {
+      return _fixedProperties;
+    } else if (address == null) {
+      return _properties == null ? EMPTY : CODEC.get().encode(_properties);
+    }
+    Properties p = copy(_properties);
+    p.setTo(address);
+    return CODEC.get().encode(p);
+  }
+
+  private static Properties copy(Properties in) {
+    Properties out = new Properties();
+    if (in != null) {
+      out.setMessageId(in.getMessageId());
+      out.setUserId(in.getUserId());
+      out.setTo(in.getTo());
+      out.setSubject(in.getSubject());
+      out.setReplyTo(in.getReplyTo());
+      out.setCorrelationId(in.getCorrelationId());
+      out.setContentType(in.getContentType());
+      out.setContentEncoding(in.getContentEncoding());
+      out.setAbsoluteExpiryTime(in.getAbsoluteExpiryTime());
+      out.setCreationTime(in.getCreationTime());
+      out.setGroupId(in.getGroupId());
+      out.setGroupSequence(in.getGroupSequence());
+      out.setReplyToGroupId(in.getReplyToGroupId());
+    }
+    return out;
+  }
+
+  // One encoder and scratch buffer per thread, the buffer grows as needed.
+  private static class Codec {
+    private final EncoderImpl _encoder;
+
+    private ByteBuffer _buffer = ByteBuffer.allocate(1024);
+
+    Codec() {
+      DecoderImpl decoder = new DecoderImpl();
+      _encoder = new EncoderImpl(decoder);
+      AMQPDefinedTypes.registerAllTypes(decoder, _encoder);
+    }
+
+    byte[] encode(Section... sections) {
+      while (true) {
+        _buffer.clear();
+        _encoder.setByteBuffer(_buffer);
+        try {
+          for (Section section : sections) {
+            if (section != null) {
+              _encoder.writeObject(section);
+            }
+          }
+          byte[] out = new byte[_buffer.position()];
+          _buffer.flip();
+          _buffer.get(out);
+          return out;
+        } catch (BufferOverflowException e) {
+          _buffer = ByteBuffer.allocate(_buffer.capacity() * 2);
+        }
+      }
+    }
+  }
+}
@@ -15,6 +15,8 @@
  */
 package io.vertx.ext.amqp.impl.protocol;
 
+import io.vertx.ext.amqp.AmqpMessageView;
+
 public class InboundMessage extends AmqpMessageImpl {
   private String _ssnID;
 
@@ -24,12 +26,25 @@ public class InboundMessage extends AmqpMessageImpl {
 
   private boolean _preSettled = false;
 
+  // the link the message arrived on, null if not known
+  private IncomingLinkImpl _link;
+
   InboundMessage(String ssnID, byte[] deliveryTag, long sequence, boolean preSettled,
                  org.apache.qpid.proton.message.Message msg) {
     super(msg);
     _ssnID = ssnID;
     _deliveryTag = deliveryTag;
     _sequence = sequence;
+    _preSettled = preSettled;
+  }
+
+  InboundMessage(IncomingLinkImpl link, byte[] deliveryTag, long sequence, boolean preSettled, byte[] encoded) {
+    super(encoded);
+    _link = link;
+    _ssnID = link.getSession().getID();
+    _deliveryTag = deliveryTag;
+    _sequence = sequence;
+    _preSettled = preSettled;
   }
 
   @Override
@@ -45,6 +60,10 @@ public class InboundMessage extends AmqpMessageImpl {
     return _deliveryTag;
   }
 
+  IncomingLinkImpl getLink() {
+    return _link;
+  }
+
   long getSequence() {
     return _sequence;
   }
@@ -52,4 +71,12 @@ public class InboundMessage extends AmqpMessageImpl {
   public boolean isPreSettled() {
     return _preSettled;
   }
+
+  /**
+   * Returns a typed view of the message, reusing the encoded and/or decoded
+   * form, whichever is available.
+   */
+  public AmqpMessageView toView(String linkRef) {
+    return new AmqpMessageView(getMsgRef(), linkRef, getEncodedIfPresent(), getDecodedIfPresent());
+  }
 }
\ No newline at end of file
@@ -24,8 +24,6 @@ import org.apache.qpid.proton.engine.Receiver;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static io.vertx.ext.amqp.impl.util.Functions.print;
-
 class IncomingLinkImpl extends BaseLink implements IncomingLink {
   private static int DEFAULT_CREDITS = 1;
 
@@ -37,6 +35,9 @@ class IncomingLinkImpl extends BaseLink implements IncomingLink {
 
   private AtomicInteger _unsettled = new AtomicInteger(0);
 
+  // messages are settled by the bridge, without a msg-ref
+  private boolean _autoSettle = false;
+
   IncomingLinkImpl(SessionImpl ssn, String address, Link link, ReliabilityMode receiverMode, CreditMode creditMode) {
     super(ssn, address, link);
     _creditMode = creditMode;
@@ -59,12 +60,17 @@ class IncomingLinkImpl extends BaseLink implements IncomingLink {
       // receiver.setDrain(true);
     }
     receiver.flow(credits);
-    /*print("\n==============================");
-    print("\nSetting credits=%s, for link '%s'", credits, this.getName());
-    print("\n==============================");*/
     _ssn.getConnection().write();
   }
 
+  boolean isAutoSettle() {
+    return _autoSettle;
+  }
+
+  void setAutoSettle(boolean autoSettle) {
+    _autoSettle = autoSettle;
+  }
+
   void decrementUnsettledCount() {
     _unsettled.decrementAndGet();
   }
@@ -95,6 +101,13 @@ class IncomingLinkImpl extends BaseLink implements IncomingLink {
     return _unsettled.get();
   }
 
+  /**
+   * The credit last set on the link.
+   */
+  int getCredits() {
+    return _credits;
+  }
+
   @Override
   public void setCredits(int credits) throws MessagingException {
     checkClosed();
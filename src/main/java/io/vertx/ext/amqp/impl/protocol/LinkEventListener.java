@@ -33,7 +33,19 @@ public interface LinkEventListener {
 
   void message(String id, String linkAddress, ReliabilityMode reliability, InboundMessage msg);
 
+  /*
+   * A message received on the reply link of an outbound connection, see
+   * LinkManager.getReplyAddress
+   */
+  void rpcReply(String linkId, InboundMessage msg);
+
   void deliveryUpdate(String linkRef, String msgRef, DeliveryState state, MessageDisposition disp);
 
   void outgoingLinkCreditGiven(String id, int credits);
+
+  /*
+   * The message was neither settled nor released within the msg-ref timeout,
+   * it has been released and the msg-ref is no longer valid.
+   */
+  void msgRefExpired(String linkId, String msgRef);
 }
\ No newline at end of file
@@ -15,6 +15,7 @@
  */
 package io.vertx.ext.amqp.impl.protocol;
 
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.net.NetClient;
@@ -24,15 +25,25 @@ import io.vertx.core.net.NetServerOptions;
 import io.vertx.ext.amqp.*;
 import io.vertx.ext.amqp.impl.*;
 import io.vertx.ext.amqp.impl.protocol.ConnectionImpl.State;
+import io.vertx.ext.amqp.impl.routing.AddressLoad;
+import io.vertx.ext.amqp.impl.util.Backoff;
+import io.vertx.ext.amqp.impl.util.ExpiringMap;
 import io.vertx.ext.amqp.impl.util.LogManager;
+import io.vertx.ext.amqp.impl.util.Metrics;
+import io.vertx.ext.amqp.impl.util.TimerWheel;
 import org.apache.qpid.proton.message.Message;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
 import static io.vertx.ext.amqp.impl.protocol.SessionImpl.SETTLE;
 import static io.vertx.ext.amqp.impl.util.Functions.format;
@@ -41,11 +52,13 @@ import static io.vertx.ext.amqp.impl.util.Functions.format;
  * The goal is to completely isolate AMQP Link management away from the Service impl.
  * LinkManager should hide all Links and only allow the service to interact via the link id (link-name in AMQP) and the endpoint address.
  */
-public class LinkManager extends AbstractAmqpEventListener {
+public class LinkManager extends AbstractAmqpEventListener implements AddressLoad {
   private static final LogManager LOG = LogManager.get("LINK_MGT:", LinkManager.class);
 
   private static final OutgoingLinkOptions DEFAULT_OUTGOING_LINK_OPTIONS = new OutgoingLinkOptions();
 
+  private static final int REPLY_LINK_CREDIT = 100;
+
   protected final List<ManagedConnection> _outboundConnections = new CopyOnWriteArrayList<ManagedConnection>();
 
   protected final List<ManagedConnection> _inboundConnections = new CopyOnWriteArrayList<ManagedConnection>();
@@ -58,7 +71,14 @@ public class LinkManager extends AbstractAmqpEventListener {
 
   protected final Map<String, String> _sharedOutgoingLinks = new ConcurrentHashMap<String, String>();
 
-  protected final Map<String, ManagedSession> _msgRefToSsnMap = new ConcurrentHashMap<String, ManagedSession>();
+  // unsettled inbound messages, by msg-ref
+  protected final ExpiringMap<String, IncomingLinkImpl> _msgRefToLinkMap;
+
+  // dynamic-source receivers for RPC replies, one per outbound connection
+  protected final Map<ConnectionImpl, IncomingLinkImpl> _replyLinks = new ConcurrentHashMap<ConnectionImpl, IncomingLinkImpl>();
+
+  // links no longer sent to, closed once their deliveries are settled. Link id -> drain timer
+  protected final Map<String, Long> _drainingLinks = new ConcurrentHashMap<String, Long>();
 
   protected final NetClient _client;
 
@@ -70,14 +90,38 @@ public class LinkManager extends AbstractAmqpEventListener {
 
   protected final LinkEventListener _listener;
 
+  // options of the links opened by sendViaAddress
+  private final OutgoingLinkOptions _sharedLinkOptions = new OutgoingLinkOptions();
+
+  private volatile boolean _stopped = false;
+
+  private final LongAdder _failedConnections = new LongAdder();
+
+  private final LongAdder _idleExpiredConnections = new LongAdder();
+
+  private volatile long _lastDetectionTime = 0;
+
+  private volatile long _maxDetectionTime = 0;
+
+  private final long _startTime = now();
+
+  // time in ms from the start to the first message sent, -1 until then
+  private volatile long _firstSendTime = -1;
+
+  private WarmUp _warmUp;
+
   private Map<String, ConnectionSettings> URL_CACHE;
 
   @SuppressWarnings("serial")
-  public LinkManager(Vertx vertx, AmqpServiceConfig config, AMQPServiceImpl parent) {
+  public LinkManager(Vertx vertx, AmqpServiceConfig config, AMQPServiceImpl parent, TimerWheel timer) {
     DEFAULT_OUTGOING_LINK_OPTIONS.setReliability(ReliabilityMode.AT_LEAST_ONCE);
     _vertx = vertx;
     _config = config;
     _listener = parent;
+    _sharedLinkOptions.setReliability(ReliabilityMode.AT_LEAST_ONCE);
+    _sharedLinkOptions.setRecoveryOptions(config.getRetryOptions());
+    _msgRefToLinkMap = new ExpiringMap<String, IncomingLinkImpl>(timer, config.getMsgRefTimeout(),
+      this::expireMsgRef);
     _client = _vertx.createNetClient(new NetClientOptions());
 
     URL_CACHE = Collections.synchronizedMap(new LinkedHashMap<String, ConnectionSettings>(config
@@ -99,6 +143,10 @@ public class LinkManager extends AbstractAmqpEventListener {
       ManagedConnection connection = new ManagedConnection(settings, this, true);
       connection.setNetSocket(sock);
       connection.write();
+      if (_config.getIdleTimeout() > 0) {
+        // keeps the peer's idle timeout from expiring, it is up to the peer to detect failures
+        connection.setIdleTimeout(_vertx, _config.getIdleTimeout(), false);
+      }
       _inboundConnections.add(connection);
       connection.addDisconnectHandler(c -> {
         _inboundConnections.remove(c);
@@ -119,6 +167,17 @@ public class LinkManager extends AbstractAmqpEventListener {
 
   public void stop() {
     LOG.fatal("Stopping Link Manager : Closing all outgoing and incomming connections");
+    _stopped = true;
+    for (Outgoing outgoing : _outgoingLinks.values()) {
+      outgoing.cancelRetry();
+    }
+    for (Incoming incoming : _incomingLinks.values()) {
+      incoming.cancelRetry();
+    }
+    for (Long timer : _drainingLinks.values()) {
+      _vertx.cancelTimer(timer);
+    }
+    _drainingLinks.clear();
     for (Connection con : _outboundConnections) {
       con.close();
     }
@@ -140,12 +199,12 @@ public class LinkManager extends AbstractAmqpEventListener {
     }
   }
 
-  // TODO handle reconnection.
   public ManagedConnection getConnection(final ConnectionSettings settings) throws MessagingException {
     for (ManagedConnection con : _outboundConnections) {
       if (con.getSettings().getHost().equals(settings.getHost())
         && con.getSettings().getPort() == settings.getPort()) {
-        if (con.getState() == State.CONNECTED) {
+        // links created while connecting are attached once connected
+        if (con.getState() == State.CONNECTED || con.getState() == State.NEW) {
           return con;
         } else {
           LOG.info("Attempting re-connection to AMQP peer at %s:%s", settings.getHost(), settings.getPort());
@@ -159,16 +218,17 @@ public class LinkManager extends AbstractAmqpEventListener {
       if (result.succeeded()) {
         connection.setNetSocket(result.result());
         connection.write();
-        connection.addDisconnectHandler(c -> {
-          _outboundConnections.remove(c);
-        });
+        if (_config.getIdleTimeout() > 0) {
+          connection.setIdleTimeout(_vertx, _config.getIdleTimeout(), true);
+        }
+        connection.addDisconnectHandler(c -> connectionFailed(connection));
         LOG.info("Connected to AMQP peer at %s:%s", connection.getSettings().getHost(), connection
           .getSettings().getPort());
       } else {
         LOG.warn("Error {%s}, when connecting to AMQP peer at %s:%s", result.cause(), connection.getSettings()
           .getHost(), connection.getSettings().getPort());
         connection.setState(State.FAILED);
-        _outboundConnections.remove(connection);
+        connectionFailed(connection);
       }
     });
 
@@ -179,8 +239,15 @@ public class LinkManager extends AbstractAmqpEventListener {
 
   // Validate if the link is connected. If not use RecoveryOptions to
   // determine course of action.
-  private <T extends BaseLink> T validateLink(T link, RetryOptions options) throws MessagingException {
+  private <T extends BaseLink> T validateLink(Managed<T> managed) throws MessagingException {
+    T link = managed._link;
+    RetryOptions options = managed.retryOptions();
     link.checkClosed();
+    // Until the peer has re-attached a failed link, its connection may be NEW
+    // again. Anything sent in the meantime would only pile up in memory.
+    if (managed._attempts > 0) {
+      throw new MessagingException("Link has failed. Retry in progress", ErrorCode.LINK_RETRY_IN_PROGRESS);
+    }
     switch (link.getConnection().getState()) {
       case CONNECTED:
         return link;
@@ -199,8 +266,7 @@ public class LinkManager extends AbstractAmqpEventListener {
           case NO_RETRY:
             throw new MessagingException("Link has failed. No retry instructions specified", ErrorCode.LINK_FAILED);
           default:
-            // TODO initiate failover
-            return null;
+            throw new MessagingException("Link has failed. Retry in progress", ErrorCode.LINK_RETRY_IN_PROGRESS);
         }
       default:
         throw new MessagingException("Invalid link state", ErrorCode.INTERNAL_ERROR);
@@ -217,7 +283,7 @@ public class LinkManager extends AbstractAmqpEventListener {
       if (_outgoingLinks.containsKey(id)) {
         try {
           Outgoing outgoing = _outgoingLinks.get(id);
-          validateLink(outgoing._link, outgoing._options.getRecoveryOptions());
+          validateLink(outgoing);
           return outgoing._link;
         } catch (MessagingException e) {
           throw e;
@@ -225,7 +291,7 @@ public class LinkManager extends AbstractAmqpEventListener {
       }
     }
     // Either it doesn't exist, or the link was canned.
-    OutgoingLinkImpl link = createOutgoingLinkInternal(amqpAddress, DEFAULT_OUTGOING_LINK_OPTIONS);
+    OutgoingLinkImpl link = createOutgoingLinkInternal(amqpAddress, _sharedLinkOptions);
     _sharedOutgoingLinks.put(amqpAddress, link.getName());
     return link;
   }
@@ -250,21 +316,61 @@ public class LinkManager extends AbstractAmqpEventListener {
     OutgoingLinkImpl link = con.createOutboundLink(settings.getNode(), options.getReliability());
     LOG.info("Created outgoing link to AMQP peer [address=%s @ %s:%s, options=%s] ", settings.getNode(),
       settings.getHost(), settings.getPort(), options);
-    _outgoingLinks.put(link.getName(), new Outgoing(link, options));
+    _outgoingLinks.put(link.getName(), new Outgoing(link, options, amqpAddress));
     return link;
   }
 
   public void sendViaAddress(String amqpAddress, Message outMsg, JsonObject inMsg) throws MessagingException {
-    send(getSharedOutgoingLink(amqpAddress), DEFAULT_OUTGOING_LINK_OPTIONS, outMsg, inMsg);
+    sendViaAddress(amqpAddress, new EncodedMessage(outMsg), inMsg);
+  }
+
+  /**
+   * Use this variant when sending the same message to several addresses, so
+   * that it is only encoded once.
+   */
+  public void sendViaAddress(String amqpAddress, EncodedMessage outMsg, JsonObject inMsg) throws MessagingException {
+    send(getSharedOutgoingLink(amqpAddress), _sharedLinkOptions, outMsg, inMsg);
   }
 
   public void sendViaLink(String linkId, Message outMsg, JsonObject inMsg) throws MessagingException {
+    sendViaLink(linkId, new EncodedMessage(outMsg), inMsg);
+  }
+
+  public void sendViaLink(String linkId, EncodedMessage outMsg, JsonObject inMsg) throws MessagingException {
     Outgoing outgoing = _outgoingLinks.get(linkId);
-    send(outgoing._link, outgoing._options, outMsg, inMsg);
+    if (outgoing == null) {
+      throw new MessagingException("Outgoing link ref doesn't match any AMQP links", ErrorCode.INVALID_LINK_REF);
+    }
+    send(validateLink(outgoing), outgoing._options, outMsg, inMsg);
   }
 
-  private void send(OutgoingLinkImpl link, OutgoingLinkOptions options, Message outMsg, JsonObject inMsg)
-    throws MessagingException {
+  /**
+   * Returns the credit left on the shared outgoing link to the address, or
+   * {@link AddressLoad#NOT_OPEN} if there is no such link yet.
+   */
+  @Override
+  public int getCredit(String amqpAddress) {
+    OutgoingLinkImpl link = findSharedOutgoingLink(amqpAddress);
+    return link == null ? NOT_OPEN : link.getAvailableCredit();
+  }
+
+  @Override
+  public int getUnsettled(String amqpAddress) {
+    OutgoingLinkImpl link = findSharedOutgoingLink(amqpAddress);
+    return link == null ? 0 : link.getUnsettledCount();
+  }
+
+  private OutgoingLinkImpl findSharedOutgoingLink(String amqpAddress) {
+    String id = _sharedOutgoingLinks.get(amqpAddress);
+    Outgoing outgoing = id == null ? null : _outgoingLinks.get(id);
+    return outgoing == null ? null : outgoing._link;
+  }
+
+  private void send(OutgoingLinkImpl link, OutgoingLinkOptions options, EncodedMessage outMsg,
+                    JsonObject inMsg) throws MessagingException {
+    if (_firstSendTime == -1) {
+      _firstSendTime = now() - _startTime;
+    }
     if (options.getReliability() == ReliabilityMode.AT_LEAST_ONCE
       && inMsg.containsKey(AMQPService.OUTGOING_MSG_REF)) {
       TrackerImpl tracker = link.send(outMsg);
@@ -274,6 +380,44 @@ public class LinkManager extends AbstractAmqpEventListener {
     }
   }
 
+  /**
+   * Returns the address of the reply link on the connection used to reach
+   * the AMQP address, or null if the peer has not assigned it yet. The link
+   * is a receiver with a dynamic source, created on first use, and messages
+   * arriving on it are passed to {@link LinkEventListener#rpcReply}.
+   */
+  public String getReplyAddress(String amqpAddress) throws MessagingException {
+    return getReplyAddress(getConnection(getConnectionSettings(amqpAddress)));
+  }
+
+  /**
+   * Returns the address of the reply link on the connection of the outgoing
+   * link, or null. Links created by peers connected to the bridge have none.
+   */
+  public String getReplyAddressForLink(String linkId) throws MessagingException {
+    Outgoing outgoing = _outgoingLinks.get(linkId);
+    if (outgoing == null || outgoing._link.getConnection().isInbound()) {
+      return null;
+    }
+    return getReplyAddress((ManagedConnection) outgoing._link.getConnection());
+  }
+
+  private String getReplyAddress(ManagedConnection con) throws MessagingException {
+    IncomingLinkImpl link = _replyLinks.get(con);
+    if (link == null || link._closed.get()) {
+      link = con.createInboundLink(null, ReliabilityMode.UNRELIABLE, CreditMode.AUTO);
+      link.setCredits(REPLY_LINK_CREDIT);
+      _replyLinks.put(con, link);
+      LOG.info("Created reply link to AMQP peer %s:%s", con.getSettings().getHost(), con.getSettings().getPort());
+    }
+    // the local source has no address, it is assigned by the peer
+    return link.getProtocolLink().getRemoteSource() == null ? null : link.getSource();
+  }
+
+  private boolean isReplyLink(IncomingLinkImpl link) {
+    return _replyLinks.get(link.getConnection()) == link;
+  }
+
   public void closeOutgoingLink(String linkId) throws MessagingException {
     if (_outgoingLinks.containsKey(linkId)) {
       _outgoingLinks.remove(linkId)._link.close();
@@ -288,7 +432,7 @@ public class LinkManager extends AbstractAmqpEventListener {
     if (_incomingLinks.containsKey(linkId)) {
       try {
         Incoming incoming = _incomingLinks.get(linkId);
-        validateLink(incoming._link, incoming._options.getRecoveryOptions());
+        validateLink(incoming);
         incoming._link.setCredits(credits);
       } catch (MessagingException e) {
         throw e;
@@ -298,9 +442,138 @@ public class LinkManager extends AbstractAmqpEventListener {
     }
   }
 
+  /*
+   * Releases a message the application did not settle in time, so the peer
+   * can redeliver it.
+   */
+  private void expireMsgRef(String msgRef, IncomingLinkImpl link) {
+    try {
+      ManagedSession ssn = (ManagedSession) link.getSession();
+      ssn.checkClosed();
+      ssn.disposition(msgRef, MessageDisposition.RELEASED, SETTLE);
+    } catch (MessagingException e) {
+      // the link is gone, and the message with it
+    }
+    if (link.getReceiverMode() != ReliabilityMode.UNRELIABLE) {
+      LOG.warn("Message %s received on link %s was not settled in time, released it", msgRef, link.getName());
+      _listener.msgRefExpired(link.getName(), msgRef);
+    }
+  }
+
+  public void registerMetrics(Metrics metrics) {
+    metrics.gauge("link-manager.msg-refs.size", () -> _msgRefToLinkMap.size());
+    metrics.gauge("link-manager.reply-links.size", () -> _replyLinks.size());
+    metrics.gauge("link-manager.connections.failed", () -> _failedConnections.sum());
+    metrics.gauge("link-manager.connections.idle-expired", () -> _idleExpiredConnections.sum());
+    metrics.gauge("link-manager.connections.detection-ms.last", () -> _lastDetectionTime);
+    metrics.gauge("link-manager.connections.detection-ms.max", () -> _maxDetectionTime);
+    metrics.gauge("link-manager.first-send-ms", () -> _firstSendTime);
+    metrics.gauge("link-manager.warm-up.ms", () -> _warmUp == null ? -1 : _warmUp._time);
+    metrics.gauge("link-manager.warm-up.unattached", () -> _warmUp == null ? 0 : _warmUp._pending.size());
+  }
+
+  /**
+   * Opens the shared outgoing links to the AMQP addresses, all at once, and
+   * calls the handler with the addresses whose link is not attached when
+   * they all are or when the timeout, which must be positive, expires.
+   */
+  public void warmUp(Collection<String> amqpAddresses, long timeout, Handler<List<String>> done) {
+    WarmUp warmUp = new WarmUp(done);
+    _warmUp = warmUp;
+    for (String amqpAddress : amqpAddresses) {
+      try {
+        warmUp._pending.put(getSharedOutgoingLink(amqpAddress).getName(), amqpAddress);
+      } catch (MessagingException e) {
+        LOG.warn(e, "Error opening link to %s during warm-up", amqpAddress);
+      }
+    }
+    LOG.info("Warming up links to %s", warmUp._pending.values());
+    if (warmUp._pending.isEmpty()) {
+      warmUp.finish();
+    } else {
+      warmUp._timer = _vertx.setTimer(timeout, id -> warmUp.finish());
+    }
+  }
+
+  /**
+   * Closes the links opened by sendViaAddress to the AMQP addresses matching
+   * the predicate, e.g. once they are owned by another node. New messages no
+   * longer go to these links. A link with unsettled deliveries is closed once
+   * they are settled, or after the msg-ref timeout, failing the rest.
+   */
+  public void closeSharedOutgoingLinks(Predicate<String> addresses) {
+    for (Map.Entry<String, String> entry : _sharedOutgoingLinks.entrySet()) {
+      String id = entry.getValue();
+      if (addresses.test(entry.getKey()) && _sharedOutgoingLinks.remove(entry.getKey(), id)) {
+        if (_warmUp != null) {
+          // the warm-up no longer waits for it
+          _warmUp.done(id);
+        }
+        Outgoing outgoing = _outgoingLinks.get(id);
+        if (outgoing != null && outgoing._link.hasInFlight()) {
+          _drainingLinks.put(id, _vertx.setTimer(_config.getMsgRefTimeout(), t -> drained(id, true)));
+          LOG.info("Draining link to %s, the address is now owned elsewhere", entry.getKey());
+        } else {
+          closeDrainedLink(id);
+          LOG.info("Closed link to %s, the address is now owned elsewhere", entry.getKey());
+        }
+      }
+    }
+  }
+
+  private void drained(String id, boolean expired) {
+    Long timer = _drainingLinks.remove(id);
+    if (timer == null) {
+      return;
+    }
+    Outgoing outgoing = _outgoingLinks.get(id);
+    if (expired) {
+      if (outgoing != null) {
+        LOG.warn("Deliveries on link %s not settled in time, failing them", id);
+        failInFlight(id, outgoing._link);
+      }
+    } else {
+      _vertx.cancelTimer(timer);
+    }
+    closeDrainedLink(id);
+  }
+
+  private void closeDrainedLink(String id) {
+    try {
+      closeOutgoingLink(id);
+    } catch (MessagingException e) {
+      LOG.warn(e, "Error closing outgoing link %s", id);
+    }
+  }
+
+  // Reports the deliveries not settled yet on the link as failed.
+  private void failInFlight(String id, OutgoingLinkImpl link) {
+    for (TrackerImpl tracker : link.failInFlight()) {
+      if (tracker.getContext() != null) {
+        _listener.deliveryUpdate(id, (String) tracker.getContext(), tracker.getState(), tracker
+          .getDisposition());
+      }
+    }
+  }
+
+  /**
+   * Whether the incoming or outgoing link was created by this link manager.
+   */
+  public boolean hasLink(String linkId) {
+    return _incomingLinks.containsKey(linkId) || _outgoingLinks.containsKey(linkId);
+  }
+
+  /**
+   * Whether the unsettled message was received by this link manager.
+   */
+  public boolean hasMsgRef(String msgRef) {
+    return _msgRefToLinkMap.containsKey(msgRef);
+  }
+
   public void settleDelivery(String msgRef, MessageDisposition disposition) throws MessagingException {
-    if (_msgRefToSsnMap.containsKey(msgRef)) {
-      ManagedSession ssn = _msgRefToSsnMap.remove(msgRef);
+    IncomingLinkImpl link = _msgRefToLinkMap.remove(msgRef);
+    if (link != null) {
+      ManagedSession ssn = (ManagedSession) link.getSession();
       ssn.checkClosed();
       ssn.disposition(msgRef, disposition, SETTLE);
     } else {
@@ -310,6 +583,22 @@ public class LinkManager extends AbstractAmqpEventListener {
     }
   }
 
+  /**
+   * Settles a message received by the bridge. Messages received on an
+   * auto-settle link have no msg-ref, they are settled through the link they
+   * arrived on.
+   */
+  public void settle(InboundMessage msg, MessageDisposition disposition) throws MessagingException {
+    IncomingLinkImpl link = msg.getLink();
+    if (link == null || !link.isAutoSettle()) {
+      settleDelivery(msg.getMsgRef(), disposition);
+      return;
+    }
+    SessionImpl ssn = link.getSession();
+    ssn.checkClosed();
+    ssn.disposition(msg.getSequence(), disposition, SETTLE);
+  }
+
   // Method for explicitly creating an inbound link
   public String createIncomingLink(String amqpAddress, IncomingLinkOptions options) throws MessagingException {
     final ConnectionSettings settings = getConnectionSettings(amqpAddress);
@@ -319,7 +608,8 @@ public class LinkManager extends AbstractAmqpEventListener {
     if (options.getPrefetch() > 0) {
       link.setCredits(options.getPrefetch());
     }
-    _incomingLinks.put(link.getName(), new Incoming(link, options));
+    link.setAutoSettle(options.isAutoSettle() && options.getReliability() == ReliabilityMode.AT_LEAST_ONCE);
+    _incomingLinks.put(link.getName(), new Incoming(link, options, amqpAddress));
     LOG.info("Created incoming link to AMQP peer [address=%s @ %s:%s, options=%s] ", settings.getNode(),
       settings.getHost(), settings.getPort(), options);
     return link.getName();
@@ -342,8 +632,17 @@ public class LinkManager extends AbstractAmqpEventListener {
       id = address;
     }
     if (inbound) {
-      _outgoingLinks.put(id, new Outgoing(link, DEFAULT_OUTGOING_LINK_OPTIONS));
+      _outgoingLinks.put(id, new Outgoing(link, DEFAULT_OUTGOING_LINK_OPTIONS, null));
       LOG.info("Accepted an outgoing link (subscription) from AMQP peer %s", address);
+    } else {
+      boolean reattached = reattached(_outgoingLinks.get(id), link);
+      if (_warmUp != null) {
+        // a warm-up link may only attach after its connection was retried
+        _warmUp.done(id);
+      }
+      if (reattached) {
+        return;
+      }
     }
     _listener.outgoingLinkReady(id, address, inbound);
   }
@@ -356,18 +655,32 @@ public class LinkManager extends AbstractAmqpEventListener {
     if (id == null || id.trim().isEmpty()) {
       id = address;
     }
+    Outgoing outgoing = _outgoingLinks.get(id);
+    if (outgoing != null && outgoing._link != link) {
+      // a link lost with its connection, already replaced
+      return;
+    }
     _outgoingLinks.remove(id);
     _listener.outgoingLinkFinal(id, address, inbound);
   }
 
   @Override
   public void onIncomingLinkClosed(IncomingLinkImpl link) {
+    if (isReplyLink(link)) {
+      _replyLinks.remove(link.getConnection());
+      LOG.info("Reply link %s closed", link.getSource());
+      return;
+    }
     boolean inbound = link.getConnection().isInbound();
     String id = link.getName();
     String address = link.getTarget();
     if (id == null || id.trim().isEmpty()) {
       id = address;
     }
+    Incoming incoming = _incomingLinks.get(id);
+    if (incoming != null && incoming._link != link) {
+      return;
+    }
     // TODO if it's an outbound connection, then we need to notify an error
     if (!inbound) {
       _incomingLinks.remove(id);
@@ -377,20 +690,18 @@ public class LinkManager extends AbstractAmqpEventListener {
 
   @Override
   public void onIncomingLinkOpen(IncomingLinkImpl link) {
+    if (isReplyLink(link)) {
+      LOG.info("Reply link ready, replies are sent to %s", link.getSource());
+      return;
+    }
     boolean inbound = link.getConnection().isInbound();
     String id = link.getName();
     String address = link.getTarget();
-        /*
-        print("Local Source %s ", link.getProtocolLink().getSource() == null ? "null" : link.getProtocolLink().getSource().getAddress());
-        print("Remote Source %s ", link.getProtocolLink().getRemoteSource() == null ? "null" : link.getProtocolLink().getRemoteSource().getAddress());
-        print("Local Target %s ", link.getProtocolLink().getTarget() == null ? "null" : link.getProtocolLink().getTarget().getAddress());
-        print("Remote Target %s ", link.getProtocolLink().getRemoteTarget() == null ? "null" : link.getProtocolLink().getRemoteTarget().getAddress());
-        */
     if (id == null || id.trim().isEmpty()) {
       id = address;
     }
     if (inbound) {
-      _incomingLinks.put(id, new Incoming(link, new IncomingLinkOptions()));
+      _incomingLinks.put(id, new Incoming(link, new IncomingLinkOptions(), null));
             /*
              * try { link.setCredits(_config.getDefaultLinkCredit()); } catch
              * (MessagingException e) { _logger.warn( format(
@@ -398,6 +709,8 @@ public class LinkManager extends AbstractAmqpEventListener {
              * , address), e); }
              */
 
+    } else if (reattached(_incomingLinks.get(id), link)) {
+      return;
     }
     LOG.debug("incomingLinkReady inbound=%s, id=%s , address=%s", inbound, id, address);
     _listener.incomingLinkReady(id, address, inbound);
@@ -405,9 +718,17 @@ public class LinkManager extends AbstractAmqpEventListener {
 
   @Override
   public void onMessage(IncomingLinkImpl link, InboundMessage msg) {
-    ManagedSession ssn = (ManagedSession) link.getSession();
-    ssn.addMsgRef(msg.getMsgRef(), msg.getSequence());
-    _msgRefToSsnMap.put(msg.getMsgRef(), ssn);
+    if (isReplyLink(link)) {
+      // replies are pre-settled, keep the credit window open
+      link.issueCredits(1, false);
+      _listener.rpcReply(link.getName(), msg);
+      return;
+    }
+    if (!link.isAutoSettle()) {
+      ManagedSession ssn = (ManagedSession) link.getSession();
+      ssn.addMsgRef(msg.getMsgRef(), msg.getSequence());
+      _msgRefToLinkMap.put(msg.getMsgRef(), link);
+    }
     _listener.message(link.getName(), link.getAddress(), link.getReceiverMode(), msg);
   }
 
@@ -420,43 +741,278 @@ public class LinkManager extends AbstractAmqpEventListener {
   public void onSettled(OutgoingLinkImpl link, TrackerImpl tracker) {
     _listener.deliveryUpdate(link.getName(), (String) tracker.getContext(), tracker.getState(),
       tracker.getDisposition());
+    if (!link.hasInFlight() && _drainingLinks.containsKey(link.getName())) {
+      drained(link.getName(), false);
+    }
   }
 
   // ---------- / Event Handler -----------------------
 
+  // ---------- Recovery -----------------------------
+
+  /*
+   * Called when an outbound connection is lost, or could not be opened. The
+   * links created over it are re-attached on a new connection according to
+   * their retry options.
+   */
+  private void connectionFailed(ManagedConnection con) {
+    _outboundConnections.remove(con);
+    _replyLinks.remove(con);
+    long detectionTime = con.getDetectionTime();
+    if (detectionTime >= 0) {
+      _failedConnections.increment();
+      if (con.isIdleExpired()) {
+        _idleExpiredConnections.increment();
+      }
+      _lastDetectionTime = detectionTime;
+      _maxDetectionTime = Math.max(_maxDetectionTime, detectionTime);
+    }
+    if (_stopped) {
+      return;
+    }
+    for (Outgoing outgoing : _outgoingLinks.values()) {
+      if (outgoing._link.getConnection() == con) {
+        linkFailed(outgoing);
+      }
+    }
+    for (Incoming incoming : _incomingLinks.values()) {
+      if (incoming._link.getConnection() == con) {
+        linkFailed(incoming);
+      }
+    }
+  }
+
+  private void linkFailed(Managed<?> managed) {
+    RetryOptions options = managed.retryOptions();
+    String id = managed._link.getName();
+    switch (options.getRetryPolicy()) {
+      case NO_RETRY:
+        // left in place, validateLink reports the failure
+        LOG.warn("Link %s to %s failed, no retry instructions specified", id, managed._amqpAddress);
+        return;
+      case RETRY_UPTO_MAX_LIMIT:
+        if (managed._attempts >= options.getMaxRetryLimit()) {
+          LOG.warn("Link %s to %s failed, giving up after %s attempts", id, managed._amqpAddress, managed._attempts);
+          managed.giveUp();
+          return;
+        }
+        break;
+      default:
+        break;
+    }
+    long delay = Backoff.delay(options, managed._attempts);
+    managed._attempts++;
+    LOG.info("Link %s to %s failed, re-attaching in %s ms (attempt %s)", id, managed._amqpAddress, delay,
+      managed._attempts);
+    managed._retryTimer = _vertx.setTimer(Math.max(1, delay), timerId -> reattach(managed));
+  }
+
+  private void reattach(Managed<?> managed) {
+    managed._retryTimer = -1;
+    if (_stopped || !managed.isCurrent()) {
+      // closed in the meantime
+      return;
+    }
+    // fail over through the alternatives, one address per attempt
+    List<String> addresses = managed.addresses();
+    String address = addresses.get((managed._attempts - 1) % addresses.size());
+    try {
+      ConnectionSettings settings = getConnectionSettings(address);
+      managed.reattach(getConnection(settings), settings.getNode());
+    } catch (MessagingException e) {
+      LOG.warn(e, "Error re-attaching link %s to %s", managed._link.getName(), address);
+      linkFailed(managed);
+    }
+  }
+
+  /*
+   * Returns true if the link opened by the peer replaces one lost with its
+   * connection, rather than being opened for the first time.
+   */
+  private boolean reattached(Managed<?> managed, BaseLink link) {
+    if (managed == null || managed._link != link) {
+      return false;
+    }
+    boolean reattached = managed._opened;
+    if (reattached) {
+      LOG.info("Link %s re-attached to %s after %s attempts", link.getName(), link.getConnection(),
+        managed._attempts);
+    }
+    managed._opened = true;
+    managed._attempts = 0;
+    return reattached;
+  }
+
+  private static long now() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+  }
+
   // ---------- Helper classes
-  class Outgoing {
-    OutgoingLinkImpl _link;
+  class WarmUp {
+    // link name -> AMQP address, of the links not attached yet
+    final Map<String, String> _pending = new LinkedHashMap<String, String>();
+
+    final Handler<List<String>> _done;
+
+    final long _start = now();
+
+    long _timer = -1;
+
+    // time in ms the warm-up took, -1 until done
+    volatile long _time = -1;
+
+    WarmUp(Handler<List<String>> done) {
+      _done = done;
+    }
+
+    void done(String linkName) {
+      if (_pending.remove(linkName) != null && _pending.isEmpty() && _time == -1) {
+        _vertx.cancelTimer(_timer);
+        finish();
+      }
+    }
+
+    void finish() {
+      if (_time != -1) {
+        return;
+      }
+      _time = now() - _start;
+      LOG.info("Warm-up done in %s ms, %s links not attached", _time, _pending.size());
+      _done.handle(new ArrayList<String>(_pending.values()));
+    }
+  }
+
+  abstract class Managed<T extends BaseLink> {
+    T _link;
+
+    // the address the link was created for, null for links created by peers
+    final String _amqpAddress;
+
+    boolean _opened;
+
+    int _attempts;
+
+    long _retryTimer = -1;
 
+    Managed(T link, String amqpAddress) {
+      _link = link;
+      _amqpAddress = amqpAddress;
+    }
+
+    abstract RetryOptions retryOptions();
+
+    abstract boolean isCurrent();
+
+    /**
+     * Creates the link again, under the same name, on the connection.
+     */
+    abstract void reattach(ManagedConnection con, String node) throws MessagingException;
+
+    abstract void giveUp();
+
+    List<String> addresses() {
+      List<String> addresses = new ArrayList<String>();
+      addresses.add(_amqpAddress);
+      List<String> alternatives = retryOptions().getAlternativeAddressList();
+      if (alternatives != null) {
+        addresses.addAll(alternatives);
+      }
+      return addresses;
+    }
+
+    void cancelRetry() {
+      if (_retryTimer != -1) {
+        _vertx.cancelTimer(_retryTimer);
+        _retryTimer = -1;
+      }
+    }
+  }
+
+  class Outgoing extends Managed<OutgoingLinkImpl> {
     OutgoingLinkOptions _options;
 
     String _toStr;
 
-    Outgoing(OutgoingLinkImpl link, OutgoingLinkOptions options) {
-      _link = link;
+    Outgoing(OutgoingLinkImpl link, OutgoingLinkOptions options, String amqpAddress) {
+      super(link, amqpAddress);
       _options = options;
       _toStr = format("[link=%s, options=%s]", _link.getAddress(), _options);
     }
 
+    @Override
+    RetryOptions retryOptions() {
+      return _options.getRecoveryOptions();
+    }
+
+    @Override
+    boolean isCurrent() {
+      return _outgoingLinks.get(_link.getName()) == this;
+    }
+
+    @Override
+    void reattach(ManagedConnection con, String node) throws MessagingException {
+      OutgoingLinkImpl failed = _link;
+      OutgoingLinkImpl link = con.createOutboundLink(node, _options.getReliability(), failed.getName());
+      _link = link;
+      link.resend(failed);
+    }
+
+    @Override
+    void giveUp() {
+      String id = _link.getName();
+      _outgoingLinks.remove(id);
+      _sharedOutgoingLinks.values().remove(id);
+      failInFlight(id, _link);
+      _listener.outgoingLinkFinal(id, _link.getSource(), false);
+    }
+
     @Override
     public String toString() {
       return _toStr;
     }
   }
 
-  class Incoming {
-    IncomingLinkImpl _link;
-
+  class Incoming extends Managed<IncomingLinkImpl> {
     IncomingLinkOptions _options;
 
     String _toStr;
 
-    Incoming(IncomingLinkImpl link, IncomingLinkOptions options) {
-      _link = link;
+    Incoming(IncomingLinkImpl link, IncomingLinkOptions options, String amqpAddress) {
+      super(link, amqpAddress);
       _options = options;
       _toStr = format("[link=%s, options=%s]", _link.getAddress(), _options);
     }
 
+    @Override
+    RetryOptions retryOptions() {
+      return _options.getRecoveryOptions();
+    }
+
+    @Override
+    boolean isCurrent() {
+      return _incomingLinks.get(_link.getName()) == this;
+    }
+
+    @Override
+    void reattach(ManagedConnection con, String node) throws MessagingException {
+      IncomingLinkImpl failed = _link;
+      IncomingLinkImpl link = con.createInboundLink(node, failed.getReceiverMode(), failed.getCreditMode(), failed
+        .getName());
+      _link = link;
+      link.setAutoSettle(failed.isAutoSettle());
+      // unsettled messages are redelivered by the peer, the credit is not
+      if (failed.getCredits() > 0) {
+        link.setCredits(failed.getCredits());
+      }
+    }
+
+    @Override
+    void giveUp() {
+      String id = _link.getName();
+      _incomingLinks.remove(id);
+      _listener.incomingLinkFinal(id, _link.getTarget(), false);
+    }
+
     @Override
     public String toString() {
       return _toStr;
@@ -19,12 +19,12 @@ import io.vertx.ext.amqp.impl.ConnectionSettings;
 import io.vertx.ext.amqp.impl.CreditMode;
 import io.vertx.ext.amqp.MessagingException;
 import io.vertx.ext.amqp.ReliabilityMode;
-import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.amqp.transport.ReceiverSettleMode;
 import org.apache.qpid.proton.amqp.transport.SenderSettleMode;
 import org.apache.qpid.proton.engine.*;
 import org.apache.qpid.proton.engine.Link;
-import org.apache.qpid.proton.message.Message;
+
+import java.util.Arrays;
 
 /**
  * A Connection coupled with a session to simplify the RouterImpl.
@@ -101,6 +101,7 @@ class ManagedConnection extends ConnectionImpl {
           link = event.getLink();
           if (link instanceof Sender) {
             OutgoingLinkImpl outboundLink = (OutgoingLinkImpl) link.getContext();
+            outboundLink.updateCapacity();
             eventListener.onOutgoingLinkCredit(outboundLink, link.getCredit());
           }
           break;
@@ -136,14 +137,16 @@ class ManagedConnection extends ConnectionImpl {
         Receiver receiver = (Receiver) link;
         byte[] bytes = new byte[d.pending()];
         int read = receiver.recv(bytes, 0, bytes.length);
-        Message pMsg = Proton.message();
-        pMsg.decode(bytes, 0, read);
+        if (read < bytes.length) {
+          bytes = Arrays.copyOf(bytes, read);
+        }
         receiver.advance();
 
+        // Decoding is deferred until the message is first accessed.
         IncomingLinkImpl inLink = (IncomingLinkImpl) link.getContext();
         SessionImpl ssn = inLink.getSession();
-        InboundMessage msg = new InboundMessage(ssn.getID(), d.getTag(), ssn.getNextIncommingSequence(),
-          d.isSettled(), pMsg);
+        InboundMessage msg = new InboundMessage(inLink, d.getTag(), ssn.getNextIncommingSequence(), d.isSettled(),
+          bytes);
         if (link.getSenderSettleMode() != SenderSettleMode.SETTLED) {
           ssn.addUnsettled(msg.getSequence(), d);
         }
@@ -158,7 +161,11 @@ class ManagedConnection extends ConnectionImpl {
         TrackerImpl tracker = (TrackerImpl) d.getContext();
         tracker.setDisposition(d.getRemoteState());
         tracker.markSettled();
-        eventListener.onSettled((OutgoingLinkImpl) link.getContext(), tracker);
+        // settle our end too, so the link's unsettled count stays current
+        d.settle();
+        OutgoingLinkImpl outLink = (OutgoingLinkImpl) link.getContext();
+        outLink.settled(tracker);
+        eventListener.onSettled(outLink, tracker);
       }
     }
   }
@@ -170,6 +177,13 @@ class ManagedConnection extends ConnectionImpl {
     return link;
   }
 
+  OutgoingLinkImpl createOutboundLink(String address, ReliabilityMode mode, String name) throws MessagingException {
+    OutgoingLinkImpl link = (OutgoingLinkImpl) _session.createOutboundLink(address, mode, name);
+    link.init();
+    write();
+    return link;
+  }
+
   public IncomingLinkImpl createInboundLink(String address, ReliabilityMode receiverMode, CreditMode creditMode)
     throws MessagingException {
     IncomingLinkImpl link = (IncomingLinkImpl) _session.createInboundLink(address, receiverMode, creditMode);
@@ -177,4 +191,12 @@ class ManagedConnection extends ConnectionImpl {
     write();
     return link;
   }
+
+  IncomingLinkImpl createInboundLink(String address, ReliabilityMode receiverMode, CreditMode creditMode, String name)
+    throws MessagingException {
+    IncomingLinkImpl link = (IncomingLinkImpl) _session.createInboundLink(address, receiverMode, creditMode, name);
+    link.init();
+    write();
+    return link;
+  }
 }
\ No newline at end of file
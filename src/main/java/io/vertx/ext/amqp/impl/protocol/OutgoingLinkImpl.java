@@ -24,8 +24,21 @@ import org.apache.qpid.proton.engine.Link;
 import org.apache.qpid.proton.engine.Sender;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 class OutgoingLinkImpl extends BaseLink implements OutgoingLink {
+  // unsettled deliveries in send order, replayed if the link is re-attached
+  private final Map<TrackerImpl, EncodedMessage> _inFlight = new LinkedHashMap<TrackerImpl, EncodedMessage>();
+
+  // credit and unsettled, refreshed on the connection's context so routing
+  // can read them from any thread without touching the proton link
+  private volatile int _credit;
+
+  private volatile int _unsettled;
+
   OutgoingLinkImpl(SessionImpl ssn, String address, Link link) {
     super(ssn, address, link);
   }
@@ -51,6 +64,33 @@ class OutgoingLinkImpl extends BaseLink implements OutgoingLink {
     return _link.getUnsettled();
   }
 
+  /**
+   * The credit the peer has granted that is not used up yet, as of the last
+   * flow, settlement or send. Sending already uses up credit, so deliveries
+   * the peer has not settled are not subtracted again here.
+   */
+  int getAvailableCredit() {
+    ConnectionImpl.State state = getConnection().getState();
+    if (_closed.get() || (state != ConnectionImpl.State.CONNECTED && state != ConnectionImpl.State.NEW)) {
+      return Integer.MIN_VALUE;
+    }
+    return _credit;
+  }
+
+  /**
+   * The deliveries the peer has not settled yet, as of the last flow,
+   * settlement or send. A slow peer settles late, so this grows.
+   */
+  int getUnsettledCount() {
+    return _unsettled;
+  }
+
+  // Must be called on the connection's context.
+  void updateCapacity() {
+    _credit = _link.getCredit();
+    _unsettled = _link.getUnsettled();
+  }
+
   @Override
   public TrackerImpl send(AmqpMessage msg) throws MessageFormatException, MessagingException {
     checkClosed();
@@ -62,26 +102,65 @@ class OutgoingLinkImpl extends BaseLink implements OutgoingLink {
   }
 
   TrackerImpl send(org.apache.qpid.proton.message.Message m) throws MessageFormatException, MessagingException {
+    return send(new EncodedMessage(m));
+  }
+
+  TrackerImpl send(EncodedMessage m) throws MessagingException {
     checkClosed();
+    TrackerImpl tracker = new TrackerImpl(_ssn);
+    send(m, tracker);
+    return tracker;
+  }
+
+  private void send(EncodedMessage m, TrackerImpl tracker) {
     Sender sender = (Sender) _link;
     byte[] tag = longToBytes(_ssn.getNextDeliveryTag());
     Delivery delivery = sender.delivery(tag);
-    TrackerImpl tracker = new TrackerImpl(_ssn);
     delivery.setContext(tracker);
 
-    if (m.getAddress() == null) {
-      m.setAddress(_address);
-    }
-    byte[] buffer = new byte[1024];
-    int encoded = m.encode(buffer, 0, buffer.length);
-    sender.send(buffer, 0, encoded);
+    m.writeTo(sender, _address);
     if (sender.getSenderSettleMode() == SenderSettleMode.SETTLED) {
       delivery.settle();
       tracker.markSettled();
+    } else {
+      _inFlight.put(tracker, m);
     }
     sender.advance();
+    updateCapacity();
     _ssn.getConnection().write();
-    return tracker;
+  }
+
+  boolean hasInFlight() {
+    return !_inFlight.isEmpty();
+  }
+
+  void settled(TrackerImpl tracker) {
+    _inFlight.remove(tracker);
+    updateCapacity();
+  }
+
+  /**
+   * Sends again the deliveries the link this one replaces had not seen
+   * settled, keeping their trackers so settlement is reported as usual.
+   */
+  void resend(OutgoingLinkImpl failed) {
+    for (Map.Entry<TrackerImpl, EncodedMessage> entry : failed._inFlight.entrySet()) {
+      send(entry.getValue(), entry.getKey());
+    }
+    failed._inFlight.clear();
+  }
+
+  /**
+   * Marks the deliveries not seen settled as failed and returns their
+   * trackers, once the link is given up on.
+   */
+  List<TrackerImpl> failInFlight() {
+    List<TrackerImpl> trackers = new ArrayList<TrackerImpl>(_inFlight.keySet());
+    _inFlight.clear();
+    for (TrackerImpl tracker : trackers) {
+      tracker.markLinkFailed();
+    }
+    return trackers;
   }
 
   private static byte[] longToBytes(final long value) {
@@ -77,8 +77,15 @@ class SessionImpl implements Session {
 
   @Override
   public OutgoingLink createOutboundLink(String address, ReliabilityMode mode) throws MessagingException {
+    return createOutboundLink(address, mode, UUID.randomUUID().toString());
+  }
+
+  /**
+   * Creates a link with the given name, e.g. to re-attach a link that was
+   * lost with its connection under the same name.
+   */
+  OutgoingLink createOutboundLink(String address, ReliabilityMode mode, String name) throws MessagingException {
     checkClosed();
-    String name = UUID.randomUUID().toString();
     Sender sender = _ssn.sender(name);
     // Source source = new Source();
     Target target = new Target();
@@ -102,9 +109,13 @@ class SessionImpl implements Session {
 
   @Override
   public IncomingLink createInboundLink(String address, ReliabilityMode mode, CreditMode creditMode)
+    throws MessagingException {
+    return createInboundLink(address, mode, creditMode, UUID.randomUUID().toString());
+  }
+
+  IncomingLink createInboundLink(String address, ReliabilityMode mode, CreditMode creditMode, String name)
     throws MessagingException {
     checkClosed();
-    String name = UUID.randomUUID().toString();
     Receiver receiver = _ssn.receiver(name);
     Source source = new Source();
     // Target target = new Target();
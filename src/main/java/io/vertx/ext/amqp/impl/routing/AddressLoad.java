@@ -0,0 +1,55 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.routing;
+
+/**
+ * Tells a load balanced route how busy each of its addresses is. Addresses
+ * are ranked by credit, and then by fewer unsettled deliveries.
+ */
+public interface AddressLoad {
+  /**
+   * Credit reported for an address that has no link yet, so that a route
+   * picks it and the link gets opened.
+   */
+  int NOT_OPEN = Integer.MAX_VALUE;
+
+  /**
+   * Used when nothing is known about the addresses, every address is equal.
+   */
+  AddressLoad NONE = new AddressLoad() {
+    @Override
+    public int getCredit(String address) {
+      return 0;
+    }
+
+    @Override
+    public int getUnsettled(String address) {
+      return 0;
+    }
+  };
+
+  /**
+   * Returns how many more messages the address can take right now. Higher is
+   * better.
+   */
+  int getCredit(String address);
+
+  /**
+   * Returns how many messages sent to the address the peer has not settled
+   * yet. Lower is better.
+   */
+  int getUnsettled(String address);
+}
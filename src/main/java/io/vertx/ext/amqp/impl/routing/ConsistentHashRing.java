@@ -0,0 +1,97 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.routing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable consistent hash ring mapping keys to one of a set of nodes.
+ * <p/>
+ * Each node is placed on the ring at a number of pseudo random points
+ * (virtual nodes) and a key belongs to the first point at or after its own
+ * hash. Adding or removing a node therefore only moves the keys in the arcs
+ * next to that node's points, about 1/N of all keys, and the virtual nodes
+ * keep the arcs roughly even.
+ * <p/>
+ * Points are kept in a sorted array so a lookup is a single binary search.
+ */
+public class ConsistentHashRing {
+  public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+  private final int[] _points;
+
+  private final String[] _owners;
+
+  public ConsistentHashRing(List<String> nodes) {
+    this(nodes, DEFAULT_VIRTUAL_NODES);
+  }
+
+  public ConsistentHashRing(List<String> nodes, int virtualNodes) {
+    long[] entries = new long[nodes.size() * virtualNodes];
+    int n = 0;
+    for (int i = 0; i < nodes.size(); i++) {
+      for (int v = 0; v < virtualNodes; v++) {
+        int point = hash(nodes.get(i) + "#" + v);
+        // sort by point, remembering the node index in the low bits
+        entries[n++] = ((long) point << 32) | i;
+      }
+    }
+    Arrays.sort(entries);
+    _points = new int[n];
+    _owners = new String[n];
+    for (int i = 0; i < n; i++) {
+      _points[i] = (int) (entries[i] >> 32);
+      _owners[i] = nodes.get((int) entries[i]);
+    }
+  }
+
+  /**
+   * Returns the node owning the key, or null if the ring is empty.
+   */
+  public String get(String key) {
+    if (_points.length == 0) {
+      return null;
+    }
+    int i = Arrays.binarySearch(_points, hash(key));
+    if (i < 0) {
+      i = -i - 1;
+      if (i == _points.length) {
+        i = 0;
+      }
+    }
+    return _owners[i];
+  }
+
+  /*
+   * FNV-1a over the UTF-8 bytes, followed by the murmur3 finalizer to spread
+   * similar keys (e.g. "order-1", "order-2") around the whole ring.
+   */
+  static int hash(String key) {
+    int h = 0x811c9dc5;
+    for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+      h ^= b;
+      h *= 0x01000193;
+    }
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+}
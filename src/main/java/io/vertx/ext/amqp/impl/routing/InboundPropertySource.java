@@ -0,0 +1,78 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.routing;
+
+import io.vertx.ext.amqp.impl.protocol.InboundMessage;
+import io.vertx.ext.amqp.impl.selector.PropertySource;
+
+import java.util.Map;
+
+/**
+ * Exposes an AMQP message to selectors. The standard properties are available
+ * under the same names used in the Json translation (subject, reply_to,
+ * message_id, etc.) and the routing key as "vertx.routing-key", everything
+ * else is looked up in the application properties.
+ */
+class InboundPropertySource implements PropertySource {
+  private final InboundMessage _msg;
+
+  private final String _routingKey;
+
+  InboundPropertySource(InboundMessage msg, String routingKey) {
+    _msg = msg;
+    _routingKey = routingKey;
+  }
+
+  @Override
+  public Object getProperty(String name) {
+    switch (name) {
+      case MessageRouter.ROUTING_KEY_FIELD:
+        return _routingKey;
+      case "address":
+      case "to":
+        return _msg.getAddress();
+      case "subject":
+        return _msg.getSubject();
+      case "reply_to":
+        return _msg.getReplyTo();
+      case "message_id":
+        return _msg.getMessageId();
+      case "correlation_id":
+        return _msg.getCorrelationId();
+      case "content_type":
+        return _msg.getContentType();
+      case "content_encoding":
+        return _msg.getContentEncoding();
+      case "group_id":
+        return _msg.getGroupId();
+      case "reply_to_group_id":
+        return _msg.getReplyToGroupId();
+      case "durable":
+        return _msg.isDurable();
+      case "priority":
+        return _msg.getPriority();
+      case "ttl":
+        return _msg.getTtl();
+      case "delivery_count":
+        return _msg.getDeliveryCount();
+      case "creation_time":
+        return _msg.getCreationTime();
+      default:
+        Map<?, ?> props = _msg.getApplicationProperties();
+        return props == null ? null : props.get(name);
+    }
+  }
+}
@@ -15,22 +15,24 @@
  */
 package io.vertx.ext.amqp.impl.routing;
 
+import io.vertx.core.MultiMap;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.amqp.BodyCodec;
+import io.vertx.ext.amqp.DeliveryFormat;
+import io.vertx.ext.amqp.MessageHeaders;
 import io.vertx.ext.amqp.MessagingException;
 import io.vertx.ext.amqp.impl.AmqpServiceConfig;
-import io.vertx.ext.amqp.impl.config.AmqpServiceConfigImpl;
-import io.vertx.ext.amqp.impl.config.ConfigRouteEntry;
 import io.vertx.ext.amqp.impl.protocol.InboundMessage;
 import io.vertx.ext.amqp.impl.protocol.LinkManager;
+import io.vertx.ext.amqp.impl.translators.Compression;
 import io.vertx.ext.amqp.impl.util.LogManager;
+import io.vertx.ext.amqp.impl.util.Metrics;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
-import static io.vertx.ext.amqp.impl.util.Functions.format;
-
 /**
  * Contains the routing logic used by the AMQP Service
  *
@@ -39,76 +41,131 @@ import static io.vertx.ext.amqp.impl.util.Functions.format;
 public class MessageRouter {
   private static final LogManager LOG = LogManager.get("MessageRouter:", LinkManager.class);
 
+  static final String ROUTING_KEY_FIELD = "vertx.routing-key";
+
   private final AmqpServiceConfig _config;
 
+  // Immutable route snapshots, possibly shared with other service instances.
+  private final RouteRegistry _routes;
+
+  private final RoutingCache _outboundCache;
+
+  private final RoutingCache _inboundCache;
+
+  // Where to look for the custom outbound routing property, in order. Null if
+  // no custom property is configured.
+  private final String[] _customPropertyHeaders;
+
+  private final String[][] _customPropertyPaths;
+
+  private volatile AddressLoad _addressLoad = AddressLoad.NONE;
+
   public MessageRouter(AmqpServiceConfig config) {
+    this(config, new Metrics());
+  }
+
+  public MessageRouter(AmqpServiceConfig config, Metrics metrics) {
+    this(config, new RouteRegistry(config), metrics);
+  }
+
+  public MessageRouter(AmqpServiceConfig config, RouteRegistry routes, Metrics metrics) {
     _config = config;
-    StringBuilder b = new StringBuilder();
-    b.append("Router Config \n[\n");
-    b.append("Default outbound-AMQP-address : ").append(config.getDefaultOutboundAddress()).append("\n");
-    b.append("Default inbound-vertx-address : ").append(config.getDefaultInboundAddress()).append("\n");
-    b.append("Default vertx handler address : ").append(config.getDefaultHandlerAddress()).append("\n");
-    b.append("Additional handler address list : ").append(config.getHandlerAddressList()).append("\n");
-    b.append("]\n");
-    LOG.info(b.toString());
+    _routes = routes;
+    String name = config.getOutboundRoutingPropertyName();
+    if (config.isUseCustomPropertyForOutbound() && name != null) {
+      _customPropertyHeaders = new String[] { MessageHeaders.property(name), MessageHeaders.applicationProperty(name) };
+      _customPropertyPaths = new String[][] { { name }, { "properties", name }, { "application_properties", name },
+        { "application-properties", name } };
+    } else {
+      _customPropertyHeaders = null;
+      _customPropertyPaths = null;
+    }
+    _outboundCache = new RoutingCache("routing.outbound.cache", config.getRoutingCacheSize(), metrics);
+    _inboundCache = new RoutingCache("routing.inbound.cache", config.getRoutingCacheSize(), metrics);
+    LOG.info(() -> {
+      StringBuilder b = new StringBuilder();
+      b.append("Router Config \n[\n");
+      b.append("Default outbound-AMQP-address : ").append(config.getDefaultOutboundAddress()).append("\n");
+      b.append("Default inbound-vertx-address : ").append(config.getDefaultInboundAddress()).append("\n");
+      b.append("Default vertx handler address : ").append(config.getDefaultHandlerAddress()).append("\n");
+      b.append("Additional handler address list : ").append(config.getHandlerAddressList()).append("\n");
+      b.append("]\n");
+      return b.toString();
+    });
+  }
+
+  /**
+   * Sets where load balanced routes get the load of their addresses from.
+   */
+  public void setAddressLoad(AddressLoad addressLoad) {
+    _addressLoad = addressLoad;
   }
 
-  public List<String> routeOutgoing(Message<JsonObject> vertxMsg) throws MessagingException {
+  /**
+   * Returns the AMQP addresses for the message. The default outbound address
+   * is used if no route matches the routing key. An empty list is returned if
+   * routes matched but their selectors rejected the message.
+   */
+  public List<String> routeOutgoing(Message<?> vertxMsg) throws MessagingException {
     String routingKey = extractOutgoingRoutingKey(vertxMsg);
-    List<String> addrList = new ArrayList<String>();
-    System.out.println("outgoing route map " + _config.getInboundRoutes());
-    for (String key : _config.getOutboundRoutes().keySet()) {
-      ConfigRouteEntry route = _config.getOutboundRoutes().get(key);
-      if (route.getPattern().matcher(routingKey).matches()) {
-        addrList.addAll(route.getAddressList());
+    RouteSnapshot routes = _routes.get();
+    long version = routes.getVersion();
+    RouteMatch match = _outboundCache.isEnabled() ? _outboundCache.get(routingKey, version) : null;
+    if (match == null) {
+      match = routes.getOutboundTable().lookup(routingKey);
+      if (_outboundCache.isEnabled()) {
+        _outboundCache.put(routingKey, version, match);
       }
     }
-    if (addrList.size() == 0) {
-      addrList.add(_config.getDefaultOutboundAddress());
+    if (match.isEmpty()) {
+      return Collections.singletonList(_config.getDefaultOutboundAddress());
+    }
+    if (match.dependsOnMessage()) {
+      return match.resolve(new OutboundPropertySource(vertxMsg, routingKey), _addressLoad);
     }
-    return addrList;
+    return match.getAddresses();
   }
 
   /**
-   * By default it uses the address field.
+   * The routing key is looked up in the following order, falling back to the
+   * event-bus address of the message.
    * <p/>
-   * If a custom routing-property is specified in config it will look to see,
-   * if that property is available <br>
-   * 1. As field within the Json message <br>
-   * 2. If a "properties" field is available, it will look for it as a sub
-   * field under that <br>
-   * 3. If an "application-properties" field is available, it will look for it
-   * as a sub field under that
+   * 1. The {@link MessageHeaders#ROUTING_KEY} header <br>
+   * 2. A "vertx.routing-key" field within the Json message <br>
+   * 3. If a custom routing-property is specified in config, a property or
+   * application-property header with that name <br>
+   * 4. If a custom routing-property is specified in config, the property as a
+   * field within the Json message, then as a sub field under "properties",
+   * then under "application_properties".
    * <p/>
-   * If no custome property is specified, then it looks if "vertx.routing-key"
-   * is specified as a field within the Json message.
+   * Headers are checked first so that producers can route without the
+   * service having to look into the body. All lookups are single hash
+   * lookups computed up front from config, so the cost does not depend on the
+   * size of the message.
    */
-  private String extractOutgoingRoutingKey(Message<JsonObject> vertxMsg) {
-    String routingKey = null;
-    if (vertxMsg.body().containsKey("vertx.routing-key")) {
-      routingKey = vertxMsg.body().getString("vertx.routing-key");
-    } else if (_config.isUseCustomPropertyForOutbound() && _config.getOutboundRoutingPropertyName() != null) {
-      if (vertxMsg.body().containsKey(_config.getOutboundRoutingPropertyName())) {
-        routingKey = vertxMsg.body().getString(_config.getOutboundRoutingPropertyName());
-      } else if (vertxMsg.body().containsKey("properties")
-        && vertxMsg.body().getJsonObject("properties") instanceof Map
-        && vertxMsg.body().getJsonObject("properties")
-        .containsKey(_config.getOutboundRoutingPropertyName())) {
-        routingKey = vertxMsg.body().getJsonObject("properties")
-          .getString(_config.getOutboundRoutingPropertyName());
-      } else if (vertxMsg.body().containsKey("application-properties")
-        && vertxMsg.body().getJsonObject("application-properties") instanceof Map
-        && vertxMsg.body().getJsonObject("application-properties")
-        .containsKey(_config.getOutboundRoutingPropertyName())) {
-        routingKey = vertxMsg.body().getJsonObject("application-properties")
-          .getString(_config.getOutboundRoutingPropertyName());
-      }
+  private String extractOutgoingRoutingKey(Message<?> vertxMsg) {
+    MultiMap headers = vertxMsg.headers();
+    boolean hasHeaders = headers != null && !headers.isEmpty();
+    String routingKey = hasHeaders ? headers.get(MessageHeaders.ROUTING_KEY) : null;
+    if (routingKey == null) {
+      JsonObject body = vertxMsg.body() instanceof JsonObject ? (JsonObject) vertxMsg.body() : null;
+      Object value = body == null ? null : body.getValue(ROUTING_KEY_FIELD);
+      if (value != null) {
+        routingKey = value.toString();
+      } else if (_customPropertyPaths != null) {
+        if (hasHeaders) {
+          for (int i = 0; i < _customPropertyHeaders.length && routingKey == null; i++) {
+            routingKey = headers.get(_customPropertyHeaders[i]);
+          }
+        }
+        for (int i = 0; i < _customPropertyPaths.length && routingKey == null && body != null; i++) {
+          routingKey = lookup(body, _customPropertyPaths[i]);
+        }
 
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("\n============= Custom Routing Property ============");
-        LOG.debug("Custom routing property name : %s", _config.getOutboundRoutingPropertyName());
-        LOG.debug("Routing property value : %s", routingKey);
-        LOG.debug("============= /Custom Routing Property ============/n");
+        if (LOG.isDebugEnabled() && LOG.sample("custom-routing-property")) {
+          LOG.debug("Custom routing property {name : %s, value : %s}", _config.getOutboundRoutingPropertyName(),
+            routingKey);
+        }
       }
     }
     if (routingKey == null) {
@@ -117,34 +174,116 @@ public class MessageRouter {
     return routingKey;
   }
 
+  private static String lookup(JsonObject json, String[] path) {
+    Object value = json;
+    for (String field : path) {
+      if (!(value instanceof JsonObject)) {
+        return null;
+      }
+      value = ((JsonObject) value).getValue(field);
+    }
+    return value == null ? null : value.toString();
+  }
+
+  /**
+   * Returns the event-bus addresses for the message. Falls back to the
+   * default inbound address, or the routing key itself, if no route matches.
+   * An empty list is returned if routes matched but their selectors rejected
+   * the message.
+   */
   public List<String> routeIncoming(InboundMessage amqpMsg, String alternateKey) {
     String routingKey = extractIncomingRoutingKey(amqpMsg);
-    LOG.info(format("Inbound routing info [key=%s, value=%s]", _config.getInboundRoutingPropertyType(),
-      routingKey));
+    if (LOG.isDebugEnabled() && LOG.sample("inbound-routing-key")) {
+      LOG.debug("Inbound routing info [key=%s, value=%s]", _config.getInboundRoutingPropertyType(), routingKey);
+    }
     if (routingKey == null || routingKey.trim().isEmpty()) {
       routingKey = alternateKey;
     }
 
-    List<String> addressList = new ArrayList<String>();
-    System.out.println("inbound route map " + _config.getInboundRoutes());
-    for (String k : _config.getInboundRoutes().keySet()) {
-      ConfigRouteEntry route = _config.getInboundRoutes().get(k);
-      if (route.getPattern().matcher(routingKey).matches()) {
-        addressList.addAll(route.getAddressList());
+    RouteSnapshot routes = _routes.get();
+    long version = routes.getVersion();
+    boolean cacheable = _inboundCache.isEnabled() && routingKey != null;
+    RouteMatch match = cacheable ? _inboundCache.get(routingKey, version) : null;
+    if (match == null) {
+      match = routes.getInboundTable().lookup(routingKey);
+      if (cacheable) {
+        _inboundCache.put(routingKey, version, match);
       }
     }
 
     // no matches
-    if (addressList.size() == 0) {
+    if (match.isEmpty()) {
       // use default if specified.
       if (_config.getDefaultInboundAddress() != null) {
-        addressList.add(_config.getDefaultInboundAddress());
+        return Collections.singletonList(_config.getDefaultInboundAddress());
       } else {
         // else use the routing key as the vertx address
-        addressList.add(routingKey);
+        return Collections.singletonList(routingKey);
       }
     }
-    return addressList;
+    if (match.dependsOnMessage()) {
+      return match.resolve(new InboundPropertySource(amqpMsg, routingKey), _addressLoad);
+    }
+    return match.getAddresses();
+  }
+
+  /**
+   * The format in which inbound messages are sent to the event-bus address.
+   */
+  public DeliveryFormat getInboundFormat(String address) {
+    return _routes.get().getInboundTable().getFormat(address);
+  }
+
+  /**
+   * The content-type used to decode data bodies without one, for messages
+   * sent to the event-bus address, or null.
+   */
+  public String getInboundContentType(String address) {
+    return _routes.get().getInboundTable().getContentType(address);
+  }
+
+  /**
+   * The content-type used to encode data bodies without one, for messages
+   * sent to the AMQP address, or null.
+   */
+  public String getOutboundContentType(String address) {
+    return _routes.get().getOutboundTable().getContentType(address);
+  }
+
+  /**
+   * The body codec of the inbound route to the event-bus address, or null.
+   */
+  public BodyCodec getInboundCodec(String address) {
+    return _routes.get().getInboundTable().getCodec(address);
+  }
+
+  /**
+   * The body codec of the outbound route to the AMQP address, or null.
+   */
+  public BodyCodec getOutboundCodec(String address) {
+    return _routes.get().getOutboundTable().getCodec(address);
+  }
+
+  /**
+   * True if some outbound routes set a default content-type.
+   */
+  public boolean hasOutboundContentTypes() {
+    return _routes.get().getOutboundTable().hasContentTypes();
+  }
+
+  /**
+   * The compression for data bodies of messages sent to the AMQP address, or
+   * null.
+   */
+  public Compression getOutboundCompression(String address) {
+    return _routes.get().getOutboundTable().getCompression(address);
+  }
+
+  /**
+   * True if some outbound routes compress data bodies.
+   */
+  public boolean hasOutboundCompression() {
+    return _routes.get().getOutboundTable().hasCompression();
   }
 
   private String extractIncomingRoutingKey(InboundMessage amqpMsg) {
@@ -154,19 +293,16 @@ public class MessageRouter {
       case SUBJECT:
         return amqpMsg.getSubject();
       case CUSTOM:
-        return (String) amqpMsg.getApplicationProperties().get(_config.getInboundRoutingPropertyName());
+        Map<?, ?> props = amqpMsg.getApplicationProperties();
+        Object value = props == null ? null : props.get(_config.getInboundRoutingPropertyName());
+        return value == null ? null : value.toString();
       default:
         return null;
     }
   }
 
   public void addOutboundRoute(String eventbusAddressPattern, String amqpAddress) {
-    if (_config.getOutboundRoutes().containsKey(eventbusAddressPattern)) {
-      _config.getOutboundRoutes().get(eventbusAddressPattern).add(amqpAddress);
-    } else {
-      _config.getOutboundRoutes().put(eventbusAddressPattern,
-        AmqpServiceConfigImpl.createRouteEntry(eventbusAddressPattern, amqpAddress));
-    }
+    _routes.addOutboundRoute(eventbusAddressPattern, amqpAddress);
     if (LOG.isInfoEnabled()) {
       LOG.info("\n============= Outbound Route ============");
       LOG.info("Adding the route entry : {%s : %s}", eventbusAddressPattern, amqpAddress);
@@ -175,12 +311,7 @@ public class MessageRouter {
   }
 
   public void removeOutboundRoute(String eventbusAddressPattern, String amqpAddress) {
-    if (_config.getOutboundRoutes().containsKey(eventbusAddressPattern)) {
-      ConfigRouteEntry entry = _config.getOutboundRoutes().get(eventbusAddressPattern);
-      entry.remove(amqpAddress);
-      if (entry.getAddressList().size() == 0) {
-        _config.getOutboundRoutes().remove(eventbusAddressPattern);
-      }
+    if (_routes.removeOutboundRoute(eventbusAddressPattern, amqpAddress)) {
       if (LOG.isInfoEnabled()) {
         LOG.info("\n============= Outbound Route ============");
         LOG.info("Removing the route entry : {%s : %s}", eventbusAddressPattern, amqpAddress);
@@ -190,12 +321,7 @@ public class MessageRouter {
   }
 
   public void addInboundRoute(String amqpAddressPattern, String eventbusAddress) {
-    if (_config.getInboundRoutes().containsKey(amqpAddressPattern)) {
-      _config.getInboundRoutes().get(amqpAddressPattern).add(eventbusAddress);
-    } else {
-      _config.getInboundRoutes().put(amqpAddressPattern,
-        AmqpServiceConfigImpl.createRouteEntry(amqpAddressPattern, eventbusAddress));
-    }
+    _routes.addInboundRoute(amqpAddressPattern, eventbusAddress);
     if (LOG.isInfoEnabled()) {
       LOG.info("\n============= Inbound Route ============");
       LOG.info("Adding the route entry : {%s : %s}", amqpAddressPattern, eventbusAddress);
@@ -204,12 +330,7 @@ public class MessageRouter {
   }
 
   public void removeInboundRoute(String amqpAddressPattern, String eventbusAddress) {
-    if (_config.getOutboundRoutes().containsKey(amqpAddressPattern)) {
-      ConfigRouteEntry entry = _config.getOutboundRoutes().get(amqpAddressPattern);
-      entry.remove(eventbusAddress);
-      if (entry.getAddressList().size() == 0) {
-        _config.getOutboundRoutes().remove(amqpAddressPattern);
-      }
+    if (_routes.removeInboundRoute(amqpAddressPattern, eventbusAddress)) {
       if (LOG.isInfoEnabled()) {
         LOG.info("\n============= Inbound Route ============");
         LOG.info(String.format("Removing the route entry : {%s : %s}", amqpAddressPattern, eventbusAddress));
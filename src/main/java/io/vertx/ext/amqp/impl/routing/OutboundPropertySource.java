@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.routing;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.amqp.MessageHeaders;
+import io.vertx.ext.amqp.impl.selector.PropertySource;
+
+/**
+ * Exposes an outbound event-bus message to selectors. A name is resolved in
+ * the same places the AMQP message is built from, in order: the property and
+ * application-property headers, the "properties" and "application_properties"
+ * maps of the body, and finally a top level field of the body. The routing
+ * key the message was routed by is available as "vertx.routing-key".
+ */
+class OutboundPropertySource implements PropertySource {
+  private static final String[] SECTIONS = { "properties", "application_properties" };
+
+  private final Message<?> _msg;
+
+  private final String _routingKey;
+
+  OutboundPropertySource(Message<?> msg, String routingKey) {
+    _msg = msg;
+    _routingKey = routingKey;
+  }
+
+  @Override
+  public Object getProperty(String name) {
+    if (MessageRouter.ROUTING_KEY_FIELD.equals(name)) {
+      return _routingKey;
+    }
+    MultiMap headers = _msg.headers();
+    if (headers != null && !headers.isEmpty()) {
+      String value = headers.get(MessageHeaders.property(name));
+      if (value == null) {
+        value = headers.get(MessageHeaders.applicationProperty(name));
+      }
+      if (value != null) {
+        return value;
+      }
+    }
+
+    if (!(_msg.body() instanceof JsonObject)) {
+      return null;
+    }
+    JsonObject body = (JsonObject) _msg.body();
+    for (String section : SECTIONS) {
+      Object props = body.getValue(section);
+      if (props instanceof JsonObject) {
+        Object value = ((JsonObject) props).getValue(name);
+        if (value != null) {
+          return value;
+        }
+      }
+    }
+    return body.getValue(name);
+  }
+}
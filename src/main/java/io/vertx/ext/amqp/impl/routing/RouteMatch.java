@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.routing;
+
+import io.vertx.ext.amqp.impl.routing.RoutingTable.Route;
+import io.vertx.ext.amqp.impl.selector.PropertySource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The routes matching a routing key, in route order.
+ * <p/>
+ * A match depends only on the key, so it can be cached. Routes carrying a
+ * selector, or picking one of their addresses per message, are resolved
+ * against the message with {@link #resolve}; when there are none of those
+ * the address list is computed once up front and the message is never looked
+ * at.
+ */
+public final class RouteMatch {
+  static final RouteMatch NONE = new RouteMatch(Collections.<Route> emptyList());
+
+  private final List<Route> _routes;
+
+  private final List<String> _addresses;
+
+  private final boolean _dependsOnMessage;
+
+  RouteMatch(List<Route> routes) {
+    _routes = routes;
+    boolean dependsOnMessage = false;
+    List<String> addresses = new ArrayList<String>();
+    for (Route route : routes) {
+      dependsOnMessage |= route.dependsOnMessage();
+      addresses.addAll(route._addresses);
+    }
+    _dependsOnMessage = dependsOnMessage;
+    _addresses = routes.size() == 1 ? routes.get(0)._addresses : Collections.unmodifiableList(addresses);
+  }
+
+  /**
+   * True if no route matched the key.
+   */
+  public boolean isEmpty() {
+    return _routes.isEmpty();
+  }
+
+  public boolean dependsOnMessage() {
+    return _dependsOnMessage;
+  }
+
+  /**
+   * The addresses of all matching routes, ignoring selectors and partitions.
+   */
+  public List<String> getAddresses() {
+    return _addresses;
+  }
+
+  /**
+   * Returns the addresses the message should be sent to. Routes whose
+   * selector rejects the message are skipped and partitioned routes contribute
+   * a single address. The list is empty if every route rejected the message.
+   *
+   * @param load used to pick the address of load balanced routes.
+   */
+  public List<String> resolve(PropertySource message, AddressLoad load) {
+    if (!_dependsOnMessage) {
+      return _addresses;
+    }
+    List<String> addresses = new ArrayList<String>();
+    for (Route route : _routes) {
+      route.resolve(message, load, addresses);
+    }
+    return addresses;
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.routing;
+
+/**
+ * How a route distributes a message among its addresses.
+ * <p/>
+ * BROADCAST sends a copy to every address. PARTITIONED sends the message to
+ * exactly one address, picked by hashing a message field onto a consistent
+ * hash ring, so messages with the same key always go to the same address.
+ * LOAD_BALANCED sends the message to the single address best able to take it
+ * at the time, see {@link AddressLoad}.
+ */
+public enum RouteMode {
+  BROADCAST, PARTITIONED, LOAD_BALANCED;
+
+  public static RouteMode get(String key) {
+    if (key == null || key.trim().equals("")) {
+      return BROADCAST;
+    }
+    return RouteMode.valueOf(key.trim().toUpperCase().replace('-', '_'));
+  }
+}
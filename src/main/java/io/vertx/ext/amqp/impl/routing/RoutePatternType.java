@@ -0,0 +1,34 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.routing;
+
+/**
+ * Syntax used for the keys of a routes map.
+ * <p/>
+ * REGEX keys are Java regular expressions matched against the whole routing
+ * key. TOPIC keys are dot separated words where '*' matches exactly one word
+ * and '#' matches zero or more words.
+ */
+public enum RoutePatternType {
+  REGEX, TOPIC;
+
+  public static RoutePatternType get(String key) {
+    if (key == null || key.trim().equals("")) {
+      return REGEX;
+    }
+    return RoutePatternType.valueOf(key.trim().toUpperCase());
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.routing;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.amqp.impl.AmqpServiceConfig;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Publishes the current {@link RouteSnapshot} through a single atomic
+ * reference. Readers never block and always see a complete snapshot, writers
+ * build a new snapshot off to the side and swap it in with a CAS, retrying if
+ * another writer got there first.
+ * <p/>
+ * All service instances (verticle instances) deployed with the same default
+ * handler address share one registry, see {@link #acquire(Vertx, AmqpServiceConfig)}.
+ * The static routes in the config are only used to seed a new registry.
+ */
+public class RouteRegistry implements Shareable {
+  private static final String SHARED_MAP_NAME = "vertx-amqp-service.routes";
+
+  private final AmqpServiceConfig _config;
+
+  private final AtomicReference<RouteSnapshot> _snapshot;
+
+  private final AtomicInteger _refCount = new AtomicInteger(1);
+
+  public RouteRegistry(AmqpServiceConfig config) {
+    _config = config;
+    _snapshot = new AtomicReference<RouteSnapshot>(new RouteSnapshot(config.getOutboundRoutes(),
+      config.getInboundRoutes()));
+  }
+
+  /**
+   * Returns the registry shared by all service instances using the same
+   * default handler address, creating it from the config if this is the
+   * first one. Each call must be paired with a call to
+   * {@link #release(Vertx)}.
+   */
+  public static RouteRegistry acquire(Vertx vertx, AmqpServiceConfig config) {
+    LocalMap<String, RouteRegistry> map = vertx.sharedData().getLocalMap(SHARED_MAP_NAME);
+    String key = config.getDefaultHandlerAddress();
+    while (true) {
+      RouteRegistry registry = new RouteRegistry(config);
+      RouteRegistry existing = map.putIfAbsent(key, registry);
+      if (existing == null) {
+        return registry;
+      } else if (existing.retain()) {
+        return existing;
+      }
+      // lost a race with the last release, the entry is on its way out
+      map.removeIfPresent(key, existing);
+    }
+  }
+
+  public void release(Vertx vertx) {
+    if (_refCount.decrementAndGet() == 0) {
+      LocalMap<String, RouteRegistry> map = vertx.sharedData().getLocalMap(SHARED_MAP_NAME);
+      map.removeIfPresent(_config.getDefaultHandlerAddress(), this);
+    }
+  }
+
+  private boolean retain() {
+    int count;
+    do {
+      count = _refCount.get();
+      if (count == 0) {
+        return false;
+      }
+    } while (!_refCount.compareAndSet(count, count + 1));
+    return true;
+  }
+
+  public RouteSnapshot get() {
+    return _snapshot.get();
+  }
+
+  public void addOutboundRoute(String pattern, String address) {
+    update(s -> s.withOutboundRoute(_config.getOutboundPatternType(), pattern, address));
+  }
+
+  /**
+   * Returns false if there was no such route.
+   */
+  public boolean removeOutboundRoute(String pattern, String address) {
+    return update(s -> s.withoutOutboundRoute(pattern, address));
+  }
+
+  public void addInboundRoute(String pattern, String address) {
+    update(s -> s.withInboundRoute(_config.getInboundPatternType(), pattern, address));
+  }
+
+  /**
+   * Returns false if there was no such route.
+   */
+  public boolean removeInboundRoute(String pattern, String address) {
+    return update(s -> s.withoutInboundRoute(pattern, address));
+  }
+
+  private boolean update(UnaryOperator<RouteSnapshot> change) {
+    while (true) {
+      RouteSnapshot current = _snapshot.get();
+      RouteSnapshot next = change.apply(current);
+      if (next == current) {
+        return false;
+      }
+      if (_snapshot.compareAndSet(current, next)) {
+        return true;
+      }
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.routing;
+
+import io.vertx.ext.amqp.impl.config.ConfigRouteEntry;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable view of the inbound and outbound routes along with their
+ * compiled routing tables.
+ * <p/>
+ * Changes never touch an existing snapshot. The with/without methods build a
+ * new snapshot with a higher version, or return this snapshot if nothing
+ * changed.
+ */
+public final class RouteSnapshot {
+  private final long _version;
+
+  private final Map<String, ConfigRouteEntry> _outboundRoutes;
+
+  private final Map<String, ConfigRouteEntry> _inboundRoutes;
+
+  private final RoutingTable _outboundTable;
+
+  private final RoutingTable _inboundTable;
+
+  public RouteSnapshot(Map<String, ConfigRouteEntry> outboundRoutes, Map<String, ConfigRouteEntry> inboundRoutes) {
+    this(0, new LinkedHashMap<String, ConfigRouteEntry>(outboundRoutes), new LinkedHashMap<String, ConfigRouteEntry>(
+      inboundRoutes));
+  }
+
+  private RouteSnapshot(long version, Map<String, ConfigRouteEntry> outboundRoutes,
+                        Map<String, ConfigRouteEntry> inboundRoutes) {
+    _version = version;
+    _outboundRoutes = Collections.unmodifiableMap(outboundRoutes);
+    _inboundRoutes = Collections.unmodifiableMap(inboundRoutes);
+    _outboundTable = new RoutingTable(_outboundRoutes.values());
+    _inboundTable = new RoutingTable(_inboundRoutes.values());
+  }
+
+  public long getVersion() {
+    return _version;
+  }
+
+  public Map<String, ConfigRouteEntry> getOutboundRoutes() {
+    return _outboundRoutes;
+  }
+
+  public Map<String, ConfigRouteEntry> getInboundRoutes() {
+    return _inboundRoutes;
+  }
+
+  public RoutingTable getOutboundTable() {
+    return _outboundTable;
+  }
+
+  public RoutingTable getInboundTable() {
+    return _inboundTable;
+  }
+
+  public RouteSnapshot withOutboundRoute(RoutePatternType type, String pattern, String address) {
+    return new RouteSnapshot(_version + 1, add(_outboundRoutes, type, pattern, address), copy(_inboundRoutes));
+  }
+
+  public RouteSnapshot withoutOutboundRoute(String pattern, String address) {
+    Map<String, ConfigRouteEntry> routes = remove(_outboundRoutes, pattern, address);
+    return routes == null ? this : new RouteSnapshot(_version + 1, routes, copy(_inboundRoutes));
+  }
+
+  public RouteSnapshot withInboundRoute(RoutePatternType type, String pattern, String address) {
+    return new RouteSnapshot(_version + 1, copy(_outboundRoutes), add(_inboundRoutes, type, pattern, address));
+  }
+
+  public RouteSnapshot withoutInboundRoute(String pattern, String address) {
+    Map<String, ConfigRouteEntry> routes = remove(_inboundRoutes, pattern, address);
+    return routes == null ? this : new RouteSnapshot(_version + 1, copy(_outboundRoutes), routes);
+  }
+
+  private static Map<String, ConfigRouteEntry> copy(Map<String, ConfigRouteEntry> routes) {
+    return new LinkedHashMap<String, ConfigRouteEntry>(routes);
+  }
+
+  private static Map<String, ConfigRouteEntry> add(Map<String, ConfigRouteEntry> routes, RoutePatternType type,
+                                                   String pattern, String address) {
+    Map<String, ConfigRouteEntry> copy = copy(routes);
+    ConfigRouteEntry entry = copy.get(pattern);
+    copy.put(pattern, entry == null ? new ConfigRouteEntry(type, pattern, address) : entry.withAddress(address));
+    return copy;
+  }
+
+  // Returns null if there was no such route
+  private static Map<String, ConfigRouteEntry> remove(Map<String, ConfigRouteEntry> routes, String pattern,
+                                                      String address) {
+    ConfigRouteEntry entry = routes.get(pattern);
+    if (entry == null || !entry.getAddressList().contains(address)) {
+      return null;
+    }
+    Map<String, ConfigRouteEntry> copy = copy(routes);
+    entry = entry.withoutAddress(address);
+    if (entry.getAddressList().isEmpty()) {
+      copy.remove(pattern);
+    } else {
+      copy.put(pattern, entry);
+    }
+    return copy;
+  }
+}
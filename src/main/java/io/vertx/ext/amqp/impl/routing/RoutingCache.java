@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.routing;
+
+import io.vertx.ext.amqp.impl.util.Metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded LRU cache of routing decisions (routing key -> {@link RouteMatch}).
+ * <p/>
+ * Every entry is stamped with the version of the route tables it was computed
+ * from. A lookup made with a different version is treated as a miss, so
+ * changing the routes invalidates the whole cache without having to clear it.
+ */
+public class RoutingCache {
+  private final int _maxSize;
+
+  private final Map<String, Entry> _entries;
+
+  private final LongAdder _hits;
+
+  private final LongAdder _misses;
+
+  public RoutingCache(String name, final int maxSize, Metrics metrics) {
+    _maxSize = maxSize;
+    _entries = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(Math.max(maxSize, 0) + 1, 1.1f,
+      true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxSize;
+      }
+    });
+    _hits = metrics.counter(name + ".hits");
+    _misses = metrics.counter(name + ".misses");
+    metrics.gauge(name + ".hit-ratio", () -> Metrics.ratio(_hits, _misses));
+    metrics.gauge(name + ".size", () -> _entries.size());
+  }
+
+  public boolean isEnabled() {
+    return _maxSize > 0;
+  }
+
+  /**
+   * Returns the cached match for the routing key, or null if there is no
+   * entry computed against the given version of the routes.
+   */
+  public RouteMatch get(String routingKey, long version) {
+    Entry entry = _entries.get(routingKey);
+    if (entry != null && entry._version == version) {
+      _hits.increment();
+      return entry._match;
+    }
+    _misses.increment();
+    return null;
+  }
+
+  public void put(String routingKey, long version, RouteMatch match) {
+    _entries.put(routingKey, new Entry(version, match));
+  }
+
+  public void clear() {
+    _entries.clear();
+  }
+
+  private static class Entry {
+    final long _version;
+
+    final RouteMatch _match;
+
+    Entry(long version, RouteMatch match) {
+      _version = version;
+      _match = match;
+    }
+  }
+}
@@ -0,0 +1,474 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.routing;
+
+import io.vertx.ext.amqp.BodyCodec;
+import io.vertx.ext.amqp.DeliveryFormat;
+import io.vertx.ext.amqp.impl.config.ConfigRouteEntry;
+import io.vertx.ext.amqp.impl.selector.PropertySource;
+import io.vertx.ext.amqp.impl.selector.Selector;
+import io.vertx.ext.amqp.impl.translators.Compression;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable, compiled view of a set of route entries.
+ * <p/>
+ * Each route pattern is classified when the table is built:
+ * <ul>
+ * <li>Patterns without any regex constructs are literals and are resolved
+ * through a hash lookup.</li>
+ * <li>Patterns made only of literal characters, '.' (any character) and an
+ * optional trailing ".*" are compiled into a character trie.</li>
+ * <li>Everything else falls back to {@link Pattern#matcher(CharSequence)}.</li>
+ * </ul>
+ * TOPIC routes are kept in a separate word based {@link TopicTrie}.
+ * The cost of a lookup therefore depends on the length of the routing key and
+ * the number of real regex routes, not on the total number of routes.
+ * <p/>
+ * Tables are never modified once built. Route changes build a new table which
+ * replaces the old one.
+ */
+public class RoutingTable {
+  public static final RoutingTable EMPTY = new RoutingTable(Collections.<ConfigRouteEntry> emptyList());
+
+  private static final String REGEX_META_CHARS = "[]{}()*+?^$|";
+
+  private static final Comparator<Route> ORDER = (r1, r2) -> Integer.compare(r1._order, r2._order);
+
+  private final Map<String, List<Route>> _literals = new HashMap<String, List<Route>>();
+
+  private final Node _trie = new Node();
+
+  private final List<Route> _regexRoutes = new ArrayList<Route>();
+
+  private final TopicTrie<Route> _topics = new TopicTrie<Route>();
+
+  private boolean _hasTopics;
+
+  private final int _size;
+
+  // addresses of routes not using the default JSON format
+  private final Map<String, DeliveryFormat> _formats = new HashMap<String, DeliveryFormat>();
+
+  // addresses of routes with a default content-type for data bodies
+  private final Map<String, String> _contentTypes = new HashMap<String, String>();
+
+  // addresses of routes with their own body codec
+  private final Map<String, BodyCodec> _codecs = new HashMap<String, BodyCodec>();
+
+  // addresses of routes compressing data bodies
+  private final Map<String, Compression> _compressions = new HashMap<String, Compression>();
+
+  public RoutingTable(Collection<ConfigRouteEntry> entries) {
+    int order = 0;
+    for (ConfigRouteEntry entry : entries) {
+      if (entry.getAddressList().isEmpty()) {
+        continue;
+      }
+      if (entry.getFormat() != DeliveryFormat.JSON) {
+        for (String address : entry.getAddressList()) {
+          _formats.put(address, entry.getFormat());
+        }
+      }
+      if (entry.getContentType() != null) {
+        for (String address : entry.getAddressList()) {
+          _contentTypes.put(address, entry.getContentType());
+        }
+      }
+      if (entry.getCodec() != null) {
+        for (String address : entry.getAddressList()) {
+          _codecs.put(address, entry.getCodec());
+        }
+      }
+      if (entry.getCompression() != null) {
+        for (String address : entry.getAddressList()) {
+          _compressions.put(address, entry.getCompression());
+        }
+      }
+      Route route = new Route(order++, entry);
+      if (entry.getType() == RoutePatternType.TOPIC) {
+        _topics.add(entry.getKey(), route);
+        _hasTopics = true;
+      } else if (!compile(route)) {
+        _regexRoutes.add(route);
+      }
+    }
+    _size = order;
+  }
+
+  /**
+   * Returns the addresses of all routes matching the routing key, ignoring
+   * selectors, or an empty list if there are none. The returned list must not
+   * be modified.
+   */
+  public List<String> match(String routingKey) {
+    return lookup(routingKey).getAddresses();
+  }
+
+  /**
+   * Returns the routes matching the routing key.
+   */
+  public RouteMatch lookup(String routingKey) {
+    if (_size == 0 || routingKey == null) {
+      return RouteMatch.NONE;
+    }
+
+    List<Route> matches = null;
+    List<Route> literals = _literals.get(routingKey);
+    if (literals != null) {
+      matches = new ArrayList<Route>(literals);
+    }
+    matches = collect(_trie, routingKey, 0, matches);
+    if (_hasTopics) {
+      matches = _topics.collect(routingKey, matches);
+    }
+    for (Route route : _regexRoutes) {
+      if (route._pattern.matcher(routingKey).matches()) {
+        matches = add(matches, route);
+      }
+    }
+
+    if (matches == null) {
+      return RouteMatch.NONE;
+    } else if (matches.size() == 1) {
+      return matches.get(0)._match;
+    }
+
+    Collections.sort(matches, ORDER);
+    List<Route> routes = new ArrayList<Route>(matches.size());
+    Route previous = null;
+    for (Route route : matches) {
+      if (route != previous) {
+        routes.add(route);
+      }
+      previous = route;
+    }
+    return routes.size() == 1 ? routes.get(0)._match : new RouteMatch(routes);
+  }
+
+  public int size() {
+    return _size;
+  }
+
+  /**
+   * The format in which messages are sent to the address.
+   */
+  public DeliveryFormat getFormat(String address) {
+    DeliveryFormat format = _formats.get(address);
+    return format == null ? DeliveryFormat.JSON : format;
+  }
+
+  /**
+   * True if some routes set a default content-type.
+   */
+  public boolean hasContentTypes() {
+    return !_contentTypes.isEmpty();
+  }
+
+  /**
+   * The default content-type for data bodies of messages sent to the
+   * address, or null.
+   */
+  public String getContentType(String address) {
+    return _contentTypes.get(address);
+  }
+
+  /**
+   * The body codec of the route for messages sent to the address, or null
+   * to use the codec registered for the service.
+   */
+  public BodyCodec getCodec(String address) {
+    return _codecs.get(address);
+  }
+
+  /**
+   * True if some routes compress data bodies.
+   */
+  public boolean hasCompression() {
+    return !_compressions.isEmpty();
+  }
+
+  /**
+   * The compression for messages sent to the address, or null.
+   */
+  public Compression getCompression(String address) {
+    return _compressions.get(address);
+  }
+
+  private List<Route> collect(Node node, String key, int pos, List<Route> matches) {
+    if (node._prefixRoutes != null && !containsLineTerminator(key, pos)) {
+      matches = addAll(matches, node._prefixRoutes);
+    }
+    if (pos == key.length()) {
+      if (node._routes != null) {
+        matches = addAll(matches, node._routes);
+      }
+      return matches;
+    }
+
+    char c = key.charAt(pos);
+    if (node._children != null) {
+      Node child = node._children.get(c);
+      if (child != null) {
+        matches = collect(child, key, pos + 1, matches);
+      }
+    }
+    if (node._any != null && !isLineTerminator(c)) {
+      matches = collect(node._any, key, pos + 1, matches);
+    }
+    return matches;
+  }
+
+  /*
+   * Attempts to place the route in the literal map or the trie. Returns false
+   * if the pattern needs a real regex engine.
+   */
+  private boolean compile(Route route) {
+    if (route._pattern.flags() != 0) {
+      return false;
+    }
+    String p = route._pattern.pattern();
+    int start = 0;
+    int end = p.length();
+    // ^ and $ are redundant since routes always match the entire key
+    if (end > 0 && p.charAt(0) == '^') {
+      start++;
+    }
+    if (end > start && p.charAt(end - 1) == '$' && !isEscaped(p, end - 1)) {
+      end--;
+    }
+
+    StringBuilder literal = new StringBuilder();
+    List<Object> atoms = new ArrayList<Object>();
+    boolean prefix = false;
+    boolean hasWildcard = false;
+    for (int i = start; i < end; i++) {
+      char c = p.charAt(i);
+      if (c == '\\') {
+        if (i + 1 >= end) {
+          return false;
+        }
+        char next = p.charAt(++i);
+        // \d, \w, \Q etc. are character classes or quoting constructs
+        if (Character.isLetterOrDigit(next)) {
+          return false;
+        }
+        literal.append(next);
+        atoms.add(next);
+      } else if (c == '.') {
+        if (i + 1 < end && p.charAt(i + 1) == '*') {
+          if (i + 2 != end) {
+            return false;
+          }
+          prefix = true;
+          break;
+        }
+        hasWildcard = true;
+        atoms.add(Node.ANY);
+      } else if (REGEX_META_CHARS.indexOf(c) >= 0) {
+        return false;
+      } else {
+        literal.append(c);
+        atoms.add(c);
+      }
+    }
+
+    if (!prefix && !hasWildcard) {
+      List<Route> routes = _literals.get(literal.toString());
+      if (routes == null) {
+        routes = new ArrayList<Route>(1);
+        _literals.put(literal.toString(), routes);
+      }
+      routes.add(route);
+      return true;
+    }
+
+    Node node = _trie;
+    for (Object atom : atoms) {
+      node = node.child(atom);
+    }
+    if (prefix) {
+      node._prefixRoutes = add(node._prefixRoutes, route);
+    } else {
+      node._routes = add(node._routes, route);
+    }
+    return true;
+  }
+
+  private static boolean isEscaped(String p, int index) {
+    int backslashes = 0;
+    for (int i = index - 1; i >= 0 && p.charAt(i) == '\\'; i--) {
+      backslashes++;
+    }
+    return backslashes % 2 == 1;
+  }
+
+  // Mirrors the default (non DOTALL) behaviour of '.' in java.util.regex
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  private static boolean containsLineTerminator(String key, int from) {
+    for (int i = from; i < key.length(); i++) {
+      if (isLineTerminator(key.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static List<Route> add(List<Route> list, Route route) {
+    if (list == null) {
+      list = new ArrayList<Route>(2);
+    }
+    list.add(route);
+    return list;
+  }
+
+  private static List<Route> addAll(List<Route> list, List<Route> routes) {
+    if (list == null) {
+      list = new ArrayList<Route>(routes.size());
+    }
+    list.addAll(routes);
+    return list;
+  }
+
+  static class Route {
+    final int _order;
+
+    final Pattern _pattern;
+
+    final List<String> _addresses;
+
+    final Selector _selector;
+
+    final RouteMode _mode;
+
+    final String _partitionBy;
+
+    final ConsistentHashRing _ring;
+
+    private final AtomicInteger _next = new AtomicInteger();
+
+    // the result of a lookup matching only this route
+    final RouteMatch _match;
+
+    Route(int order, ConfigRouteEntry entry) {
+      _order = order;
+      _pattern = entry.getPattern();
+      _addresses = Collections.unmodifiableList(new ArrayList<String>(entry.getAddressList()));
+      _selector = entry.getSelector();
+      _mode = entry.getMode();
+      _partitionBy = entry.getPartitionBy() == null ? MessageRouter.ROUTING_KEY_FIELD : entry.getPartitionBy();
+      _ring = _mode == RouteMode.PARTITIONED ? new ConsistentHashRing(_addresses) : null;
+      _match = new RouteMatch(Collections.singletonList(this));
+    }
+
+    /**
+     * True if the addresses used depend on the message, not just the key.
+     */
+    boolean dependsOnMessage() {
+      return _selector != null || _mode != RouteMode.BROADCAST;
+    }
+
+    void resolve(PropertySource message, AddressLoad load, List<String> addresses) {
+      if (_selector != null && !_selector.matches(message)) {
+        return;
+      }
+      switch (_mode) {
+        case PARTITIONED:
+          Object key = message.getProperty(_partitionBy);
+          if (key == null) {
+            key = message.getProperty(MessageRouter.ROUTING_KEY_FIELD);
+          }
+          addresses.add(_ring.get(String.valueOf(key)));
+          break;
+        case LOAD_BALANCED:
+          addresses.add(leastLoaded(load));
+          break;
+        default:
+          addresses.addAll(_addresses);
+      }
+    }
+
+    /*
+     * Picks the address with the most credit, and of those the one with the
+     * fewest unsettled deliveries. The scan starts at a rotating offset so
+     * that equally loaded addresses (e.g. before any credit has arrived) take
+     * turns.
+     */
+    private String leastLoaded(AddressLoad load) {
+      int size = _addresses.size();
+      int start = (_next.getAndIncrement() & Integer.MAX_VALUE) % size;
+      String best = _addresses.get(start);
+      int bestCredit = load.getCredit(best);
+      int bestUnsettled = load.getUnsettled(best);
+      for (int i = 1; i < size; i++) {
+        String address = _addresses.get((start + i) % size);
+        int credit = load.getCredit(address);
+        if (credit < bestCredit) {
+          continue;
+        }
+        int unsettled = load.getUnsettled(address);
+        if (credit > bestCredit || unsettled < bestUnsettled) {
+          best = address;
+          bestCredit = credit;
+          bestUnsettled = unsettled;
+        }
+      }
+      return best;
+    }
+  }
+
+  static class Node {
+    static final Object ANY = new Object();
+
+    Map<Character, Node> _children;
+
+    Node _any;
+
+    List<Route> _routes;
+
+    List<Route> _prefixRoutes;
+
+    Node child(Object atom) {
+      if (atom == ANY) {
+        if (_any == null) {
+          _any = new Node();
+        }
+        return _any;
+      }
+      if (_children == null) {
+        _children = new HashMap<Character, Node>();
+      }
+      Node child = _children.get(atom);
+      if (child == null) {
+        child = new Node();
+        _children.put((Character) atom, child);
+      }
+      return child;
+    }
+  }
+}
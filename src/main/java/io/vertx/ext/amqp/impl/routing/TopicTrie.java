@@ -0,0 +1,154 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.routing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A subscription trie for AMQP style topic patterns.
+ * <p/>
+ * Patterns and keys are split into words on '.'. In a pattern '*' matches
+ * exactly one word and '#' matches zero or more words. All patterns share a
+ * single trie, so finding every pattern that matches a key costs roughly the
+ * number of words in the key rather than the number of patterns. The key is
+ * matched in a single pass over its words, tracking the set of nodes the
+ * words read so far lead to, so several '#' in a pattern do not multiply the
+ * paths tried.
+ * <p/>
+ * Not thread safe while being built. Safe for concurrent lookups once built.
+ */
+class TopicTrie<T> {
+  private static final String STAR = "*";
+
+  private static final String HASH = "#";
+
+  private final Node<T> _root = new Node<T>();
+
+  void add(String pattern, T value) {
+    Node<T> node = _root;
+    for (String word : split(pattern)) {
+      if (HASH.equals(word) && node._loop) {
+        // '#.#' matches the same keys as '#'
+        continue;
+      }
+      if (STAR.equals(word)) {
+        if (node._star == null) {
+          node._star = new Node<T>();
+        }
+        node = node._star;
+      } else if (HASH.equals(word)) {
+        if (node._hash == null) {
+          node._hash = new Node<T>();
+          node._hash._loop = true;
+        }
+        node = node._hash;
+      } else {
+        if (node._children == null) {
+          node._children = new HashMap<String, Node<T>>();
+        }
+        Node<T> child = node._children.get(word);
+        if (child == null) {
+          child = new Node<T>();
+          node._children.put(word, child);
+        }
+        node = child;
+      }
+    }
+    if (node._values == null) {
+      node._values = new ArrayList<T>(1);
+    }
+    node._values.add(value);
+  }
+
+  /**
+   * Adds the values of all patterns matching the key to the list. Each
+   * pattern is matched once; a value added under several patterns that all
+   * match is added once for each of them.
+   */
+  List<T> collect(String key, List<T> matches) {
+    List<Node<T>> active = new ArrayList<Node<T>>();
+    enter(_root, active);
+    for (String word : split(key)) {
+      List<Node<T>> next = new ArrayList<Node<T>>();
+      for (Node<T> node : active) {
+        if (node._loop) {
+          // '#' swallows the word
+          enter(node, next);
+        }
+        if (node._children != null) {
+          Node<T> child = node._children.get(word);
+          if (child != null) {
+            enter(child, next);
+          }
+        }
+        if (node._star != null) {
+          enter(node._star, next);
+        }
+      }
+      if (next.isEmpty()) {
+        return matches;
+      }
+      active = next;
+    }
+    for (Node<T> node : active) {
+      if (node._values != null) {
+        if (matches == null) {
+          matches = new ArrayList<T>(node._values.size());
+        }
+        matches.addAll(node._values);
+      }
+    }
+    return matches;
+  }
+
+  // Adds the node to the active nodes, with the '#' below it as it may match no word
+  private static <T> void enter(Node<T> node, List<Node<T>> active) {
+    if (!active.contains(node)) {
+      active.add(node);
+      if (node._hash != null) {
+        enter(node._hash, active);
+      }
+    }
+  }
+
+  static List<String> split(String s) {
+    List<String> words = new ArrayList<String>();
+    int start = 0;
+    int end;
+    while ((end = s.indexOf('.', start)) >= 0) {
+      words.add(s.substring(start, end));
+      start = end + 1;
+    }
+    words.add(s.substring(start));
+    return words;
+  }
+
+  private static class Node<T> {
+    Map<String, Node<T>> _children;
+
+    Node<T> _star;
+
+    Node<T> _hash;
+
+    // reached through '#', which stays on the node for every further word
+    boolean _loop;
+
+    List<T> _values;
+  }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.selector;
+
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The expression nodes a selector is compiled into.
+ * <p/>
+ * Logic follows the SQL/JMS three-valued rules: a comparison with a missing
+ * (null) operand is unknown, NOT unknown is unknown, FALSE AND unknown is
+ * FALSE and TRUE OR unknown is TRUE.
+ */
+final class Expressions {
+  private Expressions() {
+  }
+
+  static class Literal implements Expression {
+    private final Object _value;
+
+    Literal(Object value) {
+      _value = value;
+    }
+
+    @Override
+    public Object evaluate(PropertySource source) {
+      return _value;
+    }
+  }
+
+  static class Identifier implements Expression {
+    private final String _name;
+
+    Identifier(String name) {
+      _name = name;
+    }
+
+    @Override
+    public Object evaluate(PropertySource source) {
+      return source.getProperty(_name);
+    }
+  }
+
+  static class And implements Expression {
+    private final Expression _left;
+
+    private final Expression _right;
+
+    And(Expression left, Expression right) {
+      _left = left;
+      _right = right;
+    }
+
+    @Override
+    public Object evaluate(PropertySource source) {
+      Object l = _left.evaluate(source);
+      if (Boolean.FALSE.equals(l)) {
+        return Boolean.FALSE;
+      }
+      Object r = _right.evaluate(source);
+      if (Boolean.FALSE.equals(r)) {
+        return Boolean.FALSE;
+      }
+      return Boolean.TRUE.equals(l) && Boolean.TRUE.equals(r) ? Boolean.TRUE : null;
+    }
+  }
+
+  static class Or implements Expression {
+    private final Expression _left;
+
+    private final Expression _right;
+
+    Or(Expression left, Expression right) {
+      _left = left;
+      _right = right;
+    }
+
+    @Override
+    public Object evaluate(PropertySource source) {
+      Object l = _left.evaluate(source);
+      if (Boolean.TRUE.equals(l)) {
+        return Boolean.TRUE;
+      }
+      Object r = _right.evaluate(source);
+      if (Boolean.TRUE.equals(r)) {
+        return Boolean.TRUE;
+      }
+      return Boolean.FALSE.equals(l) && Boolean.FALSE.equals(r) ? Boolean.FALSE : null;
+    }
+  }
+
+  static class Not implements Expression {
+    private final Expression _operand;
+
+    Not(Expression operand) {
+      _operand = operand;
+    }
+
+    @Override
+    public Object evaluate(PropertySource source) {
+      return not(_operand.evaluate(source));
+    }
+  }
+
+  enum ComparisonOp {
+    EQ, NE, LT, LE, GT, GE
+  }
+
+  static class Comparison implements Expression {
+    private final ComparisonOp _op;
+
+    private final Expression _left;
+
+    private final Expression _right;
+
+    Comparison(ComparisonOp op, Expression left, Expression right) {
+      _op = op;
+      _left = left;
+      _right = right;
+    }
+
+    @Override
+    public Object evaluate(PropertySource source) {
+      Object l = _left.evaluate(source);
+      Object r = _right.evaluate(source);
+      if (l == null || r == null) {
+        return null;
+      }
+      if (_op == ComparisonOp.EQ || _op == ComparisonOp.NE) {
+        Boolean eq = equal(l, r);
+        return eq == null ? null : (_op == ComparisonOp.EQ) == eq;
+      }
+      Integer c = compare(l, r);
+      if (c == null) {
+        return null;
+      }
+      switch (_op) {
+        case LT:
+          return c < 0;
+        case LE:
+          return c <= 0;
+        case GT:
+          return c > 0;
+        default:
+          return c >= 0;
+      }
+    }
+  }
+
+  static class Between implements Expression {
+    private final Expression _value;
+
+    private final Expression _low;
+
+    private final Expression _high;
+
+    Between(Expression value, Expression low, Expression high) {
+      _value = value;
+      _low = low;
+      _high = high;
+    }
+
+    @Override
+    public Object evaluate(PropertySource source) {
+      Object v = _value.evaluate(source);
+      Object lo = _low.evaluate(source);
+      Object hi = _high.evaluate(source);
+      if (v == null || lo == null || hi == null) {
+        return null;
+      }
+      Integer c1 = compare(v, lo);
+      Integer c2 = compare(v, hi);
+      if (c1 == null || c2 == null) {
+        return null;
+      }
+      return c1 >= 0 && c2 <= 0;
+    }
+  }
+
+  static class In implements Expression {
+    private final Expression _value;
+
+    private final Set<String> _values;
+
+    In(Expression value, Set<String> values) {
+      _value = value;
+      _values = values;
+    }
+
+    @Override
+    public Object evaluate(PropertySource source) {
+      Object v = _value.evaluate(source);
+      if (v == null) {
+        return null;
+      }
+      return _values.contains(v.toString());
+    }
+  }
+
+  static class Like implements Expression {
+    private final Expression _value;
+
+    private final Pattern _pattern;
+
+    Like(Expression value, Pattern pattern) {
+      _value = value;
+      _pattern = pattern;
+    }
+
+    @Override
+    public Object evaluate(PropertySource source) {
+      Object v = _value.evaluate(source);
+      if (v == null) {
+        return null;
+      }
+      return _pattern.matcher(v.toString()).matches();
+    }
+  }
+
+  static class IsNull implements Expression {
+    private final Expression _value;
+
+    IsNull(Expression value) {
+      _value = value;
+    }
+
+    @Override
+    public Object evaluate(PropertySource source) {
+      return _value.evaluate(source) == null;
+    }
+  }
+
+  enum ArithmeticOp {
+    ADD, SUB, MUL, DIV, MOD
+  }
+
+  static class Arithmetic implements Expression {
+    private final ArithmeticOp _op;
+
+    private final Expression _left;
+
+    private final Expression _right;
+
+    Arithmetic(ArithmeticOp op, Expression left, Expression right) {
+      _op = op;
+      _left = left;
+      _right = right;
+    }
+
+    @Override
+    public Object evaluate(PropertySource source) {
+      Number l = toNumber(_left.evaluate(source));
+      Number r = toNumber(_right.evaluate(source));
+      if (l == null || r == null) {
+        return null;
+      }
+      if (isFloating(l) || isFloating(r)) {
+        double a = l.doubleValue();
+        double b = r.doubleValue();
+        switch (_op) {
+          case ADD:
+            return a + b;
+          case SUB:
+            return a - b;
+          case MUL:
+            return a * b;
+          case DIV:
+            return a / b;
+          default:
+            return a % b;
+        }
+      }
+      long a = l.longValue();
+      long b = r.longValue();
+      switch (_op) {
+        case ADD:
+          return a + b;
+        case SUB:
+          return a - b;
+        case MUL:
+          return a * b;
+        case DIV:
+          return b == 0 ? null : a / b;
+        default:
+          return b == 0 ? null : a % b;
+      }
+    }
+  }
+
+  static class Negate implements Expression {
+    private final Expression _operand;
+
+    Negate(Expression operand) {
+      _operand = operand;
+    }
+
+    @Override
+    public Object evaluate(PropertySource source) {
+      Number n = toNumber(_operand.evaluate(source));
+      if (n == null) {
+        return null;
+      }
+      return isFloating(n) ? (Object) (-n.doubleValue()) : (Object) (-n.longValue());
+    }
+  }
+
+  static Object not(Object value) {
+    if (value instanceof Boolean) {
+      return !(Boolean) value;
+    }
+    return null;
+  }
+
+  static boolean isFloating(Number n) {
+    return n instanceof Double || n instanceof Float || n instanceof java.math.BigDecimal;
+  }
+
+  /*
+   * Property values set through event-bus headers are always strings, so a
+   * string that parses as a number is treated as one in numeric contexts.
+   */
+  static Number toNumber(Object value) {
+    if (value instanceof Number) {
+      return (Number) value;
+    } else if (value instanceof String) {
+      String s = ((String) value).trim();
+      try {
+        return Long.valueOf(s);
+      } catch (NumberFormatException e) {
+        try {
+          return Double.valueOf(s);
+        } catch (NumberFormatException e2) {
+          return null;
+        }
+      }
+    }
+    return null;
+  }
+
+  static Boolean equal(Object l, Object r) {
+    if (l instanceof Number || r instanceof Number) {
+      Integer c = compare(l, r);
+      return c == null ? null : c == 0;
+    } else if (l instanceof Boolean || r instanceof Boolean) {
+      Boolean a = toBoolean(l);
+      Boolean b = toBoolean(r);
+      return a == null || b == null ? null : a.equals(b);
+    }
+    return l.toString().equals(r.toString());
+  }
+
+  static Integer compare(Object l, Object r) {
+    Number a = toNumber(l);
+    Number b = toNumber(r);
+    if (a == null || b == null) {
+      if (l instanceof String && r instanceof String) {
+        return ((String) l).compareTo((String) r);
+      }
+      return null;
+    }
+    if (isFloating(a) || isFloating(b)) {
+      return Double.compare(a.doubleValue(), b.doubleValue());
+    }
+    return Long.compare(a.longValue(), b.longValue());
+  }
+
+  private static Boolean toBoolean(Object value) {
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    } else if ("true".equalsIgnoreCase(value.toString())) {
+      return Boolean.TRUE;
+    } else if ("false".equalsIgnoreCase(value.toString())) {
+      return Boolean.FALSE;
+    }
+    return null;
+  }
+}
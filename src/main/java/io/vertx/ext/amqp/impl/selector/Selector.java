@@ -0,0 +1,57 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.selector;
+
+/**
+ * A compiled, JMS style message selector such as
+ * <code>priority > 5 AND region = 'eu'</code>.
+ * <p/>
+ * Supports comparisons (=, <>, <, <=, >, >=), arithmetic, AND/OR/NOT,
+ * BETWEEN, IN, LIKE (with ESCAPE) and IS [NOT] NULL. Identifiers are resolved
+ * through a {@link PropertySource}. A message is selected only if the
+ * selector evaluates to TRUE, an unknown result (e.g. a missing property) does
+ * not select it.
+ * <p/>
+ * Selectors are immutable and safe to share between threads.
+ */
+public class Selector {
+  private final String _text;
+
+  private final Expression _expression;
+
+  private Selector(String text, Expression expression) {
+    _text = text;
+    _expression = expression;
+  }
+
+  /**
+   * Parses and compiles the selector.
+   *
+   * @throws IllegalArgumentException if the selector is not valid.
+   */
+  public static Selector parse(String text) {
+    return new Selector(text, new SelectorParser(text).parse());
+  }
+
+  public boolean matches(PropertySource source) {
+    return Boolean.TRUE.equals(_expression.evaluate(source));
+  }
+
+  @Override
+  public String toString() {
+    return _text;
+  }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.selector;
+
+import io.vertx.ext.amqp.impl.selector.Expressions.ArithmeticOp;
+import io.vertx.ext.amqp.impl.selector.Expressions.ComparisonOp;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Recursive descent parser for the selector syntax.
+ *
+ * <pre>
+ * or         := and ( OR and )*
+ * and        := not ( AND not )*
+ * not        := NOT not | predicate
+ * predicate  := sum [ cmp-op sum | [NOT] BETWEEN sum AND sum | [NOT] IN ( string, ... )
+ *                     | [NOT] LIKE string [ESCAPE string] | IS [NOT] NULL ]
+ * sum        := product ( (+|-) product )*
+ * product    := unary ( (*|/|%) unary )*
+ * unary      := (+|-) unary | primary
+ * primary    := ( or ) | string | number | TRUE | FALSE | identifier
+ * </pre>
+ * Keywords are case insensitive.
+ */
+class SelectorParser {
+  private final String _text;
+
+  private int _pos;
+
+  SelectorParser(String text) {
+    _text = text;
+  }
+
+  Expression parse() {
+    Expression e = parseOr();
+    skipWhitespace();
+    if (_pos < _text.length()) {
+      throw error("Unexpected input");
+    }
+    return e;
+  }
+
+  private Expression parseOr() {
+    Expression e = parseAnd();
+    while (keyword("OR")) {
+      e = new Expressions.Or(e, parseAnd());
+    }
+    return e;
+  }
+
+  private Expression parseAnd() {
+    Expression e = parseNot();
+    while (keyword("AND")) {
+      e = new Expressions.And(e, parseNot());
+    }
+    return e;
+  }
+
+  private Expression parseNot() {
+    if (keyword("NOT")) {
+      return new Expressions.Not(parseNot());
+    }
+    return parsePredicate();
+  }
+
+  private Expression parsePredicate() {
+    Expression left = parseSum();
+    if (symbol("=")) {
+      return new Expressions.Comparison(ComparisonOp.EQ, left, parseSum());
+    } else if (symbol("<>") || symbol("!=")) {
+      return new Expressions.Comparison(ComparisonOp.NE, left, parseSum());
+    } else if (symbol("<=")) {
+      return new Expressions.Comparison(ComparisonOp.LE, left, parseSum());
+    } else if (symbol(">=")) {
+      return new Expressions.Comparison(ComparisonOp.GE, left, parseSum());
+    } else if (symbol("<")) {
+      return new Expressions.Comparison(ComparisonOp.LT, left, parseSum());
+    } else if (symbol(">")) {
+      return new Expressions.Comparison(ComparisonOp.GT, left, parseSum());
+    } else if (keyword("IS")) {
+      boolean negate = keyword("NOT");
+      expectKeyword("NULL");
+      Expression e = new Expressions.IsNull(left);
+      return negate ? new Expressions.Not(e) : e;
+    }
+
+    int mark = _pos;
+    boolean negate = keyword("NOT");
+    Expression e;
+    if (keyword("BETWEEN")) {
+      Expression low = parseSum();
+      expectKeyword("AND");
+      e = new Expressions.Between(left, low, parseSum());
+    } else if (keyword("IN")) {
+      e = new Expressions.In(left, parseStringList());
+    } else if (keyword("LIKE")) {
+      String pattern = parseString();
+      Character escape = null;
+      if (keyword("ESCAPE")) {
+        String s = parseString();
+        if (s.length() != 1) {
+          throw error("ESCAPE must be a single character");
+        }
+        escape = s.charAt(0);
+      }
+      e = new Expressions.Like(left, likeToRegex(pattern, escape));
+    } else {
+      // a plain NOT belongs to an outer expression
+      _pos = mark;
+      return left;
+    }
+    return negate ? new Expressions.Not(e) : e;
+  }
+
+  private Expression parseSum() {
+    Expression e = parseProduct();
+    while (true) {
+      if (symbol("+")) {
+        e = new Expressions.Arithmetic(ArithmeticOp.ADD, e, parseProduct());
+      } else if (symbol("-")) {
+        e = new Expressions.Arithmetic(ArithmeticOp.SUB, e, parseProduct());
+      } else {
+        return e;
+      }
+    }
+  }
+
+  private Expression parseProduct() {
+    Expression e = parseUnary();
+    while (true) {
+      if (symbol("*")) {
+        e = new Expressions.Arithmetic(ArithmeticOp.MUL, e, parseUnary());
+      } else if (symbol("/")) {
+        e = new Expressions.Arithmetic(ArithmeticOp.DIV, e, parseUnary());
+      } else if (symbol("%")) {
+        e = new Expressions.Arithmetic(ArithmeticOp.MOD, e, parseUnary());
+      } else {
+        return e;
+      }
+    }
+  }
+
+  private Expression parseUnary() {
+    if (symbol("-")) {
+      return new Expressions.Negate(parseUnary());
+    } else if (symbol("+")) {
+      return parseUnary();
+    }
+    return parsePrimary();
+  }
+
+  private Expression parsePrimary() {
+    skipWhitespace();
+    if (_pos >= _text.length()) {
+      throw error("Unexpected end of selector");
+    }
+    char c = _text.charAt(_pos);
+    if (c == '(') {
+      _pos++;
+      Expression e = parseOr();
+      expectSymbol(")");
+      return e;
+    } else if (c == '\'') {
+      return new Expressions.Literal(parseString());
+    } else if (Character.isDigit(c) || (c == '.' && _pos + 1 < _text.length()
+      && Character.isDigit(_text.charAt(_pos + 1)))) {
+      return new Expressions.Literal(parseNumber());
+    } else if (keyword("TRUE")) {
+      return new Expressions.Literal(Boolean.TRUE);
+    } else if (keyword("FALSE")) {
+      return new Expressions.Literal(Boolean.FALSE);
+    } else if (isIdentifierStart(c)) {
+      int start = _pos;
+      while (_pos < _text.length() && isIdentifierPart(_text.charAt(_pos))) {
+        _pos++;
+      }
+      return new Expressions.Identifier(_text.substring(start, _pos));
+    }
+    throw error("Unexpected character '" + c + "'");
+  }
+
+  private Set<String> parseStringList() {
+    expectSymbol("(");
+    Set<String> values = new HashSet<String>();
+    do {
+      values.add(parseString());
+    } while (symbol(","));
+    expectSymbol(")");
+    return values;
+  }
+
+  private String parseString() {
+    skipWhitespace();
+    if (_pos >= _text.length() || _text.charAt(_pos) != '\'') {
+      throw error("Expected a string literal");
+    }
+    StringBuilder b = new StringBuilder();
+    _pos++;
+    while (true) {
+      if (_pos >= _text.length()) {
+        throw error("Unterminated string literal");
+      }
+      char c = _text.charAt(_pos++);
+      if (c == '\'') {
+        // '' is an escaped quote
+        if (_pos < _text.length() && _text.charAt(_pos) == '\'') {
+          b.append('\'');
+          _pos++;
+        } else {
+          return b.toString();
+        }
+      } else {
+        b.append(c);
+      }
+    }
+  }
+
+  private Number parseNumber() {
+    int start = _pos;
+    boolean floating = false;
+    while (_pos < _text.length()) {
+      char c = _text.charAt(_pos);
+      if (Character.isDigit(c)) {
+        _pos++;
+      } else if (c == '.' || c == 'e' || c == 'E') {
+        floating = true;
+        _pos++;
+        if ((c == 'e' || c == 'E') && _pos < _text.length()
+          && (_text.charAt(_pos) == '-' || _text.charAt(_pos) == '+')) {
+          _pos++;
+        }
+      } else {
+        break;
+      }
+    }
+    String s = _text.substring(start, _pos);
+    if (_pos < _text.length() && (_text.charAt(_pos) == 'L' || _text.charAt(_pos) == 'l')) {
+      _pos++;
+    }
+    try {
+      return floating ? (Number) Double.valueOf(s) : (Number) Long.valueOf(s);
+    } catch (NumberFormatException e) {
+      throw error("Invalid number '" + s + "'");
+    }
+  }
+
+  static Pattern likeToRegex(String like, Character escape) {
+    StringBuilder b = new StringBuilder();
+    for (int i = 0; i < like.length(); i++) {
+      char c = like.charAt(i);
+      if (escape != null && c == escape && i + 1 < like.length()) {
+        b.append(Pattern.quote(String.valueOf(like.charAt(++i))));
+      } else if (c == '%') {
+        b.append(".*");
+      } else if (c == '_') {
+        b.append('.');
+      } else {
+        b.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    return Pattern.compile(b.toString(), Pattern.DOTALL);
+  }
+
+  private boolean keyword(String word) {
+    skipWhitespace();
+    int end = _pos + word.length();
+    if (end <= _text.length() && _text.regionMatches(true, _pos, word, 0, word.length())
+      && (end == _text.length() || !isIdentifierPart(_text.charAt(end)))) {
+      _pos = end;
+      return true;
+    }
+    return false;
+  }
+
+  private boolean symbol(String s) {
+    skipWhitespace();
+    if (_text.startsWith(s, _pos)) {
+      _pos += s.length();
+      return true;
+    }
+    return false;
+  }
+
+  private void expectKeyword(String word) {
+    if (!keyword(word)) {
+      throw error("Expected " + word);
+    }
+  }
+
+  private void expectSymbol(String s) {
+    if (!symbol(s)) {
+      throw error("Expected '" + s + "'");
+    }
+  }
+
+  private void skipWhitespace() {
+    while (_pos < _text.length() && Character.isWhitespace(_text.charAt(_pos))) {
+      _pos++;
+    }
+  }
+
+  private static boolean isIdentifierStart(char c) {
+    return Character.isJavaIdentifierStart(c);
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return Character.isJavaIdentifierPart(c) || c == '.';
+  }
+
+  private IllegalArgumentException error(String msg) {
+    return new IllegalArgumentException(String.format("%s at position %s in selector \"%s\"", msg, _pos, _text));
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.translators;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.EncodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.amqp.BodyCodec;
+import io.vertx.ext.amqp.ErrorCode;
+import io.vertx.ext.amqp.MessageFormatException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link BodyCodec}s known to a translator, keyed by content-type.
+ * <p/>
+ * Built in:
+ * <ul>
+ * <li>application/octet-stream: the body is a Base64 string, the form used by
+ * {@link JsonObject#getBinary(String)}. Data bodies without a codec are
+ * translated the same way.</li>
+ * <li>text/plain: the body is a string, the payload is UTF-8.</li>
+ * <li>application/json: the body is any Json value, the payload its UTF-8
+ * encoding.</li>
+ * <li>application/x-vertx-record: the body is a Json array of Base64 fields,
+ * the payload a sequence of fields each preceded by its length as a 4 byte
+ * big-endian int. Applications receiving raw or typed messages can use
+ * {@link #decodeRecord(byte[], int, int)} instead.</li>
+ * </ul>
+ */
+public class BodyCodecs {
+  public static final String OCTET_STREAM = "application/octet-stream";
+
+  public static final String TEXT = "text/plain";
+
+  public static final String JSON = "application/json";
+
+  public static final String RECORD = "application/x-vertx-record";
+
+  private final Map<String, BodyCodec> _codecs = new ConcurrentHashMap<String, BodyCodec>();
+
+  public BodyCodecs() {
+    register(new BytesCodec());
+    register(new TextCodec());
+    register(new JsonCodec());
+    register(new RecordCodec());
+  }
+
+  /**
+   * Adds the codec, replacing any codec registered for the same content-type.
+   */
+  public BodyCodecs register(BodyCodec codec) {
+    _codecs.put(mediaType(codec.getContentType()), codec);
+    return this;
+  }
+
+  /**
+   * Returns the codec for the content-type, ignoring parameters such as
+   * charset, or null if there is none.
+   */
+  public BodyCodec get(String contentType) {
+    return contentType == null ? null : _codecs.get(mediaType(contentType));
+  }
+
+  /**
+   * Returns the route codec if it is for the content-type, otherwise the
+   * codec registered for it.
+   */
+  public BodyCodec get(String contentType, BodyCodec routeCodec) {
+    if (routeCodec != null && contentType != null
+      && mediaType(routeCodec.getContentType()).equals(mediaType(contentType))) {
+      return routeCodec;
+    }
+    return get(contentType);
+  }
+
+  static String mediaType(String contentType) {
+    int i = contentType.indexOf(';');
+    String type = i < 0 ? contentType : contentType.substring(0, i);
+    return type.trim().toLowerCase();
+  }
+
+  public static byte[] encodeRecord(List<byte[]> fields) {
+    int size = 0;
+    for (byte[] field : fields) {
+      size += 4 + field.length;
+    }
+    ByteBuffer out = ByteBuffer.allocate(size);
+    for (byte[] field : fields) {
+      out.putInt(field.length).put(field);
+    }
+    return out.array();
+  }
+
+  public static List<byte[]> decodeRecord(byte[] data, int offset, int length) throws MessageFormatException {
+    List<byte[]> fields = new ArrayList<byte[]>();
+    ByteBuffer in = ByteBuffer.wrap(data, offset, length);
+    while (in.hasRemaining()) {
+      if (in.remaining() < 4) {
+        throw new MessageFormatException("Truncated record field length", ErrorCode.INVALID_MSG_FORMAT);
+      }
+      int size = in.getInt();
+      if (size < 0 || size > in.remaining()) {
+        throw new MessageFormatException("Invalid record field length: " + size, ErrorCode.INVALID_MSG_FORMAT);
+      }
+      byte[] field = new byte[size];
+      in.get(field);
+      fields.add(field);
+    }
+    return fields;
+  }
+
+  private static byte[] toBytes(Object body) throws MessageFormatException {
+    if (body instanceof byte[]) {
+      return (byte[]) body;
+    } else if (body instanceof String) {
+      try {
+        return Base64.getDecoder().decode((String) body);
+      } catch (IllegalArgumentException e) {
+        throw new MessageFormatException("Invalid Base64 binary value", e, ErrorCode.INVALID_MSG_FORMAT);
+      }
+    }
+    throw new MessageFormatException("Expected a Base64 string but got: " + body, ErrorCode.INVALID_MSG_FORMAT);
+  }
+
+  static class BytesCodec implements BodyCodec {
+    @Override
+    public String getContentType() {
+      return OCTET_STREAM;
+    }
+
+    @Override
+    public Object decode(byte[] data, int offset, int length) {
+      ByteBuffer encoded = Base64.getEncoder().encode(ByteBuffer.wrap(data, offset, length));
+      return new String(encoded.array(), encoded.arrayOffset(), encoded.remaining(), StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public byte[] encode(Object body) throws MessageFormatException {
+      return toBytes(body);
+    }
+  }
+
+  static class TextCodec implements BodyCodec {
+    @Override
+    public String getContentType() {
+      return TEXT;
+    }
+
+    @Override
+    public Object decode(byte[] data, int offset, int length) {
+      return new String(data, offset, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] encode(Object body) throws MessageFormatException {
+      if (!(body instanceof String)) {
+        throw new MessageFormatException("A text body must be a string but got: " + body,
+          ErrorCode.INVALID_MSG_FORMAT);
+      }
+      return ((String) body).getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
+  static class JsonCodec implements BodyCodec {
+    @Override
+    public String getContentType() {
+      return JSON;
+    }
+
+    @Override
+    public Object decode(byte[] data, int offset, int length) throws MessageFormatException {
+      try {
+        return Json.decodeValue(new String(data, offset, length, StandardCharsets.UTF_8), Object.class);
+      } catch (DecodeException e) {
+        throw new MessageFormatException("Invalid Json body", e, ErrorCode.INVALID_MSG_FORMAT);
+      }
+    }
+
+    @Override
+    public byte[] encode(Object body) throws MessageFormatException {
+      try {
+        String json;
+        if (body instanceof JsonObject) {
+          json = ((JsonObject) body).encode();
+        } else if (body instanceof JsonArray) {
+          json = ((JsonArray) body).encode();
+        } else {
+          json = Json.encode(body);
+        }
+        return json.getBytes(StandardCharsets.UTF_8);
+      } catch (EncodeException e) {
+        throw new MessageFormatException("Can't encode body as Json", e, ErrorCode.INVALID_MSG_FORMAT);
+      }
+    }
+  }
+
+  static class RecordCodec implements BodyCodec {
+    @Override
+    public String getContentType() {
+      return RECORD;
+    }
+
+    @Override
+    public Object decode(byte[] data, int offset, int length) throws MessageFormatException {
+      JsonArray out = new JsonArray();
+      for (byte[] field : decodeRecord(data, offset, length)) {
+        out.add(field);
+      }
+      return out;
+    }
+
+    @Override
+    public byte[] encode(Object body) throws MessageFormatException {
+      List<?> list;
+      if (body instanceof JsonArray) {
+        list = ((JsonArray) body).getList();
+      } else if (body instanceof List) {
+        list = (List<?>) body;
+      } else {
+        throw new MessageFormatException("A record body must be a Json array", ErrorCode.INVALID_MSG_FORMAT);
+      }
+      List<byte[]> fields = new ArrayList<byte[]>(list.size());
+      for (Object field : list) {
+        fields.add(toBytes(field));
+      }
+      return encodeRecord(fields);
+    }
+  }
+}
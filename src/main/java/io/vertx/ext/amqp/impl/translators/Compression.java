@@ -0,0 +1,174 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.translators;
+
+import io.vertx.ext.amqp.impl.util.Metrics;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.message.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression of the data body of outbound messages, configured per
+ * route. The content-encoding of a compressed message is set to "deflate".
+ * Bodies smaller than the threshold, bodies that already have a
+ * content-encoding and bodies that don't shrink are sent as they are.
+ * <p/>
+ * Deflaters and inflaters are kept per thread, the JDK implementations hold
+ * native memory that is expensive to allocate for every message.
+ */
+public class Compression {
+  public static final String DEFLATE = "deflate";
+
+  public static final int DEFAULT_THRESHOLD = 1024;
+
+  public static final int DEFAULT_MAX_INFLATED_SIZE = 16 * 1024 * 1024;
+
+  private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater());
+
+  private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater());
+
+  private final String _name;
+
+  private final int _threshold;
+
+  private final int _level;
+
+  private final LongAdder _messages = new LongAdder();
+
+  private final LongAdder _bytesIn = new LongAdder();
+
+  private final LongAdder _bytesOut = new LongAdder();
+
+  private final LongAdder _nanos = new LongAdder();
+
+  /**
+   * @param name      used for the metrics, usually the route key.
+   * @param threshold the minimum body size worth compressing.
+   * @param level     the Deflater level, or Deflater.DEFAULT_COMPRESSION.
+   */
+  public Compression(String name, int threshold, int level) {
+    _name = name;
+    _threshold = threshold;
+    _level = level;
+  }
+
+  public String getName() {
+    return _name;
+  }
+
+  public int getThreshold() {
+    return _threshold;
+  }
+
+  public int getLevel() {
+    return _level;
+  }
+
+  /**
+   * Registers the metrics of this route under "compression.[name].".
+   */
+  public void registerMetrics(Metrics metrics) {
+    String prefix = "compression." + _name + ".";
+    metrics.gauge(prefix + "messages", () -> _messages.sum());
+    metrics.gauge(prefix + "bytes-in", () -> _bytesIn.sum());
+    metrics.gauge(prefix + "bytes-out", () -> _bytesOut.sum());
+    metrics.gauge(prefix + "cpu-nanos", () -> _nanos.sum());
+    metrics.gauge(prefix + "ratio", () -> {
+      long in = _bytesIn.sum();
+      return in == 0 ? 0.0 : (double) _bytesOut.sum() / in;
+    });
+  }
+
+  /**
+   * Compresses the data body of the message in place. Returns true if the
+   * body was replaced.
+   */
+  public boolean compress(Message msg) {
+    if (!(msg.getBody() instanceof Data) || msg.getContentEncoding() != null) {
+      return false;
+    }
+    Binary data = ((Data) msg.getBody()).getValue();
+    if (data == null || data.getLength() < _threshold) {
+      return false;
+    }
+    long start = System.nanoTime();
+    byte[] compressed = deflate(data.getArray(), data.getArrayOffset(), data.getLength(), _level);
+    _nanos.add(System.nanoTime() - start);
+    _messages.increment();
+    _bytesIn.add(data.getLength());
+    if (compressed == null) {
+      _bytesOut.add(data.getLength());
+      return false;
+    }
+    _bytesOut.add(compressed.length);
+    msg.setBody(new Data(new Binary(compressed)));
+    msg.setContentEncoding(DEFLATE);
+    return true;
+  }
+
+  /**
+   * Returns the compressed bytes, or null if they are not smaller than the
+   * input.
+   */
+  static byte[] deflate(byte[] data, int offset, int length, int level) {
+    Deflater deflater = DEFLATER.get();
+    deflater.reset();
+    deflater.setLevel(level);
+    deflater.setInput(data, offset, length);
+    deflater.finish();
+    byte[] out = new byte[length];
+    int size = 0;
+    while (!deflater.finished() && size < out.length) {
+      size += deflater.deflate(out, size, out.length - size);
+    }
+    return deflater.finished() && size < length ? Arrays.copyOf(out, size) : null;
+  }
+
+  /**
+   * Inflates the data, failing once the output grows past maxSize so that a
+   * small body can't expand into an arbitrary amount of memory.
+   */
+  static byte[] inflate(byte[] data, int offset, int length, int maxSize) throws DataFormatException {
+    Inflater inflater = INFLATER.get();
+    inflater.reset();
+    inflater.setInput(data, offset, length);
+    ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(length * 4L, maxSize));
+    byte[] buffer = new byte[(int) Math.min(Math.max(length * 2L, 1024), 64 * 1024)];
+    while (!inflater.finished()) {
+      int size = inflater.inflate(buffer);
+      if (size == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+        throw new DataFormatException("Truncated deflate stream");
+      }
+      if (out.size() + size > maxSize) {
+        throw new DataFormatException("Inflated body exceeds " + maxSize + " bytes");
+      }
+      out.write(buffer, 0, size);
+    }
+    return out.toByteArray();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("[name=%s, threshold=%s, level=%s]", _name, _threshold, _level);
+  }
+}
@@ -15,37 +15,138 @@
  */
 package io.vertx.ext.amqp.impl.translators;
 
+import io.vertx.core.MultiMap;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.amqp.BodyCodec;
 import io.vertx.ext.amqp.ErrorCode;
 import io.vertx.ext.amqp.MessageFormatException;
+import io.vertx.ext.amqp.MessageHeaders;
 import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.UnsignedByte;
+import org.apache.qpid.proton.amqp.UnsignedInteger;
+import org.apache.qpid.proton.amqp.UnsignedLong;
+import org.apache.qpid.proton.amqp.UnsignedShort;
 import org.apache.qpid.proton.amqp.messaging.*;
 import org.apache.qpid.proton.message.Message;
 
+import java.lang.reflect.Array;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
 
+/**
+ * Translates between AMQP messages and their Json representation.
+ * <p/>
+ * Maps and lists are passed through as they are whenever their content is
+ * already valid on the other side. Vert.x Json wraps nested maps and lists
+ * lazily and proton encodes them directly, so the common case (strings,
+ * numbers, booleans) is translated without copying. A map or list is only
+ * copied when it holds a value that has to be converted, e.g. a Symbol or
+ * Binary in an AMQP message or a nested JsonObject in a Json body.
+ * <p/>
+ * AMQP to Json value mapping:
+ * <ul>
+ * <li>ubyte, ushort, byte, short map to int; uint maps to long; ulong maps to
+ * long, or BigInteger above Long.MAX_VALUE.</li>
+ * <li>char, symbol and uuid map to their string form.</li>
+ * <li>timestamp maps to milliseconds since the epoch.</li>
+ * <li>binary maps to a Base64 string, the form used by
+ * {@link JsonObject#getBinary(String)}.</li>
+ * <li>arrays map to Json arrays, maps with non string keys use the string form
+ * of the key.</li>
+ * </ul>
+ * The message-id and correlation-id are always strings in Json. They keep
+ * their AMQP type across a round trip: a ulong, uuid or binary id is
+ * accompanied by a "message_id_type" / "correlation_id_type" field ("ulong",
+ * "uuid", "binary" or "string"). When sending, a numeric id without a type is
+ * a ulong.
+ * <p/>
+ * Data bodies are translated by the codec registered for the content-type,
+ * see {@link BodyCodecs}. Data bodies with the "deflate" content-encoding are
+ * decompressed first, see {@link Compression}.
+ */
 public class MessageTranslator {
-  private void convert(JsonObject in, Properties out) {
-    if (in.containsKey("to")) {
-      out.setTo(in.getString("to"));
-    }
-    if (in.containsKey("subject")) {
-      out.setSubject(in.getString("subject"));
-    }
-    if (in.containsKey("reply_to")) {
-      out.setReplyTo(in.getString("reply_to"));
-    }
-    if (in.containsKey("message_id")) {
-      // TODO: handle other types (UUID and long)
-      out.setMessageId(in.getString("message_id"));
-    }
-    if (in.containsKey("correlation_id")) {
-      // TODO: handle other types (UUID and long)
-      out.setCorrelationId(in.getString("correlation_id"));
+  private static final String ID_TYPE_SUFFIX = "_type";
+
+  private final BodyCodecs _codecs;
+
+  private final int _maxInflatedSize;
+
+  public MessageTranslator() {
+    this(new BodyCodecs(), Compression.DEFAULT_MAX_INFLATED_SIZE);
+  }
+
+  /**
+   * @param maxInflatedSize the size past which a deflate body is rejected as
+   *                        a MessageFormatException.
+   */
+  public MessageTranslator(BodyCodecs codecs, int maxInflatedSize) {
+    _codecs = codecs;
+    _maxInflatedSize = maxInflatedSize;
+  }
+
+  private void convert(JsonObject in, Properties out) throws MessageFormatException {
+    Map<String, Object> map = in.getMap();
+    for (Map.Entry<String, Object> e : map.entrySet()) {
+      Object value = e.getValue();
+      if (value == null) {
+        continue;
+      }
+      switch (e.getKey()) {
+        case "to":
+          out.setTo(value.toString());
+          break;
+        case "subject":
+          out.setSubject(value.toString());
+          break;
+        case "reply_to":
+          out.setReplyTo(value.toString());
+          break;
+        case "message_id":
+          out.setMessageId(toAmqpId(value, map.get("message_id" + ID_TYPE_SUFFIX)));
+          break;
+        case "correlation_id":
+          out.setCorrelationId(toAmqpId(value, map.get("correlation_id" + ID_TYPE_SUFFIX)));
+          break;
+        case "content_type":
+          out.setContentType(Symbol.valueOf(value.toString()));
+          break;
+        case "content_encoding":
+          out.setContentEncoding(Symbol.valueOf(value.toString()));
+          break;
+        case "user_id":
+          out.setUserId(fromBase64(e.getKey(), value));
+          break;
+        case "absolute_expiry_time":
+          out.setAbsoluteExpiryTime(new Date(toLong(e.getKey(), value)));
+          break;
+        case "creation_time":
+          out.setCreationTime(new Date(toLong(e.getKey(), value)));
+          break;
+        case "group_id":
+          out.setGroupId(value.toString());
+          break;
+        case "group_sequence":
+          out.setGroupSequence(UnsignedInteger.valueOf(toLong(e.getKey(), value)));
+          break;
+        case "reply_to_group_id":
+          out.setReplyToGroupId(value.toString());
+          break;
+        default:
+          // unknown properties and the id type hints are ignored
+      }
     }
-    // TODO: handle other fields
   }
 
   private void convert(Properties in, JsonObject out) {
@@ -59,40 +160,96 @@ public class MessageTranslator {
       out.put("reply_to", in.getReplyTo());
     }
     if (in.getMessageId() != null) {
-      out.put("message_id", in.getMessageId().toString());
+      putId(out, "message_id", in.getMessageId());
     }
     if (in.getCorrelationId() != null) {
-      out.put("correlation_id", in.getCorrelationId().toString());
+      putId(out, "correlation_id", in.getCorrelationId());
+    }
+    if (in.getContentType() != null) {
+      out.put("content_type", in.getContentType().toString());
+    }
+    if (in.getContentEncoding() != null) {
+      out.put("content_encoding", in.getContentEncoding().toString());
+    }
+    if (in.getUserId() != null) {
+      out.put("user_id", toBase64(in.getUserId()));
+    }
+    if (in.getAbsoluteExpiryTime() != null) {
+      out.put("absolute_expiry_time", in.getAbsoluteExpiryTime().getTime());
+    }
+    if (in.getCreationTime() != null) {
+      out.put("creation_time", in.getCreationTime().getTime());
+    }
+    if (in.getGroupId() != null) {
+      out.put("group_id", in.getGroupId());
+    }
+    if (in.getGroupSequence() != null) {
+      out.put("group_sequence", in.getGroupSequence().longValue());
+    }
+    if (in.getReplyToGroupId() != null) {
+      out.put("reply_to_group_id", in.getReplyToGroupId());
     }
-    // TODO: handle other fields
   }
 
   public Message convert(JsonObject in) throws MessageFormatException {
+    return convert(in, null, null);
+  }
+
+  /**
+   * Converts the Json message, applying the headers (see
+   * {@link #applyHeaders(MultiMap, Message)}) before the body is encoded. A
+   * data body is encoded by the {@link io.vertx.ext.amqp.BodyCodec} for the
+   * message content-type, or for defaultContentType if the message has none.
+   */
+  public Message convert(JsonObject in, MultiMap headers, String defaultContentType) throws MessageFormatException {
+    return convert(in, headers, defaultContentType, null);
+  }
+
+  /**
+   * As {@link #convert(JsonObject, MultiMap, String)}, but a data body of
+   * the routeCodec content-type is encoded by routeCodec.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public Message convert(JsonObject in, MultiMap headers, String defaultContentType, BodyCodec routeCodec)
+    throws MessageFormatException {
     Message out = Message.Factory.create();
+    Map<String, Object> map = in.getMap();
 
-    if (in.containsKey("properties")) {
+    Object props = map.get("properties");
+    if (props != null) {
       out.setProperties(new Properties());
-      convert(in.getJsonObject("properties"), out.getProperties());
+      convert(asJsonObject("properties", props), out.getProperties());
     }
 
-    if (in.containsKey("application_properties")) {
-      out.setApplicationProperties(new ApplicationProperties(in.getJsonObject("application_properties").getMap()));
+    Object appProps = map.get("application_properties");
+    if (appProps != null) {
+      out.setApplicationProperties(new ApplicationProperties(toAmqpMap(asJsonObject("application_properties",
+        appProps).getMap())));
     }
+    applyHeaders(headers, out);
 
-    if (in.containsKey("body")) {
-      String bodyType = in.getString("body_type");
+    if (map.containsKey("body")) {
+      Object body = map.get("body");
+      Object bodyType = map.get("body_type");
       if (bodyType == null || bodyType.equals("value")) {
-        Object o = in.getValue("body");
-        if (o instanceof JsonObject) {
-          o = ((JsonObject) o).getMap();
-        } else if (o instanceof JsonArray) {
-          o = ((JsonArray) o).getList();
-        }
-        out.setBody(new AmqpValue(o));
+        out.setBody(new AmqpValue(toAmqp(body)));
       } else if (bodyType.equals("data")) {
-        out.setBody(new Data(new Binary(in.getBinary("body"))));
+        String contentType = out.getContentType() != null ? out.getContentType() : defaultContentType;
+        BodyCodec codec = _codecs.get(contentType, routeCodec);
+        if (codec != null) {
+          if (out.getContentType() == null) {
+            out.setContentType(contentType);
+          }
+          out.setBody(new Data(new Binary(codec.encode(body))));
+        } else {
+          out.setBody(new Data(body instanceof byte[] ? new Binary((byte[]) body) : fromBase64("body", body)));
+        }
       } else if (bodyType.equals("sequence")) {
-        out.setBody(new AmqpSequence(((JsonArray) in.getValue("body")).getList()));
+        Object list = toAmqp(body);
+        if (!(list instanceof List)) {
+          throw new MessageFormatException("A sequence body must be a Json array", ErrorCode.INVALID_MSG_FORMAT);
+        }
+        out.setBody(new AmqpSequence((List) list));
       } else {
         throw new MessageFormatException("Unrecognised body type: " + bodyType, ErrorCode.INVALID_MSG_FORMAT);
       }
@@ -100,34 +257,103 @@ public class MessageTranslator {
     return out;
   }
 
-  @SuppressWarnings("rawtypes")
-  private static Object toJsonable(Object in) throws MessageFormatException {
-    if (in instanceof Number || in instanceof String) {
-      return in;
-    } else if (in instanceof Map) {
-      JsonObject out = new JsonObject();
-      for (Object o : ((Map) in).entrySet()) {
-        Map.Entry e = (Map.Entry) o;
-        out.put((String) e.getKey(), toJsonable(e.getValue()));
-      }
-      return out;
-    } else if (in instanceof List) {
-      JsonArray out = new JsonArray();
-      for (Object i : (List) in) {
-        out.add(toJsonable(i));
+  /**
+   * Copies the property and application-property headers (see
+   * {@link MessageHeaders}) onto the message. Header values override values
+   * taken from the Json body. Id headers take their type from a
+   * "message_id_type" / "correlation_id_type" header, as in the Json body,
+   * and are strings without one.
+   */
+  @SuppressWarnings("unchecked")
+  public void applyHeaders(MultiMap headers, Message out) throws MessageFormatException {
+    if (headers == null || headers.isEmpty()) {
+      return;
+    }
+    Map<String, Object> appProps = null;
+    for (Map.Entry<String, String> header : headers) {
+      String name = header.getKey();
+      if (name.startsWith(MessageHeaders.PROPERTY_PREFIX)) {
+        if (out.getProperties() == null) {
+          out.setProperties(new Properties());
+        }
+        setProperty(out.getProperties(), name.substring(MessageHeaders.PROPERTY_PREFIX.length()), header.getValue(),
+          headers);
+      } else if (name.startsWith(MessageHeaders.APPLICATION_PROPERTY_PREFIX)) {
+        if (appProps == null) {
+          // copy, the existing map may be backed by the Json body
+          appProps = new HashMap<String, Object>();
+          if (out.getApplicationProperties() != null && out.getApplicationProperties().getValue() != null) {
+            appProps.putAll(out.getApplicationProperties().getValue());
+          }
+        }
+        appProps.put(name.substring(MessageHeaders.APPLICATION_PROPERTY_PREFIX.length()), header.getValue());
       }
-      return out;
-    } else if (in instanceof Binary) {
-      Thread.dumpStack();
-      return ((Binary) in).getArray();
-    } else {
-      throw new MessageFormatException("Warning: can't convert object of type " + in.getClass() + " to JSON",
-        ErrorCode.INVALID_MSG_FORMAT);
+    }
+    if (appProps != null) {
+      out.setApplicationProperties(new ApplicationProperties(appProps));
     }
   }
 
-  @SuppressWarnings("unchecked")
+  private void setProperty(Properties out, String name, String value, MultiMap headers)
+    throws MessageFormatException {
+    switch (name) {
+      case "to":
+        out.setTo(value);
+        break;
+      case "subject":
+        out.setSubject(value);
+        break;
+      case "reply_to":
+        out.setReplyTo(value);
+        break;
+      case "message_id":
+        out.setMessageId(toAmqpId(value, idType(headers, name)));
+        break;
+      case "correlation_id":
+        out.setCorrelationId(toAmqpId(value, idType(headers, name)));
+        break;
+      case "content_type":
+        out.setContentType(Symbol.valueOf(value));
+        break;
+      case "content_encoding":
+        out.setContentEncoding(Symbol.valueOf(value));
+        break;
+      case "group_id":
+        out.setGroupId(value);
+        break;
+      case "reply_to_group_id":
+        out.setReplyToGroupId(value);
+        break;
+      default:
+        // unknown properties are ignored, as they are for the Json body
+    }
+  }
+
+  // header ids are strings unless their type is given
+  private static String idType(MultiMap headers, String field) {
+    String type = headers.get(MessageHeaders.property(field + ID_TYPE_SUFFIX));
+    return type == null ? "string" : type;
+  }
+
   public JsonObject convert(Message in) throws MessageFormatException {
+    return convert(in, null);
+  }
+
+  /**
+   * Converts the AMQP message. A data body is decoded by the
+   * {@link io.vertx.ext.amqp.BodyCodec} for the message content-type, or for
+   * defaultContentType if the message has none.
+   */
+  public JsonObject convert(Message in, String defaultContentType) throws MessageFormatException {
+    return convert(in, defaultContentType, null);
+  }
+
+  /**
+   * As {@link #convert(Message, String)}, but a data body of the routeCodec
+   * content-type is decoded by routeCodec.
+   */
+  public JsonObject convert(Message in, String defaultContentType, BodyCodec routeCodec)
+    throws MessageFormatException {
     JsonObject out = new JsonObject();
     Properties p = in.getProperties();
     if (p != null) {
@@ -137,19 +363,255 @@ public class MessageTranslator {
     }
     ApplicationProperties ap = in.getApplicationProperties();
     if (ap != null && ap.getValue() != null) {
-      out.put("application_properties", new JsonObject(ap.getValue()));
+      out.put("application_properties", new JsonObject(toJsonMap(ap.getValue())));
     }
     Section body = in.getBody();
     if (body instanceof AmqpValue) {
-      out.put("body", toJsonable(((AmqpValue) body).getValue()));
+      out.put("body", toJson(((AmqpValue) body).getValue()));
       out.put("body_type", "value");
     } else if (body instanceof Data) {
-      out.put("body", ((Data) body).getValue().getArray());
+      Binary data = ((Data) body).getValue();
+      if (Compression.DEFLATE.equalsIgnoreCase(in.getContentEncoding())) {
+        try {
+          data = new Binary(Compression.inflate(data.getArray(), data.getArrayOffset(), data.getLength(),
+            _maxInflatedSize));
+        } catch (DataFormatException e) {
+          throw new MessageFormatException("Invalid deflate body", e, ErrorCode.INVALID_MSG_FORMAT);
+        }
+        // the body is no longer encoded
+        out.getJsonObject("properties").remove("content_encoding");
+      }
+      BodyCodec codec = _codecs.get(in.getContentType() != null ? in.getContentType() : defaultContentType,
+        routeCodec);
+      out.put("body", codec == null ? toBase64(data) : codec.decode(data.getArray(), data.getArrayOffset(), data
+        .getLength()));
       out.put("body_type", "data");
     } else if (body instanceof AmqpSequence) {
-      out.put("body", new JsonArray(((AmqpSequence) body).getValue()));
+      out.put("body", new JsonArray(toJsonList(((AmqpSequence) body).getValue())));
       out.put("body_type", "sequence");
     }
     return out;
   }
-}
\ No newline at end of file
+
+  // -- AMQP to Json ---------------------------------------------------------
+
+  /*
+   * Returns the value itself when it is valid Json, so callers can tell
+   * whether a map or list has to be copied by comparing references.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  static Object toJson(Object in) throws MessageFormatException {
+    if (in == null || in instanceof String || in instanceof Boolean || in instanceof Integer || in instanceof Long
+      || in instanceof Double || in instanceof Float) {
+      return in;
+    } else if (in instanceof Map) {
+      return toJsonMap((Map) in);
+    } else if (in instanceof List) {
+      return toJsonList((List) in);
+    } else if (in instanceof Binary) {
+      return toBase64((Binary) in);
+    } else if (in instanceof Symbol || in instanceof UUID || in instanceof Character) {
+      return in.toString();
+    } else if (in instanceof Short || in instanceof Byte || in instanceof UnsignedByte
+      || in instanceof UnsignedShort) {
+      return ((Number) in).intValue();
+    } else if (in instanceof UnsignedInteger) {
+      return ((UnsignedInteger) in).longValue();
+    } else if (in instanceof UnsignedLong) {
+      long value = ((UnsignedLong) in).longValue();
+      return value >= 0 ? (Object) value : ((UnsignedLong) in).bigIntegerValue();
+    } else if (in instanceof Date) {
+      return ((Date) in).getTime();
+    } else if (in.getClass().isArray()) {
+      int length = Array.getLength(in);
+      List<Object> out = new ArrayList<Object>(length);
+      for (int i = 0; i < length; i++) {
+        out.add(toJson(Array.get(in, i)));
+      }
+      return out;
+    } else {
+      throw new MessageFormatException("Can't convert object of type " + in.getClass() + " to JSON",
+        ErrorCode.INVALID_MSG_FORMAT);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> toJsonMap(Map<?, ?> in) throws MessageFormatException {
+    Map<String, Object> copy = null;
+    int index = 0;
+    for (Map.Entry<?, ?> e : in.entrySet()) {
+      Object key = e.getKey();
+      Object value = e.getValue();
+      Object converted = toJson(value);
+      if (copy == null && (converted != value || !(key instanceof String))) {
+        // copy the entries seen so far, they are valid as they are
+        copy = new LinkedHashMap<String, Object>(in.size() * 2);
+        int i = 0;
+        for (Map.Entry<?, ?> done : in.entrySet()) {
+          if (i++ == index) {
+            break;
+          }
+          copy.put((String) done.getKey(), done.getValue());
+        }
+      }
+      if (copy != null) {
+        copy.put(String.valueOf(key), converted);
+      }
+      index++;
+    }
+    return copy != null ? copy : (Map<String, Object>) in;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Object> toJsonList(List<?> in) throws MessageFormatException {
+    List<Object> copy = null;
+    for (int i = 0; i < in.size(); i++) {
+      Object value = in.get(i);
+      Object converted = toJson(value);
+      if (copy == null && converted != value) {
+        copy = new ArrayList<Object>(in);
+      }
+      if (copy != null) {
+        copy.set(i, converted);
+      }
+    }
+    return copy != null ? copy : (List<Object>) in;
+  }
+
+  private static String toBase64(Binary in) {
+    ByteBuffer encoded = Base64.getEncoder().encode(in.asByteBuffer());
+    return new String(encoded.array(), encoded.arrayOffset(), encoded.remaining(), StandardCharsets.ISO_8859_1);
+  }
+
+  private static void putId(JsonObject out, String field, Object id) {
+    if (id instanceof String) {
+      out.put(field, (String) id);
+    } else if (id instanceof UnsignedLong) {
+      out.put(field, id.toString());
+      out.put(field + ID_TYPE_SUFFIX, "ulong");
+    } else if (id instanceof UUID) {
+      out.put(field, id.toString());
+      out.put(field + ID_TYPE_SUFFIX, "uuid");
+    } else if (id instanceof Binary) {
+      out.put(field, toBase64((Binary) id));
+      out.put(field + ID_TYPE_SUFFIX, "binary");
+    } else {
+      out.put(field, id.toString());
+    }
+  }
+
+  // -- Json to AMQP ---------------------------------------------------------
+
+  /*
+   * Returns the value itself when proton can encode it as it is.
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  static Object toAmqp(Object in) throws MessageFormatException {
+    if (in instanceof JsonObject) {
+      return toAmqpMap(((JsonObject) in).getMap());
+    } else if (in instanceof JsonArray) {
+      return toAmqpList(((JsonArray) in).getList());
+    } else if (in instanceof Map) {
+      return toAmqpMap((Map) in);
+    } else if (in instanceof List) {
+      return toAmqpList((List) in);
+    } else if (in instanceof byte[]) {
+      return new Binary((byte[]) in);
+    } else if (in instanceof BigInteger) {
+      BigInteger value = (BigInteger) in;
+      if (value.signum() < 0 || value.bitLength() > 64) {
+        throw new MessageFormatException("Integer out of range: " + value, ErrorCode.INVALID_MSG_FORMAT);
+      }
+      return UnsignedLong.valueOf(value);
+    } else if (in instanceof CharSequence && !(in instanceof String)) {
+      return in.toString();
+    } else {
+      // Strings, numbers, booleans and AMQP types are encoded by proton
+      return in;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<Object, Object> toAmqpMap(Map<String, Object> in) throws MessageFormatException {
+    Map<Object, Object> copy = null;
+    for (Map.Entry<String, Object> e : in.entrySet()) {
+      Object value = e.getValue();
+      Object converted = toAmqp(value);
+      if (copy == null && converted != value) {
+        copy = new LinkedHashMap<Object, Object>(in);
+      }
+      if (copy != null) {
+        copy.put(e.getKey(), converted);
+      }
+    }
+    return copy != null ? copy : (Map<Object, Object>) (Map<?, ?>) in;
+  }
+
+  private static List<Object> toAmqpList(List<Object> in) throws MessageFormatException {
+    List<Object> copy = null;
+    for (int i = 0; i < in.size(); i++) {
+      Object value = in.get(i);
+      Object converted = toAmqp(value);
+      if (copy == null && converted != value) {
+        copy = new ArrayList<Object>(in);
+      }
+      if (copy != null) {
+        copy.set(i, converted);
+      }
+    }
+    return copy != null ? copy : in;
+  }
+
+  private static Object toAmqpId(Object value, Object type) throws MessageFormatException {
+    try {
+      if (type == null) {
+        return value instanceof Number ? UnsignedLong.valueOf(((Number) value).longValue()) : value.toString();
+      }
+      switch (type.toString()) {
+        case "string":
+          return value.toString();
+        case "ulong":
+          return UnsignedLong.valueOf(value.toString());
+        case "uuid":
+          return UUID.fromString(value.toString());
+        case "binary":
+          return fromBase64("binary id", value);
+        default:
+          throw new MessageFormatException("Unrecognised id type: " + type, ErrorCode.INVALID_MSG_FORMAT);
+      }
+    } catch (IllegalArgumentException e) {
+      throw new MessageFormatException("Invalid " + type + " id: " + value, e, ErrorCode.INVALID_MSG_FORMAT);
+    }
+  }
+
+  private static long toLong(String field, Object value) throws MessageFormatException {
+    if (value instanceof Number) {
+      return ((Number) value).longValue();
+    }
+    throw new MessageFormatException("Expected a number for " + field + " but got: " + value,
+      ErrorCode.INVALID_MSG_FORMAT);
+  }
+
+  private static Binary fromBase64(String field, Object value) throws MessageFormatException {
+    try {
+      return new Binary(Base64.getDecoder().decode(value.toString()));
+    } catch (IllegalArgumentException e) {
+      throw new MessageFormatException("Expected Base64 for " + field + " but got: " + value, e,
+        ErrorCode.INVALID_MSG_FORMAT);
+    }
+  }
+
+  private static JsonObject asJsonObject(String field, Object value) throws MessageFormatException {
+    if (value instanceof JsonObject) {
+      return (JsonObject) value;
+    } else if (value instanceof Map) {
+      return new JsonObject(castMap(value));
+    }
+    throw new MessageFormatException("Expected a Json object for " + field, ErrorCode.INVALID_MSG_FORMAT);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> castMap(Object value) {
+    return (Map<String, Object>) value;
+  }
+}
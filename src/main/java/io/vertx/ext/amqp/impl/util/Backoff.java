@@ -0,0 +1,51 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.util;
+
+import io.vertx.ext.amqp.RetryOptions;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with jitter for reconnect attempts. The first attempt
+ * is made at once. From then on the delay starts at the minimum retry
+ * interval and doubles with each attempt, up to the maximum. Half of the
+ * delay is random, so links that failed together do not all retry at the
+ * same moment.
+ */
+public class Backoff {
+  /**
+   * Returns the delay in ms before the attempt, counting from 0.
+   */
+  public static long delay(RetryOptions options, int attempt) {
+    return delay(options.getMinRetryInterval(), options.getMaxRetryInterval(), attempt, ThreadLocalRandom.current());
+  }
+
+  public static long delay(long minMillis, long maxMillis, int attempt, Random random) {
+    if (attempt <= 0) {
+      return 0;
+    }
+    long delay = Math.max(1, minMillis);
+    // stop doubling once past the maximum, the shift would overflow
+    for (int i = 1; i < attempt && delay < maxMillis; i++) {
+      delay <<= 1;
+    }
+    delay = Math.max(1, Math.min(delay, maxMillis));
+    long half = delay / 2;
+    return delay - half + (long) (random.nextDouble() * (half + 1));
+  }
+}
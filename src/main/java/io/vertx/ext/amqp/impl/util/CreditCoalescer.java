@@ -0,0 +1,148 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Coalesces the credit updates of outgoing links before they are passed on as
+ * notifications. Peers that top up credit often would otherwise cause a
+ * notification per flow frame.
+ * <p/>
+ * For each link, at most one notification is sent per interval, carrying the
+ * latest credit. Changes smaller than the delta are not notified at all, and
+ * a link going from no credit to some credit is notified at once, so that a
+ * producer waiting for credit is not held back.
+ */
+public class CreditCoalescer {
+  private final Map<String, Link> _links = new ConcurrentHashMap<String, Link>();
+
+  private final TimerWheel _wheel;
+
+  private final long _intervalMillis;
+
+  private final int _delta;
+
+  private final BiConsumer<String, Integer> _notifier;
+
+  /**
+   * @param intervalMillis the minimum time between two notifications for a
+   *          link. Zero or less notifies every update.
+   * @param delta the minimum change in credit worth notifying.
+   * @param notifier called with the link id and credit to notify.
+   */
+  public CreditCoalescer(TimerWheel wheel, long intervalMillis, int delta, BiConsumer<String, Integer> notifier) {
+    _wheel = wheel;
+    _intervalMillis = intervalMillis;
+    _delta = Math.max(1, delta);
+    _notifier = notifier;
+  }
+
+  private class Link extends TimerWheel.Timeout {
+    final String _id;
+
+    // -1 until the first notification
+    int _sent = -1;
+
+    long _sentAt;
+
+    int _latest;
+
+    boolean _scheduled;
+
+    Link(String id) {
+      _id = id;
+    }
+
+    synchronized void update(int credits, long nowMillis) {
+      _latest = credits;
+      if (_sent < 0 || (_sent == 0 && credits > 0)) {
+        send(nowMillis);
+      } else if (credits == _sent || (credits != 0 && Math.abs(credits - _sent) < _delta)) {
+        // back where it was or too small a change, drop any pending update
+        cancelPending();
+      } else if (nowMillis - _sentAt >= _intervalMillis) {
+        send(nowMillis);
+      } else if (!_scheduled) {
+        _scheduled = true;
+        _wheel.schedule(this, _intervalMillis - (nowMillis - _sentAt));
+      }
+    }
+
+    private void send(long nowMillis) {
+      cancelPending();
+      _sent = _latest;
+      _sentAt = nowMillis;
+      _notifier.accept(_id, _latest);
+    }
+
+    private void cancelPending() {
+      if (_scheduled) {
+        _scheduled = false;
+        cancel();
+      }
+    }
+
+    @Override
+    protected void expire() {
+      synchronized (this) {
+        _scheduled = false;
+        if (_latest != _sent && _links.get(_id) == this) {
+          // the interval ended, on the caller's clock
+          send(_sentAt + _intervalMillis);
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return _id;
+    }
+  }
+
+  /**
+   * Records the credit of the link, notifying it now or later.
+   */
+  public void update(String id, int credits) {
+    update(id, credits, System.nanoTime() / 1000000);
+  }
+
+  public void update(String id, int credits, long nowMillis) {
+    if (_intervalMillis <= 0 && _delta <= 1) {
+      _notifier.accept(id, credits);
+      return;
+    }
+    _links.computeIfAbsent(id, Link::new).update(credits, nowMillis);
+  }
+
+  /**
+   * Drops the state of a closed link, including any pending notification.
+   */
+  public void remove(String id) {
+    Link link = _links.remove(id);
+    if (link != null) {
+      synchronized (link) {
+        link.cancelPending();
+      }
+    }
+  }
+
+  public int size() {
+    return _links.size();
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * A concurrent map whose entries are removed after a timeout unless they are
+ * removed before. The expiry handler is called with each expired entry.
+ */
+public class ExpiringMap<K, V> {
+  private final Map<K, Entry> _entries = new ConcurrentHashMap<K, Entry>();
+
+  private final TimerWheel _wheel;
+
+  private final long _timeoutMillis;
+
+  private final BiConsumer<K, V> _expiryHandler;
+
+  public ExpiringMap(TimerWheel wheel, long timeoutMillis, BiConsumer<K, V> expiryHandler) {
+    _wheel = wheel;
+    _timeoutMillis = timeoutMillis;
+    _expiryHandler = expiryHandler;
+  }
+
+  private class Entry extends TimerWheel.Timeout {
+    final K _key;
+
+    final V _value;
+
+    Entry(K key, V value) {
+      _key = key;
+      _value = value;
+    }
+
+    @Override
+    protected void expire() {
+      if (_entries.remove(_key, this) && _expiryHandler != null) {
+        _expiryHandler.accept(_key, _value);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return String.valueOf(_key);
+    }
+  }
+
+  /**
+   * Maps the key to the value until it is removed or the timeout expires.
+   */
+  public void put(K key, V value) {
+    Entry entry = new Entry(key, value);
+    Entry old = _entries.put(key, entry);
+    if (old != null) {
+      old.cancel();
+    }
+    _wheel.schedule(entry, _timeoutMillis);
+  }
+
+  public V get(K key) {
+    Entry entry = _entries.get(key);
+    return entry == null ? null : entry._value;
+  }
+
+  public boolean containsKey(K key) {
+    return _entries.containsKey(key);
+  }
+
+  /**
+   * Removes the entry and cancels its timeout, returns the value or null.
+   */
+  public V remove(K key) {
+    Entry entry = _entries.remove(key);
+    if (entry == null) {
+      return null;
+    }
+    entry.cancel();
+    return entry._value;
+  }
+
+  public int size() {
+    return _entries.size();
+  }
+
+  public void clear() {
+    for (K key : _entries.keySet()) {
+      remove(key);
+    }
+  }
+}
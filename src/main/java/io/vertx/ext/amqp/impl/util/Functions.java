@@ -20,10 +20,6 @@ public class Functions {
     return String.format(format, args);
   }
 
-  public static void print(String format, Object... args) {
-    System.out.println("TEMP-SYSTEM.OUT :".concat(format(format, args)));
-  }
-
   /**
    * A quick hack to retrieve destination (source or target) from an address.
    * If '/' is missing treat the whole thing as the destination.
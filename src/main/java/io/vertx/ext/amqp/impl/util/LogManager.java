@@ -17,20 +17,32 @@ package io.vertx.ext.amqp.impl.util;
 
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
-import io.vertx.ext.amqp.impl.protocol.LinkManager;
 
+import java.util.function.Supplier;
+
+/**
+ * Thin wrapper over the Vert.x logger that prefixes each line and formats it
+ * only if the level is enabled. Arguments that are costly to compute (e.g.
+ * encoding a message body) should be passed through the {@link Supplier}
+ * variants, so nothing is computed when the level is off.
+ * <p/>
+ * Lines logged for every message are sampled per category with
+ * {@link #sample(String)}, so that turning debug on does not flood the log.
+ */
 public class LogManager {
+  private static final LogSampler SAMPLER = new LogSampler();
+
   private final Logger _logger;
 
   private final String _prefix;
 
   LogManager(String prefix, Class<?> clazz) {
-    _logger = LoggerFactory.getLogger(LinkManager.class);
+    _logger = LoggerFactory.getLogger(clazz);
     _prefix = prefix;
   }
 
   public boolean isDebugEnabled() {
-    return _logger.isInfoEnabled(); //_logger.isDebugEnabled();
+    return _logger.isDebugEnabled();
   }
 
   public boolean isInfoEnabled() {
@@ -41,15 +53,45 @@ public class LogManager {
     return new LogManager(prefix, clazz);
   }
 
+  /**
+   * Sets the number of sampled lines let through per category per second.
+   * Zero or less logs every line.
+   */
+  public static void setSampleLimit(int limit) {
+    SAMPLER.setLimit(limit);
+  }
+
+  /**
+   * Returns true if a line of the category may be logged now. Callers check
+   * the level first, so the sampler is only consulted when the line would be
+   * logged. If lines of the category were dropped, their count is logged.
+   */
+  public boolean sample(String category) {
+    if (!SAMPLER.sample(category, System.currentTimeMillis())) {
+      return false;
+    }
+    long suppressed = SAMPLER.takeSuppressed(category);
+    if (suppressed > 0) {
+      _logger.info(_prefix.concat(String.format("%s '%s' lines suppressed", suppressed, category)));
+    }
+    return true;
+  }
+
   public void debug(String format, Object... args) {
-    if (_logger.isInfoEnabled()) {
-      _logger.info(_prefix.concat(String.format(format, args)));
+    if (_logger.isDebugEnabled()) {
+      _logger.debug(_prefix.concat(String.format(format, args)));
     }
   }
 
   public void debug(Throwable e, String format, Object... args) {
-    if (_logger.isInfoEnabled()) {
-      _logger.info(_prefix.concat(String.format(format, args)), e);
+    if (_logger.isDebugEnabled()) {
+      _logger.debug(_prefix.concat(String.format(format, args)), e);
+    }
+  }
+
+  public void debug(Supplier<String> msg) {
+    if (_logger.isDebugEnabled()) {
+      _logger.debug(_prefix.concat(msg.get()));
     }
   }
 
@@ -65,8 +107,14 @@ public class LogManager {
     }
   }
 
+  public void info(Supplier<String> msg) {
+    if (_logger.isInfoEnabled()) {
+      _logger.info(_prefix.concat(msg.get()));
+    }
+  }
+
   public void warn(String format, Object... args) {
-    _logger.fatal(_prefix.concat(String.format(format, args)));
+    _logger.warn(_prefix.concat(String.format(format, args)));
   }
 
   public void warn(Throwable e, String format, Object... args) {
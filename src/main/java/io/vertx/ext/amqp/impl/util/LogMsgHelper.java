@@ -98,22 +98,22 @@ public class LogMsgHelper {
 
   public static void logVertxMsgForMsgBasedRouting(LogManager log, Message<JsonObject> vertxMsg,
                                                    List<String> amqpAddressList) {
-    if (log.isDebugEnabled()) {
-      log.debug(OUTBOUND_MSG_BASED_ROUTING_LOG_FORMAT, vertxMsg.address(), vertxMsg.replyAddress(), vertxMsg
-        .body().encode(), vertxMsg.replyAddress(), amqpAddressList);
+    if (log.isDebugEnabled() && log.sample("outbound-routing")) {
+      log.debug(OUTBOUND_MSG_BASED_ROUTING_LOG_FORMAT, vertxMsg.address(), vertxMsg.replyAddress(), encode(vertxMsg
+        .body()), amqpAddressList);
     }
   }
 
   public static void logVertxMsgForLinkBasedRouting(LogManager log, Message<JsonObject> vertxMsg, String linkAddress) {
-    if (log.isDebugEnabled()) {
-      log.debug(OUTBOUND_LINK_BASED_ROUTING_LOG_FORMAT, vertxMsg.address(), vertxMsg.replyAddress(), vertxMsg
-        .body().encode(), vertxMsg.replyAddress(), linkAddress);
+    if (log.isDebugEnabled() && log.sample("outbound-routing")) {
+      log.debug(OUTBOUND_LINK_BASED_ROUTING_LOG_FORMAT, vertxMsg.address(), vertxMsg.replyAddress(), encode(vertxMsg
+        .body()), linkAddress);
     }
   }
 
   public static void logAmqpMsgForLinkBasedRouting(LogManager log, InboundMessage inMsg, String linkId,
                                                    String vertxAddress) {
-    if (log.isDebugEnabled()) {
+    if (log.isDebugEnabled() && log.sample("inbound-routing")) {
       log.debug(INBOUND_LINK_BASED_ROUTING_LOG_FORMAT, inMsg.getAddress(), inMsg.getReplyTo(),
         inMsg.getContent(), linkId, vertxAddress);
     }
@@ -121,21 +121,25 @@ public class LogMsgHelper {
 
   public static void logAmqpMsgForMsgBasedRouting(LogManager log, InboundMessage inMsg, String linkId,
                                                   List<String> vertxAddressList) {
-    if (log.isDebugEnabled()) {
+    if (log.isDebugEnabled() && log.sample("inbound-routing")) {
       log.debug(INBOUND_MSG_BASED_ROUTING_LOG_FORMAT, inMsg.getAddress(), inMsg.getReplyTo(), inMsg.getContent(),
         linkId, vertxAddressList);
     }
   }
 
   public static void logInboundReplyTo(LogManager log, InboundMessage inMsg, String replyTo) {
-    if (log.isDebugEnabled()) {
-      log.debug(INBOUND_REPLYTO_LOG_FORMAT, replyTo, inMsg.getAddress(), replyTo);
+    if (log.isDebugEnabled() && log.sample("inbound-reply-to")) {
+      log.debug(INBOUND_REPLYTO_LOG_FORMAT, inMsg.getAddress(), inMsg.getContent(), replyTo);
     }
   }
 
   public static void logOutboundReplyTo(LogManager log, Message<JsonObject> msg, String amqpReplyTo) {
-    if (log.isDebugEnabled()) {
-      log.debug(OUTBOUND_REPLYTO_LOG_FORMAT, msg.address(), msg.body().encode(), amqpReplyTo);
+    if (log.isDebugEnabled() && log.sample("outbound-reply-to")) {
+      log.debug(OUTBOUND_REPLYTO_LOG_FORMAT, msg.address(), encode(msg.body()), amqpReplyTo);
     }
   }
+
+  private static String encode(JsonObject body) {
+    return body == null ? "" : body.encode();
+  }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rate limits log lines per category, letting at most a fixed number through
+ * in each one second window. Used for the per-message routing logs, which at
+ * debug level would otherwise log every message the bridge handles.
+ */
+public class LogSampler {
+  public static final int DEFAULT_LIMIT = 10;
+
+  private static final long WINDOW_MILLIS = 1000;
+
+  private final Map<String, Window> _windows = new ConcurrentHashMap<String, Window>();
+
+  private volatile int _limit = DEFAULT_LIMIT;
+
+  /**
+   * Sets the number of lines let through per category per second. Zero or
+   * less disables sampling.
+   */
+  public void setLimit(int limit) {
+    _limit = limit;
+  }
+
+  public int getLimit() {
+    return _limit;
+  }
+
+  /**
+   * Returns true if a line of the category may be logged now. If lines were
+   * dropped in the previous window, their count is returned through the
+   * window and can be read with {@link #takeSuppressed(String)}.
+   */
+  public boolean sample(String category, long nowMillis) {
+    int limit = _limit;
+    if (limit <= 0) {
+      return true;
+    }
+    return _windows.computeIfAbsent(category, k -> new Window()).sample(limit, nowMillis);
+  }
+
+  /**
+   * Returns the number of lines of the category dropped in the window that
+   * ended before the last sampled line, and resets it.
+   */
+  public long takeSuppressed(String category) {
+    Window window = _windows.get(category);
+    return window == null ? 0 : window.takeSuppressed();
+  }
+
+  private static final class Window {
+    private boolean _started;
+
+    private long _start;
+
+    private int _count;
+
+    private long _dropped;
+
+    private long _suppressed;
+
+    synchronized boolean sample(int limit, long nowMillis) {
+      if (!_started || nowMillis - _start >= WINDOW_MILLIS) {
+        _started = true;
+        _start = nowMillis;
+        _count = 0;
+        _suppressed += _dropped;
+        _dropped = 0;
+      }
+      if (_count < limit) {
+        _count++;
+        return true;
+      }
+      _dropped++;
+      return false;
+    }
+
+    synchronized long takeSuppressed() {
+      long suppressed = _suppressed;
+      _suppressed = 0;
+      return suppressed;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.util;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A minimal registry of named counters and gauges used by the service to
+ * report its internal state. Counters are cheap to update from any thread.
+ */
+public class Metrics {
+  private final Map<String, LongAdder> _counters = new ConcurrentHashMap<String, LongAdder>();
+
+  private final Map<String, Supplier<Object>> _gauges = new ConcurrentHashMap<String, Supplier<Object>>();
+
+  /**
+   * Returns the counter registered under the given name, creating it if
+   * necessary.
+   */
+  public LongAdder counter(String name) {
+    return _counters.computeIfAbsent(name, k -> new LongAdder());
+  }
+
+  /**
+   * Registers a gauge whose value is computed each time a snapshot is taken.
+   */
+  public void gauge(String name, Supplier<Object> gauge) {
+    _gauges.put(name, gauge);
+  }
+
+  public void remove(String name) {
+    _counters.remove(name);
+    _gauges.remove(name);
+  }
+
+  /**
+   * Returns the current value of all counters and gauges, sorted by name.
+   */
+  public JsonObject snapshot() {
+    Map<String, Object> values = new TreeMap<String, Object>();
+    for (Map.Entry<String, LongAdder> e : _counters.entrySet()) {
+      values.put(e.getKey(), e.getValue().sum());
+    }
+    for (Map.Entry<String, Supplier<Object>> e : _gauges.entrySet()) {
+      values.put(e.getKey(), e.getValue().get());
+    }
+    return new JsonObject(values);
+  }
+
+  /**
+   * Returns hits / (hits + misses), or 0 if there were no lookups.
+   */
+  public static double ratio(LongAdder hits, LongAdder misses) {
+    long h = hits.sum();
+    long total = h + misses.sum();
+    return total == 0 ? 0.0 : (double) h / total;
+  }
+}
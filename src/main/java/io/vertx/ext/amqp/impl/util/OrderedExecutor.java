@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.util;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks on a shared thread pool while guaranteeing that tasks submitted
+ * under the same key are executed one at a time and in submission order.
+ * Tasks for different keys run in parallel.
+ */
+public class OrderedExecutor {
+  private static final LogManager LOG = LogManager.get("ORDERED-EXECUTOR:", OrderedExecutor.class);
+
+  // Max tasks run for a key before yielding the thread to other keys.
+  private static final int BATCH_SIZE = 64;
+
+  private final ExecutorService _pool;
+
+  private final Map<String, SerialQueue> _queues = new ConcurrentHashMap<String, SerialQueue>();
+
+  public OrderedExecutor(String name, int threads) {
+    final AtomicInteger count = new AtomicInteger();
+    _pool = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  public void execute(String key, Runnable task) {
+    SerialQueue queue = _queues.get(key);
+    if (queue == null) {
+      queue = _queues.computeIfAbsent(key, k -> new SerialQueue());
+    }
+    queue.add(task);
+  }
+
+  /**
+   * Forgets the queue for the given key. Tasks already queued still run.
+   */
+  public void remove(String key) {
+    _queues.remove(key);
+  }
+
+  public void shutdown() {
+    _queues.clear();
+    _pool.shutdown();
+  }
+
+  class SerialQueue implements Runnable {
+    private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    private final AtomicBoolean _scheduled = new AtomicBoolean(false);
+
+    void add(Runnable task) {
+      _tasks.add(task);
+      schedule();
+    }
+
+    private void schedule() {
+      if (_scheduled.compareAndSet(false, true)) {
+        _pool.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        Runnable task;
+        int count = 0;
+        while (count++ < BATCH_SIZE && (task = _tasks.poll()) != null) {
+          try {
+            task.run();
+          } catch (Throwable e) {
+            LOG.warn(e, "Unexpected error executing task");
+          }
+        }
+      } finally {
+        _scheduled.set(false);
+        if (!_tasks.isEmpty()) {
+          schedule();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.vertx.ext.amqp.impl.util;
+
+import io.vertx.core.Vertx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hashed wheel timer for the large number of short lived deadlines the
+ * service keeps, one per pending reply or unsettled message. Scheduling and
+ * cancelling are O(1), and each tick only visits the timeouts of one bucket.
+ * Deadlines are rounded up to the tick, so they fire up to one tick late.
+ * <p/>
+ * The wheel is advanced by a periodic vert.x timer, see {@link #start(Vertx)},
+ * and expired timeouts run on that timer's context.
+ */
+public class TimerWheel {
+  private static final LogManager LOG = LogManager.get("TIMER-WHEEL:", TimerWheel.class);
+
+  public static final int DEFAULT_WHEEL_SIZE = 512;
+
+  private final Timeout[] _buckets;
+
+  private final int _mask;
+
+  private final long _tickMillis;
+
+  private long _tick = 0;
+
+  private long _lastTickTime = -1;
+
+  private int _pending = 0;
+
+  private long _timerId = -1;
+
+  public TimerWheel(long tickMillis) {
+    this(tickMillis, DEFAULT_WHEEL_SIZE);
+  }
+
+  /**
+   * @param wheelSize the number of buckets, rounded up to a power of two.
+   */
+  public TimerWheel(long tickMillis, int wheelSize) {
+    if (tickMillis <= 0) {
+      throw new IllegalArgumentException("Tick must be positive : " + tickMillis);
+    }
+    _tickMillis = tickMillis;
+    int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+    _buckets = new Timeout[size];
+    _mask = size - 1;
+  }
+
+  /**
+   * A deadline in the wheel. Subclasses implement what happens when it
+   * expires.
+   */
+  public static abstract class Timeout {
+    private Timeout _prev;
+
+    private Timeout _next;
+
+    private TimerWheel _wheel;
+
+    private int _bucket;
+
+    private long _rounds;
+
+    protected abstract void expire();
+
+    /**
+     * Removes the timeout from the wheel. Returns false if it had already
+     * expired or was not scheduled.
+     */
+    public boolean cancel() {
+      TimerWheel wheel = _wheel;
+      return wheel != null && wheel.remove(this);
+    }
+  }
+
+  public void start(Vertx vertx) {
+    _timerId = vertx.setPeriodic(_tickMillis, id -> advance(System.nanoTime() / 1000000));
+  }
+
+  public void stop(Vertx vertx) {
+    if (_timerId != -1) {
+      vertx.cancelTimer(_timerId);
+      _timerId = -1;
+    }
+  }
+
+  public long getTickMillis() {
+    return _tickMillis;
+  }
+
+  /**
+   * The number of scheduled timeouts.
+   */
+  public synchronized int pending() {
+    return _pending;
+  }
+
+  /**
+   * Schedules the timeout to expire after the delay. A timeout that is
+   * already scheduled is moved to the new deadline.
+   */
+  public synchronized void schedule(Timeout timeout, long delayMillis) {
+    if (timeout._wheel != null) {
+      timeout._wheel.remove(timeout);
+    }
+    long ticks = Math.max(1, (delayMillis + _tickMillis - 1) / _tickMillis);
+    timeout._rounds = (ticks - 1) / _buckets.length;
+    timeout._bucket = (int) ((_tick + ticks) & _mask);
+    timeout._wheel = this;
+    Timeout head = _buckets[timeout._bucket];
+    timeout._prev = null;
+    timeout._next = head;
+    if (head != null) {
+      head._prev = timeout;
+    }
+    _buckets[timeout._bucket] = timeout;
+    _pending++;
+  }
+
+  private synchronized boolean remove(Timeout timeout) {
+    if (timeout._wheel != this) {
+      return false;
+    }
+    unlink(timeout);
+    return true;
+  }
+
+  private void unlink(Timeout timeout) {
+    if (timeout._prev == null) {
+      _buckets[timeout._bucket] = timeout._next;
+    } else {
+      timeout._prev._next = timeout._next;
+    }
+    if (timeout._next != null) {
+      timeout._next._prev = timeout._prev;
+    }
+    timeout._prev = null;
+    timeout._next = null;
+    timeout._wheel = null;
+    _pending--;
+  }
+
+  /**
+   * Moves the wheel forward by the ticks elapsed up to the given time and
+   * expires the timeouts that are due. The first call only records the time.
+   */
+  public void advance(long nowMillis) {
+    List<Timeout> expired = null;
+    synchronized (this) {
+      if (_lastTickTime == -1) {
+        _lastTickTime = nowMillis;
+        return;
+      }
+      while (nowMillis - _lastTickTime >= _tickMillis) {
+        _lastTickTime += _tickMillis;
+        _tick++;
+        Timeout timeout = _buckets[(int) (_tick & _mask)];
+        while (timeout != null) {
+          Timeout next = timeout._next;
+          if (timeout._rounds == 0) {
+            unlink(timeout);
+            if (expired == null) {
+              expired = new ArrayList<Timeout>();
+            }
+            expired.add(timeout);
+          } else {
+            timeout._rounds--;
+          }
+          timeout = next;
+        }
+      }
+    }
+    if (expired != null) {
+      // outside the lock, an expiry may schedule new timeouts
+      for (Timeout timeout : expired) {
+        try {
+          timeout.expire();
+        } catch (Exception e) {
+          LOG.warn(e, "Error expiring timeout %s", timeout);
+        }
+      }
+    }
+  }
+}
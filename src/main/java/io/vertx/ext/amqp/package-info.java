@@ -51,6 +51,23 @@
  * {@link examples.Examples#exampleDeployServiceVerticle}
  * ----
  *
+ * === Deploying several instances
+ * The service can be deployed with more than one instance (e.g. _-instances 4_), each running on its own event loop.
+ *
+ * * The inbound host and port are shared, and AMQP peers connecting to it are spread over the instances.
+ * * Each outbound AMQP address is sent to by one instance only. The instance is chosen by rendezvous hashing of the
+ * address, so starting or stopping an instance only moves the addresses it gains or loses. An instance closes the
+ * links to addresses it no longer owns, after their unsettled deliveries are settled.
+ * * Link refs and msg-refs can be passed to any instance; the call is carried out by the instance owning the link or message.
+ * * Routes and services registered via the Service API are shared by all instances.
+ *
+ * In a clustered Vert.x, the nodes running the service likewise share out the outbound AMQP addresses, so each address is sent
+ * to by one node. A node receiving a message for an address owned by another node forwards it over the event bus, and replies
+ * are passed back. When a node joins or leaves, the addresses it gains or loses move and the links to them are reopened by
+ * their new owner. Until a starting node has joined, it holds its warm-up and the messages it routes by address, as it
+ * does not know yet which addresses it owns. Set __'vertx.cluster-ownership'__ to false to have every node send to every
+ * address instead.
+ *
  * == Running your first example
  * Lets start with a simple request-reply example involving a Vert.x app and an AMQP app.
  * We will first run the examples before going through the concepts and the code.
@@ -199,6 +216,16 @@
  * ----
  * * The Vert.x-AMQP-Service which receives the response, looks up the mapping and forwards it to the ClientVerticle via the event-bus.
  *
+ * The AMQP peer has to reach the inbound host and port of the Vert.x-AMQP-Service to send the reply. If that's not possible,
+ * set __'amqp.rpc-reply-link'__ to true. The service then opens a receiver with a dynamic source on each outbound connection and
+ * uses its address as the reply-to of requests. Requests without a message-id get the Vert.x reply address as message-id and
+ * correlation-id, and replies are matched by correlation-id, so the AMQP application must set it.
+ * [source, python]
+ * ----
+ * delivery = sender.send(Message(body=unicode(greeting), correlation_id=event.message.correlation_id))
+ * ----
+ * Until the peer has attached the reply link, requests fall back to the inbound host and port.
+ *
  * [[routing]]
  * == How routing works
  * The Vert.x-AMQP-Service acts as a router between the AMQP and Vert.x space.
@@ -232,15 +259,20 @@
  *
  * * If no such association is found, it looks for a message-property in the following order and use the value of it to look up the routing table.
  *
- *   1. If 'vertx.routing-key' is specified it will use the value of it as the lookup key (overrides everything below).
- *   2. If not specified & a custom property is specified via _**routing-property-type=CUSTOM**_ & _**routing-property-name=<property-name>**_.
+ *   1. If the 'vertx.amqp.routing-key' event-bus header is set (see `MessageHeaders`), it will use the value of it as the lookup key (overrides everything below).
+ *   2. If 'vertx.routing-key' is specified within the json message it will use the value of it as the lookup key.
+ *   3. If not specified & a custom property is specified via _**routing-property-type=CUSTOM**_ & _**routing-property-name=<property-name>**_.
  *      It will look for it in the following order,
  *
+ *      . Look for a 'vertx.amqp.property.<property-name>' or 'vertx.amqp.application-property.<property-name>' event-bus header.
  *      . Look for that property as a top-level property within the json message.
  *      . Look for that property within the __'properties'__ section within the json message.
- *      . Look for that property within the __'application-properties'__ section within the json message.
+ *      . Look for that property within the __'application_properties'__ section within the json message.
  *
- *   3. If not specified it will simply use the Vert.x address the message was sent to as the lookup key.
+ *   4. If not specified it will simply use the Vert.x address the message was sent to as the lookup key.
+ *
+ * Supplying the routing key and AMQP properties as headers lets the service route a message without looking into its body.
+ * Property and application-property headers are also copied onto the outgoing AMQP message.
  *
  * * If the routing table has no matching entry, it will send the message to the default outbound address (dead-letter queue) configured via __'amqp.default-outbound-address'__.  
  *
@@ -266,6 +298,36 @@
  * See 'Table 2. vertx.routing-outbound'.
  * |vertx.routing-inbound| {}| A map configuring inbound routing, including routes.
  * See 'Table 3. vertx.routing-inbound'.
+ * |amqp.inbound-decode-workers| 0| If > 0, inbound AMQP messages are decoded and translated on a pool of this many worker threads instead of the event loop. The pool is shared by the instances of the service in a Vert.x instance.
+ * Message order is preserved per link, while different links are processed in parallel.
+ * |vertx.routing-cache-size| 1000| Max number of routing decisions (routing key -> address list) cached by the message
+ * based router. Cached decisions are discarded whenever a route is added or removed. Set to 0 to disable the cache.
+ * |vertx.metrics-address| NULL| If set, the service replies to any message sent to this address with a Json object
+ * containing its internal counters, e.g. 'routing.outbound.cache.hit-ratio' and 'routing.inbound.cache.hit-ratio'.
+ * |amqp.rpc-reply-link| false| If true, replies to requests sent to AMQP peers are received on a dynamic reply link
+ * instead of the inbound host and port.
+ * |vertx.reply-timeout| 30000| Time in ms a request sent to an AMQP peer waits for its reply. The request is then failed
+ * and forgotten.
+ * |amqp.msg-ref-timeout| 300000| Time in ms an inbound message may remain unsettled. It is then released and a
+ * MSG_REF_EXPIRED notification is sent. Delivery notices for outbound messages expire the same way.
+ * |amqp.retry-options| {min-retry-interval: 100, max-retry-interval: 30000}| How the links opened for outbound routes are
+ * re-attached when their connection is lost, in the form of the recovery options of a link. By default they are retried
+ * until they succeed.
+ * |amqp.idle-timeout| 0| If > 0, time in ms after which an outbound connection that waits on its peer and on which
+ * nothing was received is considered dead. Empty frames are sent on every open connection after half of it without
+ * traffic. 0 disables both.
+ * |amqp.warm-up| false| If true, the service opens the links to the default outbound address and to the addresses of
+ * the outbound routes before its verticle completes its start.
+ * |amqp.warm-up-timeout| 5000| Maximum time in ms the start waits for the warm-up links to attach. The service then
+ * starts anyway, and the links keep trying to attach. Must be > 0.
+ * |amqp.credit-notice-interval| 100| Minimum time in ms between two LINK_CREDIT notifications for an outgoing link. Updates in
+ * between are coalesced and the latest credit is sent. A link going from no credit to some credit is notified at once.
+ * |amqp.credit-notice-delta| 1| Minimum change in the credit of an outgoing link that is notified. A change to or from zero is always notified.
+ * |amqp.max-inflated-size| 16777216| Size in bytes past which an inbound deflate body is rejected as malformed.
+ * |amqp.timer-tick| 100| Granularity in ms of the above timeouts.
+ * |vertx.cluster-ownership| true| In a clustered Vert.x, each outbound AMQP address is sent to by one node only.
+ * |vertx.cluster-refresh| 2000| Interval in ms at which nodes that left the cluster without stopping the service are detected.
+ * |amqp.log-sample-limit| 10| With debug logging on, the number of per-message routing lines logged per second for each kind of line. Others are dropped and counted. 0 logs every line.
  * |===
  *
  *
@@ -279,6 +341,8 @@
  * 2. If a __'properties'__ map is specified, within that map. +
  * 3. If an __'application_properties'__ map is specified, within that map.
  *
+ * |pattern-type| REGEX| One of [REGEX, TOPIC]. Selects the syntax of the keys in the routes map. See # <3>
+ *
  * |routes| {}| A map containing entries that map a 'routing-key' (as extracted above) to an AMQP endpoint address.
  * See # <1>  
  * |===
@@ -302,6 +366,8 @@
  * If CUSTOM is selected, then you need to specify _'routing-property-name'_
  * |routing-property-name| mandatory | Looks for this property within the Application Properties in an AMQP message.
  *
+ * |pattern-type| REGEX| One of [REGEX, TOPIC]. Selects the syntax of the keys in the routes map. See # <3>
+ *
  * |routes| {}| A map containing entries that map a 'routing-key' (as extracted above) to an a Vert.x address.
  * See # <2>  
  * |===
@@ -315,6 +381,104 @@
  *           }
  * ----
  *
+ * By default route keys are Java regular expressions that must match the entire routing key.
+ * With "pattern-type" : "TOPIC" the keys are instead dot separated words, where '*' matches exactly one word and '#'
+ * matches zero or more words. Topic routes are matched through a shared trie, so adding routes does not slow down
+ * routing.
+ *
+ * [source]
+ * .<3> Topic routes example.
+ * ----
+ * "vertx.routing-inbound" : {
+ *             "routing-property-type" : "SUBJECT",
+ *             "pattern-type" : "TOPIC",
+ *             "routes" :{
+ *                          "weather.*.toronto" : "toronto-weather",
+ *                          "weather.#" : "all-weather"
+ *                       }
+ *           }
+ * ----
+ *
+ * A route value may also be an object with an "address" (or an "addresses" list) and a "selector". The selector is
+ * a JMS style expression over the message properties, e.g. `priority > 5 AND region IN ('eu', 'us')`, supporting
+ * comparisons, arithmetic, AND/OR/NOT, BETWEEN, IN, LIKE and IS [NOT] NULL. The route is used only if the selector is
+ * true, a missing property never matches. Selectors are compiled once when the route is configured.
+ *
+ * For inbound routes names resolve to the AMQP properties (subject, reply_to, message_id, correlation_id, content_type,
+ * priority, ttl etc.) and otherwise to the application properties. For outbound routes they resolve to the
+ * property headers, then the "properties" and "application_properties" maps and then the top level fields of the
+ * JSON message. If routes match the routing key but all of their selectors reject the message, it is dropped
+ * (inbound messages are accepted so they are not redelivered) instead of going to the default address.
+ *
+ * [source]
+ * .<4> Selector routes example.
+ * ----
+ * "routes" :{
+ *             "orders" : { "address" : "urgent-orders", "selector" : "priority >= 7" },
+ *             "orders.*" : { "addresses" : ["eu-orders", "audit"], "selector" : "region = 'eu'" }
+ *           }
+ * ----
+ *
+ * By default a message is sent to every address of a matching route. With "type" : "partitioned" it is sent to exactly
+ * one of them instead, chosen by hashing the "partition-by" property (looked up like a selector property, e.g.
+ * "group_id") onto a consistent hash ring. The routing key is hashed if "partition-by" is not set or the message
+ * lacks the property, "vertx.routing-key" names it explicitly. Messages with the same key always go to the same
+ * address, which keeps them in order, and adding or removing an address only moves the keys of about one address.
+ *
+ * [source]
+ * .<5> Partitioned route example.
+ * ----
+ * "routes" :{
+ *             "orders" : {
+ *                          "type" : "partitioned",
+ *                          "partition-by" : "group_id",
+ *                          "addresses" : ["amqp://broker1:5672/orders", "amqp://broker2:5672/orders"]
+ *                        }
+ *           }
+ * ----
+ *
+ * With "type" : "load-balanced" each message goes to exactly one of the addresses, the one whose link currently has
+ * the most credit left, and of those the one with the fewest deliveries not yet settled by the peer. A slow broker
+ * settles late, so messages move to the other addresses instead of the slowest broker setting the pace. An address
+ * without a link yet is picked first, which opens its link. Messages with the same key are not kept in order across
+ * addresses, use "partitioned" for that. Links created through the service API are not load balanced, their
+ * "alternative-address-list" is only used when the link fails, see below.
+ *
+ * When the connection of a link is lost, the link is re-attached on a new connection under the same link-ref,
+ * following the "retry-policy" of its recovery options. Attempts back off exponentially, with jitter, from
+ * "min-retry-interval" to "max-retry-interval", and go through the link address and its "alternative-address-list" in
+ * turn. Messages the peer had not settled on an at-least-once link are sent again over the new link, so the peer may
+ * see some of them twice. Until the peer has re-attached the link, sending to it fails with LINK_RETRY_IN_PROGRESS.
+ * The links opened for outbound routes follow __'amqp.retry-options'__.
+ *
+ * By default, connections and links to outbound addresses are opened by the first message routed to them, which then
+ * waits for the connection and the attach. With __'amqp.warm-up'__ set, the links to the default outbound address
+ * and to the addresses of the outbound routes in the configuration are opened in parallel when the service starts,
+ * and the deployment of the verticle completes once they are attached or __'amqp.warm-up-timeout'__ expired. The
+ * metrics 'link-manager.warm-up.ms', 'link-manager.warm-up.unattached' and 'link-manager.first-send-ms' report how
+ * long the warm-up took, how many of its links are not attached yet, and when the first message was sent after start.
+ *
+ * A connection whose peer vanished without closing it may only be noticed as lost minutes later. With
+ * __'amqp.idle-timeout'__ set, the service sends an empty frame on each connection when it has had nothing to send for
+ * half the timeout, once the peer has opened it. An outbound connection that waits on its peer, for the answer to
+ * its open frame, for the settlement of a delivery or for its writes to drain, is failed when nothing was received
+ * for the timeout, and its links are re-attached as above. The timeout is not advertised to the peer, so a connection
+ * with nothing outstanding is left open even if the peer sends no heartbeats. The metrics
+ * 'link-manager.connections.detection-ms.last' and '.max' report how long after the last data received failed
+ * connections were noticed.
+ *
+ * An inbound route with "format" : "raw" passes messages through without translating them to JSON. The consumer
+ * receives a `Buffer` holding the AMQP encoded message as it arrived, with the msg-ref and link-ref in the
+ * `vertx.amqp.msg-ref` and `vertx.amqp.link-ref` headers (see `MessageHeaders`). With "format" : "typed" the consumer
+ * instead receives an `AmqpMessageView`, giving typed access to the AMQP properties, application properties and body
+ * without building any JSON. Views are passed by reference to consumers in the same JVM and sent in a compact binary
+ * form to other cluster nodes, which need to register the codec with `AmqpMessageCodec.register(vertx)`. Links created
+ * through the service API can use the same formats through the "format" of their `IncomingLinkOptions`.
+ *
+ * In the other direction, a message sent to the service with a `Buffer` body is taken to be an AMQP encoded message
+ * and written to the link unchanged; its `vertx.amqp.msg-ref` header is used as the outgoing msg-ref. This allows
+ * two AMQP applications to be bridged through Vert.x without a JSON round trip.
+ *
  * == AmqpService Interface
  * The AmqpService interface allows a Vert.x application to interact with the Vert.x-AMQP-Service (bridge) and leverage some of the important features of AMQP.
  * Please refer to the API documentation for more information.
@@ -419,6 +583,17 @@
  *     The Vert.x-AMQP-Service uses this ref to lookup the correct AMQP message and accepts it. +
  *     Simillary you could __reject__ & __release__ messages.
  *
+ * ==== Settling messages automatically.
+ * When an incoming link is established with __'reliability'__ set to AT_LEAST_ONCE and __'auto-settle'__ set to true (see IncomingLinkOptions),
+ * the Vert.x-AMQP-Service sends each message with a reply handler and settles it on your behalf, saving a call to the service per message.
+ *
+ * * Replying to the message (with any content) accepts it.
+ * * Failing the message via __message.fail(code, reason)__ rejects it.
+ * * If no reply is received within __'auto-settle-timeout'__ (default 30 secs) the message is released so it can be redelivered.
+ *
+ * The messages of such a link are settled by the service only, __accept__, __reject__ and __release__ do not apply to
+ * their msg-ref.
+ *
  * ==== Retrieving AMQP message properties when receiving.
  * [source, $lang]
  * ----
@@ -432,6 +607,27 @@
  * <6> The AMQP Property correlation-id will be mapped "correlation-id".
  * <7> The message-translator will copy any entries within AMQP application-properties into "application-properties" section of the json message.
  *
+ * AMQP types without a Json equivalent are converted: symbols, uuids and chars become strings, timestamps become
+ * milliseconds since the epoch, binary values become Base64 strings (see JsonObject.getBinary) and unsigned integers
+ * become numbers. A message-id or correlation-id that is not a string is accompanied by a __'message_id_type'__ /
+ * __'correlation_id_type'__ field (ulong, uuid or binary), which is honoured when sending so the id keeps its type.
+ *
+ * Data bodies (__'body_type' : 'data'__) are converted by the `BodyCodec` for the message content-type, taken from
+ * the "properties" map or the content_type property header when sending. Built-in codecs cover
+ * application/octet-stream (a Base64 string, also used when there is no codec), text/plain (a UTF-8 string),
+ * application/json (any Json value) and application/x-vertx-record (a Json array of Base64 fields, each written with a
+ * 4 byte length prefix). Further codecs are listed by class name in the __'amqp.body-codecs'__ config array, and a
+ * route can set a __'content-type'__ used for data bodies of messages that don't carry one, e.g.
+ * "orders" : {"address" : "amqp://localhost:5672/orders", "content-type" : "text/plain"}. A route can also name a
+ * __'codec'__ class, used for data bodies of that codec's content-type on this route only. The codec's content-type is
+ * then the route's default unless "content-type" is set. A text/plain body that is not a string is rejected as
+ * malformed.
+ *
+ * An outbound route with __'compression'__ set to true, or to an object with "threshold" (default 1024 bytes) and
+ * "level" (the Deflater level), deflates data bodies at least as large as the threshold and sets their
+ * content-encoding to "deflate". Inbound data bodies with that content-encoding are inflated before translation, and
+ * rejected as malformed if they inflate to more than __'amqp.max-inflated-size'__ bytes (default 16 MB). Per route ratio and CPU time are reported under "compression.<route>." in the metrics.
+ *
  * [[exposing-service]]
  * === Exposing a Vert.x Service via AMQP.
  * The first example we looked at exposed a Vert.x service by simply mapping an event-bus address to an AMQP endpoint.
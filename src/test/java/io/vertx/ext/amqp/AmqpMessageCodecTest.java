@@ -0,0 +1,106 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.message.Message;
+import org.junit.Test;
+
+public class AmqpMessageCodecTest extends TestCase
+{
+    private static byte[] encode(Message msg)
+    {
+        byte[] buffer = new byte[1024];
+        int length = msg.encode(buffer, 0, buffer.length);
+        byte[] out = new byte[length];
+        System.arraycopy(buffer, 0, out, 0, length);
+        return out;
+    }
+
+    private static Message message()
+    {
+        Message msg = Proton.message();
+        msg.setMessageId(UUID.fromString("6ba7b810-9dad-11d1-80b4-00c04fd430c8"));
+        msg.setSubject("weather");
+        msg.setApplicationProperties(new ApplicationProperties(Collections.singletonMap("city", "nyc")));
+        msg.setBody(new Data(new Binary(new byte[] { 1, 2, 3 })));
+        return msg;
+    }
+
+    @Test
+    public void testWireFormat()
+    {
+        AmqpMessageCodec codec = new AmqpMessageCodec();
+        AmqpMessageView view = new AmqpMessageView("ssn#1", "link-1", null, message());
+
+        Buffer buffer = Buffer.buffer().appendString("prefix");
+        codec.encodeToWire(buffer, view);
+        AmqpMessageView copy = codec.decodeFromWire(6, buffer);
+
+        assertEquals("ssn#1", copy.getMsgRef());
+        assertEquals("link-1", copy.getLinkRef());
+        assertEquals(view.getMessageId(), copy.getMessageId());
+        assertTrue(copy.getMessageId() instanceof UUID);
+        assertEquals("weather", copy.getSubject());
+        assertEquals("nyc", copy.getApplicationProperty("city"));
+        assertEquals(3, ((byte[]) copy.getBody()).length);
+        assertSame(view, codec.transform(view));
+    }
+
+    @Test
+    public void testLocalDeliveryIsNotCopied() throws Exception
+    {
+        Vertx vertx = Vertx.vertx();
+        try
+        {
+            AmqpMessageCodec.register(vertx);
+            // registering again is harmless
+            AmqpMessageCodec.register(vertx);
+
+            AmqpMessageView view = new AmqpMessageView("ssn#2", "link-2", encode(message()), null);
+            AtomicReference<Object> received = new AtomicReference<Object>();
+            CountDownLatch latch = new CountDownLatch(1);
+            vertx.eventBus().consumer("typed-consumer", msg -> {
+                received.set(msg.body());
+                latch.countDown();
+            });
+            vertx.eventBus().send("typed-consumer", view);
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertSame(view, received.get());
+            assertEquals("weather", view.getSubject());
+        }
+        finally
+        {
+            vertx.close();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static io.vertx.ext.amqp.BridgeTestSupport.close;
+import static io.vertx.ext.amqp.BridgeTestSupport.deploy;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.Rejected;
+import org.apache.qpid.proton.amqp.messaging.Released;
+import org.apache.qpid.proton.message.Message;
+import org.junit.Test;
+
+public class AutoSettleTest extends TestCase
+{
+    private static final int PEER_PORT = 15699;
+
+    private static final String SERVICE_ADDRESS = "vertx.amqp.auto-settle-test";
+
+    private static Message message(String body)
+    {
+        Message msg = Proton.message();
+        msg.setBody(new AmqpValue(body));
+        return msg;
+    }
+
+    private static void awaitOutcome(TestPeer peer, String tag, Class<?> outcome) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (peer.getOutcome(tag) == null)
+        {
+            assertTrue("Message " + tag + " not settled", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+        assertEquals(outcome, peer.getOutcome(tag).getClass());
+    }
+
+    @Test
+    public void testSettlesOnReplyOutcome() throws Exception
+    {
+        Vertx bridge = Vertx.vertx();
+        TestPeer peer = new TestPeer(bridge, PEER_PORT);
+        peer.offer("queue", "replied", message("reply"));
+        peer.offer("queue", "failed", message("fail"));
+        peer.offer("queue", "ignored", message("ignore"));
+        peer.start();
+        try
+        {
+            bridge.eventBus().<JsonObject> consumer("auto-settle-consumer", msg -> {
+                switch (msg.body().getString("body"))
+                {
+                case "reply":
+                    msg.reply(new JsonObject());
+                    break;
+                case "fail":
+                    msg.fail(1, "not processed");
+                    break;
+                default:
+                    // no reply, the message times out
+                    break;
+                }
+            });
+            deploy(bridge, new JsonObject().put("address", SERVICE_ADDRESS).put("amqp.inbound-port", 15700));
+
+            IncomingLinkOptions options = new IncomingLinkOptions();
+            options.setReliability(ReliabilityMode.AT_LEAST_ONCE);
+            options.setPrefetch(10);
+            options.setAutoSettle(true);
+            options.setAutoSettleTimeout(200);
+            CompletableFuture<String> linkRef = new CompletableFuture<String>();
+            AMQPService.createEventBusProxy(bridge, SERVICE_ADDRESS).establishIncomingLink(
+                    "amqp://localhost:" + PEER_PORT + "/queue", "auto-settle-consumer", "auto-settle-notifications",
+                    options, r -> {
+                        if (r.succeeded())
+                        {
+                            linkRef.complete(r.result());
+                        }
+                        else
+                        {
+                            linkRef.completeExceptionally(r.cause());
+                        }
+                    });
+            linkRef.get(10, TimeUnit.SECONDS);
+
+            awaitOutcome(peer, "replied", Accepted.class);
+            awaitOutcome(peer, "failed", Rejected.class);
+            awaitOutcome(peer, "ignored", Released.class);
+        }
+        finally
+        {
+            close(bridge);
+        }
+    }
+}
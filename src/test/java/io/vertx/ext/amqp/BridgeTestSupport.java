@@ -0,0 +1,68 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers shared by the tests that deploy the service verticle.
+ */
+final class BridgeTestSupport
+{
+    private BridgeTestSupport()
+    {
+    }
+
+    static void deploy(Vertx vertx, JsonObject config) throws Exception
+    {
+        CompletableFuture<String> deployed = new CompletableFuture<String>();
+        vertx.deployVerticle(AMQPVerticle.class.getName(), new DeploymentOptions().setConfig(config), r -> {
+            if (r.succeeded())
+            {
+                deployed.complete(r.result());
+            }
+            else
+            {
+                deployed.completeExceptionally(r.cause());
+            }
+        });
+        deployed.get(10, TimeUnit.SECONDS);
+    }
+
+    /*
+     * Asks the service for its metrics, "vertx.metrics-address" must be set
+     * to metricsAddress in its config.
+     */
+    static JsonObject metrics(Vertx vertx, String metricsAddress) throws Exception
+    {
+        CompletableFuture<JsonObject> metrics = new CompletableFuture<JsonObject>();
+        vertx.eventBus().<JsonObject> send(metricsAddress, null, r -> metrics.complete(r.result().body()));
+        return metrics.get(10, TimeUnit.SECONDS);
+    }
+
+    static void close(Vertx vertx) throws Exception
+    {
+        CompletableFuture<Void> closed = new CompletableFuture<Void>();
+        vertx.close(r -> closed.complete(null));
+        closed.get(10, TimeUnit.SECONDS);
+    }
+}
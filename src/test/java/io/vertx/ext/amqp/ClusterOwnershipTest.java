@@ -0,0 +1,204 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.amqp.impl.ClusterMembership;
+import io.vertx.ext.amqp.impl.InstanceRegistry;
+import io.vertx.test.fakecluster.FakeClusterManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class ClusterOwnershipTest extends TestCase
+{
+    private static final String HANDLER_ADDRESS = "vertx.service-amqp.bridge";
+
+    private static final int ADDRESSES = 64;
+
+    private static final int PEER_PORT = 15705;
+
+    private Vertx startNode(int inboundPort) throws Exception
+    {
+        return startNode(new JsonObject().put("address", "vertx.amqp.cluster-test").put("amqp.inbound-port",
+                inboundPort).put("vertx.cluster-refresh", 100));
+    }
+
+    private Vertx startNode(JsonObject config) throws Exception
+    {
+        CompletableFuture<Vertx> started = new CompletableFuture<Vertx>();
+        Vertx.clusteredVertx(new VertxOptions().setClusterManager(new FakeClusterManager()), r -> {
+            if (r.succeeded())
+            {
+                started.complete(r.result());
+            }
+            else
+            {
+                started.completeExceptionally(r.cause());
+            }
+        });
+        Vertx vertx = started.get(10, TimeUnit.SECONDS);
+
+        CompletableFuture<String> deployed = new CompletableFuture<String>();
+        vertx.deployVerticle(AMQPVerticle.class.getName(), new DeploymentOptions().setConfig(config), r -> {
+            if (r.succeeded())
+            {
+                deployed.complete(r.result());
+            }
+            else
+            {
+                deployed.completeExceptionally(r.cause());
+            }
+        });
+        deployed.get(10, TimeUnit.SECONDS);
+        return vertx;
+    }
+
+    private void stopNode(Vertx vertx) throws Exception
+    {
+        CompletableFuture<Void> closed = new CompletableFuture<Void>();
+        vertx.close(r -> closed.complete(null));
+        closed.get(10, TimeUnit.SECONDS);
+    }
+
+    private ClusterMembership membership(Vertx vertx)
+    {
+        return InstanceRegistry.get(vertx, HANDLER_ADDRESS).getCluster();
+    }
+
+    /*
+     * Waits until every node agrees on the owner of every address, and
+     * returns the owners.
+     */
+    private Set<String> awaitOwners(List<Vertx> nodes) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true)
+        {
+            Set<String> owners = new HashSet<String>();
+            boolean agreed = true;
+            for (int i = 0; i < ADDRESSES && agreed; i++)
+            {
+                String address = "amqp://localhost:5672/queue-" + i;
+                String owner = membership(nodes.get(0)).ownerOf(address);
+                for (Vertx node : nodes)
+                {
+                    agreed &= owner.equals(membership(node).ownerOf(address));
+                }
+                owners.add(owner);
+            }
+            if (agreed && owners.size() == nodes.size())
+            {
+                return owners;
+            }
+            assertTrue("Nodes did not agree on address owners", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    public void testOwnershipFailover() throws Exception
+    {
+        List<Vertx> nodes = new ArrayList<Vertx>();
+        try
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                nodes.add(startNode(15680 + i));
+            }
+            Set<String> owners = awaitOwners(nodes);
+            assertEquals(3, owners.size());
+
+            Vertx leaving = nodes.remove(2);
+            String leavingId = membership(leaving).getNodeId();
+            stopNode(leaving);
+
+            owners = awaitOwners(nodes);
+            assertEquals(2, owners.size());
+            assertFalse(owners.contains(leavingId));
+        }
+        finally
+        {
+            for (Vertx node : nodes)
+            {
+                stopNode(node);
+            }
+            FakeClusterManager.reset();
+        }
+    }
+
+    @Test
+    public void testWarmUpWaitsForJoin() throws Exception
+    {
+        Vertx peerVertx = Vertx.vertx();
+        TestPeer peer = new TestPeer(peerVertx, PEER_PORT);
+        List<Vertx> nodes = new ArrayList<Vertx>();
+        try
+        {
+            peer.start();
+            List<String> queues = new ArrayList<String>();
+            JsonObject routes = new JsonObject();
+            for (int i = 0; i < 16; i++)
+            {
+                queues.add("queue-" + i);
+                routes.put("route-" + i, "amqp://localhost:" + PEER_PORT + "/queue-" + i);
+            }
+            for (int i = 0; i < 2; i++)
+            {
+                nodes.add(startNode(new JsonObject().put("address", "vertx.amqp.cluster-test").put(
+                        "amqp.inbound-port", 15703 + i).put("vertx.cluster-refresh", 100).put("amqp.warm-up", true)
+                        .put("amqp.default-outbound-address", "amqp://localhost:" + PEER_PORT + "/queue-0").put(
+                                "vertx.routing-outbound", new JsonObject().put("routes", routes))));
+                assertTrue(membership(nodes.get(i)).isJoined());
+            }
+
+            // the second node only warmed up the addresses it owns
+            ClusterMembership second = membership(nodes.get(1));
+            int owned = 0;
+            for (String queue : queues)
+            {
+                if (second.isLocal("amqp://localhost:" + PEER_PORT + "/" + queue))
+                {
+                    owned++;
+                }
+            }
+            assertTrue(owned < queues.size());
+            assertEquals(queues.size() + owned, peer.getLinksOpened());
+        }
+        finally
+        {
+            for (Vertx node : nodes)
+            {
+                stopNode(node);
+            }
+            FakeClusterManager.reset();
+            peer.stop();
+            peerVertx.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.ext.amqp.impl.util.CreditCoalescer;
+import io.vertx.ext.amqp.impl.util.TimerWheel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class CreditCoalescerTest extends TestCase
+{
+    @Test
+    public void testCoalescing()
+    {
+        List<String> sent = new ArrayList<String>();
+        TimerWheel wheel = new TimerWheel(10, 8);
+        wheel.advance(0);
+        CreditCoalescer coalescer = new CreditCoalescer(wheel, 100, 5, (id, credits) -> sent.add(id + "=" + credits));
+
+        // first credit goes out at once
+        coalescer.update("link", 10, 0);
+        assertEquals("[link=10]", sent.toString());
+
+        // within the interval only the latest value is sent, when it ends
+        coalescer.update("link", 20, 10);
+        coalescer.update("link", 30, 20);
+        coalescer.update("link", 40, 30);
+        assertEquals(1, sent.size());
+        wheel.advance(100);
+        assertEquals("[link=10, link=40]", sent.toString());
+
+        // changes below the delta are not sent
+        coalescer.update("link", 42, 500);
+        wheel.advance(700);
+        assertEquals(2, sent.size());
+
+        // running out is sent, and so is getting credit again, even within
+        // the interval
+        coalescer.update("link", 0, 800);
+        coalescer.update("link", 1, 810);
+        assertEquals("[link=10, link=40, link=0, link=1]", sent.toString());
+
+        coalescer.update("link", 50, 820);
+        coalescer.remove("link");
+        wheel.advance(1000);
+        assertEquals(4, sent.size());
+        assertEquals(0, coalescer.size());
+    }
+}
@@ -0,0 +1,203 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.ext.amqp.impl.protocol.EncodedMessage;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.engine.Session;
+import org.apache.qpid.proton.engine.Transport;
+import org.apache.qpid.proton.message.Message;
+import org.junit.Test;
+
+public class EncodedMessageTest extends TestCase
+{
+    private static Message decode(byte[] bytes)
+    {
+        Message msg = Proton.message();
+        msg.decode(bytes, 0, bytes.length);
+        return msg;
+    }
+
+    private static String repeat(char c, int count)
+    {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < count; i++)
+        {
+            b.append(c);
+        }
+        return b.toString();
+    }
+
+    /*
+     * Moves the pending output of each transport to the input of the other.
+     */
+    private static void pump(Transport a, Transport b)
+    {
+        for (int i = 0; i < 4; i++)
+        {
+            transfer(a, b);
+            transfer(b, a);
+        }
+    }
+
+    private static void transfer(Transport from, Transport to)
+    {
+        ByteBuffer out = from.getOutputBuffer();
+        while (out.remaining() > 0)
+        {
+            int count = Math.min(out.remaining(), to.getInputBuffer().remaining());
+            byte[] bytes = new byte[count];
+            out.get(bytes);
+            to.getInputBuffer().put(bytes);
+            to.processInput();
+            from.outputConsumed();
+            out = from.getOutputBuffer();
+        }
+    }
+
+    private static Transport open(Connection connection)
+    {
+        Transport transport = Transport.Factory.create();
+        transport.bind(connection);
+        connection.open();
+        return transport;
+    }
+
+    @Test
+    public void testWriteToSender()
+    {
+        Connection client = Connection.Factory.create();
+        Connection server = Connection.Factory.create();
+        Transport clientTransport = open(client);
+        Transport serverTransport = open(server);
+        Session session = client.session();
+        session.open();
+        Sender sender = session.sender("sender");
+        sender.open();
+        pump(clientTransport, serverTransport);
+
+        EnumSet<EndpointState> local = EnumSet.of(EndpointState.UNINITIALIZED);
+        EnumSet<EndpointState> remote = EnumSet.of(EndpointState.ACTIVE);
+        server.sessionHead(local, remote).open();
+        Receiver receiver = (Receiver) server.linkHead(local, remote);
+        receiver.setSource(receiver.getRemoteSource());
+        receiver.setTarget(receiver.getRemoteTarget());
+        receiver.open();
+        receiver.flow(1);
+        pump(clientTransport, serverTransport);
+
+        Message msg = Proton.message();
+        msg.setSubject("weather");
+        msg.setBody(new AmqpValue(repeat('x', 5000)));
+        sender.delivery(new byte[] { 1 });
+        new EncodedMessage(msg).writeTo(sender, "queue-a");
+        sender.advance();
+        pump(clientTransport, serverTransport);
+
+        Delivery delivery = receiver.current();
+        assertNotNull(delivery);
+        assertFalse(delivery.isPartial());
+        byte[] received = new byte[delivery.pending()];
+        receiver.recv(received, 0, received.length);
+        Message out = decode(received);
+        assertEquals("queue-a", out.getAddress());
+        assertEquals("weather", out.getSubject());
+        assertEquals(5000, ((String) ((AmqpValue) out.getBody()).getValue()).length());
+    }
+
+    @Test
+    public void testPerDestinationAddress()
+    {
+        Message msg = Proton.message();
+        msg.setDurable(true);
+        msg.setSubject("weather");
+        msg.setApplicationProperties(new ApplicationProperties(Collections.singletonMap("city", "nyc")));
+        msg.setBody(new AmqpValue(repeat('x', 5000)));
+
+        EncodedMessage encoded = new EncodedMessage(msg);
+        for (String address : new String[] { "queue-a", "queue-b" })
+        {
+            Message out = decode(encoded.toByteArray(address));
+            assertEquals(address, out.getAddress());
+            assertEquals("weather", out.getSubject());
+            assertTrue(out.isDurable());
+            assertEquals("nyc", out.getApplicationProperties().getValue().get("city"));
+            assertEquals(5000, ((String) ((AmqpValue) out.getBody()).getValue()).length());
+        }
+        // the original message is not modified
+        assertNull(msg.getAddress());
+    }
+
+    @Test
+    public void testAddressSetByApplication()
+    {
+        Message msg = Proton.message();
+        msg.setAddress("explicit");
+        msg.setBody(new AmqpValue("hello"));
+
+        EncodedMessage encoded = new EncodedMessage(msg);
+        assertEquals("explicit", decode(encoded.toByteArray("queue-a")).getAddress());
+        assertEquals("explicit", decode(encoded.toByteArray("queue-b")).getAddress());
+    }
+
+    @Test
+    public void testSameEncodingAsProton()
+    {
+        Message msg = Proton.message();
+        msg.setAddress("queue-a");
+        msg.setMessageId("id-1");
+        msg.setBody(new AmqpValue("hello"));
+
+        byte[] expected = new byte[1024];
+        int length = msg.encode(expected, 0, expected.length);
+        byte[] actual = new EncodedMessage(msg).toByteArray(null);
+        assertEquals(length, actual.length);
+        for (int i = 0; i < length; i++)
+        {
+            assertEquals(expected[i], actual[i]);
+        }
+    }
+
+    @Test
+    public void testRawMessageSentAsIs()
+    {
+        Message msg = Proton.message();
+        msg.setAddress("original");
+        msg.setBody(new AmqpValue("hello"));
+        byte[] raw = new EncodedMessage(msg).toByteArray(null);
+
+        EncodedMessage wrapped = EncodedMessage.wrap(raw);
+        byte[] out = wrapped.toByteArray("queue-a");
+        assertEquals(raw.length, out.length);
+        assertEquals("original", decode(out).getAddress());
+        assertEquals("hello", ((AmqpValue) decode(out).getBody()).getValue());
+    }
+}
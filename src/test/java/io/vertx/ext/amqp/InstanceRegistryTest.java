@@ -0,0 +1,152 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.amqp.impl.AMQPServiceImpl;
+import io.vertx.ext.amqp.impl.InstanceRegistry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class InstanceRegistryTest extends TestCase
+{
+    private static final String HANDLER_ADDRESS = "vertx.service-amqp.bridge";
+
+    private static final int PEER_PORT = 15701;
+
+    @Test
+    public void testAddressesSpreadOverInstances() throws Exception
+    {
+        Vertx vertx = Vertx.vertx();
+        try
+        {
+            JsonObject config = new JsonObject().put("address", "vertx.amqp.instances-test").put(
+                    "amqp.inbound-port", 15673);
+            CompletableFuture<String> deployed = new CompletableFuture<String>();
+            vertx.deployVerticle(AMQPVerticle.class.getName(), new DeploymentOptions().setConfig(config)
+                    .setInstances(2), r -> {
+                if (r.succeeded())
+                {
+                    deployed.complete(r.result());
+                }
+                else
+                {
+                    deployed.completeExceptionally(r.cause());
+                }
+            });
+            String deploymentId = deployed.get(10, TimeUnit.SECONDS);
+
+            InstanceRegistry registry = InstanceRegistry.get(vertx, HANDLER_ADDRESS);
+            assertEquals(2, registry.size());
+            Set<AMQPServiceImpl> owners = new HashSet<AMQPServiceImpl>();
+            for (int i = 0; i < 32; i++)
+            {
+                String address = "amqp://localhost:5672/queue-" + i;
+                AMQPServiceImpl owner = registry.ownerOf(address);
+                assertSame(owner, registry.ownerOf(address));
+                owners.add(owner);
+            }
+            assertEquals(2, owners.size());
+
+            CompletableFuture<Void> undeployed = new CompletableFuture<Void>();
+            vertx.undeploy(deploymentId, r -> undeployed.complete(null));
+            undeployed.get(10, TimeUnit.SECONDS);
+            assertNull(InstanceRegistry.get(vertx, HANDLER_ADDRESS));
+        }
+        finally
+        {
+            vertx.close();
+        }
+    }
+
+    @Test
+    public void testEachAddressLinkedOnce() throws Exception
+    {
+        Vertx peerVertx = Vertx.vertx();
+        Vertx vertx = Vertx.vertx();
+        TestPeer peer = new TestPeer(peerVertx, PEER_PORT);
+        try
+        {
+            peer.start();
+            List<String> queues = new ArrayList<String>();
+            JsonObject routes = new JsonObject();
+            for (int i = 0; i < 12; i++)
+            {
+                queues.add("queue-" + i);
+                routes.put("route-" + i, "amqp://localhost:" + PEER_PORT + "/queue-" + i);
+            }
+            JsonObject config = new JsonObject().put("address", "vertx.amqp.instances-test").put(
+                    "amqp.inbound-port", 15702).put("amqp.default-outbound-address", "amqp://localhost:" + PEER_PORT
+                    + "/queue-0").put("amqp.warm-up", true).put("vertx.routing-outbound", new JsonObject().put(
+                    "routes", routes));
+            CompletableFuture<String> deployed = new CompletableFuture<String>();
+            vertx.deployVerticle(AMQPVerticle.class.getName(), new DeploymentOptions().setConfig(config)
+                    .setInstances(3), r -> {
+                if (r.succeeded())
+                {
+                    deployed.complete(r.result());
+                }
+                else
+                {
+                    deployed.completeExceptionally(r.cause());
+                }
+            });
+            deployed.get(10, TimeUnit.SECONDS);
+            assertEquals(3, InstanceRegistry.get(vertx, HANDLER_ADDRESS).size());
+
+            // links opened before all instances registered are closed by the rebalance
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!linkedOnce(peer, queues) && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(50);
+            }
+            for (String queue : queues)
+            {
+                assertEquals(queue, 1, peer.getOpenLinks(queue));
+            }
+        }
+        finally
+        {
+            vertx.close();
+            peer.stop();
+            peerVertx.close();
+        }
+    }
+
+    private static boolean linkedOnce(TestPeer peer, List<String> queues)
+    {
+        for (String queue : queues)
+        {
+            if (peer.getOpenLinks(queue) != 1)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
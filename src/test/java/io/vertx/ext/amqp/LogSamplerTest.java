@@ -0,0 +1,51 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.ext.amqp.impl.util.LogSampler;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class LogSamplerTest extends TestCase
+{
+    @Test
+    public void testSampling()
+    {
+        LogSampler sampler = new LogSampler();
+        sampler.setLimit(2);
+        assertTrue(sampler.sample("outbound", 0));
+        assertTrue(sampler.sample("outbound", 10));
+        assertFalse(sampler.sample("outbound", 20));
+        assertFalse(sampler.sample("outbound", 30));
+        // categories are limited separately
+        assertTrue(sampler.sample("inbound", 30));
+        assertEquals(0, sampler.takeSuppressed("outbound"));
+
+        // the next window reports the lines dropped in the previous one
+        assertTrue(sampler.sample("outbound", 1000));
+        assertEquals(2, sampler.takeSuppressed("outbound"));
+        assertEquals(0, sampler.takeSuppressed("outbound"));
+
+        sampler.setLimit(0);
+        for (int i = 0; i < 10; i++)
+        {
+            assertTrue(sampler.sample("outbound", 1000));
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.amqp.impl.config.AmqpServiceConfigImpl;
+import io.vertx.ext.amqp.impl.routing.AddressLoad;
+import io.vertx.ext.amqp.impl.routing.MessageRouter;
+import io.vertx.ext.amqp.impl.translators.MessageTranslator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class MessageRouterTest extends TestCase
+{
+    private MessageRouter router(boolean customProperty)
+    {
+        JsonObject outbound = new JsonObject().put("routes",
+                new JsonObject().put("nyc", "amqp://nyc").put("bos", "amqp://bos").put("tor", "amqp://tor"));
+        if (customProperty)
+        {
+            outbound.put("routing-property-name", "city");
+        }
+        JsonObject config = new JsonObject().put("amqp.default-outbound-address", "amqp://dlq").put(
+                "vertx.routing-outbound", outbound);
+        return new MessageRouter(new AmqpServiceConfigImpl(config));
+    }
+
+    @Test
+    public void testRoutingKeyHeader() throws Exception
+    {
+        MessageRouter router = router(false);
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap().add(MessageHeaders.ROUTING_KEY, "bos");
+        JsonObject body = new JsonObject().put("vertx.routing-key", "nyc");
+
+        assertEquals(Arrays.asList("amqp://bos"), router.routeOutgoing(new TestMessage("tor", headers, body)));
+        assertEquals(Arrays.asList("amqp://nyc"), router.routeOutgoing(new TestMessage("tor", null, body)));
+        assertEquals(Arrays.asList("amqp://tor"), router.routeOutgoing(new TestMessage("tor", null, new JsonObject())));
+        assertEquals(Arrays.asList("amqp://dlq"), router.routeOutgoing(new TestMessage("sfo", null, new JsonObject())));
+    }
+
+    @Test
+    public void testCustomRoutingProperty() throws Exception
+    {
+        MessageRouter router = router(true);
+        JsonObject appProps = new JsonObject().put("application_properties", new JsonObject().put("city", "nyc"));
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap().add(MessageHeaders.applicationProperty("city"), "bos");
+
+        assertEquals(Arrays.asList("amqp://nyc"), router.routeOutgoing(new TestMessage("tor", null, appProps)));
+        assertEquals(Arrays.asList("amqp://bos"), router.routeOutgoing(new TestMessage("tor", headers, appProps)));
+        assertEquals(Arrays.asList("amqp://nyc"), router.routeOutgoing(new TestMessage("tor", null, new JsonObject()
+                .put("properties", new JsonObject().put("city", "nyc")))));
+        assertEquals(Arrays.asList("amqp://tor"), router.routeOutgoing(new TestMessage("tor", null, new JsonObject()
+                .put("properties", "not-a-map"))));
+    }
+
+    @Test
+    public void testHeadersAppliedToAmqpMessage() throws Exception
+    {
+        MessageTranslator translator = new MessageTranslator();
+        JsonObject appProps = new JsonObject().put("city", "nyc").put("zip", "10001");
+        JsonObject body = new JsonObject().put("application_properties", appProps).put("body", "hello");
+        org.apache.qpid.proton.message.Message msg = translator.convert(body);
+
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap().add(MessageHeaders.property("subject"), "weather")
+                .add(MessageHeaders.property("content_type"), "text/plain")
+                .add(MessageHeaders.applicationProperty("city"), "bos").add(MessageHeaders.ROUTING_KEY, "bos");
+        translator.applyHeaders(headers, msg);
+
+        assertEquals("weather", msg.getSubject());
+        assertEquals("text/plain", msg.getContentType());
+        assertEquals("bos", msg.getApplicationProperties().getValue().get("city"));
+        assertEquals("10001", msg.getApplicationProperties().getValue().get("zip"));
+        assertEquals(2, msg.getApplicationProperties().getValue().size());
+        // the Json body is left untouched
+        assertEquals("nyc", appProps.getString("city"));
+    }
+
+    @Test
+    public void testSelectorRoutes() throws Exception
+    {
+        JsonObject routes = new JsonObject().put("orders",
+                new JsonObject().put("address", "amqp://urgent").put("selector", "priority >= 7")).put("orders.*",
+                new JsonObject().put("addresses", new JsonArray().add("amqp://eu").add("amqp://audit"))
+                        .put("selector", "region = 'eu'"));
+        JsonObject config = new JsonObject().put("amqp.default-outbound-address", "amqp://dlq").put(
+                "vertx.routing-outbound", new JsonObject().put("routes", routes));
+        MessageRouter router = new MessageRouter(new AmqpServiceConfigImpl(config));
+
+        JsonObject urgent = new JsonObject().put("properties", new JsonObject().put("priority", 9));
+        assertEquals(Arrays.asList("amqp://urgent"), router.routeOutgoing(new TestMessage("orders", null, urgent)));
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap().add(MessageHeaders.applicationProperty("region"), "eu");
+        assertEquals(new HashSet<String>(Arrays.asList("amqp://urgent", "amqp://eu", "amqp://audit")),
+                new HashSet<String>(router.routeOutgoing(new TestMessage("orders", headers, urgent))));
+        // routes matched, but no selector accepted the message
+        assertTrue(router.routeOutgoing(new TestMessage("orders", null, new JsonObject())).isEmpty());
+        // no route matched
+        assertEquals(Arrays.asList("amqp://dlq"), router.routeOutgoing(new TestMessage("returns", null, urgent)));
+    }
+
+    @Test
+    public void testPartitionedRoutes() throws Exception
+    {
+        JsonArray shards = new JsonArray().add("amqp://shard-1").add("amqp://shard-2").add("amqp://shard-3");
+        JsonObject routes = new JsonObject().put("orders",
+                new JsonObject().put("type", "partitioned").put("partition-by", "group_id").put("addresses", shards));
+        JsonObject config = new JsonObject().put("vertx.routing-outbound", new JsonObject().put("routes", routes));
+        MessageRouter router = new MessageRouter(new AmqpServiceConfigImpl(config));
+
+        Set<String> used = new HashSet<String>();
+        for (int i = 0; i < 100; i++)
+        {
+            JsonObject body = new JsonObject().put("properties", new JsonObject().put("group_id", "customer-" + i));
+            List<String> addresses = router.routeOutgoing(new TestMessage("orders", null, body));
+            assertEquals(1, addresses.size());
+            // the same key always maps to the same shard
+            assertEquals(addresses, router.routeOutgoing(new TestMessage("orders", null, body.copy())));
+            used.add(addresses.get(0));
+        }
+        assertEquals(3, used.size());
+
+        // without the property the routing key is used
+        assertEquals(1, router.routeOutgoing(new TestMessage("orders", null, new JsonObject())).size());
+    }
+
+    @Test
+    public void testLoadBalancedRoutes() throws Exception
+    {
+        JsonArray brokers = new JsonArray().add("amqp://broker-1").add("amqp://broker-2").add("amqp://broker-3");
+        JsonObject routes = new JsonObject().put("jobs",
+                new JsonObject().put("type", "load-balanced").put("addresses", brokers));
+        JsonObject config = new JsonObject().put("vertx.routing-outbound", new JsonObject().put("routes", routes));
+        MessageRouter router = new MessageRouter(new AmqpServiceConfigImpl(config));
+
+        // without load information the addresses take turns
+        Set<String> used = new HashSet<String>();
+        for (int i = 0; i < 3; i++)
+        {
+            List<String> addresses = router.routeOutgoing(new TestMessage("jobs", null, new JsonObject()));
+            assertEquals(1, addresses.size());
+            used.add(addresses.get(0));
+        }
+        assertEquals(3, used.size());
+
+        // broker-2 has no credit, broker-3 has the most
+        Map<String, Integer> credit = new HashMap<String, Integer>();
+        credit.put("amqp://broker-1", 10);
+        credit.put("amqp://broker-2", 0);
+        credit.put("amqp://broker-3", 40);
+        Map<String, Integer> unsettled = new HashMap<String, Integer>();
+        unsettled.put("amqp://broker-1", 0);
+        unsettled.put("amqp://broker-2", 0);
+        unsettled.put("amqp://broker-3", 30);
+        router.setAddressLoad(new AddressLoad()
+        {
+            @Override
+            public int getCredit(String address)
+            {
+                return credit.get(address);
+            }
+
+            @Override
+            public int getUnsettled(String address)
+            {
+                return unsettled.get(address);
+            }
+        });
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals(Arrays.asList("amqp://broker-3"), router.routeOutgoing(new TestMessage("jobs", null,
+                    new JsonObject())));
+        }
+
+        // with equal credit the address with fewer unsettled deliveries wins
+        credit.put("amqp://broker-1", 40);
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals(Arrays.asList("amqp://broker-1"), router.routeOutgoing(new TestMessage("jobs", null,
+                    new JsonObject())));
+        }
+
+        // an address without a link yet is picked, so that it gets opened
+        credit.put("amqp://broker-2", AddressLoad.NOT_OPEN);
+        assertEquals(Arrays.asList("amqp://broker-2"), router.routeOutgoing(new TestMessage("jobs", null,
+                new JsonObject())));
+    }
+
+    @Test
+    public void testInboundFormats() throws Exception
+    {
+        JsonObject routes = new JsonObject().put("bridge.*", new JsonObject().put("address", "raw-consumer")
+                .put("format", "raw")).put("typed.*", new JsonObject().put("address", "typed-consumer")
+                .put("format", "typed")).put("orders", "json-consumer");
+        JsonObject config = new JsonObject().put("vertx.routing-inbound", new JsonObject().put("routes", routes));
+        MessageRouter router = new MessageRouter(new AmqpServiceConfigImpl(config));
+
+        assertEquals(DeliveryFormat.RAW, router.getInboundFormat("raw-consumer"));
+        assertEquals(DeliveryFormat.TYPED, router.getInboundFormat("typed-consumer"));
+        assertEquals(DeliveryFormat.JSON, router.getInboundFormat("json-consumer"));
+
+        router.addInboundRoute("bridge.*", "raw-consumer-2");
+        assertEquals(DeliveryFormat.RAW, router.getInboundFormat("raw-consumer-2"));
+    }
+
+    @Test
+    public void testRouteContentTypes() throws Exception
+    {
+        JsonObject outbound = new JsonObject().put("orders", new JsonObject().put("address", "amqp://orders")
+                .put("content-type", "application/x-vertx-record")).put("audit", "amqp://audit")
+                .put("shouting", new JsonObject().put("address", "amqp://shouting")
+                        .put("codec", UpperCaseCodec.class.getName()));
+        JsonObject config = new JsonObject().put("vertx.routing-outbound", new JsonObject().put("routes", outbound))
+                .put("amqp.body-codecs", new JsonArray().add(UpperCaseCodec.class.getName()));
+        AmqpServiceConfigImpl serviceConfig = new AmqpServiceConfigImpl(config);
+        MessageRouter router = new MessageRouter(serviceConfig);
+
+        assertTrue(router.hasOutboundContentTypes());
+        assertEquals("application/x-vertx-record", router.getOutboundContentType("amqp://orders"));
+        assertNull(router.getOutboundContentType("amqp://audit"));
+        assertNull(router.getOutboundCodec("amqp://orders"));
+
+        // a route codec only applies to the route, its content-type is the route default
+        assertTrue(router.getOutboundCodec("amqp://shouting") instanceof UpperCaseCodec);
+        assertEquals("text/x-upper", router.getOutboundContentType("amqp://shouting"));
+        assertEquals(1, serviceConfig.getBodyCodecs().size());
+        assertEquals("text/x-upper", serviceConfig.getBodyCodecs().get(0).getContentType());
+
+        // a class that is not a codec is reported by name
+        try
+        {
+            new AmqpServiceConfigImpl(new JsonObject().put("amqp.body-codecs", new JsonArray().add(String.class
+                    .getName())));
+            fail("Expected a config error");
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertTrue(e.getMessage().contains("java.lang.String"));
+        }
+    }
+
+    public static class UpperCaseCodec implements BodyCodec
+    {
+        @Override
+        public String getContentType()
+        {
+            return "text/x-upper";
+        }
+
+        @Override
+        public Object decode(byte[] data, int offset, int length)
+        {
+            return new String(data, offset, length).toUpperCase();
+        }
+
+        @Override
+        public byte[] encode(Object body)
+        {
+            return body.toString().getBytes();
+        }
+    }
+
+    private static class TestMessage implements Message<JsonObject>
+    {
+        private final String _address;
+
+        private final MultiMap _headers;
+
+        private final JsonObject _body;
+
+        TestMessage(String address, MultiMap headers, JsonObject body)
+        {
+            _address = address;
+            _headers = headers == null ? MultiMap.caseInsensitiveMultiMap() : headers;
+            _body = body;
+        }
+
+        @Override
+        public String address()
+        {
+            return _address;
+        }
+
+        @Override
+        public MultiMap headers()
+        {
+            return _headers;
+        }
+
+        @Override
+        public JsonObject body()
+        {
+            return _body;
+        }
+
+        @Override
+        public String replyAddress()
+        {
+            return null;
+        }
+
+        @Override
+        public void reply(Object message)
+        {
+        }
+
+        @Override
+        public <R> void reply(Object message, Handler<AsyncResult<Message<R>>> replyHandler)
+        {
+        }
+
+        @Override
+        public void reply(Object message, DeliveryOptions options)
+        {
+        }
+
+        @Override
+        public <R> void reply(Object message, DeliveryOptions options, Handler<AsyncResult<Message<R>>> replyHandler)
+        {
+        }
+
+        @Override
+        public void fail(int failureCode, String message)
+        {
+        }
+    }
+}
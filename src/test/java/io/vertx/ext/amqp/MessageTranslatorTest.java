@@ -0,0 +1,371 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.amqp.impl.translators.BodyCodecs;
+import io.vertx.ext.amqp.impl.translators.Compression;
+import io.vertx.ext.amqp.impl.translators.MessageTranslator;
+import io.vertx.ext.amqp.impl.util.Metrics;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.Deflater;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.UnsignedInteger;
+import org.apache.qpid.proton.amqp.UnsignedLong;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.amqp.messaging.Properties;
+import org.apache.qpid.proton.message.Message;
+import org.junit.Test;
+
+public class MessageTranslatorTest extends TestCase
+{
+    private final MessageTranslator _translator = new MessageTranslator();
+
+    @Test
+    public void testPrimitiveValues() throws Exception
+    {
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put("symbol", Symbol.valueOf("sym"));
+        map.put("uuid", UUID.fromString("6ba7b810-9dad-11d1-80b4-00c04fd430c8"));
+        map.put("ulong", UnsignedLong.valueOf("18446744073709551615"));
+        map.put("uint", UnsignedInteger.valueOf(7));
+        map.put("short", (short) 3);
+        map.put("char", 'c');
+        map.put("timestamp", new Date(1000));
+        map.put("binary", new Binary(new byte[] { 0, 1, 2, 3, 4 }, 1, 3));
+        map.put("array", new int[] { 1, 2 });
+        map.put(Symbol.valueOf("symbol-key"), "value");
+        Message msg = Proton.message();
+        msg.setBody(new AmqpValue(map));
+
+        JsonObject body = _translator.convert(msg).getJsonObject("body");
+        assertEquals("sym", body.getString("symbol"));
+        assertEquals("6ba7b810-9dad-11d1-80b4-00c04fd430c8", body.getString("uuid"));
+        assertEquals("18446744073709551615", body.getValue("ulong").toString());
+        assertEquals(Long.valueOf(7), body.getLong("uint"));
+        assertEquals(Integer.valueOf(3), body.getInteger("short"));
+        assertEquals("c", body.getString("char"));
+        assertEquals(Long.valueOf(1000), body.getLong("timestamp"));
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, body.getBinary("binary")));
+        assertEquals(new JsonArray().add(1).add(2), body.getJsonArray("array"));
+        assertEquals("value", body.getString("symbol-key"));
+        // the result must be encodable and copyable
+        assertEquals(body.getString("uuid"), new JsonObject(body.copy().encode()).getString("uuid"));
+    }
+
+    @Test
+    public void testJsonCompatibleValuesAreNotCopied() throws Exception
+    {
+        Map<String, Object> nested = new HashMap<String, Object>();
+        nested.put("list", Arrays.asList("a", "b"));
+        Map<String, Object> appProps = new HashMap<String, Object>();
+        appProps.put("city", "nyc");
+        Message msg = Proton.message();
+        msg.setApplicationProperties(new ApplicationProperties(appProps));
+        msg.setBody(new AmqpValue(nested));
+
+        JsonObject json = _translator.convert(msg);
+        assertSame(appProps, json.getJsonObject("application_properties").getMap());
+        assertSame(nested, json.getJsonObject("body").getMap());
+
+        // and the other way round
+        Message out = _translator.convert(json);
+        assertSame(appProps, out.getApplicationProperties().getValue());
+        assertSame(nested, ((AmqpValue) out.getBody()).getValue());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNestedJsonValues() throws Exception
+    {
+        JsonObject body = new JsonObject().put("name", "x").put("nested", new JsonObject().put("n", 1)).put("list",
+                new JsonArray().add(new JsonObject().put("k", true)));
+        Message msg = _translator.convert(new JsonObject().put("body", body));
+
+        Map<String, Object> value = (Map<String, Object>) ((AmqpValue) msg.getBody()).getValue();
+        assertEquals(1, ((Map<String, Object>) value.get("nested")).get("n"));
+        assertEquals(true, ((Map<String, Object>) ((List<Object>) value.get("list")).get(0)).get("k"));
+        // the Json body is left untouched
+        assertTrue(body.getValue("nested") instanceof JsonObject);
+
+        // proton can encode the result
+        byte[] buffer = new byte[1024];
+        assertTrue(msg.encode(buffer, 0, buffer.length) > 0);
+    }
+
+    @Test
+    public void testPropertiesRoundTrip() throws Exception
+    {
+        UUID id = UUID.randomUUID();
+        Message msg = Proton.message();
+        msg.setProperties(new Properties());
+        msg.setMessageId(id);
+        msg.setCorrelationId(UnsignedLong.valueOf(42));
+        msg.setUserId(new byte[] { 'b', 'o', 'b' });
+        msg.setContentType("text/plain");
+        msg.setCreationTime(1234);
+        msg.getProperties().setGroupSequence(UnsignedInteger.valueOf(5));
+        msg.setBody(new Data(new Binary(new byte[] { 9, 8, 7 })));
+
+        JsonObject json = _translator.convert(msg);
+        JsonObject props = json.getJsonObject("properties");
+        assertEquals(id.toString(), props.getString("message_id"));
+        assertEquals("uuid", props.getString("message_id_type"));
+        assertEquals("42", props.getString("correlation_id"));
+        assertEquals("ulong", props.getString("correlation_id_type"));
+        assertEquals("text/plain", props.getString("content_type"));
+
+        Message out = _translator.convert(json);
+        assertEquals(id, out.getMessageId());
+        assertEquals(UnsignedLong.valueOf(42), out.getCorrelationId());
+        assertEquals("bob", new String(out.getUserId()));
+        assertEquals("text/plain", out.getContentType());
+        assertEquals(1234, out.getCreationTime());
+        assertEquals(UnsignedInteger.valueOf(5), out.getProperties().getGroupSequence());
+        assertEquals(new Binary(new byte[] { 9, 8, 7 }), ((Data) out.getBody()).getValue());
+
+        // a numeric id without a type is a ulong
+        Message numeric = _translator.convert(new JsonObject().put("properties",
+                new JsonObject().put("message_id", 7)));
+        assertEquals(UnsignedLong.valueOf(7), numeric.getMessageId());
+    }
+
+    @Test
+    public void testStringIdHeaders() throws Exception
+    {
+        Message msg = applyIdHeaders("42", null);
+        assertEquals("42", msg.getMessageId());
+        assertEquals("42", msg.getCorrelationId());
+        msg = applyIdHeaders("42", "string");
+        assertEquals("42", msg.getMessageId());
+        assertEquals("42", msg.getCorrelationId());
+    }
+
+    @Test
+    public void testUlongIdHeaders() throws Exception
+    {
+        Message msg = applyIdHeaders("42", "ulong");
+        assertEquals(UnsignedLong.valueOf(42), msg.getMessageId());
+        assertEquals(UnsignedLong.valueOf(42), msg.getCorrelationId());
+    }
+
+    @Test
+    public void testUuidIdHeaders() throws Exception
+    {
+        UUID id = UUID.randomUUID();
+        Message msg = applyIdHeaders(id.toString(), "uuid");
+        assertEquals(id, msg.getMessageId());
+        assertEquals(id, msg.getCorrelationId());
+    }
+
+    @Test
+    public void testBinaryIdHeaders() throws Exception
+    {
+        Message msg = applyIdHeaders("AQID", "binary");
+        assertEquals(new Binary(new byte[] { 1, 2, 3 }), msg.getMessageId());
+        assertEquals(new Binary(new byte[] { 1, 2, 3 }), msg.getCorrelationId());
+
+        // the ids round trip through Json with their type
+        JsonObject props = _translator.convert(msg).getJsonObject("properties");
+        assertEquals("binary", props.getString("message_id_type"));
+        assertEquals(new Binary(new byte[] { 1, 2, 3 }), _translator.convert(new JsonObject().put("properties",
+                props)).getMessageId());
+
+        try
+        {
+            applyIdHeaders("%%", "binary");
+            fail("Expected MessageFormatException");
+        }
+        catch (MessageFormatException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    private Message applyIdHeaders(String id, String type) throws Exception
+    {
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap().add(MessageHeaders.property("message_id"), id)
+                .add(MessageHeaders.property("correlation_id"), id);
+        if (type != null)
+        {
+            headers.add(MessageHeaders.property("message_id_type"), type)
+                    .add(MessageHeaders.property("correlation_id_type"), type);
+        }
+        Message msg = _translator.convert(new JsonObject().put("body", "hello"));
+        _translator.applyHeaders(headers, msg);
+        return msg;
+    }
+
+    @Test
+    public void testInvalidBase64() throws Exception
+    {
+        JsonObject[] invalid = {
+                new JsonObject().put("properties", new JsonObject().put("user_id", "not base64!")),
+                new JsonObject().put("properties", new JsonObject().put("message_id", "%%").put("message_id_type",
+                        "binary")),
+                new JsonObject().put("body", "#").put("body_type", "data") };
+        for (JsonObject json : invalid)
+        {
+            try
+            {
+                _translator.convert(json);
+                fail("Expected MessageFormatException for " + json);
+            }
+            catch (MessageFormatException e)
+            {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+        }
+    }
+
+    @Test
+    public void testBodyCodecs() throws Exception
+    {
+        JsonObject text = new JsonObject().put("body", "h\u00e9llo").put("body_type", "data");
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap().add(MessageHeaders.property("content_type"),
+                "text/plain; charset=utf-8");
+        Message msg = _translator.convert(text, headers, null);
+        assertEquals("h\u00e9llo", new String(((Data) msg.getBody()).getValue().getArray(), "UTF-8"));
+        assertEquals("h\u00e9llo", _translator.convert(msg).getString("body"));
+
+        // the route default applies to messages without a content-type
+        JsonObject record = new JsonObject().put("body", new JsonArray().add(new byte[] { 1 }).add(new byte[0]))
+                .put("body_type", "data");
+        msg = _translator.convert(record, null, BodyCodecs.RECORD);
+        assertEquals(BodyCodecs.RECORD, msg.getContentType());
+        Binary payload = ((Data) msg.getBody()).getValue();
+        assertEquals(9, payload.getLength());
+        List<byte[]> fields = BodyCodecs.decodeRecord(payload.getArray(), payload.getArrayOffset(), payload
+                .getLength());
+        assertEquals(2, fields.size());
+        assertEquals(1, fields.get(0)[0]);
+        assertEquals(record.getJsonArray("body"), _translator.convert(msg).getJsonArray("body"));
+
+        JsonObject json = new JsonObject().put("body", new JsonObject().put("a", 1)).put("body_type", "data").put(
+                "properties", new JsonObject().put("content_type", "application/json"));
+        msg = _translator.convert(json);
+        assertEquals("{\"a\":1}", new String(((Data) msg.getBody()).getValue().getArray(), "UTF-8"));
+        assertEquals(1, _translator.convert(msg).getJsonObject("body").getInteger("a").intValue());
+
+        // without a codec data bodies are Base64
+        msg.setContentType("application/x-unknown");
+        assertEquals("eyJhIjoxfQ==", _translator.convert(msg).getString("body"));
+        msg.getProperties().setContentType(null);
+        assertEquals(1, _translator.convert(msg, "application/json").getJsonObject("body").getInteger("a")
+                .intValue());
+
+        // text bodies must be strings
+        try
+        {
+            _translator.convert(new JsonObject().put("body", new JsonObject().put("a", 1)).put("body_type", "data"),
+                    null, BodyCodecs.TEXT);
+            fail("Expected MessageFormatException");
+        }
+        catch (MessageFormatException e)
+        {
+            assertTrue(e.getMessage().contains("string"));
+        }
+    }
+
+    @Test
+    public void testRouteCodec() throws Exception
+    {
+        BodyCodec upper = new MessageRouterTest.UpperCaseCodec();
+        JsonObject text = new JsonObject().put("body", "hello").put("body_type", "data");
+        Message msg = _translator.convert(text, null, upper.getContentType(), upper);
+        assertEquals("text/x-upper", msg.getContentType());
+        assertEquals("HELLO", _translator.convert(msg, null, upper).getString("body"));
+
+        // without the route codec the content-type has no codec
+        assertEquals("aGVsbG8=", _translator.convert(msg).getString("body"));
+
+        // other content-types still use the registered codecs
+        msg = _translator.convert(text, null, BodyCodecs.TEXT, upper);
+        assertEquals("hello", _translator.convert(msg, null, upper).getString("body"));
+    }
+
+    @Test
+    public void testCompression() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++)
+        {
+            text.append("{\"city\":\"nyc\"}");
+        }
+        JsonObject json = new JsonObject().put("body", text.toString()).put("body_type", "data").put("properties",
+                new JsonObject().put("content_type", "text/plain"));
+        Compression compression = new Compression("weather", 1024, Deflater.DEFAULT_COMPRESSION);
+        Metrics metrics = new Metrics();
+        compression.registerMetrics(metrics);
+
+        Message msg = _translator.convert(json);
+        assertTrue(compression.compress(msg));
+        assertEquals(Compression.DEFLATE, msg.getContentEncoding());
+        assertTrue(((Data) msg.getBody()).getValue().getLength() < 500);
+
+        JsonObject out = _translator.convert(msg);
+        assertEquals(text.toString(), out.getString("body"));
+        assertFalse(out.getJsonObject("properties").containsKey("content_encoding"));
+        assertTrue(metrics.snapshot().getDouble("compression.weather.ratio") < 0.1);
+
+        // small bodies are sent as they are
+        msg = _translator.convert(json.copy().put("body", "short"));
+        assertFalse(compression.compress(msg));
+        assertNull(msg.getContentEncoding());
+        assertEquals(1L, metrics.snapshot().getLong("compression.weather.messages").longValue());
+    }
+
+    @Test
+    public void testInflatedSizeLimit() throws Exception
+    {
+        // a megabyte of zeros deflates to about a kilobyte
+        Message bomb = Proton.message();
+        bomb.setBody(new Data(new Binary(new byte[1024 * 1024])));
+        assertTrue(new Compression("bomb", 0, Deflater.BEST_COMPRESSION).compress(bomb));
+        assertTrue(((Data) bomb.getBody()).getValue().getLength() < 2048);
+
+        MessageTranslator limited = new MessageTranslator(new BodyCodecs(), 64 * 1024);
+        try
+        {
+            limited.convert(bomb);
+            fail("Expected the inflated body to be rejected");
+        }
+        catch (MessageFormatException e)
+        {
+            assertEquals(ErrorCode.INVALID_MSG_FORMAT, e.getErrorCode());
+        }
+
+        // within the limit it inflates as usual
+        JsonObject json = new MessageTranslator(new BodyCodecs(), 1024 * 1024).convert(bomb);
+        assertEquals(1024 * 1024, json.getBinary("body").length);
+    }
+}
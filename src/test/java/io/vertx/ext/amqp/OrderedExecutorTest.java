@@ -0,0 +1,100 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.ext.amqp.impl.util.OrderedExecutor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class OrderedExecutorTest extends TestCase
+{
+    private static final int LINKS = 4;
+
+    private static final int MESSAGES = 2000;
+
+    @Test
+    public void testPerLinkOrderThroughEventLoop() throws Exception
+    {
+        Vertx vertx = Vertx.vertx();
+        OrderedExecutor executor = new OrderedExecutor("test-decoder", 4);
+        try
+        {
+            // same hand-off as the inbound decode pipeline: work on the pool,
+            // then hop back to the event loop
+            Context context = vertx.getOrCreateContext();
+            Map<String, List<Integer>> received = new HashMap<String, List<Integer>>();
+            Map<String, AtomicInteger> running = new HashMap<String, AtomicInteger>();
+            for (int l = 0; l < LINKS; l++)
+            {
+                received.put("link-" + l, new ArrayList<Integer>());
+                running.put("link-" + l, new AtomicInteger());
+            }
+            AtomicInteger overlaps = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(LINKS * MESSAGES);
+            for (int i = 0; i < MESSAGES; i++)
+            {
+                for (int l = 0; l < LINKS; l++)
+                {
+                    String link = "link-" + l;
+                    int seq = i;
+                    executor.execute(link, () -> {
+                        if (running.get(link).incrementAndGet() > 1)
+                        {
+                            overlaps.incrementAndGet();
+                        }
+                        if (seq % 100 == 0)
+                        {
+                            Thread.yield();
+                        }
+                        running.get(link).decrementAndGet();
+                        context.runOnContext(v -> {
+                            received.get(link).add(seq);
+                            done.countDown();
+                        });
+                    });
+                }
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(0, overlaps.get());
+            for (List<Integer> seqs : received.values())
+            {
+                assertEquals(MESSAGES, seqs.size());
+                for (int i = 0; i < MESSAGES; i++)
+                {
+                    assertEquals(i, seqs.get(i).intValue());
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+            vertx.close();
+        }
+    }
+}
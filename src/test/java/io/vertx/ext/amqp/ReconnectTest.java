@@ -0,0 +1,390 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static io.vertx.ext.amqp.BridgeTestSupport.close;
+import static io.vertx.ext.amqp.BridgeTestSupport.deploy;
+import static io.vertx.ext.amqp.BridgeTestSupport.metrics;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetServer;
+import io.vertx.ext.amqp.impl.util.Backoff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.message.Message;
+import org.junit.Test;
+
+public class ReconnectTest extends TestCase
+{
+    private static final String HANDLER_ADDRESS = "vertx.service-amqp.bridge";
+
+    private static final int PEER_PORT = 15690;
+
+    private static final String METRICS_ADDRESS = "vertx.amqp.reconnect-metrics";
+
+    private static final int LINK_PEER_PORT = 15697;
+
+    private static final int ALTERNATIVE_PEER_PORT = 15698;
+
+    private static final String LINK_ADDRESS = "reconnect-link";
+
+    private static final String NOTIFICATION_ADDRESS = "vertx.amqp.reconnect-notifications";
+
+    /*
+     * Starts a bridge acting as the AMQP peer, passing messages it receives
+     * on to the returned future.
+     */
+    private Vertx startPeer(CompletableFuture<JsonObject> received, long idleTimeout) throws Exception
+    {
+        Vertx peer = Vertx.vertx();
+        peer.eventBus().<JsonObject> consumer("test-queue", msg -> received.complete(msg.body()));
+        deploy(peer, new JsonObject().put("address", "vertx.amqp.reconnect-peer").put("amqp.inbound-port", PEER_PORT)
+                .put("amqp.idle-timeout", idleTimeout));
+        return peer;
+    }
+
+    private JsonObject bridgeConfig(long idleTimeout)
+    {
+        return new JsonObject().put("address", "vertx.amqp.reconnect-test").put("amqp.inbound-port", 15691)
+                .put("amqp.default-outbound-address", "amqp://localhost:" + PEER_PORT + "/test-queue")
+                .put("amqp.idle-timeout", idleTimeout).put("vertx.metrics-address", METRICS_ADDRESS);
+    }
+
+    private JsonObject sendUntilReceived(Vertx vertx, CompletableFuture<JsonObject> received) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!received.isDone())
+        {
+            assertTrue("Message not received by the peer", System.currentTimeMillis() < deadline);
+            vertx.eventBus().send(HANDLER_ADDRESS, new JsonObject().put("body", "hello"));
+            Thread.sleep(50);
+        }
+        return received.get();
+    }
+
+    private static RetryOptions retryOptions(RetryPolicy policy)
+    {
+        RetryOptions options = new RetryOptions();
+        options.setRetryPolicy(policy);
+        options.setMinRetryInterval(50);
+        options.setMaxRetryInterval(200);
+        return options;
+    }
+
+    /*
+     * Creates an at-least-once link to the peer on LINK_PEER_PORT through the
+     * service API, and returns the notifications sent for it.
+     */
+    private List<JsonObject> establishLink(Vertx bridge, RetryOptions retry) throws Exception
+    {
+        deploy(bridge, new JsonObject().put("address", "vertx.amqp.reconnect-test").put("amqp.inbound-port", 15691));
+        List<JsonObject> notifications = new CopyOnWriteArrayList<JsonObject>();
+        bridge.eventBus().<JsonObject> consumer(NOTIFICATION_ADDRESS, msg -> notifications.add(msg.body()));
+        OutgoingLinkOptions options = new OutgoingLinkOptions();
+        options.setReliability(ReliabilityMode.AT_LEAST_ONCE);
+        options.setRecoveryOptions(retry);
+        CompletableFuture<String> linkRef = new CompletableFuture<String>();
+        AMQPService.createEventBusProxy(bridge, "vertx.amqp.reconnect-test").establishOutgoingLink(
+                "amqp://localhost:" + LINK_PEER_PORT + "/test-queue", LINK_ADDRESS, NOTIFICATION_ADDRESS, options,
+                r -> {
+                    if (r.succeeded())
+                    {
+                        linkRef.complete(r.result());
+                    }
+                    else
+                    {
+                        linkRef.completeExceptionally(r.cause());
+                    }
+                });
+        linkRef.get(10, TimeUnit.SECONDS);
+        return notifications;
+    }
+
+    private static void sendViaLink(Vertx bridge, String msgRef)
+    {
+        bridge.eventBus().send(LINK_ADDRESS,
+                new JsonObject().put("body", msgRef).put(AMQPService.OUTGOING_MSG_REF, msgRef));
+    }
+
+    private static List<Object> bodies(TestPeer peer)
+    {
+        List<Object> bodies = new ArrayList<Object>();
+        for (Message msg : peer.getReceived())
+        {
+            bodies.add(((AmqpValue) msg.getBody()).getValue());
+        }
+        return bodies;
+    }
+
+    private static void awaitReceived(TestPeer peer, String body) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!bodies(peer).contains(body))
+        {
+            assertTrue(body + " not received by the peer", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    private static void awaitDeliveryState(List<JsonObject> notifications, String msgRef, DeliveryState state)
+            throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (true)
+        {
+            for (JsonObject notification : notifications)
+            {
+                if (NotificationHelper.getType(notification) == NotificationType.DELIVERY_STATE
+                        && msgRef.equals(NotificationHelper.getMsgRef(notification))
+                        && state.name().equals(notification.getString(NotificationHelper.DELIVERY_STATE)))
+                {
+                    return;
+                }
+            }
+            assertTrue("No " + state + " notification for " + msgRef, System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    public void testReplayUnsettledAfterReattach() throws Exception
+    {
+        Vertx bridge = Vertx.vertx();
+        TestPeer peer = new TestPeer(bridge, LINK_PEER_PORT);
+        peer.setSettling(false);
+        peer.start();
+        try
+        {
+            List<JsonObject> notifications = establishLink(bridge, retryOptions(RetryPolicy.RETRY_UNTIL_SUCCESS));
+            sendViaLink(bridge, "m1");
+            awaitReceived(peer, "m1");
+            peer.stop();
+
+            // the link is re-attached on a connection the peer never answers,
+            // messages sent meanwhile are refused instead of queued
+            peer = new TestPeer(bridge, LINK_PEER_PORT);
+            peer.setSilent(true);
+            peer.start();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!peer.isConnected())
+            {
+                assertTrue("Link not re-attached", System.currentTimeMillis() < deadline);
+                Thread.sleep(50);
+            }
+            sendViaLink(bridge, "m2");
+            Thread.sleep(200);
+            peer.stop();
+
+            peer = new TestPeer(bridge, LINK_PEER_PORT);
+            peer.start();
+            awaitDeliveryState(notifications, "m1", DeliveryState.SETTLED);
+            assertEquals(Arrays.<Object> asList("m1"), bodies(peer));
+        }
+        finally
+        {
+            close(bridge);
+        }
+    }
+
+    @Test
+    public void testFailoverToAlternativeAddress() throws Exception
+    {
+        Vertx bridge = Vertx.vertx();
+        TestPeer peer = new TestPeer(bridge, LINK_PEER_PORT);
+        peer.setSettling(false);
+        peer.start();
+        try
+        {
+            RetryOptions retry = retryOptions(RetryPolicy.RETRY_UNTIL_SUCCESS);
+            retry.setAlternativeAddressList(Arrays.asList("amqp://localhost:" + ALTERNATIVE_PEER_PORT
+                    + "/test-queue"));
+            List<JsonObject> notifications = establishLink(bridge, retry);
+            sendViaLink(bridge, "m1");
+            awaitReceived(peer, "m1");
+            peer.stop();
+
+            TestPeer alternative = new TestPeer(bridge, ALTERNATIVE_PEER_PORT);
+            alternative.start();
+            awaitDeliveryState(notifications, "m1", DeliveryState.SETTLED);
+            assertEquals(Arrays.<Object> asList("m1"), bodies(alternative));
+        }
+        finally
+        {
+            close(bridge);
+        }
+    }
+
+    @Test
+    public void testGiveUpFailsInFlightDeliveries() throws Exception
+    {
+        Vertx bridge = Vertx.vertx();
+        TestPeer peer = new TestPeer(bridge, LINK_PEER_PORT);
+        peer.setSettling(false);
+        peer.start();
+        try
+        {
+            RetryOptions retry = retryOptions(RetryPolicy.RETRY_UPTO_MAX_LIMIT);
+            retry.setMaxRetryLimit(2);
+            List<JsonObject> notifications = establishLink(bridge, retry);
+            sendViaLink(bridge, "m1");
+            awaitReceived(peer, "m1");
+            peer.stop();
+
+            awaitDeliveryState(notifications, "m1", DeliveryState.LINK_FAILED);
+        }
+        finally
+        {
+            close(bridge);
+        }
+    }
+
+    @Test
+    public void testReattachAfterPeerRestart() throws Exception
+    {
+        Vertx bridge = Vertx.vertx();
+        CompletableFuture<JsonObject> first = new CompletableFuture<JsonObject>();
+        Vertx peer = startPeer(first, 0);
+        try
+        {
+            deploy(bridge, bridgeConfig(0));
+            assertEquals("hello", sendUntilReceived(bridge, first).getString("body"));
+
+            close(peer);
+            CompletableFuture<JsonObject> second = new CompletableFuture<JsonObject>();
+            peer = startPeer(second, 0);
+            assertEquals("hello", sendUntilReceived(bridge, second).getString("body"));
+        }
+        finally
+        {
+            close(peer);
+            close(bridge);
+        }
+    }
+
+    @Test
+    public void testIdleTimeoutFailsSilentPeer() throws Exception
+    {
+        // accepts the connection but never answers, like a peer that went away
+        Vertx peer = Vertx.vertx();
+        Buffer written = Buffer.buffer();
+        NetServer server = peer.createNetServer().connectHandler(socket -> socket.handler(written::appendBuffer));
+        CompletableFuture<Void> listening = new CompletableFuture<Void>();
+        server.listen(PEER_PORT, r -> listening.complete(null));
+        listening.get(10, TimeUnit.SECONDS);
+
+        Vertx bridge = Vertx.vertx();
+        try
+        {
+            deploy(bridge, bridgeConfig(200));
+            bridge.eventBus().send(HANDLER_ADDRESS, new JsonObject().put("body", "hello"));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (metrics(bridge, METRICS_ADDRESS).getLong("link-manager.connections.idle-expired") == 0)
+            {
+                assertTrue("Idle connection not failed", System.currentTimeMillis() < deadline);
+                Thread.sleep(50);
+            }
+            assertTrue(metrics(bridge, METRICS_ADDRESS).getLong("link-manager.connections.detection-ms.max") >= 200);
+            // no heartbeats before the peer opened the connection
+            assertFalse(written.toString("ISO-8859-1").contains(new String(new byte[] { 0, 0, 0, 8, 2, 0, 0, 0 },
+                    "ISO-8859-1")));
+        }
+        finally
+        {
+            close(bridge);
+            close(peer);
+        }
+    }
+
+    @Test
+    public void testHeartbeatsKeepIdleConnectionOpen() throws Exception
+    {
+        Vertx bridge = Vertx.vertx();
+        CompletableFuture<JsonObject> first = new CompletableFuture<JsonObject>();
+        Vertx peer = startPeer(first, 200);
+        try
+        {
+            deploy(bridge, bridgeConfig(200));
+            sendUntilReceived(bridge, first);
+
+            // several timeouts without any message, the peer's heartbeats
+            // keep the bridge from failing the connection
+            Thread.sleep(1000);
+            JsonObject metrics = metrics(bridge, METRICS_ADDRESS);
+            assertEquals(0L, (long) metrics.getLong("link-manager.connections.failed"));
+            assertEquals(0L, (long) metrics.getLong("link-manager.connections.idle-expired"));
+        }
+        finally
+        {
+            close(peer);
+            close(bridge);
+        }
+    }
+
+    @Test
+    public void testIdleConnectionWithoutHeartbeatsStaysOpen() throws Exception
+    {
+        // the test peer sends no heartbeats, but nothing is waiting on it
+        Vertx bridge = Vertx.vertx();
+        TestPeer peer = new TestPeer(bridge, PEER_PORT);
+        peer.start();
+        try
+        {
+            deploy(bridge, bridgeConfig(200));
+            bridge.eventBus().send(HANDLER_ADDRESS, new JsonObject().put("body", "hello"));
+            awaitReceived(peer, "hello");
+
+            Thread.sleep(1000);
+            JsonObject metrics = metrics(bridge, METRICS_ADDRESS);
+            assertEquals(0L, (long) metrics.getLong("link-manager.connections.failed"));
+            assertEquals(0L, (long) metrics.getLong("link-manager.connections.idle-expired"));
+        }
+        finally
+        {
+            close(bridge);
+        }
+    }
+
+    @Test
+    public void testBackoff()
+    {
+        Random random = new Random(7);
+        assertEquals(0, Backoff.delay(100, 1000, 0, random));
+        for (int i = 0; i < 100; i++)
+        {
+            long delay = Backoff.delay(100, 1000, 1, random);
+            assertTrue(delay >= 50 && delay <= 100);
+            delay = Backoff.delay(100, 1000, 3, random);
+            assertTrue(delay >= 200 && delay <= 400);
+            // capped, also when doubling would overflow
+            delay = Backoff.delay(100, 1000, 80, random);
+            assertTrue(delay >= 500 && delay <= 1000);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.amqp.impl.AmqpServiceConfig;
+import io.vertx.ext.amqp.impl.config.AmqpServiceConfigImpl;
+import io.vertx.ext.amqp.impl.routing.RouteRegistry;
+import io.vertx.ext.amqp.impl.routing.RouteSnapshot;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class RouteRegistryTest extends TestCase
+{
+    private AmqpServiceConfig config()
+    {
+        JsonObject routes = new JsonObject().put("foo", "amqp://localhost:5672/foo");
+        return new AmqpServiceConfigImpl(new JsonObject().put("vertx.routing-outbound",
+                new JsonObject().put("routes", routes)));
+    }
+
+    @Test
+    public void testSnapshotsAreNotModified()
+    {
+        RouteRegistry registry = new RouteRegistry(config());
+        RouteSnapshot before = registry.get();
+
+        registry.addOutboundRoute("foo", "amqp://localhost:5672/foo2");
+        registry.addInboundRoute("bar", "bar-address");
+        RouteSnapshot after = registry.get();
+
+        assertEquals(Arrays.asList("amqp://localhost:5672/foo"), before.getOutboundTable().match("foo"));
+        assertEquals(0, before.getInboundRoutes().size());
+        assertEquals(Arrays.asList("amqp://localhost:5672/foo", "amqp://localhost:5672/foo2"), after
+                .getOutboundTable().match("foo"));
+        assertEquals(Arrays.asList("bar-address"), after.getInboundTable().match("bar"));
+        assertEquals(before.getVersion() + 2, after.getVersion());
+
+        assertFalse(registry.removeInboundRoute("bar", "unknown"));
+        assertSame(after, registry.get());
+        assertTrue(registry.removeInboundRoute("bar", "bar-address"));
+        assertTrue(registry.get().getInboundTable().match("bar").isEmpty());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception
+    {
+        final RouteRegistry registry = new RouteRegistry(config());
+        final int threads = 4;
+        final int routes = 200;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++)
+        {
+            final int id = t;
+            new Thread(() -> {
+                for (int i = 0; i < routes; i++)
+                {
+                    registry.addInboundRoute("key-" + id + "-" + i, "address");
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        assertEquals(threads * routes, registry.get().getInboundRoutes().size());
+    }
+
+    @Test
+    public void testSharedBetweenInstances()
+    {
+        Vertx vertx = Vertx.vertx();
+        try
+        {
+            RouteRegistry first = RouteRegistry.acquire(vertx, config());
+            RouteRegistry second = RouteRegistry.acquire(vertx, config());
+            assertSame(first, second);
+
+            first.addOutboundRoute("shared", "amqp://localhost:5672/shared");
+            assertEquals(1, second.get().getOutboundTable().match("shared").size());
+
+            first.release(vertx);
+            second.release(vertx);
+            RouteRegistry third = RouteRegistry.acquire(vertx, config());
+            assertNotSame(first, third);
+            assertTrue(third.get().getOutboundTable().match("shared").isEmpty());
+            third.release(vertx);
+        }
+        finally
+        {
+            vertx.close();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.amqp.impl.AmqpServiceConfig;
+import io.vertx.ext.amqp.impl.config.AmqpServiceConfigImpl;
+import io.vertx.ext.amqp.impl.config.ConfigRouteEntry;
+import io.vertx.ext.amqp.impl.routing.ConsistentHashRing;
+import io.vertx.ext.amqp.impl.routing.RouteMatch;
+import io.vertx.ext.amqp.impl.routing.RoutePatternType;
+import io.vertx.ext.amqp.impl.routing.RoutingCache;
+import io.vertx.ext.amqp.impl.routing.RoutingTable;
+import io.vertx.ext.amqp.impl.util.Metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class RoutingTableTest extends TestCase
+{
+    private static final String[] PATTERNS = { "us.weather", "ca\\.weather", "^nyc-weather$", "stock.*",
+            "stock\\.nyse\\..*", "x.y", "orders-[0-9]+", "(eu|asia)\\.news", ".*" };
+
+    private static final String[] KEYS = { "us.weather", "us-weather", "ca.weather", "ca-weather", "nyc-weather",
+            "stock", "stock.nyse.ibm", "stock.nasdaq", "xzy", "x\ny", "orders-42", "orders-", "eu.news", "",
+            "random" };
+
+    private RoutingTable build(String... patterns)
+    {
+        Map<String, ConfigRouteEntry> routes = new LinkedHashMap<String, ConfigRouteEntry>();
+        for (String p : patterns)
+        {
+            routes.put(p, AmqpServiceConfigImpl.createRouteEntry(p, "addr:" + p));
+        }
+        return new RoutingTable(routes.values());
+    }
+
+    @Test
+    public void testLiteralAndWildcardRoutes()
+    {
+        RoutingTable table = build("us.weather", "ca\\.weather", "stock\\..*");
+
+        assertEquals(Arrays.asList("addr:us.weather"), table.match("us.weather"));
+        assertEquals(Arrays.asList("addr:us.weather"), table.match("us-weather"));
+        assertEquals(Arrays.asList("addr:ca\\.weather"), table.match("ca.weather"));
+        assertTrue(table.match("ca-weather").isEmpty());
+        assertEquals(Arrays.asList("addr:stock\\..*"), table.match("stock.ibm"));
+        assertTrue(table.match("stocks").isEmpty());
+        assertTrue(table.match(null).isEmpty());
+    }
+
+    @Test
+    public void testMatchesAreOrderedByRouteOrder()
+    {
+        RoutingTable table = build(PATTERNS);
+        assertEquals(Arrays.asList("addr:stock.*", "addr:stock\\.nyse\\..*", "addr:.*"),
+                table.match("stock.nyse.ibm"));
+    }
+
+    @Test
+    public void testSameResultsAsRegexScan()
+    {
+        RoutingTable table = build(PATTERNS);
+        for (String key : KEYS)
+        {
+            List<String> expected = new ArrayList<String>();
+            for (String p : PATTERNS)
+            {
+                if (java.util.regex.Pattern.compile(p).matcher(key).matches())
+                {
+                    expected.add("addr:" + p);
+                }
+            }
+            assertEquals("key=" + key, expected, table.match(key));
+        }
+    }
+
+    @Test
+    public void testLargeTable()
+    {
+        String[] patterns = new String[10000];
+        for (int i = 0; i < patterns.length; i++)
+        {
+            patterns[i] = "queue-" + i + (i % 2 == 0 ? "" : ".*");
+        }
+        RoutingTable table = build(patterns);
+
+        assertEquals(10000, table.size());
+        assertEquals(Arrays.asList("addr:queue-4242"), table.match("queue-4242"));
+        assertEquals(Arrays.asList("addr:queue-1.*", "addr:queue-13.*", "addr:queue-135.*",
+                "addr:queue-1357.*"),
+                table.match("queue-1357"));
+    }
+
+    @Test
+    public void testRoutingCache()
+    {
+        Metrics metrics = new Metrics();
+        RoutingCache cache = new RoutingCache("test", 2, metrics);
+        RouteMatch addresses = new RoutingTable(Arrays.asList(new ConfigRouteEntry(RoutePatternType.REGEX, "k.",
+                "a"))).lookup("k1");
+
+        assertNull(cache.get("k1", 0));
+        cache.put("k1", 0, addresses);
+        assertSame(addresses, cache.get("k1", 0));
+
+        // a route change bumps the version
+        assertNull(cache.get("k1", 1));
+
+        // least recently used entry is evicted
+        cache.put("k1", 1, addresses);
+        cache.put("k2", 1, addresses);
+        cache.get("k1", 1);
+        cache.put("k3", 1, addresses);
+        assertNull(cache.get("k2", 1));
+        assertNotNull(cache.get("k1", 1));
+
+        assertEquals(3L, (long) metrics.snapshot().getLong("test.hits"));
+        assertEquals(3L, (long) metrics.snapshot().getLong("test.misses"));
+        assertEquals(0.5, metrics.snapshot().getDouble("test.hit-ratio"), 0.0001);
+    }
+
+    @Test
+    public void testTopicRoutes()
+    {
+        JsonObject routes = new JsonObject().put("weather.*.toronto", "toronto").put("weather.#", "all")
+                .put("#.alerts", "alerts").put("weather.#.#.alerts", "weather-alerts").put("news", "news");
+        JsonObject obj = new JsonObject().put("vertx.routing-inbound",
+                new JsonObject().put("pattern-type", "topic").put("routes", routes));
+        AmqpServiceConfig config = new AmqpServiceConfigImpl(obj);
+        assertEquals(RoutePatternType.TOPIC, config.getInboundPatternType());
+        assertEquals(RoutePatternType.REGEX, config.getOutboundPatternType());
+
+        RoutingTable table = new RoutingTable(config.getInboundRoutes().values());
+        assertEquals(set("toronto", "all"), set(table.match("weather.today.toronto")));
+        assertEquals(set("all"), set(table.match("weather")));
+        assertEquals(set("all"), set(table.match("weather.today.toronto.now")));
+        assertEquals(set("alerts"), set(table.match("alerts")));
+        assertEquals(set("all", "alerts", "weather-alerts"), set(table.match("weather.alerts")));
+        assertEquals(set("news"), set(table.match("news")));
+        assertTrue(table.match("news.today").isEmpty());
+        assertTrue(table.match("weathers").isEmpty());
+        assertEquals(3, table.match("weather.a.b.alerts").size());
+    }
+
+    @Test
+    public void testTopicRoutesWithSeveralHashes()
+    {
+        JsonObject routes = new JsonObject().put("a.#.b.#.c.#.d.#.e", "deep").put("#.#.#.z", "z");
+        JsonObject obj = new JsonObject().put("vertx.routing-inbound",
+                new JsonObject().put("pattern-type", "topic").put("routes", routes));
+        RoutingTable table = new RoutingTable(new AmqpServiceConfigImpl(obj).getInboundRoutes().values());
+
+        assertEquals(Arrays.asList("deep"), table.match("a.b.c.d.e"));
+        assertEquals(Arrays.asList("deep"), table.match("a.x.b.b.c.x.x.d.e"));
+        assertEquals(Arrays.asList("z"), table.match("z"));
+        // each '#' could swallow any part of the key, a backtracking match
+        // tries every split and takes seconds
+        StringBuilder key = new StringBuilder("a");
+        for (int i = 0; i < 300; i++)
+        {
+            key.append(".b.c.d");
+        }
+        long start = System.currentTimeMillis();
+        assertTrue(table.match(key.toString()).isEmpty());
+        assertEquals(Arrays.asList("deep"), table.match(key.append(".e").toString()));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    private static Set<String> set(String... values)
+    {
+        return new HashSet<String>(Arrays.asList(values));
+    }
+
+    private static Set<String> set(List<String> values)
+    {
+        return new HashSet<String>(values);
+    }
+
+    @Test
+    public void testConsistentHashRing()
+    {
+        List<String> shards = Arrays.asList("amqp://a", "amqp://b", "amqp://c", "amqp://d");
+        ConsistentHashRing ring = new ConsistentHashRing(shards);
+        ConsistentHashRing grown = new ConsistentHashRing(Arrays.asList("amqp://a", "amqp://b", "amqp://c",
+                "amqp://d", "amqp://e"));
+
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        int keys = 10000;
+        int moved = 0;
+        for (int i = 0; i < keys; i++)
+        {
+            String owner = ring.get("order-" + i);
+            assertEquals(owner, ring.get("order-" + i));
+            Integer count = counts.get(owner);
+            counts.put(owner, count == null ? 1 : count + 1);
+
+            String newOwner = grown.get("order-" + i);
+            if (!owner.equals(newOwner))
+            {
+                // keys only move to the new shard
+                assertEquals("amqp://e", newOwner);
+                moved++;
+            }
+        }
+        for (String shard : shards)
+        {
+            assertTrue(counts.get(shard) > keys / 8);
+        }
+        // about 1/5 of the keys move to the added shard
+        assertTrue(moved > keys / 10 && moved < keys * 3 / 10);
+    }
+}
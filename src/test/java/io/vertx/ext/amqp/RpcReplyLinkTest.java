@@ -0,0 +1,96 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static io.vertx.ext.amqp.BridgeTestSupport.close;
+import static io.vertx.ext.amqp.BridgeTestSupport.deploy;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.proton.message.Message;
+import org.junit.Test;
+
+public class RpcReplyLinkTest extends TestCase
+{
+    private static final int PEER_A_PORT = 15694;
+
+    private static final int PEER_B_PORT = 15695;
+
+    private static boolean hasReplyLinkAddress(TestPeer peer)
+    {
+        for (Message msg : peer.getReceived())
+        {
+            if (peer.getReplyAddress().equals(msg.getReplyTo()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testReplyAddressPerConnection() throws Exception
+    {
+        Vertx bridge = Vertx.vertx();
+        TestPeer peerA = new TestPeer(bridge, PEER_A_PORT);
+        TestPeer peerB = new TestPeer(bridge, PEER_B_PORT);
+        peerA.start();
+        peerB.start();
+        try
+        {
+            JsonObject routes = new JsonObject().put("rpc-test", new JsonObject().put("addresses", new JsonArray()
+                    .add("amqp://localhost:" + PEER_A_PORT + "/service").add("amqp://localhost:" + PEER_B_PORT
+                            + "/service")));
+            deploy(bridge, new JsonObject().put("address", "vertx.amqp.rpc-reply-test").put("amqp.inbound-port",
+                    15696).put("amqp.rpc-reply-link", true).put("vertx.handlers", new JsonArray().add("rpc-test"))
+                    .put("vertx.routing-outbound", new JsonObject().put("routes", routes)));
+
+            // the first requests go out before the peers assigned the reply
+            // addresses, they use the inbound host instead
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!hasReplyLinkAddress(peerA) || !hasReplyLinkAddress(peerB))
+            {
+                assertTrue("Reply links not used", System.currentTimeMillis() < deadline);
+                bridge.eventBus().send("rpc-test", new JsonObject().put("body", "ping"),
+                        new DeliveryOptions().setSendTimeout(1000), r -> {
+                        });
+                Thread.sleep(50);
+            }
+
+            // each request carries the reply link of the connection it went out on
+            for (TestPeer peer : new TestPeer[] { peerA, peerB })
+            {
+                for (Message msg : peer.getReceived())
+                {
+                    if (msg.getReplyTo().startsWith("reply-"))
+                    {
+                        assertEquals(peer.getReplyAddress(), msg.getReplyTo());
+                    }
+                }
+            }
+        }
+        finally
+        {
+            close(bridge);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.ext.amqp.impl.selector.PropertySource;
+import io.vertx.ext.amqp.impl.selector.Selector;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class SelectorTest extends TestCase
+{
+    private static PropertySource props(Object... pairs)
+    {
+        final Map<String, Object> map = new HashMap<String, Object>();
+        for (int i = 0; i < pairs.length; i += 2)
+        {
+            map.put((String) pairs[i], pairs[i + 1]);
+        }
+        return name -> map.get(name);
+    }
+
+    private static boolean matches(String selector, PropertySource source)
+    {
+        return Selector.parse(selector).matches(source);
+    }
+
+    @Test
+    public void testComparisonsAndArithmetic()
+    {
+        PropertySource p = props("priority", 7, "price", 10.5, "region", "eu", "count", "42");
+
+        assertTrue(matches("priority > 5", p));
+        assertTrue(matches("priority = 7 AND region = 'eu'", p));
+        assertFalse(matches("priority <> 7", p));
+        assertTrue(matches("price * 2 >= 21", p));
+        assertTrue(matches("priority BETWEEN 1 AND 9", p));
+        assertTrue(matches("priority NOT BETWEEN 8 AND 9", p));
+        assertTrue(matches("-priority + 10 = 3", p));
+        assertTrue(matches("priority % 2 = 1", p));
+        // numeric strings, e.g. from event-bus headers, compare as numbers
+        assertTrue(matches("count = 42", p));
+        assertTrue(matches("(priority < 5 OR region = 'eu') and not region = 'us'", p));
+    }
+
+    @Test
+    public void testStringPredicates()
+    {
+        PropertySource p = props("region", "eu-west", "subject", "it's_50%");
+
+        assertTrue(matches("region IN ('us', 'eu-west')", p));
+        assertTrue(matches("region NOT IN ('us')", p));
+        assertTrue(matches("region LIKE 'eu-%'", p));
+        assertTrue(matches("region LIKE 'e_-west'", p));
+        assertFalse(matches("region LIKE 'eu'", p));
+        assertTrue(matches("subject = 'it''s_50%'", p));
+        assertTrue(matches("subject LIKE '%!_50!%' ESCAPE '!'", p));
+        assertFalse(matches("subject LIKE '%!_5!%' ESCAPE '!'", p));
+    }
+
+    @Test
+    public void testUnknownValues()
+    {
+        PropertySource p = props("region", "eu");
+
+        assertFalse(matches("priority > 5", p));
+        assertFalse(matches("NOT priority > 5", p));
+        assertTrue(matches("priority IS NULL", p));
+        assertTrue(matches("region IS NOT NULL", p));
+        assertTrue(matches("priority > 5 OR region = 'eu'", p));
+        assertFalse(matches("priority > 5 AND region = 'eu'", p));
+        assertFalse(matches("priority IN ('1')", p));
+        assertFalse(matches("priority NOT IN ('1')", p));
+    }
+
+    @Test
+    public void testInvalidSelectors()
+    {
+        for (String s : new String[] { "priority >", "region = 'eu", "(a = 1", "a LIKE b", "a = 1 b" })
+        {
+            try
+            {
+                Selector.parse(s);
+                fail("Expected a parse failure for " + s);
+            }
+            catch (IllegalArgumentException e)
+            {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetServer;
+import io.vertx.core.net.NetSocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Source;
+import org.apache.qpid.proton.amqp.messaging.Target;
+import org.apache.qpid.proton.amqp.transport.DeliveryState;
+import org.apache.qpid.proton.engine.Collector;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.EndpointState;
+import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.Link;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.engine.Transport;
+import org.apache.qpid.proton.message.Message;
+
+/**
+ * A bare AMQP peer on proton-j, for tests that need to see what the bridge
+ * puts on the wire. It opens whatever the bridge opens, grants credit to
+ * the bridge's senders, records the messages they send and accepts them.
+ * A receiver with a dynamic source is given the address "reply-[port]".
+ * Messages offered before the bridge attaches a receiver to their address
+ * are sent to it, and the outcome the bridge gives each is recorded by
+ * delivery tag. The links the bridge has open to send to each address are
+ * counted. Stopping the peer drops the connections the bridge opened to it.
+ */
+class TestPeer
+{
+    private static final int CREDIT = 100;
+
+    private final Vertx _vertx;
+
+    private final int _port;
+
+    private final List<Message> _received = new CopyOnWriteArrayList<Message>();
+
+    private final List<NetSocket> _sockets = new CopyOnWriteArrayList<NetSocket>();
+
+    private volatile boolean _settling = true;
+
+    private volatile boolean _silent;
+
+    // messages to send by source address, and their outcomes by delivery tag
+    private final Map<String, Queue<Message>> _offered = new ConcurrentHashMap<String, Queue<Message>>();
+
+    private final Map<String, DeliveryState> _outcomes = new ConcurrentHashMap<String, DeliveryState>();
+
+    // open links the bridge sends on, by target address
+    private final Map<String, AtomicInteger> _openReceivers = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private final AtomicInteger _linksOpened = new AtomicInteger();
+
+    private NetServer _server;
+
+    TestPeer(Vertx vertx, int port)
+    {
+        _vertx = vertx;
+        _port = port;
+    }
+
+    String getReplyAddress()
+    {
+        return "reply-" + _port;
+    }
+
+    List<Message> getReceived()
+    {
+        return _received;
+    }
+
+    /*
+     * When false, messages are recorded but left unsettled, as if the peer
+     * went away before it could process them.
+     */
+    void setSettling(boolean settling)
+    {
+        _settling = settling;
+    }
+
+    /*
+     * When true, connections are accepted but never answered.
+     */
+    void setSilent(boolean silent)
+    {
+        _silent = silent;
+    }
+
+    /*
+     * Queues the message for the first receiver the bridge attaches to the
+     * address, it is sent with the tag once the bridge gives credit.
+     */
+    void offer(String address, String tag, Message msg)
+    {
+        msg.setMessageId(tag);
+        _offered.computeIfAbsent(address, a -> new ConcurrentLinkedQueue<Message>()).add(msg);
+    }
+
+    /*
+     * The outcome of the offered message, null until the bridge settled it.
+     */
+    DeliveryState getOutcome(String tag)
+    {
+        return _outcomes.get(tag);
+    }
+
+    /*
+     * The number of links the bridge has open to send to the address.
+     */
+    int getOpenLinks(String address)
+    {
+        AtomicInteger count = _openReceivers.get(address);
+        return count == null ? 0 : count.get();
+    }
+
+    /*
+     * The number of links the bridge opened to send on, including closed ones.
+     */
+    int getLinksOpened()
+    {
+        return _linksOpened.get();
+    }
+
+    boolean isConnected()
+    {
+        return !_sockets.isEmpty();
+    }
+
+    void start() throws Exception
+    {
+        CompletableFuture<Void> listening = new CompletableFuture<Void>();
+        _server = _vertx.createNetServer().connectHandler(this::accept).listen(_port, r -> {
+            if (r.succeeded())
+            {
+                listening.complete(null);
+            }
+            else
+            {
+                listening.completeExceptionally(r.cause());
+            }
+        });
+        listening.get(10, TimeUnit.SECONDS);
+    }
+
+    void stop() throws Exception
+    {
+        for (NetSocket socket : _sockets)
+        {
+            socket.close();
+        }
+        CompletableFuture<Void> closed = new CompletableFuture<Void>();
+        _server.close(r -> closed.complete(null));
+        closed.get(10, TimeUnit.SECONDS);
+    }
+
+    private void accept(NetSocket socket)
+    {
+        Connection connection = Connection.Factory.create();
+        Transport transport = Transport.Factory.create();
+        Collector collector = Collector.Factory.create();
+        connection.collect(collector);
+        transport.bind(connection);
+        _sockets.add(socket);
+        socket.closeHandler(v -> _sockets.remove(socket));
+        socket.handler(data -> {
+            if (_silent)
+            {
+                return;
+            }
+            byte[] bytes = data.getBytes();
+            int start = 0;
+            while (start < bytes.length)
+            {
+                int count = Math.min(transport.getInputBuffer().remaining(), bytes.length - start);
+                transport.getInputBuffer().put(bytes, start, count);
+                start += count;
+                transport.processInput();
+                process(collector);
+            }
+            ByteBuffer out = transport.getOutputBuffer();
+            while (out.remaining() > 0)
+            {
+                byte[] chunk = new byte[out.remaining()];
+                out.get(chunk);
+                socket.write(Buffer.buffer(chunk));
+                transport.outputConsumed();
+                out = transport.getOutputBuffer();
+            }
+        });
+    }
+
+    private void process(Collector collector)
+    {
+        Event event;
+        while ((event = collector.peek()) != null)
+        {
+            switch (event.getType())
+            {
+            case CONNECTION_REMOTE_OPEN:
+                event.getConnection().open();
+                break;
+            case SESSION_REMOTE_OPEN:
+                event.getSession().open();
+                break;
+            case LINK_REMOTE_OPEN:
+                open(event.getLink());
+                break;
+            case LINK_REMOTE_CLOSE:
+                if (event.getLink() instanceof Receiver && event.getLink().getLocalState() == EndpointState.ACTIVE)
+                {
+                    receivers(event.getLink()).decrementAndGet();
+                }
+                event.getLink().close();
+                break;
+            case LINK_FLOW:
+                if (event.getLink() instanceof Sender)
+                {
+                    send((Sender) event.getLink());
+                }
+                break;
+            case DELIVERY:
+                if (event.getDelivery().getLink() instanceof Sender)
+                {
+                    settled(event.getDelivery());
+                }
+                else
+                {
+                    receive(event.getDelivery());
+                }
+                break;
+            default:
+                break;
+            }
+            collector.pop();
+        }
+    }
+
+    private void open(Link link)
+    {
+        if (link.getLocalState() != EndpointState.UNINITIALIZED)
+        {
+            return;
+        }
+        Source remoteSource = (Source) link.getRemoteSource();
+        if (remoteSource != null && remoteSource.getDynamic())
+        {
+            Source source = new Source();
+            source.setAddress(getReplyAddress());
+            link.setSource(source);
+        }
+        else
+        {
+            link.setSource(remoteSource);
+        }
+        link.setTarget(link.getRemoteTarget());
+        link.open();
+        if (link instanceof Receiver)
+        {
+            receivers(link).incrementAndGet();
+            _linksOpened.incrementAndGet();
+            ((Receiver) link).flow(CREDIT);
+        }
+    }
+
+    private AtomicInteger receivers(Link link)
+    {
+        Target target = (Target) link.getRemoteTarget();
+        String address = target == null ? null : target.getAddress();
+        return _openReceivers.computeIfAbsent(String.valueOf(address), a -> new AtomicInteger());
+    }
+
+    private void send(Sender sender)
+    {
+        Source source = (Source) sender.getRemoteSource();
+        Queue<Message> offered = source == null || source.getAddress() == null ? null : _offered.get(source
+                .getAddress());
+        byte[] buffer = new byte[1024];
+        while (offered != null && sender.getCredit() > 0 && !offered.isEmpty())
+        {
+            Message msg = offered.poll();
+            sender.delivery(((String) msg.getMessageId()).getBytes(StandardCharsets.UTF_8));
+            int length = msg.encode(buffer, 0, buffer.length);
+            sender.send(buffer, 0, length);
+            sender.advance();
+        }
+    }
+
+    private void settled(Delivery delivery)
+    {
+        if (delivery.getRemoteState() != null)
+        {
+            _outcomes.put(new String(delivery.getTag(), StandardCharsets.UTF_8), delivery.getRemoteState());
+            delivery.settle();
+        }
+    }
+
+    private void receive(Delivery delivery)
+    {
+        if (!(delivery.getLink() instanceof Receiver) || !delivery.isReadable() || delivery.isPartial())
+        {
+            return;
+        }
+        Receiver receiver = (Receiver) delivery.getLink();
+        byte[] bytes = new byte[delivery.pending()];
+        int read = receiver.recv(bytes, 0, bytes.length);
+        receiver.advance();
+        Message msg = Proton.message();
+        msg.decode(bytes, 0, read);
+        _received.add(msg);
+        receiver.flow(1);
+        if (!_settling)
+        {
+            return;
+        }
+        delivery.disposition(Accepted.getInstance());
+        delivery.settle();
+    }
+}
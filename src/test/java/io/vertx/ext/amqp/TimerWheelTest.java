@@ -0,0 +1,99 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.vertx.ext.amqp.impl.util.ExpiringMap;
+import io.vertx.ext.amqp.impl.util.TimerWheel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class TimerWheelTest extends TestCase
+{
+    static class Recorder extends TimerWheel.Timeout
+    {
+        final List<String> _expired;
+
+        final String _name;
+
+        Recorder(List<String> expired, String name)
+        {
+            _expired = expired;
+            _name = name;
+        }
+
+        @Override
+        protected void expire()
+        {
+            _expired.add(_name);
+        }
+    }
+
+    @Test
+    public void testExpiry()
+    {
+        List<String> expired = new ArrayList<String>();
+        TimerWheel wheel = new TimerWheel(10, 8);
+        wheel.advance(0);
+        wheel.schedule(new Recorder(expired, "a"), 25);
+        // more than one turn of the wheel
+        wheel.schedule(new Recorder(expired, "b"), 200);
+        TimerWheel.Timeout cancelled = new Recorder(expired, "c");
+        wheel.schedule(cancelled, 25);
+        assertEquals(3, wheel.pending());
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+
+        wheel.advance(20);
+        assertTrue(expired.isEmpty());
+        wheel.advance(30);
+        assertEquals(1, expired.size());
+        assertEquals("a", expired.get(0));
+        wheel.advance(190);
+        assertEquals(1, expired.size());
+        wheel.advance(200);
+        assertEquals(2, expired.size());
+        assertEquals("b", expired.get(1));
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void testExpiringMap()
+    {
+        List<String> expired = new ArrayList<String>();
+        TimerWheel wheel = new TimerWheel(10);
+        wheel.advance(0);
+        ExpiringMap<String, String> map = new ExpiringMap<String, String>(wheel, 50, (k, v) -> expired.add(k + "=" + v));
+        map.put("a", "1");
+        map.put("b", "2");
+        map.put("b", "3");
+        assertEquals(2, map.size());
+        assertEquals(2, wheel.pending());
+        assertEquals("1", map.remove("a"));
+        assertEquals(1, wheel.pending());
+
+        wheel.advance(60);
+        assertEquals(0, map.size());
+        assertNull(map.get("b"));
+        assertEquals(1, expired.size());
+        assertEquals("b=3", expired.get(0));
+    }
+}
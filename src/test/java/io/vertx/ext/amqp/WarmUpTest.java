@@ -0,0 +1,128 @@
+package io.vertx.ext.amqp;
+
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static io.vertx.ext.amqp.BridgeTestSupport.close;
+import static io.vertx.ext.amqp.BridgeTestSupport.deploy;
+import static io.vertx.ext.amqp.BridgeTestSupport.metrics;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.amqp.impl.config.AmqpServiceConfigImpl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class WarmUpTest extends TestCase
+{
+    private static final int PEER_PORT = 15692;
+
+    private static final String METRICS_ADDRESS = "vertx.amqp.warm-up-metrics";
+
+    private JsonObject bridgeConfig(String outboundAddress)
+    {
+        return new JsonObject().put("address", "vertx.amqp.warm-up-test").put("amqp.inbound-port", 15693)
+                .put("amqp.default-outbound-address", outboundAddress).put("amqp.warm-up", true)
+                .put("amqp.warm-up-timeout", 500).put("vertx.metrics-address", METRICS_ADDRESS);
+    }
+
+    @Test
+    public void testLinksAttachedBeforeStart() throws Exception
+    {
+        Vertx peer = Vertx.vertx();
+        Vertx bridge = Vertx.vertx();
+        try
+        {
+            deploy(peer, new JsonObject().put("address", "vertx.amqp.warm-up-peer").put("amqp.inbound-port", PEER_PORT));
+            deploy(bridge, bridgeConfig("amqp://localhost:" + PEER_PORT + "/test-queue"));
+
+            JsonObject metrics = metrics(bridge, METRICS_ADDRESS);
+            assertEquals(0L, (long) metrics.getLong("link-manager.warm-up.unattached"));
+            assertTrue(metrics.getLong("link-manager.warm-up.ms") >= 0);
+            assertEquals(-1L, (long) metrics.getLong("link-manager.first-send-ms"));
+        }
+        finally
+        {
+            close(bridge);
+            close(peer);
+        }
+    }
+
+    @Test
+    public void testStartsAfterTimeout() throws Exception
+    {
+        Vertx bridge = Vertx.vertx();
+        try
+        {
+            // nothing listens on the peer port
+            deploy(bridge, bridgeConfig("amqp://localhost:" + PEER_PORT + "/test-queue"));
+
+            JsonObject metrics = metrics(bridge, METRICS_ADDRESS);
+            assertEquals(1L, (long) metrics.getLong("link-manager.warm-up.unattached"));
+            assertTrue(metrics.getLong("link-manager.warm-up.ms") >= 500);
+        }
+        finally
+        {
+            close(bridge);
+        }
+    }
+
+    @Test
+    public void testLinkReattachedDuringWarmUp() throws Exception
+    {
+        Vertx bridge = Vertx.vertx();
+        Vertx peer = Vertx.vertx();
+        try
+        {
+            // the first connection attempt fails, the link attaches on a retry
+            CompletableFuture<Long> started = new CompletableFuture<Long>();
+            long start = System.currentTimeMillis();
+            bridge.deployVerticle(AMQPVerticle.class.getName(), new DeploymentOptions().setConfig(bridgeConfig(
+                    "amqp://localhost:" + PEER_PORT + "/test-queue").put("amqp.warm-up-timeout", 10000)), r -> started
+                    .complete(System.currentTimeMillis() - start));
+            Thread.sleep(200);
+            deploy(peer, new JsonObject().put("address", "vertx.amqp.warm-up-peer").put("amqp.inbound-port", PEER_PORT));
+
+            assertTrue(started.get(10, TimeUnit.SECONDS) < 10000);
+            assertEquals(0L, (long) metrics(bridge, METRICS_ADDRESS).getLong("link-manager.warm-up.unattached"));
+        }
+        finally
+        {
+            close(bridge);
+            close(peer);
+        }
+    }
+
+    @Test
+    public void testNonPositiveTimeoutRejected()
+    {
+        try
+        {
+            new AmqpServiceConfigImpl(new JsonObject().put("amqp.warm-up", true).put("amqp.warm-up-timeout", 0));
+            fail("Expected a config error");
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertTrue(e.getMessage().contains("amqp.warm-up-timeout"));
+        }
+    }
+}